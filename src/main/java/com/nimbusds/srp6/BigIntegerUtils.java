@@ -6,7 +6,13 @@ import java.util.Arrays;
 
 
 /**
- * Hexadecimal encoding and decoding utility.
+ * Hexadecimal and Base64URL encoding and decoding utility.
+ *
+ * <p>The encoders and decoders are table-driven and work on the unsigned
+ * big-endian magnitude of the big integers, avoiding the generic radix
+ * conversion of {@link BigInteger#toString(int)} and
+ * {@link BigInteger#BigInteger(String, int)}. Fixed-length forms are
+ * left-padded with zeros, for example to the byte length of the prime 'N'.
  *
  * <p>Obtained from Apache Xerces and Aduna Software code on java2s.com.
  *
@@ -16,6 +22,40 @@ import java.util.Arrays;
  */
 public class BigIntegerUtils {
 
+	/**
+	 * The lower case hex digits.
+	 */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The Base64URL alphabet, see RFC 4648, section 5.
+	 */
+	private static final char[] BASE64URL_DIGITS =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+	/**
+	 * Hex digit values by ASCII character, -1 if invalid.
+	 */
+	private static final byte[] HEX_VALUES = new byte[128];
+
+	/**
+	 * Base64URL digit values by ASCII character, -1 if invalid.
+	 */
+	private static final byte[] BASE64URL_VALUES = new byte[128];
+
+	static {
+		Arrays.fill(HEX_VALUES, (byte)-1);
+		Arrays.fill(BASE64URL_VALUES, (byte)-1);
+
+		for (int i=0; i < 16; i++) {
+			HEX_VALUES[HEX_DIGITS[i]] = (byte)i;
+			HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte)i;
+		}
+
+		for (int i=0; i < 64; i++)
+			BASE64URL_VALUES[BASE64URL_DIGITS[i]] = (byte)i;
+	}
+
 	/**
 	 * Encodes the specified big integer into a hex string.
 	 *
@@ -28,8 +68,105 @@ public class BigIntegerUtils {
 	
 		if (bigint == null)
 			return null;
-	
-		return bigint.toString(16);
+
+		if (bigint.signum() < 0)
+			return bigint.toString(16);
+
+		byte[] bytes = bigint.toByteArray();
+		int off = bytes[0] == 0 && bytes.length > 1 ? 1 : 0;
+
+		// Skip the leading zero nibble, as BigInteger.toString(16) does
+		boolean skipNibble = (bytes[off] & 0xF0) == 0;
+
+		char[] chars = new char[(bytes.length - off) * 2 - (skipNibble ? 1 : 0)];
+		int pos = 0;
+
+		for (int i=off; i < bytes.length; i++) {
+
+			if (i > off || ! skipNibble)
+				chars[pos++] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+
+			chars[pos++] = HEX_DIGITS[bytes[i] & 0x0F];
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Encodes the specified non-negative big integer into a hex string,
+	 * left-padded with zeros to the specified byte length.
+	 *
+	 * @param bigint The value to encode. Must not be {@code null} or
+	 *               negative.
+	 * @param length The byte length, the string has twice as many
+	 *               characters.
+	 *
+	 * @return The hex encoded string.
+	 *
+	 * @throws IllegalArgumentException If the value is negative or exceeds
+	 *                                  the byte length.
+	 */
+	public static String toHex(final BigInteger bigint, final int length) {
+
+		char[] chars = new char[length * 2];
+		toHex(bigint, length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Encodes the specified non-negative big integer into hex characters,
+	 * left-padded with zeros to the specified byte length, into a caller
+	 * supplied buffer.
+	 *
+	 * @param bigint The value to encode. Must not be {@code null} or
+	 *               negative.
+	 * @param length The byte length.
+	 * @param dest   The destination buffer. Must not be {@code null}.
+	 * @param off    The offset in the destination buffer.
+	 *
+	 * @return The number of characters written, {@code 2 * length}.
+	 *
+	 * @throws IllegalArgumentException  If the value is negative or exceeds
+	 *                                   the byte length.
+	 * @throws IndexOutOfBoundsException If the destination buffer is too
+	 *                                   small.
+	 */
+	public static int toHex(final BigInteger bigint, final int length, final char[] dest, final int off) {
+
+		byte[] bytes = bigint.toByteArray();
+		int start = magnitudeOffset(bigint, bytes, length);
+
+		if (off < 0 || dest.length - off < length * 2)
+			throw new IndexOutOfBoundsException();
+
+		int pad = length - (bytes.length - start);
+		Arrays.fill(dest, off, off + pad * 2, '0');
+
+		for (int i=start, pos=off + pad * 2; i < bytes.length; i++) {
+			dest[pos++] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+			dest[pos++] = HEX_DIGITS[bytes[i] & 0x0F];
+		}
+
+		return length * 2;
+	}
+
+	/**
+	 * Encodes the specified bytes into a lower case hex string.
+	 *
+	 * @param bytes The bytes to encode. Must not be {@code null}.
+	 *
+	 * @return The hex encoded string.
+	 */
+	public static String toHex(final byte[] bytes) {
+
+		char[] chars = new char[bytes.length * 2];
+
+		for (int i=0, pos=0; i < bytes.length; i++) {
+			chars[pos++] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+			chars[pos++] = HEX_DIGITS[bytes[i] & 0x0F];
+		}
+
+		return new String(chars);
 	}
 
 	/**
@@ -44,14 +181,300 @@ public class BigIntegerUtils {
 
 		if (hex == null)
 			return null;
-	
-		try {
-			return new BigInteger(hex, 16);
 
-		} catch (NumberFormatException e) {
+		if (! hex.isEmpty() && (hex.charAt(0) == '-' || hex.charAt(0) == '+')) {
+
+			// Signed, use the generic conversion
+			try {
+				return new BigInteger(hex, 16);
+
+			} catch (NumberFormatException e) {
+
+				return null;
+			}
+		}
+
+		if (hex.isEmpty())
+			return null;
+
+		byte[] bytes = new byte[(hex.length() + 1) / 2];
+
+		if (! decodeHex(hex, bytes))
+			return null;
+
+		return new BigInteger(1, bytes);
+	}
+
+	/**
+	 * Decodes the specified hex string into bytes. The string must have an
+	 * even number of characters.
+	 *
+	 * @param hex The hex encoded string to decode, upper or lower case.
+	 *
+	 * @return The decoded bytes or {@code null} if decoding failed.
+	 */
+	public static byte[] hexToBytes(final CharSequence hex) {
+
+		if (hex == null || hex.length() % 2 != 0)
+			return null;
 
+		byte[] bytes = new byte[hex.length() / 2];
+
+		if (! decodeHex(hex, bytes))
 			return null;
+
+		return bytes;
+	}
+
+	/**
+	 * Decodes hex characters into the specified array, right-aligned. An
+	 * odd number of characters leaves the first high nibble zero.
+	 */
+	private static boolean decodeHex(final CharSequence hex, final byte[] dest) {
+
+		int len = hex.length();
+		int pos = dest.length * 2 - len;
+
+		for (int i=0; i < len; i++, pos++) {
+
+			char c = hex.charAt(i);
+			int v = c < 128 ? HEX_VALUES[c] : -1;
+
+			if (v < 0)
+				return false;
+
+			if ((pos & 1) == 0)
+				dest[pos >> 1] = (byte)(v << 4);
+			else
+				dest[pos >> 1] |= (byte)v;
 		}
+
+		return true;
+	}
+
+	/**
+	 * Encodes the magnitude of the specified non-negative big integer into
+	 * an unpadded Base64URL string.
+	 *
+	 * @param bigint The value to encode. Must not be {@code null} or
+	 *               negative.
+	 *
+	 * @return The Base64URL encoded string, empty for zero.
+	 */
+	public static String toBase64URL(final BigInteger bigint) {
+
+		return toBase64URL(bigint, (bigint.bitLength() + 7) / 8);
+	}
+
+	/**
+	 * Encodes the specified non-negative big integer, left-padded with
+	 * zeros to the specified byte length, into an unpadded Base64URL
+	 * string.
+	 *
+	 * @param bigint The value to encode. Must not be {@code null} or
+	 *               negative.
+	 * @param length The byte length.
+	 *
+	 * @return The Base64URL encoded string.
+	 *
+	 * @throws IllegalArgumentException If the value is negative or exceeds
+	 *                                  the byte length.
+	 */
+	public static String toBase64URL(final BigInteger bigint, final int length) {
+
+		char[] chars = new char[base64URLLength(length)];
+		toBase64URL(bigint, length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Encodes the specified non-negative big integer, left-padded with
+	 * zeros to the specified byte length, into unpadded Base64URL
+	 * characters in a caller supplied buffer.
+	 *
+	 * @param bigint The value to encode. Must not be {@code null} or
+	 *               negative.
+	 * @param length The byte length.
+	 * @param dest   The destination buffer. Must not be {@code null}.
+	 * @param off    The offset in the destination buffer.
+	 *
+	 * @return The number of characters written, see
+	 *         {@link #base64URLLength}.
+	 *
+	 * @throws IllegalArgumentException  If the value is negative or exceeds
+	 *                                   the byte length.
+	 * @throws IndexOutOfBoundsException If the destination buffer is too
+	 *                                   small.
+	 */
+	public static int toBase64URL(final BigInteger bigint, final int length, final char[] dest, final int off) {
+
+		byte[] bytes = bigint.toByteArray();
+		int start = magnitudeOffset(bigint, bytes, length);
+		return encodeBase64URL(bytes, start, length - (bytes.length - start), length, dest, off);
+	}
+
+	/**
+	 * Encodes the specified bytes into an unpadded Base64URL string.
+	 *
+	 * @param bytes The bytes to encode. Must not be {@code null}.
+	 *
+	 * @return The Base64URL encoded string.
+	 */
+	public static String toBase64URL(final byte[] bytes) {
+
+		char[] chars = new char[base64URLLength(bytes.length)];
+		encodeBase64URL(bytes, 0, 0, bytes.length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Encodes the bytes from the specified start, virtually left-padded
+	 * with the specified number of zeros, into Base64URL characters.
+	 */
+	private static int encodeBase64URL(final byte[] bytes,
+	                                   final int start,
+	                                   final int pad,
+	                                   final int length,
+	                                   final char[] dest,
+	                                   final int off) {
+
+		int chars = base64URLLength(length);
+
+		if (off < 0 || dest.length - off < chars)
+			throw new IndexOutOfBoundsException();
+
+		int pos = off;
+
+		// Process 3 byte groups of the virtual zero-padded array
+		for (int i=0; i < length; i += 3) {
+
+			int n = Math.min(3, length - i);
+			int b0 = paddedByte(bytes, start, pad, i);
+			int b1 = n > 1 ? paddedByte(bytes, start, pad, i + 1) : 0;
+			int b2 = n > 2 ? paddedByte(bytes, start, pad, i + 2) : 0;
+			int group = b0 << 16 | b1 << 8 | b2;
+
+			dest[pos++] = BASE64URL_DIGITS[(group >> 18) & 0x3F];
+			dest[pos++] = BASE64URL_DIGITS[(group >> 12) & 0x3F];
+
+			if (n > 1)
+				dest[pos++] = BASE64URL_DIGITS[(group >> 6) & 0x3F];
+
+			if (n > 2)
+				dest[pos++] = BASE64URL_DIGITS[group & 0x3F];
+		}
+
+		return chars;
+	}
+
+	/**
+	 * Returns the length of the unpadded Base64URL encoding of the
+	 * specified number of bytes.
+	 *
+	 * @param length The byte length.
+	 *
+	 * @return The number of characters.
+	 */
+	public static int base64URLLength(final int length) {
+
+		return (length * 4 + 2) / 3;
+	}
+
+	/**
+	 * Decodes the specified unpadded Base64URL string into a non-negative
+	 * big integer.
+	 *
+	 * @param base64 The Base64URL encoded string to decode.
+	 *
+	 * @return The resulting big integer or {@code null} if decoding
+	 *         failed.
+	 */
+	public static BigInteger fromBase64URL(final String base64) {
+
+		byte[] bytes = base64URLToBytes(base64);
+
+		if (bytes == null)
+			return null;
+
+		return new BigInteger(1, bytes);
+	}
+
+	/**
+	 * Decodes the specified unpadded Base64URL string into bytes.
+	 * Decoding is strict: padding characters, characters outside the
+	 * Base64URL alphabet and non-zero unused trailing bits are rejected.
+	 *
+	 * @param base64 The Base64URL encoded string to decode.
+	 *
+	 * @return The decoded bytes or {@code null} if decoding failed.
+	 */
+	public static byte[] base64URLToBytes(final CharSequence base64) {
+
+		if (base64 == null || base64.length() % 4 == 1)
+			return null;
+
+		int len = base64.length();
+		byte[] bytes = new byte[len * 3 / 4];
+		int pos = 0;
+
+		for (int i=0; i < len; i += 4) {
+
+			int n = Math.min(4, len - i);
+			int group = 0;
+
+			for (int j=0; j < 4; j++) {
+
+				int v = 0;
+
+				if (j < n) {
+					char c = base64.charAt(i + j);
+					v = c < 128 ? BASE64URL_VALUES[c] : -1;
+
+					if (v < 0)
+						return null;
+				}
+
+				group = group << 6 | v;
+			}
+
+			bytes[pos++] = (byte)(group >> 16);
+
+			if (n > 2)
+				bytes[pos++] = (byte)(group >> 8);
+			else if ((group & 0xFFFF) != 0)
+				return null;
+
+			if (n > 3)
+				bytes[pos++] = (byte)group;
+			else if ((group & 0xFF) != 0)
+				return null;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns the offset of the magnitude in the two's complement form of
+	 * the specified non-negative big integer, checking that it fits the
+	 * specified byte length.
+	 */
+	private static int magnitudeOffset(final BigInteger bigint, final byte[] bytes, final int length) {
+
+		int start = bytes[0] == 0 ? 1 : 0;
+
+		if (bigint.signum() < 0 || bytes.length - start > length)
+			throw new IllegalArgumentException("The value must not be negative or longer than " + length + " bytes");
+
+		return start;
+	}
+
+	/**
+	 * Returns the byte at the specified index of the magnitude, virtually
+	 * left-padded with zeros.
+	 */
+	private static int paddedByte(final byte[] bytes, final int start, final int pad, final int index) {
+
+		return index < pad ? 0 : bytes[start + index - pad] & 0xFF;
 	}
 
 	/**
@@ -81,6 +504,29 @@ public class BigIntegerUtils {
 		return bytes;
 	}
 
+	/**
+	 * Converts a non-negative BigInteger into an unsigned big-endian byte
+	 * array, left-padded with zeros to the specified minimum length.
+	 *
+	 * @param bigInteger BigInteger, must not be null or negative
+	 * @param length     The minimum length of the byte array. Values with a
+	 *                   longer magnitude are returned unpadded.
+	 *
+	 * @return byte array of at least the specified length.
+	 */
+	public static byte[] bigIntegerToBytes(final BigInteger bigInteger, final int length) {
+		assert(bigInteger.signum() != -1); // NOSONAR
+		byte[] bytes = bigInteger.toByteArray();
+		int off = bytes[0] == 0 ? 1 : 0;
+		int len = bytes.length - off;
+		if (off == 0 && len == length) {
+			return bytes;
+		}
+		byte[] padded = new byte[Math.max(len, length)];
+		System.arraycopy(bytes, off, padded, padded.length - len, len);
+		return padded;
+	}
+
 	/**
 	 * Prevents instantiation.
 	 */
@@ -0,0 +1,164 @@
+package com.nimbusds.srp6;
+
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Bounded cache of hash function states after constant input prefixes, such
+ * as PAD(N) in the multiplier k = H(N | PAD(g)). A hash continues from a
+ * {@code MessageDigest.clone} of the cached state instead of hashing the
+ * prefix again. Digests which are not cloneable are not cached.
+ *
+ * <p>Entries are keyed by the hash algorithm and provider, and by a key
+ * which identifies the prefix, and are evicted in least recently used
+ * order. Each use site should have its own cache, so that the prefix keys
+ * are unambiguous.
+ *
+ * <p>This class is thread-safe.
+ */
+final class DigestMidstateCache {
+
+
+	/**
+	 * Cache key.
+	 */
+	private static final class Key {
+
+
+		final String algorithm;
+
+
+		final String provider;
+
+
+		final Object prefix;
+
+
+		Key(final MessageDigest digest, final Object prefix) {
+
+			algorithm = digest.getAlgorithm();
+			provider = digest.getProvider() != null ? digest.getProvider().getName() : "";
+			this.prefix = prefix;
+		}
+
+
+		@Override
+		public boolean equals(final Object o) {
+
+			if (! (o instanceof Key))
+				return false;
+
+			Key other = (Key)o;
+			return algorithm.equals(other.algorithm) && provider.equals(other.provider) && prefix.equals(other.prefix);
+		}
+
+
+		@Override
+		public int hashCode() {
+
+			return (algorithm.hashCode() * 31 + provider.hashCode()) * 31 + prefix.hashCode();
+		}
+	}
+
+
+	/**
+	 * The hash states, in access order.
+	 */
+	private final LinkedHashMap<Key,MessageDigest> states;
+
+
+	/**
+	 * Creates a new digest midstate cache.
+	 *
+	 * @param maxSize The maximum number of cached states. Must be
+	 *                positive.
+	 */
+	DigestMidstateCache(final int maxSize) {
+
+		if (maxSize < 1)
+			throw new IllegalArgumentException("The maximum cache size must be at least 1");
+
+		states = new LinkedHashMap<Key,MessageDigest>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key,MessageDigest> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+
+	/**
+	 * Gets a copy of the cached hash state after the specified prefix.
+	 *
+	 * @param digest The hash function 'H', in its initial state. Must not
+	 *               be {@code null}.
+	 * @param prefix The key of the prefix. Must not be {@code null}.
+	 *
+	 * @return A digest which has consumed the prefix, {@code null} if not
+	 *         cached.
+	 */
+	MessageDigest get(final MessageDigest digest, final Object prefix) {
+
+		MessageDigest state;
+
+		synchronized (states) {
+			state = states.get(new Key(digest, prefix));
+		}
+
+		if (state == null)
+			return null;
+
+		try {
+			return (MessageDigest)state.clone();
+
+		} catch (CloneNotSupportedException e) {
+
+			return null;
+		}
+	}
+
+
+	/**
+	 * Caches a copy of the specified hash state, which has consumed the
+	 * prefix and nothing else.
+	 *
+	 * @param digest The hash function 'H', after the prefix. Must not be
+	 *               {@code null}.
+	 * @param prefix The key of the prefix. Must not be {@code null}.
+	 */
+	void put(final MessageDigest digest, final Object prefix) {
+
+		MessageDigest state;
+
+		try {
+			state = (MessageDigest)digest.clone();
+
+		} catch (CloneNotSupportedException e) {
+
+			return;
+		}
+
+		synchronized (states) {
+			states.put(new Key(digest, prefix), state);
+		}
+	}
+
+
+	/**
+	 * Gets the number of cached states.
+	 *
+	 * @return The number of cached states.
+	 */
+	int size() {
+
+		synchronized (states) {
+			return states.size();
+		}
+	}
+}
@@ -0,0 +1,450 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Precomputed table for exponentiation of a fixed base modulo a fixed
+ * modulus, such as g^b (mod N) for the SRP-6a public values.
+ *
+ * <p>The exponent is split into digits of {@code w} bits and the table holds
+ * g^(j * 2^(w * i)) (mod N) for every digit position {@code i} and digit
+ * value {@code j}, so that an exponentiation takes one modular
+ * multiplication per non-zero digit and no squarings. Reduction is by
+ * Barrett's method, which uses only multiplications and shifts.
+ *
+ * <p>The table for an n-bit modulus holds ceil(n / w) * (2^w - 1) values of
+ * n bits each, e.g. about 2 MiB for a 2048-bit group with a 4-bit window.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public final class FixedBaseTable {
+
+
+	/**
+	 * The default window width in bits.
+	 */
+	public static final int DEFAULT_WINDOW_BITS = 4;
+
+
+	/**
+	 * The maximum window width in bits.
+	 */
+	public static final int MAX_WINDOW_BITS = 8;
+
+
+	/**
+	 * The modulus.
+	 */
+	private final BigInteger N;
+
+
+	/**
+	 * The base.
+	 */
+	private final BigInteger g;
+
+
+	/**
+	 * The window width in bits.
+	 */
+	private final int w;
+
+
+	/**
+	 * The bit length of the modulus.
+	 */
+	private final int n;
+
+
+	/**
+	 * The maximum exponent bit length covered by the table.
+	 */
+	private final int maxBits;
+
+
+	/**
+	 * The Barrett constant floor(4^n / N).
+	 */
+	private final BigInteger mu;
+
+
+	/**
+	 * The table, g^(j * 2^(w * i)) (mod N) at [i][j - 1].
+	 */
+	private final BigInteger[][] table;
+
+
+	/**
+	 * Precomputes the table for the specified base and modulus. Exponents
+	 * up to the bit length of the modulus are covered.
+	 *
+	 * @param N          The modulus, must be odd and greater than one.
+	 *                   Must not be {@code null}.
+	 * @param g          The base, must be in the range [1, N). Must not be
+	 *                   {@code null}.
+	 * @param windowBits The window width in bits, from 1 to
+	 *                   {@link #MAX_WINDOW_BITS}.
+	 */
+	public FixedBaseTable(final BigInteger N, final BigInteger g, final int windowBits) {
+
+		this(N, g, windowBits, N != null ? N.bitLength() : 0);
+	}
+
+
+	/**
+	 * Precomputes the table for the specified base and modulus, covering
+	 * exponents up to the specified bit length. A table for short
+	 * exponents, such as the scrambling parameter 'u', is proportionally
+	 * smaller.
+	 *
+	 * @param N               The modulus, must be odd and greater than
+	 *                        one. Must not be {@code null}.
+	 * @param g               The base, must be in the range [1, N). Must
+	 *                        not be {@code null}.
+	 * @param windowBits      The window width in bits, from 1 to
+	 *                        {@link #MAX_WINDOW_BITS}.
+	 * @param maxExponentBits The maximum exponent bit length to cover,
+	 *                        must be positive.
+	 */
+	public FixedBaseTable(final BigInteger N,
+	                      final BigInteger g,
+	                      final int windowBits,
+	                      final int maxExponentBits) {
+
+		checkParameters(N, g, windowBits, maxExponentBits);
+
+		this.N = N;
+		this.g = g;
+		w = windowBits;
+		n = N.bitLength();
+		maxBits = maxExponentBits;
+		mu = BigInteger.ONE.shiftLeft(2 * n).divide(N);
+
+		final int digits = getDigitCount(w, maxBits);
+		final int values = getValueCount(w);
+
+		table = new BigInteger[digits][values];
+
+		BigInteger base = g;
+
+		for (int i = 0; i < digits; i++) {
+
+			BigInteger[] row = table[i];
+			row[0] = base;
+
+			for (int j = 1; j < values; j++)
+				row[j] = reduce(row[j - 1].multiply(base));
+
+			// g^(2^(w * (i + 1)))
+			base = reduce(row[values - 1].multiply(base));
+		}
+	}
+
+
+	/**
+	 * Creates a table from previously computed values, e.g. read from a
+	 * {@link FixedBaseTableFile table file}. The values are not copied.
+	 *
+	 * @param N               The modulus, must be odd and greater than
+	 *                        one. Must not be {@code null}.
+	 * @param g               The base, must be in the range [1, N). Must
+	 *                        not be {@code null}.
+	 * @param windowBits      The window width in bits, from 1 to
+	 *                        {@link #MAX_WINDOW_BITS}.
+	 * @param maxExponentBits The maximum exponent bit length covered,
+	 *                        must be positive.
+	 * @param table           The values, g^(j * 2^(w * i)) (mod N) at
+	 *                        [i][j - 1]. Must not be {@code null}.
+	 */
+	FixedBaseTable(final BigInteger N,
+	               final BigInteger g,
+	               final int windowBits,
+	               final int maxExponentBits,
+	               final BigInteger[][] table) {
+
+		checkParameters(N, g, windowBits, maxExponentBits);
+
+		if (table.length != getDigitCount(windowBits, maxExponentBits))
+			throw new IllegalArgumentException("Unexpected number of table rows");
+
+		this.N = N;
+		this.g = g;
+		w = windowBits;
+		n = N.bitLength();
+		maxBits = maxExponentBits;
+		mu = BigInteger.ONE.shiftLeft(2 * n).divide(N);
+		this.table = table;
+	}
+
+
+	/**
+	 * Checks the table parameters.
+	 *
+	 * @param N               The modulus.
+	 * @param g               The base.
+	 * @param windowBits      The window width in bits.
+	 * @param maxExponentBits The maximum exponent bit length.
+	 */
+	private static void checkParameters(final BigInteger N,
+	                                    final BigInteger g,
+	                                    final int windowBits,
+	                                    final int maxExponentBits) {
+
+		if (N == null || N.compareTo(BigInteger.ONE) <= 0 || ! N.testBit(0))
+			throw new IllegalArgumentException("The modulus must be odd and greater than one");
+
+		if (g == null || g.signum() <= 0 || g.compareTo(N) >= 0)
+			throw new IllegalArgumentException("The base must be in the range [1, N)");
+
+		if (windowBits < 1 || windowBits > MAX_WINDOW_BITS)
+			throw new IllegalArgumentException("The window width must be from 1 to " + MAX_WINDOW_BITS + " bits");
+
+		if (maxExponentBits < 1)
+			throw new IllegalArgumentException("The maximum exponent bit length must be positive");
+	}
+
+
+	/**
+	 * Returns the number of table rows, one per exponent digit.
+	 *
+	 * @param windowBits      The window width in bits.
+	 * @param maxExponentBits The maximum exponent bit length.
+	 *
+	 * @return The number of rows.
+	 */
+	static int getDigitCount(final int windowBits, final int maxExponentBits) {
+
+		return (maxExponentBits + windowBits - 1) / windowBits;
+	}
+
+
+	/**
+	 * Returns the number of values per table row, one per non-zero digit
+	 * value.
+	 *
+	 * @param windowBits The window width in bits.
+	 *
+	 * @return The number of values per row.
+	 */
+	static int getValueCount(final int windowBits) {
+
+		return (1 << windowBits) - 1;
+	}
+
+
+	/**
+	 * Gets the table values, for writing to a
+	 * {@link FixedBaseTableFile table file}. The values are not copied
+	 * and must not be modified.
+	 *
+	 * @return The values, g^(j * 2^(w * i)) (mod N) at [i][j - 1].
+	 */
+	BigInteger[][] getTable() {
+
+		return table;
+	}
+
+
+	/**
+	 * Gets the modulus.
+	 *
+	 * @return The modulus 'N'.
+	 */
+	public BigInteger getModulus() {
+
+		return N;
+	}
+
+
+	/**
+	 * Gets the base.
+	 *
+	 * @return The base 'g'.
+	 */
+	public BigInteger getBase() {
+
+		return g;
+	}
+
+
+	/**
+	 * Gets the window width.
+	 *
+	 * @return The window width in bits.
+	 */
+	public int getWindowBits() {
+
+		return w;
+	}
+
+
+	/**
+	 * Gets the maximum exponent bit length covered by the table. Longer
+	 * exponents are handled by {@link BigInteger#modPow}.
+	 *
+	 * @return The maximum exponent bit length, by default equal to the
+	 *         bit length of the modulus.
+	 */
+	public int getMaxExponentBits() {
+
+		return maxBits;
+	}
+
+
+	/**
+	 * Returns an estimate of the heap size of the table, assuming about
+	 * 56 bytes of overhead per big integer value.
+	 *
+	 * @return The estimated size in bytes.
+	 */
+	public long getMemorySize() {
+
+		final long valueSize = 56 + 4L * ((n + 31) / 32);
+		return (long)table.length * table[0].length * (valueSize + 4);
+	}
+
+
+	/**
+	 * Computes g^e (mod N).
+	 *
+	 * @param e The exponent. Must not be {@code null}.
+	 *
+	 * @return The result.
+	 */
+	public BigInteger modPow(final BigInteger e) {
+
+		if (e.signum() < 0 || e.bitLength() > maxBits)
+			return g.modPow(e, N);
+
+		final byte[] bytes = e.toByteArray();
+		final int digits = (e.bitLength() + w - 1) / w;
+
+		BigInteger result = null;
+
+		for (int i = 0; i < digits; i++) {
+
+			int digit = digitAt(bytes, i * w, w);
+
+			if (digit == 0)
+				continue;
+
+			BigInteger value = table[i][digit - 1];
+			result = result == null ? value : reduce(result.multiply(value));
+		}
+
+		return result == null ? BigInteger.ONE : result;
+	}
+
+
+	/**
+	 * Computes g^e (mod N) for each of the specified exponents. The
+	 * exponents are processed in lockstep, one table row at a time for
+	 * all of them, so that each row is fetched once per batch rather than
+	 * once per exponent. The results are the same as from
+	 * {@link #modPow(BigInteger)}.
+	 *
+	 * @param exponents The exponents. Must not be {@code null} or contain
+	 *                  {@code null}.
+	 *
+	 * @return The results, in the order of the exponents.
+	 */
+	public BigInteger[] modPow(final BigInteger[] exponents) {
+
+		final int lanes = exponents.length;
+		final BigInteger[] results = new BigInteger[lanes];
+		final byte[][] bytes = new byte[lanes][];
+
+		int maxDigits = 0;
+
+		for (int j = 0; j < lanes; j++) {
+
+			BigInteger e = exponents[j];
+
+			if (e.signum() < 0 || e.bitLength() > maxBits) {
+				results[j] = g.modPow(e, N);
+				continue;
+			}
+
+			bytes[j] = e.toByteArray();
+			maxDigits = Math.max(maxDigits, (e.bitLength() + w - 1) / w);
+		}
+
+		for (int i = 0; i < maxDigits; i++) {
+
+			final BigInteger[] row = table[i];
+			final int offset = i * w;
+
+			for (int j = 0; j < lanes; j++) {
+
+				// Fallback lane or no digits left
+				if (bytes[j] == null || offset >= bytes[j].length * 8)
+					continue;
+
+				int digit = digitAt(bytes[j], offset, w);
+
+				if (digit == 0)
+					continue;
+
+				BigInteger value = row[digit - 1];
+				results[j] = results[j] == null ? value : reduce(results[j].multiply(value));
+			}
+		}
+
+		for (int j = 0; j < lanes; j++) {
+
+			if (results[j] == null)
+				results[j] = BigInteger.ONE;
+		}
+
+		return results;
+	}
+
+
+	/**
+	 * Reduces the specified product of two values in the range [0, N)
+	 * modulo N, by Barrett's method.
+	 *
+	 * @param x The product, in the range [0, N^2).
+	 *
+	 * @return x (mod N).
+	 */
+	private BigInteger reduce(final BigInteger x) {
+
+		BigInteger q = x.shiftRight(n - 1).multiply(mu).shiftRight(n + 1);
+		BigInteger r = x.subtract(q.multiply(N));
+
+		// At most two corrections
+		while (r.compareTo(N) >= 0)
+			r = r.subtract(N);
+
+		return r;
+	}
+
+
+	/**
+	 * Extracts a digit from the specified big-endian two's complement
+	 * byte array of a non-negative value.
+	 *
+	 * @param bytes  The byte array.
+	 * @param offset The bit offset of the digit, counted from the least
+	 *               significant bit.
+	 * @param width  The digit width in bits, at most 8.
+	 *
+	 * @return The digit.
+	 */
+	private static int digitAt(final byte[] bytes, final int offset, final int width) {
+
+		final int last = bytes.length - 1;
+		final int index = last - (offset >>> 3);
+		final int shift = offset & 7;
+
+		int word = bytes[index] & 0xff;
+
+		if (shift + width > 8 && index > 0)
+			word |= (bytes[index - 1] & 0xff) << 8;
+
+		return (word >>> shift) & ((1 << width) - 1);
+	}
+}
@@ -0,0 +1,337 @@
+package com.nimbusds.srp6;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+
+/**
+ * Versioned binary file format for {@link FixedBaseTable fixed-base tables},
+ * so that the tables for large groups can be computed once, e.g. at build or
+ * deployment time, and memory-mapped back at server start-up instead of being
+ * recomputed by every new node.
+ *
+ * <p>File layout, big-endian:
+ *
+ * <pre>
+ * magic            8 bytes, "SRP6FBT" and a zero byte
+ * version          int
+ * window bits      int
+ * max exponent     int, bits
+ * value length     int, the byte length 'L' of 'N'
+ * N                L bytes
+ * g                L bytes
+ * table values     rows * (2^w - 1) * L bytes, in row order
+ * checksum         long, CRC-32 of all preceding bytes
+ * </pre>
+ *
+ * <p>A file is accepted only if its version, group, window width and
+ * exponent length match the expected ones, the checksum is correct and the
+ * first values of the rows form the chain of powers of 'g'. The other
+ * values of each row are protected by the checksum only: checking them
+ * would cost as much as recomputing the table. The checksum detects
+ * corruption, not tampering, and a tampered value yields wrong public
+ * values 'B'; table files should be protected like other server
+ * configuration.
+ */
+public final class FixedBaseTableFile {
+
+
+	/**
+	 * The current file format version.
+	 */
+	public static final int VERSION = 1;
+
+
+	/**
+	 * The file magic.
+	 */
+	private static final byte[] MAGIC = { 'S', 'R', 'P', '6', 'F', 'B', 'T', 0 };
+
+
+	/**
+	 * Writes the specified table to a file. The file is written to a
+	 * temporary file in the same directory first and then moved into
+	 * place, so that concurrent readers never see a partial file.
+	 *
+	 * @param table The table. Must not be {@code null}.
+	 * @param file  The file. Must not be {@code null}.
+	 *
+	 * @throws IOException If writing the file failed.
+	 */
+	public static void write(final FixedBaseTable table, final File file)
+		throws IOException {
+
+		final int length = (table.getModulus().bitLength() + 7) / 8;
+		final File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+
+		try {
+			FileOutputStream fileOut = new FileOutputStream(tmp);
+
+			try (BufferedOutputStream bufferedOut = new BufferedOutputStream(fileOut)) {
+
+				CheckedOutputStream checkedOut = new CheckedOutputStream(bufferedOut, new CRC32());
+				DataOutputStream out = new DataOutputStream(checkedOut);
+
+				out.write(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(table.getWindowBits());
+				out.writeInt(table.getMaxExponentBits());
+				out.writeInt(length);
+				out.write(BigIntegerUtils.bigIntegerToBytes(table.getModulus(), length));
+				out.write(BigIntegerUtils.bigIntegerToBytes(table.getBase(), length));
+
+				for (BigInteger[] row: table.getTable()) {
+
+					for (BigInteger value: row)
+						out.write(BigIntegerUtils.bigIntegerToBytes(value, length));
+				}
+
+				// The checksum covers all preceding bytes
+				out.flush();
+				new DataOutputStream(bufferedOut).writeLong(checkedOut.getChecksum().getValue());
+				bufferedOut.flush();
+				fileOut.getFD().sync();
+			}
+
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			} catch (AtomicMoveNotSupportedException e) {
+
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+
+	/**
+	 * Reads a table from a file, which is memory-mapped for the duration
+	 * of the read.
+	 *
+	 * @param file            The file. Must not be {@code null}.
+	 * @param N               The expected modulus. Must not be
+	 *                        {@code null}.
+	 * @param g               The expected base. Must not be {@code null}.
+	 * @param windowBits      The expected window width in bits.
+	 * @param maxExponentBits The expected maximum exponent bit length.
+	 *
+	 * @return The table.
+	 *
+	 * @throws IOException If reading the file failed, or its version,
+	 *                     parameters or checksum don't match.
+	 */
+	public static FixedBaseTable read(final File file,
+	                                  final BigInteger N,
+	                                  final BigInteger g,
+	                                  final int windowBits,
+	                                  final int maxExponentBits)
+		throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			try {
+				return read(buf, N, g, windowBits, maxExponentBits);
+
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+
+				throw new IOException("Invalid fixed-base table file: " + file, e);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads a table from a file, or computes it if the file is missing
+	 * or doesn't match. A computed table is written to the file, if
+	 * possible, for the next start-up.
+	 *
+	 * @param file            The file. Must not be {@code null}.
+	 * @param N               The modulus, must be odd and greater than
+	 *                        one. Must not be {@code null}.
+	 * @param g               The base, must be in the range [1, N). Must
+	 *                        not be {@code null}.
+	 * @param windowBits      The window width in bits, from 1 to
+	 *                        {@link FixedBaseTable#MAX_WINDOW_BITS}.
+	 * @param maxExponentBits The maximum exponent bit length to cover,
+	 *                        must be positive.
+	 *
+	 * @return The table.
+	 */
+	public static FixedBaseTable readOrCompute(final File file,
+	                                           final BigInteger N,
+	                                           final BigInteger g,
+	                                           final int windowBits,
+	                                           final int maxExponentBits) {
+
+		try {
+			return read(file, N, g, windowBits, maxExponentBits);
+
+		} catch (IOException e) {
+
+			// Missing or stale, recompute
+		}
+
+		FixedBaseTable table = new FixedBaseTable(N, g, windowBits, maxExponentBits);
+
+		try {
+			write(table, file);
+
+		} catch (IOException e) {
+
+			// Read-only or full disk, the table is still usable
+		}
+
+		return table;
+	}
+
+
+	/**
+	 * Reads a table from the specified buffer.
+	 *
+	 * @param buf             The buffer.
+	 * @param N               The expected modulus.
+	 * @param g               The expected base.
+	 * @param windowBits      The expected window width in bits.
+	 * @param maxExponentBits The expected maximum exponent bit length.
+	 *
+	 * @return The table.
+	 *
+	 * @throws IOException If the version, parameters or checksum don't
+	 *                     match.
+	 */
+	private static FixedBaseTable read(final MappedByteBuffer buf,
+	                                   final BigInteger N,
+	                                   final BigInteger g,
+	                                   final int windowBits,
+	                                   final int maxExponentBits)
+		throws IOException {
+
+		final CRC32 crc = new CRC32();
+
+		byte[] magic = new byte[MAGIC.length];
+		buf.get(magic);
+
+		if (! Arrays.equals(MAGIC, magic))
+			throw new IOException("Not a fixed-base table file");
+
+		byte[] header = new byte[16];
+		buf.get(header);
+
+		final int version = readInt(header, 0);
+
+		if (version != VERSION)
+			throw new IOException("Unsupported fixed-base table file version: " + version);
+
+		if (readInt(header, 4) != windowBits || readInt(header, 8) != maxExponentBits)
+			throw new IOException("Fixed-base table window width or exponent length mismatch");
+
+		final int length = readInt(header, 12);
+
+		if (length != (N.bitLength() + 7) / 8)
+			throw new IOException("Fixed-base table modulus mismatch");
+
+		crc.update(magic, 0, magic.length);
+		crc.update(header, 0, header.length);
+
+		if (! N.equals(readValue(buf, length, crc)) || ! g.equals(readValue(buf, length, crc)))
+			throw new IOException("Fixed-base table group mismatch");
+
+		final int digits = FixedBaseTable.getDigitCount(windowBits, maxExponentBits);
+		final int values = FixedBaseTable.getValueCount(windowBits);
+
+		if (buf.remaining() != (long)digits * values * length + 8)
+			throw new IOException("Unexpected fixed-base table file length");
+
+		BigInteger[][] table = new BigInteger[digits][values];
+
+		for (int i = 0; i < digits; i++) {
+
+			for (int j = 0; j < values; j++) {
+
+				BigInteger value = readValue(buf, length, crc);
+
+				if (value.signum() <= 0 || value.compareTo(N) >= 0)
+					throw new IOException("Fixed-base table value out of range");
+
+				table[i][j] = value;
+			}
+		}
+
+		if (buf.getLong() != crc.getValue())
+			throw new IOException("Fixed-base table checksum mismatch");
+
+		// Each row must start with the square chain of 'g', the other
+		// values are covered by the checksum only
+		if (! table[0][0].equals(g))
+			throw new IOException("Fixed-base table base mismatch");
+
+		for (int i = 1; i < digits; i++) {
+
+			if (! table[i - 1][values - 1].multiply(table[i - 1][0]).mod(N).equals(table[i][0]))
+				throw new IOException("Inconsistent fixed-base table row: " + i);
+		}
+
+		return new FixedBaseTable(N, g, windowBits, maxExponentBits, table);
+	}
+
+
+	/**
+	 * Reads an unsigned big integer of the specified byte length and
+	 * updates the checksum.
+	 *
+	 * @param buf    The buffer.
+	 * @param length The byte length.
+	 * @param crc    The checksum.
+	 *
+	 * @return The big integer.
+	 */
+	private static BigInteger readValue(final MappedByteBuffer buf, final int length, final CRC32 crc) {
+
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		crc.update(bytes, 0, length);
+		return new BigInteger(1, bytes);
+	}
+
+
+	/**
+	 * Reads a big-endian int from the specified byte array.
+	 *
+	 * @param bytes The byte array.
+	 * @param off   The offset.
+	 *
+	 * @return The int.
+	 */
+	private static int readInt(final byte[] bytes, final int off) {
+
+		return (bytes[off] & 0xff) << 24 | (bytes[off + 1] & 0xff) << 16 | (bytes[off + 2] & 0xff) << 8 | (bytes[off + 3] & 0xff);
+	}
+
+
+	/**
+	 * Prevents public instantiation.
+	 */
+	private FixedBaseTableFile() {
+
+	}
+}
@@ -0,0 +1,148 @@
+package com.nimbusds.srp6;
+
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * HMAC-based extract-and-expand key derivation function (HKDF), as specified
+ * in RFC 5869, over the HMAC implementations of the Java runtime.
+ */
+final class HKDF {
+
+
+	/**
+	 * The HMAC SHA-256 algorithm, required in every Java runtime.
+	 */
+	static final String HMAC_SHA256 = "HmacSHA256";
+
+
+	/**
+	 * Creates a new HMAC instance with the specified key.
+	 *
+	 * @param algorithm The HMAC algorithm, e.g. "HmacSHA256".
+	 * @param key       The key.
+	 *
+	 * @return The HMAC instance.
+	 *
+	 * @throws IllegalArgumentException If the algorithm is not supported.
+	 */
+	static Mac newMac(final String algorithm, final byte[] key) {
+
+		try {
+			Mac mac = Mac.getInstance(algorithm);
+			mac.init(new SecretKeySpec(key, algorithm));
+			return mac;
+
+		} catch (GeneralSecurityException e) {
+
+			throw new IllegalArgumentException("Unsupported HMAC algorithm: " + algorithm, e);
+		}
+	}
+
+
+	/**
+	 * Extracts a pseudorandom key from the specified input keying
+	 * material.
+	 *
+	 * @param algorithm The HMAC algorithm.
+	 * @param salt      The salt, {@code null} or empty for a string of
+	 *                  zeros of the HMAC length.
+	 * @param ikm       The input keying material.
+	 *
+	 * @return The pseudorandom key.
+	 */
+	static byte[] extract(final String algorithm, final byte[] salt, final byte[] ikm) {
+
+		byte[] key = salt;
+
+		if (key == null || key.length == 0)
+			key = new byte[newMac(algorithm, new byte[1]).getMacLength()];
+
+		return newMac(algorithm, key).doFinal(ikm);
+	}
+
+
+	/**
+	 * Expands the specified pseudorandom key into output keying material.
+	 *
+	 * @param algorithm The HMAC algorithm.
+	 * @param prk       The pseudorandom key.
+	 * @param info      The context information, {@code null} if none.
+	 * @param dest      The output buffer.
+	 * @param off       The offset in the output buffer.
+	 * @param length    The length of the output keying material, at most
+	 *                  255 times the HMAC length.
+	 */
+	static void expand(final String algorithm,
+	                   final byte[] prk,
+	                   final byte[] info,
+	                   final byte[] dest,
+	                   final int off,
+	                   final int length) {
+
+		Mac mac = newMac(algorithm, prk);
+
+		final int macLength = mac.getMacLength();
+
+		if (length < 0 || length > 255 * macLength)
+			throw new IllegalArgumentException("The output length must be from 0 to " + 255 * macLength + " bytes");
+
+		byte[] t = new byte[0];
+		int pos = 0;
+
+		for (int i = 1; pos < length; i++) {
+
+			mac.update(t);
+
+			if (info != null)
+				mac.update(info);
+
+			mac.update((byte)i);
+			t = mac.doFinal();
+
+			int n = Math.min(macLength, length - pos);
+			System.arraycopy(t, 0, dest, off + pos, n);
+			pos += n;
+		}
+
+		Arrays.fill(t, (byte)0);
+	}
+
+
+	/**
+	 * Derives output keying material, by extract then expand.
+	 *
+	 * @param algorithm The HMAC algorithm.
+	 * @param salt      The salt, {@code null} if none.
+	 * @param ikm       The input keying material.
+	 * @param info      The context information, {@code null} if none.
+	 * @param length    The length of the output keying material.
+	 *
+	 * @return The output keying material.
+	 */
+	static byte[] derive(final String algorithm,
+	                     final byte[] salt,
+	                     final byte[] ikm,
+	                     final byte[] info,
+	                     final int length) {
+
+		byte[] prk = extract(algorithm, salt, ikm);
+		byte[] okm = new byte[length];
+		expand(algorithm, prk, info, okm, 0, length);
+		Arrays.fill(prk, (byte)0);
+		return okm;
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private HKDF() {
+
+	}
+}
@@ -0,0 +1,290 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.Destroyable;
+
+
+/**
+ * Immutable record of a successfully completed Secure Remote Password
+ * (SRP-6a) authentication. Retains only the user identity 'I', the crypto
+ * parameters, the shared session key 'S' and the session attributes, and
+ * none of the intermediate protocol values. Intended for applications that
+ * keep authenticated sessions around long after the handshake.
+ *
+ * <p>Obtained from {@link SRP6ServerSession#toAuthenticatedSession} or
+ * {@link SRP6ClientSession#toAuthenticatedSession}. The session key may be
+ * zeroised with {@link #destroy}.
+ */
+public final class SRP6AuthenticatedSession implements Destroyable, Serializable {
+
+
+	/**
+	 * Serializable class version number
+	 */
+	private static final long serialVersionUID = 6021592446316803557L;
+
+
+	/**
+	 * The identity 'I' of the authenticated user.
+	 */
+	private final String userID;
+
+
+	/**
+	 * The crypto configuration.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The shared session key 'S', unsigned big-endian padded to the
+	 * length of 'N'.
+	 */
+	private final byte[] S;
+
+
+	/**
+	 * The session attributes, empty if none.
+	 */
+	private final Map<String,Object> attributes;
+
+
+	/**
+	 * The authentication timestamp, from System.currentTimeMillis().
+	 */
+	private final long authTime;
+
+
+	/**
+	 * The cached hash of the session key H(S), {@code null} if not
+	 * computed yet.
+	 */
+	private transient byte[] sessionKeyHash;
+
+
+	/**
+	 * The cached key derivation, {@code null} if not created yet.
+	 */
+	private transient SRP6KeyDerivation keyDerivation;
+
+
+	/**
+	 * Indicates that the session key was zeroised.
+	 */
+	private volatile boolean destroyed = false;
+
+
+	/**
+	 * Creates a new authenticated session. The session key and attributes
+	 * are copied.
+	 *
+	 * @param userID     The identity 'I' of the authenticated user. Must
+	 *                   not be {@code null}.
+	 * @param config     The crypto parameters. Must not be {@code null}.
+	 * @param S          The shared session key 'S'. Must not be
+	 *                   {@code null}.
+	 * @param attributes The session attributes, {@code null} if none.
+	 * @param authTime   The authentication timestamp, in milliseconds
+	 *                   since midnight, January 1, 1970 UTC.
+	 */
+	SRP6AuthenticatedSession(final String userID,
+				 final SRP6CryptoParams config,
+				 final byte[] S,
+				 final Map<String,Object> attributes,
+				 final long authTime) {
+
+		if (userID == null)
+			throw new IllegalArgumentException("The user identity 'I' must not be null");
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (S == null)
+			throw new IllegalArgumentException("The session key 'S' must not be null");
+
+		this.userID = userID;
+		this.config = config;
+		this.S = S.clone();
+
+		if (attributes == null || attributes.isEmpty())
+			this.attributes = Collections.emptyMap();
+		else
+			this.attributes = Collections.unmodifiableMap(new HashMap<>(attributes));
+
+		this.authTime = authTime;
+	}
+
+
+	/**
+	 * Gets the identity 'I' of the authenticated user.
+	 *
+	 * @return The user identity 'I'.
+	 */
+	public String getUserID() {
+
+		return userID;
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters for this session.
+	 *
+	 * @return The SRP-6a crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return config;
+	}
+
+
+	/**
+	 * Gets the authentication timestamp, in milliseconds since midnight,
+	 * January 1, 1970 UTC (see System.currentTimeMillis()).
+	 *
+	 * @return The authentication timestamp.
+	 */
+	public long getAuthenticationTime() {
+
+		return authTime;
+	}
+
+
+	/**
+	 * Gets the shared session key 'S'.
+	 *
+	 * @return The shared session key 'S'.
+	 *
+	 * @throws IllegalStateException If the session key was destroyed.
+	 */
+	public BigInteger getSessionKey() {
+
+		ensureNotDestroyed();
+		return new BigInteger(1, S);
+	}
+
+
+	/**
+	 * Gets the hash of the shared session key H(S).
+	 *
+	 * @return The hash of the shared session key H(S).
+	 *
+	 * @throws IllegalStateException If the session key was destroyed.
+	 */
+	public synchronized byte[] getSessionKeyHash() {
+
+		ensureNotDestroyed();
+
+		if (sessionKeyHash == null) {
+
+			MessageDigest digest = config.getMessageDigestInstance();
+
+			if (digest == null)
+				throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+			SRP6Routines.updateUnpadded(digest, S);
+			sessionKeyHash = digest.digest();
+		}
+
+		return sessionKeyHash.clone();
+	}
+
+
+	/**
+	 * Gets the key derivation for the shared session key 'S', to derive
+	 * labelled keys such as separate encryption and MAC keys. The derived
+	 * keys are cached with this session until it is destroyed.
+	 *
+	 * @return The key derivation.
+	 *
+	 * @throws IllegalStateException If the session key was destroyed.
+	 */
+	public synchronized SRP6KeyDerivation getKeyDerivation() {
+
+		ensureNotDestroyed();
+
+		if (keyDerivation == null)
+			keyDerivation = new SRP6KeyDerivation(S);
+
+		return keyDerivation;
+	}
+
+
+	/**
+	 * Gets a session attribute, as it was set on the originating session.
+	 *
+	 * @param key The attribute key. Must not be {@code null}.
+	 *
+	 * @return The attribute value, {@code null} if none was found by the
+	 *         specified key or its value is {@code null}.
+	 */
+	public Object getAttribute(final String key) {
+
+		if (key == null)
+			throw new IllegalArgumentException("The attribute key must not be null");
+
+		return attributes.get(key);
+	}
+
+
+	/**
+	 * Gets the session attributes.
+	 *
+	 * @return The session attributes as an unmodifiable map, empty if
+	 *         none.
+	 */
+	public Map<String,Object> getAttributes() {
+
+		return attributes;
+	}
+
+
+	/**
+	 * Zeroises the shared session key 'S' and the derived keys.
+	 * Subsequent calls to {@link #getSessionKey}, {@link #getSessionKeyHash}
+	 * and {@link #getKeyDerivation} will throw an
+	 * {@link IllegalStateException}.
+	 */
+	@Override
+	public synchronized void destroy() {
+
+		destroyed = true;
+		Arrays.fill(S, (byte)0);
+
+		if (sessionKeyHash != null)
+			Arrays.fill(sessionKeyHash, (byte)0);
+
+		if (keyDerivation != null)
+			keyDerivation.destroy();
+	}
+
+
+	/**
+	 * Returns {@code true} if the shared session key 'S' was zeroised.
+	 *
+	 * @return {@code true} if destroyed, else {@code false}.
+	 */
+	@Override
+	public boolean isDestroyed() {
+
+		return destroyed;
+	}
+
+
+	/**
+	 * Throws an {@link IllegalStateException} if the session key was
+	 * destroyed.
+	 */
+	private void ensureNotDestroyed() {
+
+		if (destroyed)
+			throw new IllegalStateException("The session key 'S' was destroyed");
+	}
+}
@@ -5,6 +5,9 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 
 /**
@@ -30,6 +33,11 @@ import java.security.MessageDigest;
  *         evidence message 'M2'.
  * </ul>
  *
+ * <p>In the early 'A' protocol variant, with crypto parameters agreed in
+ * advance, {@link #step1(String, String, SRP6CryptoParams) step one} also
+ * returns the public client value 'A' for sending together with 'I', and
+ * only 'M1' is sent after step two.
+ *
  * @author Vladimir Dzhuvinov
  * @author Bernard Wittwer
  */
@@ -111,6 +119,13 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	 * Custom routine for password key 'x' computation.
 	 */
 	private XRoutine xRoutine = null;
+
+	
+	/**
+	 * Optional pool for evaluating independent parts of step two
+	 * concurrently, {@code null} if disabled.
+	 */
+	private transient ForkJoinPool parallelPool = null;
 	
 	
 	/**
@@ -167,6 +182,41 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	}
 	
 	
+	/**
+	 * Sets a pool for evaluating the independent parts of
+	 * {@link #step2 step two} concurrently, to reduce its latency with
+	 * large groups (3072 bits and above) when spare cores are available.
+	 *
+	 * <p>The session key is computed as S = (B - k * g^x)^a *
+	 * (B - k * g^x)^(u * x) (mod N). The public client value
+	 * A = g^a (mod N) is computed on the pool while the calling thread
+	 * computes the first factor, which does not depend on 'A'. The second
+	 * factor has a short exponent. The step thus takes about one full-size
+	 * exponentiation instead of two. The default math routines are
+	 * required, sessions with custom {@link SRP6Routines} always compute
+	 * serially.
+	 *
+	 * @param pool The pool, {@code null} to compute serially (the
+	 *             default).
+	 */
+	public void setParallelPool(final ForkJoinPool pool) {
+
+		parallelPool = pool;
+	}
+	
+	
+	/**
+	 * Gets the pool for evaluating the independent parts of step two
+	 * concurrently.
+	 *
+	 * @return The pool, {@code null} if step two is computed serially.
+	 */
+	public ForkJoinPool getParallelPool() {
+
+		return parallelPool;
+	}
+	
+	
 	/**
 	 * Records the identity 'I' and password 'P' of the authenticating
 	 * user. The session is incremented to {@link State#STEP_1}.
@@ -208,6 +258,63 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	}
 	
 	
+	/**
+	 * Records the identity 'I' and password 'P' of the authenticating
+	 * user and computes the public client value 'A', for the early 'A'
+	 * protocol variant where 'A' is sent to the server together with 'I'.
+	 * The crypto parameters must be agreed in advance. The session is
+	 * incremented to {@link State#STEP_1}.
+	 *
+	 * <p>At {@link #step2 step two} the same crypto parameters must be
+	 * given, and only the client evidence message 'M1' of the returned
+	 * credentials needs to be sent to the server.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From user: user identity 'I' and password 'P'.
+	 *     <li>Pre-agreed: crypto parameters prime 'N', generator 'g' and
+	 *         hash function 'H'.
+	 * </ul>
+	 *
+	 * @param userID   The identity 'I' of the authenticating user, UTF-8
+	 *                 encoded. Must not be {@code null} or empty.
+	 * @param password The user password 'P', UTF-8 encoded. Must not be
+	 *                 {@code null}.
+	 * @param config   The SRP-6a crypto parameters. Must not be
+	 *                 {@code null}.
+	 *
+	 * @return The public client value 'A'.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	public BigInteger step1(final String userID, final String password, final SRP6CryptoParams config) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (config.getMessageDigestInstance() == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		step1(userID, password);
+
+		this.config = config;
+
+		// Generate client private value, with the default routines
+		// modulo the order of 'g' if known
+		if (srp6Routines.getClass() == SRP6Routines.class)
+			a = srp6Routines.generatePrivateValue(config, random);
+		else
+			a = srp6Routines.generatePrivateValue(config.N, random);
+
+		BigInteger A = srp6Routines.computePublicClientValue(config.N, config.g, a);
+		this.A = toBytes(A, getGroupLength());
+
+		return A;
+	}
+	
+	
 	/**
 	 * Receives the password salt 's' and public value 'B' from the server.
 	 * The SRP-6a crypto parameters are also set. The session is incremented
@@ -240,6 +347,12 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 		if (config == null)
 			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
 
+		// Early 'A' computed with the parameters of step one
+		final boolean earlyA = a != null;
+
+		if (earlyA && ! config.equals(this.config))
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must match those of step one");
+
 		this.config = config;
 		
 		MessageDigest digest = config.getMessageDigestInstance();
@@ -251,13 +364,13 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 		if (s == null)
 			throw new IllegalArgumentException("The salt 's' must not be null");
 			
-		this.s = s;
+		this.s = toBytes(s, 0);
 		
 		
 		if (B == null)
 			throw new IllegalArgumentException("The public server value 'B' must not be null");
 		
-		this.B = B;
+		this.B = toBytes(B, (config.N.bitLength() + 7) / 8);
 		
 		
 		// Check current state
@@ -280,47 +393,101 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 			
 			// With custom routine
 			x = xRoutine.computeX(config.getMessageDigestInstance(),
-						 BigIntegerUtils.bigIntegerToBytes(s),
+						 this.s,
 					     userID.getBytes(Charset.forName("UTF-8")),
 					     password.getBytes(Charset.forName("UTF-8")));
 					     
 		} else {
 			// With default routine
-			x = srp6Routines.computeX(digest, BigIntegerUtils.bigIntegerToBytes(s), password.getBytes(Charset.forName("UTF-8")));
+			x = srp6Routines.computeX(digest, this.s, password.getBytes(Charset.forName("UTF-8")));
 			digest.reset();
 		}
 		
-		// Generate client private and public values
-		a = srp6Routines.generatePrivateValue(config.N, random);
+		// Generate client private value, with the default routines
+		// modulo the order of 'g' if known, unless generated at step
+		// one
+		final boolean defaultRoutines = srp6Routines.getClass() == SRP6Routines.class;
+		
+		if (! earlyA) {
+			
+			if (defaultRoutines)
+				a = srp6Routines.generatePrivateValue(config, random);
+			else
+				a = srp6Routines.generatePrivateValue(config.N, random);
+		}
+		
+		BigInteger k = srp6Routines.computeK(digest, config.N, config.g);
+		this.k = toBytes(k, 0);
 		digest.reset();
 		
-		A = srp6Routines.computePublicClientValue(config.N, config.g, a);
+		// Compute the public value, in parallel with the session key
+		// factor (B - k * g^x)^a if enabled
+		BigInteger A;
+		BigInteger base = null;
+		BigInteger factor = null;
+		
+		if (earlyA) {
+			
+			A = toBigInteger(this.A);
+			
+		} else if (parallelPool != null && defaultRoutines) {
+			
+			ForkJoinTask<BigInteger> aTask = parallelPool.submit(new Callable<BigInteger>() {
+				@Override
+				public BigInteger call() {
+					return srp6Routines.computePublicClientValue(config.N, config.g, a);
+				}
+			});
+			
+			base = B.subtract(config.g.modPow(srp6Routines.reduceExponent(config, x), config.N).multiply(k)).mod(config.N);
+			factor = base.modPow(a, config.N);
+			A = aTask.join();
+			
+		} else {
+			A = srp6Routines.computePublicClientValue(config.N, config.g, a);
+		}
+		
+		this.A = toBytes(A, getGroupLength());
 		
 		
 		// Compute the session key
-		k = srp6Routines.computeK(digest, config.N, config.g);
-		digest.reset();
+		BigInteger u;
 		
 		if (hashedKeysRoutine != null) {
 			URoutineContext hashedKeysContext = new URoutineContext(A, B);
 			u = hashedKeysRoutine.computeU(config, hashedKeysContext);
+			this.u = toBytes(u, 0);
 		} else {
-			u = srp6Routines.computeU(digest, config.N, A, B);
+			this.u = computeU(digest);
+			u = toBigInteger(this.u);
 			digest.reset();
 		}
 		
-		S = srp6Routines.computeSessionKey(config.N, config.g, k, x, u, a, B);
+		BigInteger S;
+		
+		if (factor != null)
+			S = factor.multiply(base.modPow(srp6Routines.reduceExponent(config, u.multiply(x)), config.N)).mod(config.N);
+		else if (defaultRoutines)
+			S = srp6Routines.computeSessionKey(config, k, x, u, a, B);
+		else
+			S = srp6Routines.computeSessionKey(config.N, config.g, k, x, u, a, B);
+		
+		this.S = toBytes(S, getGroupLength());
 		
 		// Compute the client evidence message
+		BigInteger M1;
+		
 		if (clientEvidenceRoutine != null) {
 		
 			// With custom routine
 			SRP6ClientEvidenceContext ctx = new SRP6ClientEvidenceContext(userID, s, A, B, S);
 			M1 = clientEvidenceRoutine.computeClientEvidence(config, ctx);
+			this.M1 = toBytes(M1, digest.getDigestLength());
 
 		} else {
 			// With default routine
-			M1 = srp6Routines.computeClientEvidence(digest, A, B, S);
+			this.M1 = computeM1(digest);
+			M1 = toBigInteger(this.M1);
 			digest.reset();
 		}
 
@@ -360,7 +527,10 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 		if (M2 == null)
 			throw new IllegalArgumentException("The server evidence message 'M2' must not be null");
 	
-		this.M2 = M2;
+		MessageDigest digest = config.getMessageDigestInstance();
+		final int digestLength = digest.getDigestLength();
+	
+		this.M2 = toBytes(M2, digestLength);
 	
 		// Check current state
 		if (state != State.STEP_2)
@@ -372,22 +542,21 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	
 
 		// Compute the own server evidence message 'M2'
-		BigInteger computedM2;
+		byte[] computedM2;
 		
 		if (serverEvidenceRoutine != null) {
 		
 			// With custom routine
-			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(A, M1, S);
+			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(toBigInteger(A), toBigInteger(M1), toBigInteger(S));
 			
-			computedM2 = serverEvidenceRoutine.computeServerEvidence(config, ctx);
+			computedM2 = toBytes(serverEvidenceRoutine.computeServerEvidence(config, ctx), digestLength);
 
 		} else {
 			// With default routine
-			MessageDigest digest = config.getMessageDigestInstance();
-			computedM2 = srp6Routines.computeServerEvidence(digest, A, M1, S);
+			computedM2 = computeM2(digest);
 		}
 		
-		if (! computedM2.equals(M2))
+		if (! constantTimeEquals(computedM2, this.M2))
 			throw new SRP6Exception("Bad server credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
 
 		state = State.STEP_3;
@@ -396,6 +565,71 @@ public class SRP6ClientSession extends SRP6Session implements Serializable {
 	}
 	
 	
+	/**
+	 * Resets this session to {@link State#INIT} so that it can be reused
+	 * for a new authentication attempt. All values from the previous
+	 * attempt are zeroised or dropped, including the password 'P', the
+	 * crypto parameters, the session key 'S' and the attributes. The
+	 * timeout and any custom routines are retained.
+	 *
+	 * <p>The session must not be in use by another thread, and
+	 * references to it from the previous attempt must not be retained.
+	 */
+	public void reset() {
+
+		resetValues();
+		config = null;
+		password = null;
+		x = null;
+		a = null;
+		state = State.INIT;
+	}
+
+
+	/**
+	 * Compacts this successfully authenticated session by zeroising and
+	 * dropping all intermediate protocol values, including the password
+	 * 'P', the password key 'x' and the client private value 'a'. Only
+	 * the user identity 'I', the session key 'S' and the attributes are
+	 * retained, the getters for the dropped values return {@code null}
+	 * afterwards.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_3}.
+	 */
+	public void compact() {
+
+		if (state != State.STEP_3)
+			throw new IllegalStateException("State violation: Session must be in STEP_3 state");
+
+		clearIntermediateValues();
+		password = null;
+		x = null;
+		a = null;
+		xRoutine = null;
+	}
+
+
+	/**
+	 * Creates an immutable record of this successfully authenticated
+	 * session, retaining only the user identity 'I', the session key 'S'
+	 * and the attributes. The record is independent of this session, 
+	 * which may be {@link #compact compacted} or discarded.
+	 *
+	 * @return The authenticated session.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_3}.
+	 */
+	public SRP6AuthenticatedSession toAuthenticatedSession() {
+
+		if (state != State.STEP_3)
+			throw new IllegalStateException("State violation: Session must be in STEP_3 state");
+
+		return createAuthenticatedSession();
+	}
+	
+	
 	/**
 	 * Returns the current state of this SRP-6a authentication session.
 	 *
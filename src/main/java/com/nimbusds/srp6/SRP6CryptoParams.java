@@ -3,8 +3,12 @@ package com.nimbusds.srp6;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -19,6 +23,14 @@ import java.security.NoSuchAlgorithmException;
  * mathematically or by simple table lookup.
  *
  * <p>For convenience this class includes a set of precomputed parameters.
+ * The instances returned by {@link #getInstance(int, String)} are created
+ * on first use and {@link #intern interned}, so that caches keyed by the
+ * crypto parameters, such as an {@link SRP6ServerContext}, are shared.
+ *
+ * <p>The order of the generator 'g' is known for the precomputed parameters
+ * and may be specified for others, see {@link #getGeneratorOrder}. The
+ * {@link SRP6Routines} use it to reduce the private values and exponents,
+ * which leaves the protocol values unchanged.
  *
  * @author Vladimir Dzhuvinov
  * @author Bernard Wittwer
@@ -120,6 +132,34 @@ public class SRP6CryptoParams implements Serializable {
 	 */
 	public static final BigInteger g_x_large = BigInteger.valueOf(19);
 
+
+	/**
+	 * The precomputed safe primes 'N', for which the order of 'g' can be
+	 * determined from its Jacobi symbol.
+	 */
+	private static final BigInteger[] SAFE_PRIMES = {
+		N_256, N_512, N_768, N_1024, N_1536, N_2048, N_3072, N_4096, N_6144, N_8192
+	};
+
+
+	/**
+	 * The interned instances.
+	 */
+	private static final ConcurrentMap<SRP6CryptoParams,SRP6CryptoParams> INTERNED = new ConcurrentHashMap<>();
+
+
+	/**
+	 * The interned instances by ID, the first for each 'N', 'g' and 'H'.
+	 */
+	private static final ConcurrentMap<String,SRP6CryptoParams> INTERNED_BY_ID = new ConcurrentHashMap<>();
+
+
+	/**
+	 * The interned precomputed instances by prime bitsize and 'H'.
+	 */
+	private static final ConcurrentMap<String,SRP6CryptoParams> PRECOMPUTED = new ConcurrentHashMap<>();
+
+
 	/**
 	 * The safe prime 'N'.
 	 */
@@ -138,9 +178,44 @@ public class SRP6CryptoParams implements Serializable {
 	public final String H;
 
 
+	/**
+	 * The order of the generator 'g', {@code null} if not known.
+	 */
+	private final BigInteger order;
+
+
+	/**
+	 * The policy for the bit length of the private values, {@code null}
+	 * for {@link SRP6ExponentPolicy#FULL}.
+	 */
+	private final SRP6ExponentPolicy exponentPolicy;
+
+
+	/**
+	 * The ID, {@code null} if not computed yet.
+	 */
+	private transient volatile String id;
+
+
+	/**
+	 * Whether short private values are safe, {@code null} if not
+	 * determined yet.
+	 */
+	private transient volatile Boolean shortExponentSafe;
+
+
+	/**
+	 * The certainty of the primality test of a specified order 'q', for
+	 * an error probability below 2^-100.
+	 */
+	private static final int ORDER_CERTAINTY = 100;
+
+
 	/**
 	 * Returns an SRP-6a crypto parameters instance with precomputed 'N'
-	 * and 'g' values and the specified hash algorithm 'H'.
+	 * and 'g' values and the specified hash algorithm 'H'. The instance is
+	 * created on first use and {@link #intern interned}, subsequent calls
+	 * return the same instance.
 	 *
 	 * @param bitsize The preferred prime number bitsize. Must exist as a
 	 *                precomputed constant.
@@ -157,6 +232,38 @@ public class SRP6CryptoParams implements Serializable {
 		if (H == null || H.isEmpty())
 			throw new IllegalArgumentException("Undefined hash algorithm 'H'");
 
+		final String key = bitsize + ":" + H;
+
+		SRP6CryptoParams params = PRECOMPUTED.get(key);
+
+		if (params != null)
+			return params;
+
+		params = createPrecomputed(bitsize, H);
+
+		if (params == null)
+			return null;
+
+		params = intern(params);
+
+		PRECOMPUTED.putIfAbsent(key, params);
+
+		return params;
+	}
+
+
+	/**
+	 * Creates a new SRP-6a crypto parameters instance with precomputed
+	 * 'N' and 'g' values and the specified hash algorithm 'H'.
+	 *
+	 * @param bitsize The prime number bitsize.
+	 * @param H       The hash algorithm.
+	 *
+	 * @return The SRP-6a crypto parameters instance, {@code null} if no
+	 *         matching constants could be found.
+	 */
+	private static SRP6CryptoParams createPrecomputed(final int bitsize, final String H) {
+
 		switch (bitsize) {
 			case 256:
 				return new SRP6CryptoParams(N_256, g_common, H);
@@ -184,6 +291,48 @@ public class SRP6CryptoParams implements Serializable {
 	}
 
 
+	/**
+	 * Returns the canonical instance for the specified SRP-6a crypto
+	 * parameters. The first interned instance with equal parameters is
+	 * returned, so that caches keyed by the crypto parameters are shared.
+	 * Interned instances are retained for the lifetime of the JVM and
+	 * should be limited to long-lived parameter sets.
+	 *
+	 * @param params The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The interned instance.
+	 */
+	public static SRP6CryptoParams intern(final SRP6CryptoParams params) {
+
+		if (params == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		SRP6CryptoParams existing = INTERNED.putIfAbsent(params, params);
+
+		final SRP6CryptoParams interned = existing != null ? existing : params;
+
+		INTERNED_BY_ID.putIfAbsent(interned.getId(), interned);
+
+		return interned;
+	}
+
+
+	/**
+	 * Returns the interned SRP-6a crypto parameters with the specified
+	 * {@link #getId ID}. If several interned instances share the 'N', 'g'
+	 * and 'H' values the first is returned.
+	 *
+	 * @param id The ID. Must not be {@code null}.
+	 *
+	 * @return The interned instance, {@code null} if none.
+	 */
+	public static SRP6CryptoParams forId(final String id) {
+
+		return INTERNED_BY_ID.get(id);
+	}
+
+
 	/**
 	 * Returns an SRP-6a crypto parameters instance with precomputed
 	 * 512-bit prime 'N', matching 'g' value and "SHA-1" hash algorithm.
@@ -235,6 +384,65 @@ public class SRP6CryptoParams implements Serializable {
 	 */
 	public SRP6CryptoParams(final BigInteger N, final BigInteger g, final String H) {
 
+		this(N, g, H, null);
+	}
+
+
+	/**
+	 * Creates a new SRP-6a crypto parameters instance with the specified
+	 * prime order 'q' of the generator 'g', for a group where 'g'
+	 * generates a subgroup of prime order 'q'. The order is verified to be
+	 * a probable prime with g^q = 1 (mod N), which for g != 1 makes it the
+	 * exact order of 'g'. The 'N' and other 'g' values are not verified,
+	 * nor is the 'H' support by the default security provider of the
+	 * underlying Java runtime.
+	 *
+	 * @param N A large safe prime for the 'N' parameter. Must not be
+	 *          {@code null}.
+	 * @param g A corresponding generator for the 'g' parameter. Must not be
+	 *          {@code null}.
+	 * @param H A hash algorithm. Must by supported by the default security
+	 *          provider of the underlying Java runtime. Must not be
+	 *          {@code null}.
+	 * @param q The prime order of the generator 'g', so that g^q = 1
+	 *          (mod N). If {@code null} the order is determined for the
+	 *          precomputed safe primes only.
+	 */
+	public SRP6CryptoParams(final BigInteger N,
+	                        final BigInteger g,
+	                        final String H,
+	                        final BigInteger q) {
+
+		this(N, g, H, q, SRP6ExponentPolicy.FULL);
+	}
+
+
+	/**
+	 * Creates a new SRP-6a crypto parameters instance with the specified
+	 * prime order of the generator 'g' and policy for the bit length of
+	 * the private values 'a' and 'b'. The order is verified as for
+	 * {@link #SRP6CryptoParams(BigInteger, BigInteger, String, BigInteger)}.
+	 *
+	 * @param N              A large safe prime for the 'N' parameter.
+	 *                       Must not be {@code null}.
+	 * @param g              A corresponding generator for the 'g'
+	 *                       parameter. Must not be {@code null}.
+	 * @param H              A hash algorithm. Must by supported by the
+	 *                       default security provider of the underlying
+	 *                       Java runtime. Must not be {@code null}.
+	 * @param q              The prime order of the generator 'g', so
+	 *                       that g^q = 1 (mod N). If {@code null} the
+	 *                       order is determined for the precomputed safe
+	 *                       primes only.
+	 * @param exponentPolicy The policy for the bit length of the private
+	 *                       values. Must not be {@code null}.
+	 */
+	public SRP6CryptoParams(final BigInteger N,
+	                        final BigInteger g,
+	                        final String H,
+	                        final BigInteger q,
+	                        final SRP6ExponentPolicy exponentPolicy) {
+
 		if (N == null)
 			throw new IllegalArgumentException("The prime parameter 'N' must not be null");
 
@@ -263,6 +471,215 @@ public class SRP6CryptoParams implements Serializable {
 			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + H);
 
 		this.H = H;
+
+
+		if (q != null) {
+
+			// g != 1 and q prime, so the order of 'g' is exactly 'q'
+			if (q.compareTo(BigInteger.ONE) <= 0 || ! q.isProbablePrime(ORDER_CERTAINTY))
+				throw new IllegalArgumentException("The order 'q' of the generator 'g' must be prime");
+
+			if (! g.modPow(q, N).equals(BigInteger.ONE))
+				throw new IllegalArgumentException("The order 'q' of the generator 'g' must satisfy g^q = 1 (mod N)");
+
+			order = q;
+
+		} else {
+			order = computeSafePrimeOrder(N, g);
+		}
+
+
+		if (exponentPolicy == null)
+			throw new IllegalArgumentException("The exponent policy must not be null");
+
+		this.exponentPolicy = exponentPolicy;
+	}
+
+
+	/**
+	 * Determines the order of the specified generator for the precomputed
+	 * safe primes N = 2q + 1, with 'q' prime. The order is 'q' if 'g' is a
+	 * quadratic residue modulo 'N', else N - 1.
+	 *
+	 * @param N The prime parameter 'N'.
+	 * @param g The generator parameter 'g', other than 0, 1 and N - 1.
+	 *
+	 * @return The order of 'g', {@code null} if 'N' is not a precomputed
+	 *         safe prime or 'g' is not in the range (1, N - 1).
+	 */
+	private static BigInteger computeSafePrimeOrder(final BigInteger N, final BigInteger g) {
+
+		if (g.signum() <= 0 || g.compareTo(N) >= 0)
+			return null;
+
+		for (BigInteger safePrime: SAFE_PRIMES) {
+
+			if (! safePrime.equals(N))
+				continue;
+
+			final BigInteger nMinusOne = N.subtract(BigInteger.ONE);
+
+			return jacobi(g, N) == 1 ? nMinusOne.shiftRight(1) : nMinusOne;
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Computes the Jacobi symbol (a / n).
+	 *
+	 * @param a The numerator, non-negative.
+	 * @param n The denominator, odd and positive.
+	 *
+	 * @return The Jacobi symbol, 1, -1 or 0.
+	 */
+	private static int jacobi(final BigInteger a, final BigInteger n) {
+
+		BigInteger x = a.mod(n);
+		BigInteger y = n;
+		int result = 1;
+
+		while (x.signum() != 0) {
+
+			final int twos = x.getLowestSetBit();
+			x = x.shiftRight(twos);
+
+			// (2 / y) = -1 for y = 3, 5 (mod 8)
+			final int yMod8 = y.intValue() & 7;
+
+			if ((twos & 1) == 1 && (yMod8 == 3 || yMod8 == 5))
+				result = -result;
+
+			// Quadratic reciprocity
+			if ((x.intValue() & 3) == 3 && (yMod8 & 3) == 3)
+				result = -result;
+
+			final BigInteger t = x;
+			x = y.mod(t);
+			y = t;
+		}
+
+		return y.equals(BigInteger.ONE) ? result : 0;
+	}
+
+
+	/**
+	 * Returns the order of the generator 'g', i.e. the smallest positive
+	 * 'q' for which g^q = 1 (mod N). Exponents of 'g' and of any power of
+	 * 'g' can be reduced modulo the order without changing the result.
+	 *
+	 * <p>For the precomputed safe primes N = 2q + 1 the order is N - 1, or
+	 * 'q' for generators which are quadratic residues. A specified order
+	 * is a verified prime.
+	 *
+	 * @return The order of 'g', {@code null} if not known.
+	 */
+	public BigInteger getGeneratorOrder() {
+
+		return order;
+	}
+
+
+	/**
+	 * Returns {@code true} if short private values are safe with these
+	 * parameters, i.e. 'N' is one of the precomputed safe primes, or the
+	 * order of 'g' is a verified prime. Checked again after
+	 * deserialisation.
+	 *
+	 * @return {@code true} if short private values are safe.
+	 */
+	boolean isShortExponentSafe() {
+
+		Boolean safe = shortExponentSafe;
+
+		if (safe == null) {
+			safe = order != null &&
+				(computeSafePrimeOrder(N, g) != null || order.isProbablePrime(ORDER_CERTAINTY) && g.modPow(order, N).equals(BigInteger.ONE));
+			shortExponentSafe = safe;
+		}
+
+		return safe;
+	}
+
+
+	/**
+	 * Returns the policy for the bit length of the private values 'a'
+	 * and 'b'.
+	 *
+	 * @return The exponent policy, {@link SRP6ExponentPolicy#FULL} by
+	 *         default.
+	 */
+	public SRP6ExponentPolicy getExponentPolicy() {
+
+		return exponentPolicy != null ? exponentPolicy : SRP6ExponentPolicy.FULL;
+	}
+
+
+	/**
+	 * Returns the ID of these crypto parameters, for reference in compact
+	 * formats. The ID is derived from the 'N', 'g' and 'H' values only and
+	 * is stable across JVMs and releases: the first 12 bytes of the
+	 * SHA-256 hash of the length-prefixed unsigned 'N', 'g' and UTF-8
+	 * encoded 'H', Base64URL encoded.
+	 *
+	 * @return The ID, 16 characters.
+	 */
+	public String getId() {
+
+		String id = this.id;
+
+		if (id != null)
+			return id;
+
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+
+		} catch (NoSuchAlgorithmException e) {
+
+			throw new IllegalStateException("SHA-256 not supported", e);
+		}
+
+		for (byte[] bytes: new byte[][]{ BigIntegerUtils.bigIntegerToBytes(N), BigIntegerUtils.bigIntegerToBytes(g), H.getBytes(Charset.forName("UTF-8")) }) {
+
+			digest.update((byte)(bytes.length >>> 24));
+			digest.update((byte)(bytes.length >>> 16));
+			digest.update((byte)(bytes.length >>> 8));
+			digest.update((byte)bytes.length);
+			digest.update(bytes);
+		}
+
+		id = BigIntegerUtils.toBase64URL(Arrays.copyOf(digest.digest(), 12));
+		this.id = id;
+		return id;
+	}
+
+
+	@Override
+	public boolean equals(final Object o) {
+
+		if (this == o)
+			return true;
+
+		if (! (o instanceof SRP6CryptoParams))
+			return false;
+
+		SRP6CryptoParams other = (SRP6CryptoParams)o;
+
+		return N.equals(other.N) &&
+			g.equals(other.g) &&
+			H.equals(other.H) &&
+			(order == null ? other.order == null : order.equals(other.order)) &&
+			getExponentPolicy().equals(other.getExponentPolicy());
+	}
+
+
+	@Override
+	public int hashCode() {
+
+		return (N.hashCode() * 31 + g.hashCode()) * 31 + H.hashCode();
 	}
 
 
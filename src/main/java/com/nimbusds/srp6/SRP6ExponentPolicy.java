@@ -0,0 +1,221 @@
+package com.nimbusds.srp6;
+
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+
+/**
+ * Policy for the bit length of the ephemeral private values 'a' and 'b',
+ * the exponents of the public values A = g^a and B = k * v + g^b. The cost
+ * of computing the public values and the session key 'S' grows linearly
+ * with the exponent length.
+ *
+ * <ul>
+ *     <li>{@link #FULL} The default, with private values as long as the
+ *         order of 'g', or 'N' if the order is not known.
+ *     <li>{@link #SECURITY_LEVEL} Short private values of twice the
+ *         estimated security level of the group, following the exponent
+ *         lengths in RFC 7919, section 5.2, and at least 256 bits.
+ *     <li>{@link #fixed} Private values of a fixed bit length.
+ * </ul>
+ *
+ * <p>Short private values are safe with safe primes N = 2q + 1, such as the
+ * precomputed primes in {@link SRP6CryptoParams}, and with generators of
+ * verified prime order. They must not be used with other primes, where the
+ * small factors of N - 1 enable faster discrete logarithms of short
+ * exponents, and the policies fall back to full-length private values for
+ * them. If the order of 'g' is shorter than the policy length the private
+ * values are reduced modulo the order.
+ *
+ * <p>The policy is a local choice, the client and server may use different
+ * policies.
+ */
+public final class SRP6ExponentPolicy implements Serializable {
+
+
+	/**
+	 * Serializable class version number.
+	 */
+	private static final long serialVersionUID = 1L;
+
+
+	/**
+	 * The minimum bit length of the private values.
+	 */
+	public static final int MIN_BITS = 256;
+
+
+	/**
+	 * Full-length private values, the default.
+	 */
+	public static final SRP6ExponentPolicy FULL = new SRP6ExponentPolicy(0);
+
+
+	/**
+	 * Private values of twice the estimated security level of the group,
+	 * at least {@link #MIN_BITS}:
+	 *
+	 * <ul>
+	 *     <li>Up to 2048 bits: 256 bits
+	 *     <li>Up to 3072 bits: 275 bits
+	 *     <li>Up to 4096 bits: 325 bits
+	 *     <li>Up to 6144 bits: 375 bits
+	 *     <li>Up to 8192 bits: 400 bits
+	 *     <li>Larger: 512 bits
+	 * </ul>
+	 *
+	 * <p>Full-length private values are used unless 'N' is a precomputed
+	 * safe prime or the order of 'g' is a verified prime, see
+	 * {@link SRP6CryptoParams#getGeneratorOrder}.
+	 */
+	public static final SRP6ExponentPolicy SECURITY_LEVEL = new SRP6ExponentPolicy(-1);
+
+
+	/**
+	 * The group bit lengths of the {@link #SECURITY_LEVEL} policy.
+	 */
+	private static final int[] GROUP_BITS = { 2048, 3072, 4096, 6144, 8192 };
+
+
+	/**
+	 * The private value bit lengths of the {@link #SECURITY_LEVEL} policy,
+	 * for groups up to the matching {@link #GROUP_BITS}.
+	 */
+	private static final int[] PRIVATE_VALUE_BITS = { 256, 275, 325, 375, 400 };
+
+
+	/**
+	 * The private value bit length for groups larger than the last
+	 * {@link #GROUP_BITS}.
+	 */
+	private static final int MAX_PRIVATE_VALUE_BITS = 512;
+
+
+	/**
+	 * The fixed bit length, 0 for full-length and -1 for security level
+	 * private values.
+	 */
+	private final int bits;
+
+
+	/**
+	 * Creates a new exponent policy.
+	 *
+	 * @param bits The fixed bit length, 0 for full-length and -1 for
+	 *             security level private values.
+	 */
+	private SRP6ExponentPolicy(final int bits) {
+
+		this.bits = bits;
+	}
+
+
+	/**
+	 * Returns a policy for private values of the specified fixed bit
+	 * length. Full-length private values are used unless 'N' is a
+	 * precomputed safe prime or the order of 'g' is a verified prime.
+	 *
+	 * @param bits The bit length, at least {@link #MIN_BITS}.
+	 *
+	 * @return The policy.
+	 */
+	public static SRP6ExponentPolicy fixed(final int bits) {
+
+		if (bits < MIN_BITS)
+			throw new IllegalArgumentException("The private value length must be at least " + MIN_BITS + " bits");
+
+		return new SRP6ExponentPolicy(bits);
+	}
+
+
+	/**
+	 * Returns {@code true} if this policy generates full-length private
+	 * values.
+	 *
+	 * @return {@code true} for full-length private values.
+	 */
+	public boolean isFull() {
+
+		return bits == 0;
+	}
+
+
+	/**
+	 * Returns the bit length of the random numbers from which the private
+	 * values for the specified crypto parameters are generated. The
+	 * private values are reduced modulo the order of 'g', or modulo 'N'
+	 * if not known, when the random numbers are at least as long.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The bit length.
+	 */
+	public int getPrivateValueBits(final SRP6CryptoParams config) {
+
+		final BigInteger q = config.getGeneratorOrder();
+		final int fullBits = Math.max(MIN_BITS, q != null ? q.bitLength() : config.N.bitLength());
+
+		if (bits == 0)
+			return fullBits;
+
+		if (! config.isShortExponentSafe()) {
+
+			// Short lengths are for safe primes and verified prime
+			// orders only, full length otherwise
+			return fullBits;
+		}
+
+		final int policyBits = bits > 0 ? bits : securityLevelBits(config.N.bitLength());
+
+		return Math.min(policyBits, fullBits);
+	}
+
+
+	/**
+	 * Returns the private value bit length of the
+	 * {@link #SECURITY_LEVEL} policy for the specified group size.
+	 *
+	 * @param groupBits The bit length of 'N'.
+	 *
+	 * @return The private value bit length.
+	 */
+	private static int securityLevelBits(final int groupBits) {
+
+		for (int i = 0; i < GROUP_BITS.length; i++) {
+
+			if (groupBits <= GROUP_BITS[i])
+				return PRIVATE_VALUE_BITS[i];
+		}
+
+		return MAX_PRIVATE_VALUE_BITS;
+	}
+
+
+	@Override
+	public boolean equals(final Object o) {
+
+		return o instanceof SRP6ExponentPolicy && bits == ((SRP6ExponentPolicy)o).bits;
+	}
+
+
+	@Override
+	public int hashCode() {
+
+		return bits;
+	}
+
+
+	@Override
+	public String toString() {
+
+		if (bits == 0)
+			return "FULL";
+
+		if (bits < 0)
+			return "SECURITY_LEVEL";
+
+		return "FIXED(" + bits + ")";
+	}
+}
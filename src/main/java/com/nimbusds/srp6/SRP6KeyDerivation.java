@@ -0,0 +1,211 @@
+package com.nimbusds.srp6;
+
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.Destroyable;
+
+
+/**
+ * Derivation of labelled keys from the shared session key 'S', such as
+ * separate encryption and MAC keys for a transport. Uses HKDF (RFC 5869)
+ * with HMAC SHA-256: the pseudorandom key is extracted from the padded 'S'
+ * once, then each key is expanded with its UTF-8 encoded label as context
+ * information.
+ *
+ * <p>Derived keys are cached by label, so that repeated derivations cost a
+ * map lookup and a copy. Since HKDF output for the same label is a prefix
+ * of any longer output, a key requested again with a shorter length is the
+ * prefix of the cached key.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * SRP6KeyDerivation kdf = session.getKeyDerivation();
+ *
+ * byte[] keys = new byte[16 + 32];
+ * kdf.deriveKeys(new String[]{"enc", "mac"}, new int[]{16, 32}, keys, 0);
+ * </pre>
+ *
+ * <p>Obtained from {@link SRP6Session#getKeyDerivation} or
+ * {@link SRP6AuthenticatedSession#getKeyDerivation}. The pseudorandom key
+ * and the cached keys are zeroised with {@link #destroy}, or when the
+ * originating session is reset or destroyed.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class SRP6KeyDerivation implements Destroyable {
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The pseudorandom key, extracted from 'S'.
+	 */
+	private final byte[] prk;
+
+
+	/**
+	 * The derived keys, by label.
+	 */
+	private final Map<String,byte[]> keys = new HashMap<>();
+
+
+	/**
+	 * Indicates that the keys were zeroised.
+	 */
+	private volatile boolean destroyed = false;
+
+
+	/**
+	 * Creates a new key derivation.
+	 *
+	 * @param S The shared session key 'S', unsigned big-endian padded to
+	 *          the length of 'N'. Must not be {@code null}.
+	 */
+	SRP6KeyDerivation(final byte[] S) {
+
+		if (S == null)
+			throw new IllegalArgumentException("The session key 'S' must not be null");
+
+		prk = HKDF.extract(HKDF.HMAC_SHA256, null, S);
+	}
+
+
+	/**
+	 * Derives the key with the specified label.
+	 *
+	 * @param label  The key label. Must not be {@code null}.
+	 * @param length The key length in bytes, at most 8160.
+	 *
+	 * @return The key.
+	 *
+	 * @throws IllegalStateException If the keys were destroyed.
+	 */
+	public byte[] deriveKey(final String label, final int length) {
+
+		byte[] key = new byte[length];
+		deriveKey(label, key, 0, length);
+		return key;
+	}
+
+
+	/**
+	 * Derives the key with the specified label into the specified buffer.
+	 *
+	 * @param label  The key label. Must not be {@code null}.
+	 * @param dest   The output buffer. Must not be {@code null}.
+	 * @param off    The offset in the output buffer.
+	 * @param length The key length in bytes, at most 8160.
+	 *
+	 * @throws IllegalStateException If the keys were destroyed.
+	 */
+	public void deriveKey(final String label, final byte[] dest, final int off, final int length) {
+
+		deriveKeys(new String[]{label}, new int[]{length}, dest, off);
+	}
+
+
+	/**
+	 * Derives the keys with the specified labels into the specified
+	 * buffer, one after the other.
+	 *
+	 * @param labels  The key labels. Must not be {@code null}.
+	 * @param lengths The key lengths in bytes, at most 8160 each. Must
+	 *                have the same size as the labels.
+	 * @param dest    The output buffer, with room for the sum of the
+	 *                lengths. Must not be {@code null}.
+	 * @param off     The offset in the output buffer.
+	 *
+	 * @throws IllegalStateException If the keys were destroyed.
+	 */
+	public synchronized void deriveKeys(final String[] labels,
+	                                    final int[] lengths,
+	                                    final byte[] dest,
+	                                    final int off) {
+
+		if (labels == null || lengths == null || labels.length != lengths.length)
+			throw new IllegalArgumentException("The key labels and lengths must not be null and must have the same size");
+
+		if (dest == null)
+			throw new IllegalArgumentException("The output buffer must not be null");
+
+		int total = 0;
+
+		for (int i = 0; i < labels.length; i++) {
+
+			if (labels[i] == null)
+				throw new IllegalArgumentException("The key label must not be null");
+
+			if (lengths[i] < 0)
+				throw new IllegalArgumentException("The key length must not be negative");
+
+			total += lengths[i];
+		}
+
+		if (off < 0 || total > dest.length - off)
+			throw new IllegalArgumentException("The output buffer is too small");
+
+		if (destroyed)
+			throw new IllegalStateException("The derived keys were destroyed");
+
+		int pos = off;
+
+		for (int i = 0; i < labels.length; i++) {
+
+			byte[] key = keys.get(labels[i]);
+
+			if (key == null || key.length < lengths[i]) {
+
+				byte[] expanded = new byte[lengths[i]];
+				HKDF.expand(HKDF.HMAC_SHA256, prk, labels[i].getBytes(UTF8), expanded, 0, expanded.length);
+
+				if (key != null)
+					Arrays.fill(key, (byte)0);
+
+				keys.put(labels[i], expanded);
+				key = expanded;
+			}
+
+			System.arraycopy(key, 0, dest, pos, lengths[i]);
+			pos += lengths[i];
+		}
+	}
+
+
+	/**
+	 * Zeroises the pseudorandom key and the cached keys. Subsequent
+	 * derivations will throw an {@link IllegalStateException}.
+	 */
+	@Override
+	public synchronized void destroy() {
+
+		destroyed = true;
+		Arrays.fill(prk, (byte)0);
+
+		for (byte[] key: keys.values())
+			Arrays.fill(key, (byte)0);
+
+		keys.clear();
+	}
+
+
+	/**
+	 * Returns {@code true} if the pseudorandom key and the cached keys
+	 * were zeroised.
+	 *
+	 * @return {@code true} if destroyed, else {@code false}.
+	 */
+	@Override
+	public boolean isDestroyed() {
+
+		return destroyed;
+	}
+}
@@ -0,0 +1,485 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * Binary codec for the Secure Remote Password (SRP-6a) message values,
+ * reading and writing directly from and to heap or direct
+ * {@link ByteBuffer}s.
+ *
+ * <p>Field encodings:
+ *
+ * <ul>
+ *     <li>User identity 'I': 2 byte big-endian length followed by the UTF-8
+ *         encoding.
+ *     <li>Salt 's': 1 byte length followed by the unsigned big-endian
+ *         magnitude.
+ *     <li>Public values 'A' and 'B': unsigned big-endian, zero-padded to the
+ *         byte length of the prime 'N' (the group length).
+ *     <li>Evidence messages 'M1' and 'M2': unsigned big-endian, zero-padded
+ *         to the output length of the hash function 'H'.
+ * </ul>
+ *
+ * <p>Message layouts:
+ *
+ * <pre>
+ * HELLO     I
+ * CHALLENGE s, B
+ * PROOF     A, M1
+ * VERIFY    M2
+ * </pre>
+ *
+ * <p>All methods check the bounds before reading or writing, so that on a
+ * {@link BufferOverflowException} or {@link BufferUnderflowException} the
+ * buffer position is left unchanged. Big integers are written from their
+ * {@link BigInteger#toByteArray two's complement form} and read into the
+ * array required by {@link BigInteger#BigInteger(int, byte[])}; no other
+ * intermediate copies are made.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public class SRP6MessageCodec {
+
+
+	/**
+	 * The maximum length of an encoded user identity 'I'.
+	 */
+	public static final int MAX_USER_ID_LENGTH = 0xFFFF;
+
+
+	/**
+	 * The maximum length of an encoded salt 's'.
+	 */
+	public static final int MAX_SALT_LENGTH = 0xFF;
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The byte length of the prime 'N'.
+	 */
+	private final int groupLength;
+
+
+	/**
+	 * The output length of the hash function 'H'.
+	 */
+	private final int digestLength;
+
+
+	/**
+	 * Creates a new SRP-6a message codec.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 */
+	public SRP6MessageCodec(final SRP6CryptoParams config) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		groupLength = (config.N.bitLength() + 7) / 8;
+		digestLength = config.getMessageDigestInstance().getDigestLength();
+
+		if (digestLength < 1)
+			throw new IllegalArgumentException("Unsupported hash algorithm, unknown output length: " + config.H);
+	}
+
+
+	/**
+	 * Gets the encoded length of the public values 'A' and 'B'.
+	 *
+	 * @return The byte length of the prime 'N'.
+	 */
+	public int getGroupLength() {
+
+		return groupLength;
+	}
+
+
+	/**
+	 * Gets the encoded length of the evidence messages 'M1' and 'M2'.
+	 *
+	 * @return The output length of the hash function 'H'.
+	 */
+	public int getDigestLength() {
+
+		return digestLength;
+	}
+
+
+	/**
+	 * Gets the encoded length of a PROOF message.
+	 *
+	 * @return The length in bytes.
+	 */
+	public int getProofLength() {
+
+		return groupLength + digestLength;
+	}
+
+
+	/**
+	 * Gets the encoded length of a VERIFY message.
+	 *
+	 * @return The length in bytes.
+	 */
+	public int getVerifyLength() {
+
+		return digestLength;
+	}
+
+
+	/**
+	 * Puts a user identity 'I'.
+	 *
+	 * @param buf    The output buffer. Must not be {@code null}.
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 *
+	 * @throws BufferOverflowException  If the buffer has insufficient space
+	 *                                  remaining.
+	 * @throws IllegalArgumentException If the identity is longer than
+	 *                                  {@link #MAX_USER_ID_LENGTH} bytes or
+	 *                                  not valid UTF-16.
+	 */
+	public void putUserID(final ByteBuffer buf, final String userID) {
+
+		final int start = buf.position();
+
+		if (buf.remaining() < 2)
+			throw new BufferOverflowException();
+
+		buf.position(start + 2);
+
+		CharsetEncoder encoder = UTF8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+
+		CharBuffer chars = CharBuffer.wrap(userID);
+		CoderResult result = encoder.encode(chars, buf, true);
+
+		if (result.isUnderflow())
+			result = encoder.flush(buf);
+
+		if (! result.isUnderflow()) {
+
+			buf.position(start);
+
+			if (result.isOverflow())
+				throw new BufferOverflowException();
+
+			throw new IllegalArgumentException("Invalid user identity 'I'");
+		}
+
+		int len = buf.position() - start - 2;
+
+		if (len > MAX_USER_ID_LENGTH) {
+			buf.position(start);
+			throw new IllegalArgumentException("The user identity 'I' must not be longer than " + MAX_USER_ID_LENGTH + " bytes");
+		}
+
+		buf.putShort(start, (short)len);
+	}
+
+
+	/**
+	 * Gets a user identity 'I'.
+	 *
+	 * @param buf The input buffer. Must not be {@code null}.
+	 *
+	 * @return The user identity 'I'.
+	 *
+	 * @throws BufferUnderflowException If the field is truncated.
+	 * @throws IllegalArgumentException If the field is not valid UTF-8.
+	 */
+	public String getUserID(final ByteBuffer buf) {
+
+		final int start = buf.position();
+
+		if (buf.remaining() < 2)
+			throw new BufferUnderflowException();
+
+		int len = buf.getShort(start) & 0xFFFF;
+
+		if (buf.remaining() < len + 2)
+			throw new BufferUnderflowException();
+
+		ByteBuffer field = buf.duplicate();
+		field.position(start + 2);
+		field.limit(start + 2 + len);
+
+		try {
+			String userID = UTF8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT)
+				.decode(field)
+				.toString();
+
+			buf.position(start + 2 + len);
+			return userID;
+
+		} catch (CharacterCodingException e) {
+
+			throw new IllegalArgumentException("Invalid user identity 'I' encoding", e);
+		}
+	}
+
+
+	/**
+	 * Puts a salt 's'.
+	 *
+	 * @param buf The output buffer. Must not be {@code null}.
+	 * @param s   The salt 's'. Must not be {@code null} or negative.
+	 *
+	 * @throws BufferOverflowException  If the buffer has insufficient space
+	 *                                  remaining.
+	 * @throws IllegalArgumentException If the salt is longer than
+	 *                                  {@link #MAX_SALT_LENGTH} bytes.
+	 */
+	public void putSalt(final ByteBuffer buf, final BigInteger s) {
+
+		byte[] bytes = s.toByteArray();
+		int off = bytes[0] == 0 ? 1 : 0;
+		int len = bytes.length - off;
+
+		if (s.signum() < 0 || len > MAX_SALT_LENGTH)
+			throw new IllegalArgumentException("The salt 's' must be positive and not longer than " + MAX_SALT_LENGTH + " bytes");
+
+		if (buf.remaining() < len + 1)
+			throw new BufferOverflowException();
+
+		buf.put((byte)len);
+		buf.put(bytes, off, len);
+	}
+
+
+	/**
+	 * Gets a salt 's'.
+	 *
+	 * @param buf The input buffer. Must not be {@code null}.
+	 *
+	 * @return The salt 's'.
+	 *
+	 * @throws BufferUnderflowException If the field is truncated.
+	 */
+	public BigInteger getSalt(final ByteBuffer buf) {
+
+		if (! buf.hasRemaining())
+			throw new BufferUnderflowException();
+
+		int len = buf.get(buf.position()) & 0xFF;
+
+		if (buf.remaining() < len + 1)
+			throw new BufferUnderflowException();
+
+		buf.get();
+		return getFixed(buf, len);
+	}
+
+
+	/**
+	 * Puts a public value 'A' or 'B', zero-padded to the group length.
+	 *
+	 * @param buf   The output buffer. Must not be {@code null}.
+	 * @param value The public value. Must not be {@code null} or negative.
+	 *
+	 * @throws BufferOverflowException  If the buffer has insufficient space
+	 *                                  remaining.
+	 * @throws IllegalArgumentException If the value exceeds the group
+	 *                                  length.
+	 */
+	public void putPublicValue(final ByteBuffer buf, final BigInteger value) {
+
+		putFixed(buf, value, groupLength);
+	}
+
+
+	/**
+	 * Gets a public value 'A' or 'B'. The value is not validated, see
+	 * {@link SRP6Routines#isValidPublicValue}.
+	 *
+	 * @param buf The input buffer. Must not be {@code null}.
+	 *
+	 * @return The public value.
+	 *
+	 * @throws BufferUnderflowException If the field is truncated.
+	 */
+	public BigInteger getPublicValue(final ByteBuffer buf) {
+
+		if (buf.remaining() < groupLength)
+			throw new BufferUnderflowException();
+
+		return getFixed(buf, groupLength);
+	}
+
+
+	/**
+	 * Puts an evidence message 'M1' or 'M2', zero-padded to the hash
+	 * output length.
+	 *
+	 * @param buf      The output buffer. Must not be {@code null}.
+	 * @param evidence The evidence message. Must not be {@code null} or
+	 *                 negative.
+	 *
+	 * @throws BufferOverflowException  If the buffer has insufficient space
+	 *                                  remaining.
+	 * @throws IllegalArgumentException If the value exceeds the hash output
+	 *                                  length.
+	 */
+	public void putEvidence(final ByteBuffer buf, final BigInteger evidence) {
+
+		putFixed(buf, evidence, digestLength);
+	}
+
+
+	/**
+	 * Gets an evidence message 'M1' or 'M2'.
+	 *
+	 * @param buf The input buffer. Must not be {@code null}.
+	 *
+	 * @return The evidence message.
+	 *
+	 * @throws BufferUnderflowException If the field is truncated.
+	 */
+	public BigInteger getEvidence(final ByteBuffer buf) {
+
+		if (buf.remaining() < digestLength)
+			throw new BufferUnderflowException();
+
+		return getFixed(buf, digestLength);
+	}
+
+
+	/**
+	 * Puts a CHALLENGE message, consisting of the salt 's' and the public
+	 * server value 'B'. Either the complete message is written or nothing.
+	 *
+	 * @param buf The output buffer. Must not be {@code null}.
+	 * @param s   The salt 's'. Must not be {@code null}.
+	 * @param B   The public server value 'B'. Must not be {@code null}.
+	 *
+	 * @throws BufferOverflowException  If the buffer has insufficient space
+	 *                                  remaining.
+	 * @throws IllegalArgumentException If a value is out of range.
+	 */
+	public void putChallenge(final ByteBuffer buf, final BigInteger s, final BigInteger B) {
+
+		if (buf.remaining() < 1 + (s.bitLength() + 7) / 8 + groupLength)
+			throw new BufferOverflowException();
+
+		final int start = buf.position();
+
+		try {
+			putSalt(buf, s);
+			putPublicValue(buf, B);
+
+		} catch (IllegalArgumentException e) {
+
+			buf.position(start);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Puts a PROOF message, consisting of the public client value 'A' and
+	 * the client evidence message 'M1'. Either the complete message is
+	 * written or nothing.
+	 *
+	 * @param buf The output buffer. Must not be {@code null}.
+	 * @param A   The public client value 'A'. Must not be {@code null}.
+	 * @param M1  The client evidence message 'M1'. Must not be
+	 *            {@code null}.
+	 *
+	 * @throws BufferOverflowException  If the buffer has insufficient space
+	 *                                  remaining.
+	 * @throws IllegalArgumentException If a value is out of range.
+	 */
+	public void putProof(final ByteBuffer buf, final BigInteger A, final BigInteger M1) {
+
+		if (buf.remaining() < getProofLength())
+			throw new BufferOverflowException();
+
+		final int start = buf.position();
+
+		try {
+			putPublicValue(buf, A);
+			putEvidence(buf, M1);
+
+		} catch (IllegalArgumentException e) {
+
+			buf.position(start);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Gets a PROOF message.
+	 *
+	 * @param buf The input buffer. Must not be {@code null}.
+	 *
+	 * @return The public client value 'A' and the client evidence message
+	 *         'M1'.
+	 *
+	 * @throws BufferUnderflowException If the message is truncated.
+	 */
+	public SRP6ClientCredentials getProof(final ByteBuffer buf) {
+
+		if (buf.remaining() < getProofLength())
+			throw new BufferUnderflowException();
+
+		BigInteger A = getPublicValue(buf);
+		return new SRP6ClientCredentials(A, getEvidence(buf));
+	}
+
+
+	/**
+	 * Writes the unsigned magnitude of the specified value, left-padded
+	 * with zeros to the specified length.
+	 */
+	private static void putFixed(final ByteBuffer buf, final BigInteger value, final int length) {
+
+		byte[] bytes = value.toByteArray();
+		int off = bytes[0] == 0 && bytes.length > 1 ? 1 : 0;
+		int len = bytes.length - off;
+
+		if (value.signum() < 0 || len > length)
+			throw new IllegalArgumentException("The value must be positive and not longer than " + length + " bytes");
+
+		if (buf.remaining() < length)
+			throw new BufferOverflowException();
+
+		for (int i=len; i < length; i++)
+			buf.put((byte)0);
+
+		buf.put(bytes, off, len);
+	}
+
+
+	/**
+	 * Reads an unsigned magnitude of the specified length, the bounds must
+	 * have been checked.
+	 */
+	private static BigInteger getFixed(final ByteBuffer buf, final int length) {
+
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new BigInteger(1, bytes);
+	}
+}
@@ -0,0 +1,59 @@
+package com.nimbusds.srp6;
+
+
+/**
+ * Session resumption request, sent by the client to the server. Consists of
+ * the resumption ticket, a fresh client nonce and the client proof of
+ * possession of the resumption secret.
+ *
+ * @see SRP6ResumptionTicket#createRequest
+ * @see SRP6TicketIssuer#resume
+ */
+public final class SRP6ResumptionRequest {
+
+
+	/**
+	 * The resumption ticket, as issued by the server.
+	 */
+	public final byte[] ticket;
+
+
+	/**
+	 * The client nonce.
+	 */
+	public final byte[] nonce;
+
+
+	/**
+	 * The client proof.
+	 */
+	public final byte[] proof;
+
+
+	/**
+	 * Creates a new session resumption request.
+	 *
+	 * @param ticket The resumption ticket. Must not be {@code null}.
+	 * @param nonce  The client nonce. Must not be {@code null}.
+	 * @param proof  The client proof. Must not be {@code null}.
+	 */
+	public SRP6ResumptionRequest(final byte[] ticket, final byte[] nonce, final byte[] proof) {
+
+		if (ticket == null)
+			throw new IllegalArgumentException("The resumption ticket must not be null");
+
+		this.ticket = ticket;
+
+
+		if (nonce == null)
+			throw new IllegalArgumentException("The client nonce must not be null");
+
+		this.nonce = nonce;
+
+
+		if (proof == null)
+			throw new IllegalArgumentException("The client proof must not be null");
+
+		this.proof = proof;
+	}
+}
@@ -0,0 +1,83 @@
+package com.nimbusds.srp6;
+
+
+/**
+ * Session resumption response, sent by the server to the client. Consists of
+ * a fresh server nonce and the server proof of possession of the resumption
+ * secret.
+ *
+ * <p>On the server side the response also holds the resumed
+ * {@link #getSession session}, which is not sent to the client.
+ *
+ * @see SRP6TicketIssuer#resume
+ * @see SRP6ResumptionTicket#complete
+ */
+public final class SRP6ResumptionResponse {
+
+
+	/**
+	 * The server nonce.
+	 */
+	public final byte[] nonce;
+
+
+	/**
+	 * The server proof.
+	 */
+	public final byte[] proof;
+
+
+	/**
+	 * The resumed session at the server, {@code null} at the client.
+	 */
+	private final SRP6AuthenticatedSession session;
+
+
+	/**
+	 * Creates a new session resumption response, as received by the
+	 * client.
+	 *
+	 * @param nonce The server nonce. Must not be {@code null}.
+	 * @param proof The server proof. Must not be {@code null}.
+	 */
+	public SRP6ResumptionResponse(final byte[] nonce, final byte[] proof) {
+
+		this(nonce, proof, null);
+	}
+
+
+	/**
+	 * Creates a new session resumption response at the server.
+	 *
+	 * @param nonce   The server nonce. Must not be {@code null}.
+	 * @param proof   The server proof. Must not be {@code null}.
+	 * @param session The resumed session, {@code null} if none.
+	 */
+	SRP6ResumptionResponse(final byte[] nonce, final byte[] proof, final SRP6AuthenticatedSession session) {
+
+		if (nonce == null)
+			throw new IllegalArgumentException("The server nonce must not be null");
+
+		this.nonce = nonce;
+
+
+		if (proof == null)
+			throw new IllegalArgumentException("The server proof must not be null");
+
+		this.proof = proof;
+
+		this.session = session;
+	}
+
+
+	/**
+	 * Gets the resumed session, with a fresh session key derived from the
+	 * resumption secret and the nonces. Available at the server only.
+	 *
+	 * @return The resumed session, {@code null} at the client.
+	 */
+	public SRP6AuthenticatedSession getSession() {
+
+		return session;
+	}
+}
@@ -0,0 +1,212 @@
+package com.nimbusds.srp6;
+
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.security.auth.Destroyable;
+
+
+/**
+ * Client-side session resumption ticket. Holds the ticket issued by the
+ * server together with the resumption secret, derived from the session key
+ * 'S' of the authenticated session.
+ *
+ * <p>Usage:
+ *
+ * <ol>
+ *     <li>After a full handshake, create the ticket from the
+ *         {@link SRP6ClientSession#toAuthenticatedSession authenticated
+ *         session} and the ticket received from the server.
+ *     <li>To resume, {@link #createRequest create a request} and send it
+ *         to the server.
+ *     <li>{@link #complete Complete} the resumption with the server
+ *         response, which yields the resumed session.
+ * </ol>
+ *
+ * <p>Tickets are single-use, a new ticket should be obtained from the server
+ * after each resumption.
+ *
+ * @see SRP6TicketIssuer
+ */
+public final class SRP6ResumptionTicket implements Destroyable {
+
+
+	/**
+	 * Source of randomness for the client nonces.
+	 */
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+
+	/**
+	 * The ticket, as issued by the server.
+	 */
+	private final byte[] ticket;
+
+
+	/**
+	 * The identity 'I' of the authenticated user.
+	 */
+	private final String userID;
+
+
+	/**
+	 * The crypto parameters.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The resumption secret.
+	 */
+	private final byte[] secret;
+
+
+	/**
+	 * The client nonce of the last request, {@code null} if none.
+	 */
+	private byte[] nonce;
+
+
+	/**
+	 * Indicates that the resumption secret was zeroised.
+	 */
+	private volatile boolean destroyed = false;
+
+
+	/**
+	 * Creates a new session resumption ticket.
+	 *
+	 * @param session The authenticated session from the full handshake.
+	 *                Must not be {@code null}.
+	 * @param ticket  The ticket, as issued by the server. Must not be
+	 *                {@code null}.
+	 */
+	public SRP6ResumptionTicket(final SRP6AuthenticatedSession session, final byte[] ticket) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The authenticated session must not be null");
+
+		if (ticket == null)
+			throw new IllegalArgumentException("The ticket must not be null");
+
+		this.ticket = ticket.clone();
+		userID = session.getUserID();
+		config = session.getCryptoParams();
+		secret = SRP6TicketIssuer.deriveSecret(session);
+	}
+
+
+	/**
+	 * Gets the ticket, as issued by the server.
+	 *
+	 * @return The ticket.
+	 */
+	public byte[] getTicket() {
+
+		return ticket.clone();
+	}
+
+
+	/**
+	 * Gets the identity 'I' of the authenticated user.
+	 *
+	 * @return The user identity.
+	 */
+	public String getUserID() {
+
+		return userID;
+	}
+
+
+	/**
+	 * Creates a new session resumption request, with a fresh client nonce.
+	 *
+	 * @return The request, to send to the server.
+	 *
+	 * @throws IllegalStateException If the ticket was destroyed.
+	 */
+	public synchronized SRP6ResumptionRequest createRequest() {
+
+		ensureNotDestroyed();
+
+		nonce = new byte[SRP6TicketIssuer.NONCE_LENGTH];
+		RANDOM.nextBytes(nonce);
+
+		return new SRP6ResumptionRequest(ticket, nonce.clone(), SRP6TicketIssuer.computeClientProof(secret, ticket, nonce));
+	}
+
+
+	/**
+	 * Completes the session resumption with the server response to the
+	 * last {@link #createRequest request}.
+	 *
+	 * @param response The server response. Must not be {@code null}.
+	 *
+	 * @return The resumed session, with a fresh session key.
+	 *
+	 * @throws SRP6Exception         If the server proof is invalid.
+	 * @throws IllegalStateException If no request was created, or the
+	 *                               ticket was destroyed.
+	 */
+	public synchronized SRP6AuthenticatedSession complete(final SRP6ResumptionResponse response)
+		throws SRP6Exception {
+
+		if (response == null)
+			throw new IllegalArgumentException("The resumption response must not be null");
+
+		ensureNotDestroyed();
+
+		if (nonce == null)
+			throw new IllegalStateException("State violation: No resumption request was created");
+
+		if (! MessageDigest.isEqual(SRP6TicketIssuer.computeServerProof(secret, ticket, nonce, response.nonce), response.proof))
+			throw new SRP6Exception("Bad server credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		byte[] key = SRP6TicketIssuer.deriveSessionKey(secret, nonce, response.nonce, (config.N.bitLength() + 7) / 8);
+
+		try {
+			return new SRP6AuthenticatedSession(userID, config, key, null, System.currentTimeMillis());
+
+		} finally {
+			Arrays.fill(key, (byte)0);
+			nonce = null;
+		}
+	}
+
+
+	/**
+	 * Ensures the resumption secret is not destroyed.
+	 *
+	 * @throws IllegalStateException If destroyed.
+	 */
+	private void ensureNotDestroyed() {
+
+		if (destroyed)
+			throw new IllegalStateException("The resumption secret was destroyed");
+	}
+
+
+	/**
+	 * Zeroises the resumption secret.
+	 */
+	@Override
+	public synchronized void destroy() {
+
+		Arrays.fill(secret, (byte)0);
+		destroyed = true;
+	}
+
+
+	/**
+	 * Returns {@code true} if the resumption secret was zeroised.
+	 *
+	 * @return {@code true} if destroyed, else {@code false}.
+	 */
+	@Override
+	public boolean isDestroyed() {
+
+		return destroyed;
+	}
+}
@@ -37,6 +37,9 @@ public class SRP6Routines implements Serializable {
 	 *
 	 * <p>Specification: RFC 5054.
 	 *
+	 * <p>The hash state after PAD(N) is cached per 'N', so that only
+	 * PAD(g) is hashed on subsequent calls, unless this class is extended.
+	 *
 	 * @param digest The hash function 'H'. Must not be {@code null}.
 	 * @param N      The prime parameter 'N'. Must not be {@code null}.
 	 * @param g      The generator parameter 'g'. Must not be {@code null}.
@@ -46,12 +49,41 @@ public class SRP6Routines implements Serializable {
 	public BigInteger computeK(final MessageDigest digest,
 	                                  final BigInteger N, 
 	                                  final BigInteger g) {
-	
-		return hashPaddedPair(digest, N, N, g);
+
+		// Subclasses may override the padding or hashing
+		if (getClass() != SRP6Routines.class)
+			return hashPaddedPair(digest, N, N, g);
+
+		final int padLength = (N.bitLength() + 7) / 8;
+
+		MessageDigest state = N_PREFIXES.get(digest, N);
+
+		if (state == null) {
+			state = digest;
+			state.update(getPadded(N, padLength));
+			N_PREFIXES.put(state, N);
+		}
+
+		state.update(getPadded(g, padLength));
+		return BigIntegerUtils.bigIntegerFromBytes(state.digest());
 	}
 	
 	protected SecureRandom random = new SecureRandom();
 
+
+	/**
+	 * Shared instance for sessions and verifier generators created without
+	 * custom routines. The routines are stateless and thread-safe.
+	 */
+	static final SRP6Routines DEFAULT = new SRP6Routines();
+
+
+	/**
+	 * The cached hash states after PAD(N), keyed by 'N'.
+	 */
+	private static final DigestMidstateCache N_PREFIXES = new DigestMidstateCache(32);
+
+
 	/**
 	 * Generates a random salt 's'.
 	 *
@@ -147,6 +179,70 @@ public class SRP6Routines implements Serializable {
 
 		return r;
 	}
+
+
+	/**
+	 * Generates a random SRP-6a client or server private value ('a' or
+	 * 'b') of the length set by the
+	 * {@link SRP6CryptoParams#getExponentPolicy exponent policy}. With the
+	 * default policy the value is in the range [1,q-1], where 'q' is the
+	 * order of the generator 'g', generated by a random number of at least
+	 * 256 bits and the bit length of 'q'. If the order is not known the
+	 * value is generated by
+	 * {@link #generatePrivateValue(BigInteger, SecureRandom)}.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param random Source of randomness. Must not be {@code null}.
+	 *
+	 * @return The resulting client or server private value ('a' or 'b').
+	 */
+	public BigInteger generatePrivateValue(final SRP6CryptoParams config,
+	                                       final SecureRandom random) {
+
+		final SRP6ExponentPolicy policy = config.getExponentPolicy();
+		final BigInteger q = config.getGeneratorOrder();
+
+		if (q == null && policy.isFull())
+			return generatePrivateValue(config.N, random);
+
+		final BigInteger bound = q != null ? q : config.N;
+		final int minBits = policy.getPrivateValueBits(config);
+
+		BigInteger r = BigInteger.ZERO;
+
+		while (r.signum() == 0) {
+
+			r = new BigInteger(minBits, random);
+
+			// Short values are below the bound
+			if (minBits >= bound.bitLength())
+				r = r.mod(bound);
+		}
+
+		return r;
+	}
+
+
+	/**
+	 * Reduces the specified exponent of 'g', or of a power of 'g',
+	 * modulo the order of 'g', if known.
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param e      The exponent. Must not be {@code null}.
+	 *
+	 * @return The reduced exponent.
+	 */
+	public BigInteger reduceExponent(final SRP6CryptoParams config, final BigInteger e) {
+
+		final BigInteger q = config.getGeneratorOrder();
+
+		if (q == null || (e.signum() >= 0 && e.compareTo(q) < 0))
+			return e;
+
+		return e.mod(q);
+	}
 	
 	
 	/**
@@ -266,6 +362,42 @@ public class SRP6Routines implements Serializable {
 		final BigInteger tmp = g.modPow(x, N).multiply(k);
 		return B.subtract(tmp).modPow(exp, N);
 	}
+
+
+	/**
+	 * Computes the session key S = (B - k * g^x) ^ (a + u * x) (mod N)
+	 * from client-side parameters, with the exponents reduced modulo the
+	 * order of 'g', see {@link SRP6CryptoParams#getGeneratorOrder}. For
+	 * an honest server the base is a power of 'g' and the result is the
+	 * same as with the unreduced exponents.
+	 *
+	 * <p>Specification: RFC 5054
+	 *
+	 * @param config The SRP-6a crypto parameters. Must not be
+	 *               {@code null}.
+	 * @param k      The SRP-6a multiplier 'k'. Must not be {@code null}.
+	 * @param x      The 'x' value, see {@link #computeX}. Must not be
+	 *               {@code null}.
+	 * @param u      The random scrambling parameter 'u'. Must not be
+	 *               {@code null}.
+	 * @param a      The private client value 'a'. Must not be
+	 *               {@code null}.
+	 * @param B      The public server value 'B'. Must note be
+	 *               {@code null}.
+	 *
+	 * @return The resulting session key 'S'.
+	 */
+	public BigInteger computeSessionKey(final SRP6CryptoParams config,
+	                                    final BigInteger k,
+	                                    final BigInteger x,
+	                                    final BigInteger u,
+	                                    final BigInteger a,
+	                                    final BigInteger B) {
+
+		final BigInteger exp = reduceExponent(config, u.multiply(x).add(a));
+		final BigInteger tmp = config.g.modPow(reduceExponent(config, x), config.N).multiply(k);
+		return B.subtract(tmp).modPow(exp, config.N);
+	}
 	
 	
 	/**
@@ -348,6 +480,99 @@ public class SRP6Routines implements Serializable {
 	}
 	
 	
+	/**
+	 * Computes the random scrambling parameter u = H(PAD(A) | PAD(B)) from
+	 * the padded byte forms of the public values.
+	 *
+	 * <p>Specification: RFC 5054.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param A      The public client value 'A', padded to the length of
+	 *               'N'. Must not be {@code null}.
+	 * @param B      The public server value 'B', padded to the length of
+	 *               'N'. Must not be {@code null}.
+	 *
+	 * @return The resulting 'u' value as a byte array.
+	 */
+	public byte[] computeU(final MessageDigest digest,
+	                       final byte[] A,
+	                       final byte[] B) {
+
+		digest.update(A);
+		digest.update(B);
+		return digest.digest();
+	}
+
+
+	/**
+	 * Computes the client evidence message M1 = H(A | B | S) from the byte
+	 * forms of the values. Leading zero bytes are not hashed, so the
+	 * result equals {@link #computeClientEvidence(MessageDigest,
+	 * BigInteger, BigInteger, BigInteger)}.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param A      The public client value 'A'. Must not be {@code null}.
+	 * @param B      The public server value 'B'. Must note be {@code null}.
+	 * @param S      The session key 'S'. Must not be {@code null}.
+	 *
+	 * @return The resulting client evidence message 'M1' as a byte array.
+	 */
+	public byte[] computeClientEvidence(final MessageDigest digest,
+	                                    final byte[] A,
+	                                    final byte[] B,
+	                                    final byte[] S) {
+
+		updateUnpadded(digest, A);
+		updateUnpadded(digest, B);
+		updateUnpadded(digest, S);
+		return digest.digest();
+	}
+
+
+	/**
+	 * Computes the server evidence message M2 = H(A | M1 | S) from the
+	 * byte forms of the values. Leading zero bytes are not hashed, so the
+	 * result equals {@link #computeServerEvidence(MessageDigest,
+	 * BigInteger, BigInteger, BigInteger)}.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param A      The public client value 'A'. Must not be {@code null}.
+	 * @param M1     The client evidence message 'M1'. Must not be
+	 *               {@code null}.
+	 * @param S      The session key 'S'. Must not be {@code null}.
+	 *
+	 * @return The resulting server evidence message 'M2' as a byte array.
+	 */
+	protected byte[] computeServerEvidence(final MessageDigest digest,
+	                                       final byte[] A,
+	                                       final byte[] M1,
+	                                       final byte[] S) {
+
+		updateUnpadded(digest, A);
+		updateUnpadded(digest, M1);
+		updateUnpadded(digest, S);
+		return digest.digest();
+	}
+
+
+	/**
+	 * Updates the digest with the specified unsigned big-endian value,
+	 * skipping its leading zero bytes.
+	 *
+	 * @param digest The hash function 'H'. Must not be {@code null}.
+	 * @param value  The value. Must not be {@code null}.
+	 */
+	protected static void updateUnpadded(final MessageDigest digest, final byte[] value) {
+
+		int off = 0;
+
+		while (off < value.length && value[off] == 0)
+			off++;
+
+		digest.update(value, off, value.length - off);
+	}
+
+
 	/**
 	 * Hashes two padded values 'n1' and 'n2' where the total length is
 	 * determined by the size of N.
@@ -0,0 +1,738 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.nimbusds.srp6.server.SRP6ModPowBatcher;
+
+
+/**
+ * Immutable server-side Secure Remote Password (SRP-6a) context, holding the
+ * material which is shared by all authentication sessions for a given set of
+ * crypto parameters and routine configuration.
+ *
+ * <p>The context is created once per group, typically at server start-up,
+ * and computes:
+ *
+ * <ul>
+ *     <li>The multiplier 'k'.
+ *     <li>A {@link FixedBaseTable fixed-base table} for g^b (mod N), which
+ *         speeds up the computation of the server public value 'B' at
+ *         {@link SRP6ServerSession#step1 step one}.
+ *     <li>A prototype of the hash function 'H', cloned for each use where
+ *         the provider supports it.
+ * </ul>
+ *
+ * <p>An optional {@link SRP6VerifierTableCache verifier table cache} speeds
+ * up step two for users who authenticate frequently. An optional
+ * {@link SRP6ModPowBatcher exponentiation batcher} computes the g^b of
+ * concurrent sessions together.
+ *
+ * <p>Server sessions are {@link #createSession created} from the context and
+ * share its precomputed material, so the per-handshake setup consists of the
+ * session object alone. Step one can also be processed for a
+ * {@link #step1 batch} of handshakes at once.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6ServerContext {
+
+
+	/**
+	 * The crypto configuration.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The math routines.
+	 */
+	private final SRP6Routines srp6Routines;
+
+
+	/**
+	 * The default custom routine for the hashed keys 'u' computation,
+	 * {@code null} if none.
+	 */
+	private final URoutine hashedKeysRoutine;
+
+
+	/**
+	 * The default custom routine for the client evidence message 'M1'
+	 * computation, {@code null} if none.
+	 */
+	private final ClientEvidenceRoutine clientEvidenceRoutine;
+
+
+	/**
+	 * The default custom routine for the server evidence message 'M2'
+	 * computation, {@code null} if none.
+	 */
+	private final ServerEvidenceRoutine serverEvidenceRoutine;
+
+
+	/**
+	 * The multiplier 'k'.
+	 */
+	private final BigInteger k;
+
+
+	/**
+	 * The fixed-base table for 'g', {@code null} if disabled.
+	 */
+	private final FixedBaseTable gTable;
+
+
+	/**
+	 * The batcher for g^b (mod N), {@code null} if disabled.
+	 */
+	private final SRP6ModPowBatcher gBatcher;
+
+
+	/**
+	 * Prototype of the hash function 'H', {@code null} if not cloneable.
+	 */
+	private final MessageDigest digestPrototype;
+
+
+	/**
+	 * The verifier table cache, {@code null} if disabled.
+	 */
+	private final SRP6VerifierTableCache verifierTableCache;
+
+
+	/**
+	 * Creates a new server context with the default routines and a
+	 * fixed-base table with the {@link FixedBaseTable#DEFAULT_WINDOW_BITS
+	 * default window width}.
+	 *
+	 * @param config The SRP-6a crypto parameters configuration. Must not
+	 *               be {@code null}.
+	 */
+	public SRP6ServerContext(final SRP6CryptoParams config) {
+
+		this(config, SRP6Routines.DEFAULT, null, null, null, FixedBaseTable.DEFAULT_WINDOW_BITS);
+	}
+
+
+	/**
+	 * Creates a new server context.
+	 *
+	 * @param config                The SRP-6a crypto parameters
+	 *                              configuration. Must not be
+	 *                              {@code null}.
+	 * @param srp6Routines          The math routines. Must not be
+	 *                              {@code null}.
+	 * @param hashedKeysRoutine     The default custom routine for the
+	 *                              hashed keys 'u', {@code null} to use
+	 *                              {@link SRP6Routines#computeU}.
+	 * @param clientEvidenceRoutine The default custom routine for the
+	 *                              client evidence message 'M1',
+	 *                              {@code null} to use
+	 *                              {@link SRP6Routines#computeClientEvidence}.
+	 * @param serverEvidenceRoutine The default custom routine for the
+	 *                              server evidence message 'M2',
+	 *                              {@code null} to use
+	 *                              {@link SRP6Routines#computeServerEvidence}.
+	 * @param windowBits            The window width of the fixed-base
+	 *                              table, from 1 to
+	 *                              {@link FixedBaseTable#MAX_WINDOW_BITS},
+	 *                              zero to disable the table.
+	 */
+	public SRP6ServerContext(final SRP6CryptoParams config,
+	                         final SRP6Routines srp6Routines,
+	                         final URoutine hashedKeysRoutine,
+	                         final ClientEvidenceRoutine clientEvidenceRoutine,
+	                         final ServerEvidenceRoutine serverEvidenceRoutine,
+	                         final int windowBits) {
+
+		this(config, srp6Routines, hashedKeysRoutine, clientEvidenceRoutine, serverEvidenceRoutine, windowBits, null);
+	}
+
+
+	/**
+	 * Creates a new server context.
+	 *
+	 * @param config                The SRP-6a crypto parameters
+	 *                              configuration. Must not be
+	 *                              {@code null}.
+	 * @param srp6Routines          The math routines. Must not be
+	 *                              {@code null}.
+	 * @param hashedKeysRoutine     The default custom routine for the
+	 *                              hashed keys 'u', {@code null} to use
+	 *                              {@link SRP6Routines#computeU}.
+	 * @param clientEvidenceRoutine The default custom routine for the
+	 *                              client evidence message 'M1',
+	 *                              {@code null} to use
+	 *                              {@link SRP6Routines#computeClientEvidence}.
+	 * @param serverEvidenceRoutine The default custom routine for the
+	 *                              server evidence message 'M2',
+	 *                              {@code null} to use
+	 *                              {@link SRP6Routines#computeServerEvidence}.
+	 * @param windowBits            The window width of the fixed-base
+	 *                              table, from 1 to
+	 *                              {@link FixedBaseTable#MAX_WINDOW_BITS},
+	 *                              zero to disable the table.
+	 * @param verifierTableCache    Cache of fixed-base tables for the
+	 *                              verifiers of hot users, for the same
+	 *                              crypto parameters. {@code null} if
+	 *                              disabled.
+	 */
+	public SRP6ServerContext(final SRP6CryptoParams config,
+	                         final SRP6Routines srp6Routines,
+	                         final URoutine hashedKeysRoutine,
+	                         final ClientEvidenceRoutine clientEvidenceRoutine,
+	                         final ServerEvidenceRoutine serverEvidenceRoutine,
+	                         final int windowBits,
+	                         final SRP6VerifierTableCache verifierTableCache) {
+
+		this(config, srp6Routines, hashedKeysRoutine, clientEvidenceRoutine, serverEvidenceRoutine,
+			createTable(config, windowBits), verifierTableCache);
+	}
+
+
+	/**
+	 * Creates a new server context with a previously computed fixed-base
+	 * table, e.g. read from a {@link FixedBaseTableFile table file} at
+	 * start-up.
+	 *
+	 * @param config                The SRP-6a crypto parameters
+	 *                              configuration. Must not be
+	 *                              {@code null}.
+	 * @param srp6Routines          The math routines. Must not be
+	 *                              {@code null}.
+	 * @param hashedKeysRoutine     The default custom routine for the
+	 *                              hashed keys 'u', {@code null} to use
+	 *                              {@link SRP6Routines#computeU}.
+	 * @param clientEvidenceRoutine The default custom routine for the
+	 *                              client evidence message 'M1',
+	 *                              {@code null} to use
+	 *                              {@link SRP6Routines#computeClientEvidence}.
+	 * @param serverEvidenceRoutine The default custom routine for the
+	 *                              server evidence message 'M2',
+	 *                              {@code null} to use
+	 *                              {@link SRP6Routines#computeServerEvidence}.
+	 * @param gTable                The fixed-base table for 'g' modulo
+	 *                              'N', {@code null} to disable.
+	 * @param verifierTableCache    Cache of fixed-base tables for the
+	 *                              verifiers of hot users, for the same
+	 *                              crypto parameters. {@code null} if
+	 *                              disabled.
+	 */
+	public SRP6ServerContext(final SRP6CryptoParams config,
+	                         final SRP6Routines srp6Routines,
+	                         final URoutine hashedKeysRoutine,
+	                         final ClientEvidenceRoutine clientEvidenceRoutine,
+	                         final ServerEvidenceRoutine serverEvidenceRoutine,
+	                         final FixedBaseTable gTable,
+	                         final SRP6VerifierTableCache verifierTableCache) {
+
+		this(config, srp6Routines, hashedKeysRoutine, clientEvidenceRoutine, serverEvidenceRoutine,
+			gTable, verifierTableCache, null);
+	}
+
+
+	/**
+	 * Creates a new server context with the crypto parameters, routines
+	 * and verifier table cache of the specified context, which computes
+	 * g^b (mod N) at {@link SRP6ServerSession#step1 step one} with the
+	 * specified exponentiation batcher. A session thread waits for its
+	 * batch to be executed, so the sessions must run step one on more
+	 * threads than the batcher has workers for batches to form, e.g. on
+	 * the threads of a {@link com.nimbusds.srp6.server.SRP6HandshakeScheduler
+	 * handshake scheduler}. If the batcher is shut down g^b is computed
+	 * directly.
+	 *
+	 * @param context  The server context. Must not be {@code null}.
+	 * @param gBatcher The exponentiation batcher, with a fixed-base table
+	 *                 for 'g' modulo 'N'. Must not be {@code null}.
+	 */
+	public SRP6ServerContext(final SRP6ServerContext context, final SRP6ModPowBatcher gBatcher) {
+
+		this(checkContext(context).config,
+			context.srp6Routines,
+			context.hashedKeysRoutine,
+			context.clientEvidenceRoutine,
+			context.serverEvidenceRoutine,
+			checkBatcher(gBatcher).getFixedBaseTable(),
+			context.verifierTableCache,
+			gBatcher);
+	}
+
+
+	/**
+	 * Creates a new server context.
+	 *
+	 * @param config                The SRP-6a crypto parameters
+	 *                              configuration.
+	 * @param srp6Routines          The math routines.
+	 * @param hashedKeysRoutine     The default custom routine for the
+	 *                              hashed keys 'u', {@code null} if none.
+	 * @param clientEvidenceRoutine The default custom routine for the
+	 *                              client evidence message 'M1',
+	 *                              {@code null} if none.
+	 * @param serverEvidenceRoutine The default custom routine for the
+	 *                              server evidence message 'M2',
+	 *                              {@code null} if none.
+	 * @param gTable                The fixed-base table for 'g' modulo
+	 *                              'N', {@code null} to disable.
+	 * @param verifierTableCache    The verifier table cache, {@code null}
+	 *                              if disabled.
+	 * @param gBatcher              The exponentiation batcher for g^b,
+	 *                              using the fixed-base table,
+	 *                              {@code null} if disabled.
+	 */
+	private SRP6ServerContext(final SRP6CryptoParams config,
+	                          final SRP6Routines srp6Routines,
+	                          final URoutine hashedKeysRoutine,
+	                          final ClientEvidenceRoutine clientEvidenceRoutine,
+	                          final ServerEvidenceRoutine serverEvidenceRoutine,
+	                          final FixedBaseTable gTable,
+	                          final SRP6VerifierTableCache verifierTableCache,
+	                          final SRP6ModPowBatcher gBatcher) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (gTable != null && (! gTable.getModulus().equals(config.N) || ! gTable.getBase().equals(config.g)))
+			throw new IllegalArgumentException("The fixed-base table must be for the generator 'g' modulo 'N'");
+
+		if (verifierTableCache != null && ! verifierTableCache.getCryptoParams().equals(config))
+			throw new IllegalArgumentException("The verifier table cache must be for the same crypto parameters");
+
+		if (srp6Routines == null)
+			throw new IllegalArgumentException("The SRP-6a routines must not be null");
+
+		MessageDigest digest = config.getMessageDigestInstance();
+
+		if (digest == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		this.config = config;
+		this.srp6Routines = srp6Routines;
+		this.hashedKeysRoutine = hashedKeysRoutine;
+		this.clientEvidenceRoutine = clientEvidenceRoutine;
+		this.serverEvidenceRoutine = serverEvidenceRoutine;
+
+		k = srp6Routines.computeK(digest, config.N, config.g);
+		digest.reset();
+
+		this.gTable = gTable;
+		this.gBatcher = gBatcher;
+
+		MessageDigest prototype;
+
+		try {
+			prototype = (MessageDigest)digest.clone();
+
+		} catch (CloneNotSupportedException e) {
+
+			prototype = null;
+		}
+
+		digestPrototype = prototype;
+
+		this.verifierTableCache = verifierTableCache;
+	}
+
+
+	/**
+	 * Checks the specified server context is not {@code null}.
+	 *
+	 * @param context The server context.
+	 *
+	 * @return The server context.
+	 */
+	private static SRP6ServerContext checkContext(final SRP6ServerContext context) {
+
+		if (context == null)
+			throw new IllegalArgumentException("The server context must not be null");
+
+		return context;
+	}
+
+
+	/**
+	 * Checks the specified exponentiation batcher is not {@code null}.
+	 *
+	 * @param gBatcher The exponentiation batcher.
+	 *
+	 * @return The exponentiation batcher.
+	 */
+	private static SRP6ModPowBatcher checkBatcher(final SRP6ModPowBatcher gBatcher) {
+
+		if (gBatcher == null)
+			throw new IllegalArgumentException("The exponentiation batcher must not be null");
+
+		return gBatcher;
+	}
+
+
+	/**
+	 * Creates a fixed-base table for 'g' modulo 'N'.
+	 *
+	 * @param config     The SRP-6a crypto parameters configuration.
+	 * @param windowBits The window width, zero to disable the table.
+	 *
+	 * @return The table, {@code null} if disabled.
+	 */
+	private static FixedBaseTable createTable(final SRP6CryptoParams config, final int windowBits) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		return windowBits > 0 ? new FixedBaseTable(config.N, config.g, windowBits) : null;
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters.
+	 *
+	 * @return The SRP-6a crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return config;
+	}
+
+
+	/**
+	 * Gets the math routines.
+	 *
+	 * @return The math routines.
+	 */
+	public SRP6Routines getRoutines() {
+
+		return srp6Routines;
+	}
+
+
+	/**
+	 * Gets the default custom routine for the hashed keys 'u'.
+	 *
+	 * @return The routine, {@code null} if none.
+	 */
+	public URoutine getHashedKeysRoutine() {
+
+		return hashedKeysRoutine;
+	}
+
+
+	/**
+	 * Gets the default custom routine for the client evidence message
+	 * 'M1'.
+	 *
+	 * @return The routine, {@code null} if none.
+	 */
+	public ClientEvidenceRoutine getClientEvidenceRoutine() {
+
+		return clientEvidenceRoutine;
+	}
+
+
+	/**
+	 * Gets the default custom routine for the server evidence message
+	 * 'M2'.
+	 *
+	 * @return The routine, {@code null} if none.
+	 */
+	public ServerEvidenceRoutine getServerEvidenceRoutine() {
+
+		return serverEvidenceRoutine;
+	}
+
+
+	/**
+	 * Gets the multiplier 'k'.
+	 *
+	 * @return The multiplier 'k'.
+	 */
+	public BigInteger getK() {
+
+		return k;
+	}
+
+
+	/**
+	 * Gets the fixed-base table for 'g'.
+	 *
+	 * @return The fixed-base table, {@code null} if disabled.
+	 */
+	public FixedBaseTable getFixedBaseTable() {
+
+		return gTable;
+	}
+
+
+	/**
+	 * Gets the exponentiation batcher for g^b (mod N).
+	 *
+	 * @return The exponentiation batcher, {@code null} if disabled.
+	 */
+	public SRP6ModPowBatcher getModPowBatcher() {
+
+		return gBatcher;
+	}
+
+
+	/**
+	 * Gets the verifier table cache.
+	 *
+	 * @return The verifier table cache, {@code null} if disabled.
+	 */
+	public SRP6VerifierTableCache getVerifierTableCache() {
+
+		return verifierTableCache;
+	}
+
+
+	/**
+	 * Returns a new instance of the hash function 'H'.
+	 *
+	 * @return The message digest instance.
+	 */
+	public MessageDigest getMessageDigestInstance() {
+
+		if (digestPrototype != null) {
+
+			try {
+				return (MessageDigest)digestPrototype.clone();
+
+			} catch (CloneNotSupportedException e) {
+				// fall through
+			}
+		}
+
+		return config.getMessageDigestInstance();
+	}
+
+
+	/**
+	 * Computes g^e (mod N), with the exponentiation batcher or the
+	 * fixed-base table if enabled.
+	 *
+	 * @param e The exponent. Must not be {@code null}.
+	 *
+	 * @return The result.
+	 */
+	public BigInteger computeGPow(final BigInteger e) {
+
+		if (gBatcher != null) {
+
+			try {
+				return gBatcher.submit(e).get();
+
+			} catch (ExecutionException ex) {
+
+				Throwable cause = ex.getCause();
+
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+
+				if (cause instanceof Error)
+					throw (Error)cause;
+
+				throw new IllegalStateException(cause.getMessage(), cause);
+
+			} catch (InterruptedException ex) {
+
+				// Compute directly, keep the interrupt for the caller
+				Thread.currentThread().interrupt();
+
+			} catch (RejectedExecutionException ex) {
+
+				// Shut down, compute directly
+			}
+		}
+
+		return gTable != null ? gTable.modPow(e) : config.g.modPow(e, config.N);
+	}
+
+
+	/**
+	 * Computes the public server value B = k * v + g^b (mod N), with the
+	 * fixed-base table if enabled. Custom math routines which override
+	 * {@link SRP6Routines#computePublicServerValue} are honoured, without
+	 * the table.
+	 *
+	 * @param v The password verifier 'v'. Must not be {@code null}.
+	 * @param b The private server value 'b'. Must not be {@code null}.
+	 *
+	 * @return The public server value 'B'.
+	 */
+	public BigInteger computePublicServerValue(final BigInteger v, final BigInteger b) {
+
+		if (srp6Routines.getClass() != SRP6Routines.class)
+			return srp6Routines.computePublicServerValue(config.N, config.g, k, v, b);
+
+		return computeGPow(b).add(v.multiply(k)).mod(config.N);
+	}
+
+
+	/**
+	 * Processes {@link SRP6ServerSession#step1 step one} for a batch of
+	 * handshakes, e.g. the requests received by an event loop in one tick.
+	 * A new server session is created for each request. The private server
+	 * values 'b' are drawn from the shared source of randomness of the
+	 * sessions and, with the default math routines, the g^b (mod N) of the
+	 * batch are computed together in lockstep over the
+	 * {@link FixedBaseTable#modPow(BigInteger[]) fixed-base table}.
+	 *
+	 * <p>Each request succeeds or fails on its own, a request with bad
+	 * arguments doesn't affect the others in the batch.
+	 *
+	 * @param requests The step one requests. Must not be {@code null}.
+	 * @param timeout  The SRP-6a authentication session timeout in
+	 *                 seconds. If zero timeouts are disabled.
+	 *
+	 * @return The results, in the order of the requests.
+	 */
+	public List<SRP6Step1Result> step1(final List<SRP6Step1Request> requests, final int timeout) {
+
+		if (requests == null)
+			throw new IllegalArgumentException("The step one requests must not be null");
+
+		final int n = requests.size();
+		final SRP6Step1Result[] results = new SRP6Step1Result[n];
+		final SRP6ServerSession[] sessions = new SRP6ServerSession[n];
+		final BigInteger[] b = new BigInteger[n];
+
+		final boolean defaultRoutines = srp6Routines.getClass() == SRP6Routines.class;
+
+		int valid = 0;
+
+		for (int i = 0; i < n; i++) {
+
+			SRP6Step1Request request = requests.get(i);
+			SRP6ServerSession session = createSession(timeout);
+
+			try {
+				if (request == null)
+					throw new IllegalArgumentException("The step one request must not be null");
+
+				session.prepareStep1(request.userID, request.s, request.v, request.mock);
+
+			} catch (RuntimeException e) {
+
+				results[i] = new SRP6Step1Result(e);
+				continue;
+			}
+
+			sessions[i] = session;
+
+			if (defaultRoutines)
+				b[i] = srp6Routines.generatePrivateValue(config, session.random);
+			else
+				b[i] = srp6Routines.generatePrivateValue(config.N, session.random);
+
+			valid++;
+		}
+
+		BigInteger[] gb = null;
+
+		if (defaultRoutines && gTable != null && valid > 0) {
+
+			// One lane per valid request
+			BigInteger[] exponents = new BigInteger[valid];
+
+			for (int i = 0, j = 0; i < n; i++) {
+
+				if (sessions[i] != null)
+					exponents[j++] = b[i];
+			}
+
+			gb = gTable.modPow(exponents);
+		}
+
+		for (int i = 0, j = 0; i < n; i++) {
+
+			if (sessions[i] == null)
+				continue;
+
+			BigInteger v = requests.get(i).v;
+			BigInteger B;
+
+			if (gb != null)
+				B = gb[j++].add(v.multiply(k)).mod(config.N);
+			else
+				B = computePublicServerValue(v, b[i]);
+
+			results[i] = new SRP6Step1Result(sessions[i], sessions[i].completeStep1(b[i], B));
+		}
+
+		return Arrays.asList(results);
+	}
+
+
+	/**
+	 * Computes the session key S = (A * v^u) ^ b (mod N), with a table
+	 * from the verifier table cache for v^u if enabled and the user is
+	 * hot. Custom math routines which override
+	 * {@link SRP6Routines#computeSessionKey} are honoured, without the
+	 * cache.
+	 *
+	 * @param userID The identity 'I' of the authenticating user,
+	 *               {@code null} to bypass the cache (e.g. for mock
+	 *               users).
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 * @param u      The random scrambling parameter 'u'. Must not be
+	 *               {@code null}.
+	 * @param A      The public client value 'A'. Must not be
+	 *               {@code null}.
+	 * @param b      The private server value 'b'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The session key 'S'.
+	 */
+	public BigInteger computeSessionKey(final String userID,
+	                                    final BigInteger v,
+	                                    final BigInteger u,
+	                                    final BigInteger A,
+	                                    final BigInteger b) {
+
+		if (verifierTableCache == null || userID == null || srp6Routines.getClass() != SRP6Routines.class)
+			return srp6Routines.computeSessionKey(config.N, v, u, A, b);
+
+		FixedBaseTable vTable = verifierTableCache.get(userID, v);
+
+		if (vTable == null)
+			return srp6Routines.computeSessionKey(config.N, v, u, A, b);
+
+		return vTable.modPow(u).multiply(A).modPow(b, config.N);
+	}
+
+
+	/**
+	 * Records a successful authentication with the verifier table cache,
+	 * if enabled.
+	 *
+	 * @param userID The identity 'I' of the authenticated user. Must not
+	 *               be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 */
+	public void recordAuthentication(final String userID, final BigInteger v) {
+
+		if (verifierTableCache != null)
+			verifierTableCache.recordAuthentication(userID, v);
+	}
+
+
+	/**
+	 * Creates a new server session for this context, in the
+	 * {@link SRP6ServerSession.State#INIT} state.
+	 *
+	 * @param timeout The SRP-6a authentication session timeout in
+	 *                seconds. If zero timeouts are disabled.
+	 *
+	 * @return The server session.
+	 */
+	public SRP6ServerSession createSession(final int timeout) {
+
+		return new SRP6ServerSession(this, timeout);
+	}
+}
@@ -30,8 +30,19 @@ import java.security.MessageDigest;
  *         established session key 'S' may be {@link #getSessionKey retrieved} to
  *         encrypt further communication with the client. Else signal an 
  *         authentication failure to the client.
+ *     <li>To keep the authenticated session for long, convert it to an
+ *         immutable {@link #toAuthenticatedSession record} or
+ *         {@link #compact} it, so that the intermediate protocol values can
+ *         be reclaimed.
  * </ul>
  *
+ * <p>In the early 'A' protocol variant the client sends its public value 'A'
+ * together with 'I' and the server proceeds to
+ * {@link #step1(String, BigInteger, BigInteger, BigInteger) step one} with
+ * it. After sending 'B' the server may {@link #prepareStep2 prepare} step
+ * two, which then only checks the received 'M1' at
+ * {@link #step2(BigInteger) step two}.
+ *
  * @author Vladimir Dzhuvinov
  * @author Bernard Wittwer
  */
@@ -94,10 +105,24 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 	private BigInteger b = null;
 	
 	
+	/**
+	 * The expected client evidence message 'M1', precomputed when the
+	 * public client value 'A' is received at step one.
+	 */
+	private byte[] expectedM1 = null;
+
+
 	/**
 	 * The current SRP-6a auth state.
 	 */
 	private State state;
+
+	
+	/**
+	 * The shared server context, {@code null} if none. Not serialised, a
+	 * deserialised session computes the per-group values itself.
+	 */
+	private transient SRP6ServerContext context = null;
 	
 	
 	/**
@@ -129,6 +154,50 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 	}
 	
 	
+	/**
+	 * Creates a new server-side SRP-6a authentication session for the
+	 * specified server context and sets its state to {@link State#INIT}.
+	 * The session uses the multiplier 'k', the fixed-base table, the
+	 * routines and the default custom routines of the context.
+	 *
+	 * @param context The server context. Must not be {@code null}.
+	 * @param timeout The SRP-6a authentication session timeout in seconds. 
+	 *                If the authenticating counterparty (server or client) 
+	 *                fails to respond within the specified time the session
+	 *                will be closed. If zero timeouts are disabled.
+	 */
+	public SRP6ServerSession(final SRP6ServerContext context, final int timeout) {
+
+		super(timeout, checkContext(context).getRoutines());
+
+		this.context = context;
+		config = context.getCryptoParams();
+		hashedKeysRoutine = context.getHashedKeysRoutine();
+		clientEvidenceRoutine = context.getClientEvidenceRoutine();
+		serverEvidenceRoutine = context.getServerEvidenceRoutine();
+
+		state = State.INIT;
+
+		updateLastActivityTime();
+	}
+	
+	
+	/**
+	 * Checks the specified server context is not {@code null}.
+	 *
+	 * @param context The server context.
+	 *
+	 * @return The server context.
+	 */
+	private static SRP6ServerContext checkContext(final SRP6ServerContext context) {
+
+		if (context == null)
+			throw new IllegalArgumentException("The server context must not be null");
+
+		return context;
+	}
+	
+	
 	/**
 	 * Creates a new server-side SRP-6a authentication session and sets its 
 	 * state to {@link State#INIT}. Session timeouts are disabled.
@@ -165,6 +234,75 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 	 *                               other than {@link State#INIT}.
 	 */
 	public BigInteger step1(final String userID, final BigInteger s, final BigInteger v) {
+
+		return step1(userID, s, v, false);
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_1}.
+	 *
+	 * @param userID The identity 'I' of the authenticating user.
+	 * @param s      The password salt 's'.
+	 * @param v      The password verifier 'v'.
+	 * @param mock   {@code true} for a non-existing user identity with
+	 *               mock salt and verifier values.
+	 *
+	 * @return The server public value 'B'.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	private BigInteger step1(final String userID, final BigInteger s, final BigInteger v, final boolean mock) {
+
+		prepareStep1(userID, s, v, mock);
+		
+		// Generate server private value, with the default routines
+		// modulo the order of 'g' if known
+		if (srp6Routines.getClass() == SRP6Routines.class)
+			b = srp6Routines.generatePrivateValue(config, random);
+		else
+			b = srp6Routines.generatePrivateValue(config.N, random);
+
+		BigInteger B;
+
+		if (context != null) {
+
+			// With precomputed 'k' and fixed-base table, 'k' is held
+			// by the context
+			B = context.computePublicServerValue(v, b);
+
+		} else {
+
+			MessageDigest digest = config.getMessageDigestInstance();
+
+			// Compute server public value
+			BigInteger k = srp6Routines.computeK(digest, config.N, config.g);
+			this.k = toBytes(k, 0);
+			digest.reset();
+
+			B = srp6Routines.computePublicServerValue(config.N, config.g, k, v, b);
+		}
+
+		return completeStep1(b, B);
+	}
+
+
+	/**
+	 * Checks the arguments and the state for {@link #step1 step one} and
+	 * records the user identity, salt and verifier.
+	 *
+	 * @param userID The identity 'I' of the authenticating user.
+	 * @param s      The password salt 's'.
+	 * @param v      The password verifier 'v'.
+	 * @param mock   {@code true} for a non-existing user identity with
+	 *               mock salt and verifier values.
+	 *
+	 * @throws IllegalStateException If the session is not in the
+	 *                               {@link State#INIT} state.
+	 */
+	void prepareStep1(final String userID, final BigInteger s, final BigInteger v, final boolean mock) {
 	
 		// Check arguments
 		
@@ -177,7 +315,7 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		if (s == null)
 			throw new IllegalArgumentException("The salt 's' must not be null");
 			
-		this.s = s;
+		this.s = toBytes(s, 0);
 		
 		
 		if (v == null)
@@ -189,17 +327,25 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		// Check current state
 		if (state != State.INIT)
 			throw new IllegalStateException("State violation: Session must be in INIT state");
-		
-		MessageDigest digest = config.getMessageDigestInstance();
-		
-		// Generate server private and public values
-		k = srp6Routines.computeK(digest, config.N, config.g);
-		digest.reset();
-		
-		b = srp6Routines.generatePrivateValue(config.N, random);
-		digest.reset();
-		
-		B = srp6Routines.computePublicServerValue(config.N, config.g, k, v, b);
+
+		if (mock)
+			noSuchUserIdentity = true;
+	}
+
+
+	/**
+	 * Completes {@link #step1 step one} with the specified private and
+	 * public server values.
+	 *
+	 * @param b The private server value 'b'.
+	 * @param B The public server value 'B'.
+	 *
+	 * @return The public server value 'B'.
+	 */
+	BigInteger completeStep1(final BigInteger b, final BigInteger B) {
+
+		this.b = b;
+		this.B = toBytes(B, getGroupLength());
 
 		state = State.STEP_1;
 		
@@ -239,12 +385,202 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 	 */
 	public BigInteger mockStep1(final String userID, final BigInteger s, final BigInteger v) {
 	
-		noSuchUserIdentity = true;
-		
-		return step1(userID, s, v);
+		return step1(userID, s, v, true);
 	}
 	
 	
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_1}, for the early 'A' protocol variant where the
+	 * client sends its public value 'A' together with the user identity
+	 * 'I'. The server can then {@link #prepareStep2 prepare} the session
+	 * key and the expected client evidence message while the returned
+	 * public value 'B' is in transit, so that {@link #step2(BigInteger)
+	 * step two} reduces to a comparison of the evidence messages.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From client: user identity 'I' and public value 'A'.
+	 *     <li>From server database: matching salt 's' and password verifier
+	 *        'v' values.
+	 * </ul>
+	 *
+	 * @param userID The identity 'I' of the authenticating user. Must not
+	 *               be {@code null} or empty.
+	 * @param s      The password salt 's'. Must not be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 * @param A      The client public value 'A'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The server public value 'B'.
+	 *
+	 * @throws SRP6Exception         If the client public value 'A' is
+	 *                               invalid.
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	public BigInteger step1(final String userID, final BigInteger s, final BigInteger v, final BigInteger A)
+		throws SRP6Exception {
+
+		return step1(userID, s, v, A, false);
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_1} indicating a non-existing user identity 'I'
+	 * with mock (simulated) salt 's' and password verifier 'v' values, for
+	 * the early 'A' protocol variant. See
+	 * {@link #step1(String, BigInteger, BigInteger, BigInteger)} and
+	 * {@link #mockStep1(String, BigInteger, BigInteger)}.
+	 *
+	 * @param userID The identity 'I' of the authenticating user. Must not
+	 *               be {@code null} or empty.
+	 * @param s      The password salt 's'. Must not be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 * @param A      The client public value 'A'. Must not be
+	 *               {@code null}.
+	 *
+	 * @return The server public value 'B'.
+	 *
+	 * @throws SRP6Exception         If the client public value 'A' is
+	 *                               invalid.
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	public BigInteger mockStep1(final String userID, final BigInteger s, final BigInteger v, final BigInteger A)
+		throws SRP6Exception {
+
+		return step1(userID, s, v, A, true);
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_1}, for the early 'A' protocol variant. The
+	 * session is left unchanged if the client public value 'A' is
+	 * invalid.
+	 *
+	 * @param userID The identity 'I' of the authenticating user.
+	 * @param s      The password salt 's'.
+	 * @param v      The password verifier 'v'.
+	 * @param A      The client public value 'A'.
+	 * @param mock   {@code true} for a non-existing user identity with
+	 *               mock salt and verifier values.
+	 *
+	 * @return The server public value 'B'.
+	 *
+	 * @throws SRP6Exception         If the client public value 'A' is
+	 *                               invalid.
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#INIT}.
+	 */
+	private BigInteger step1(final String userID,
+	                         final BigInteger s,
+	                         final BigInteger v,
+	                         final BigInteger A,
+	                         final boolean mock)
+		throws SRP6Exception {
+
+		if (A == null)
+			throw new IllegalArgumentException("The client public value 'A' must not be null");
+
+		// Check A validity
+		if (! srp6Routines.isValidPublicValue(config.N, A))
+			throw new SRP6Exception("Bad client public value 'A'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE);
+
+		BigInteger B = step1(userID, s, v, mock);
+
+		this.A = toBytes(A, getGroupLength());
+
+		return B;
+	}
+
+
+	/**
+	 * Prepares {@link #step2(BigInteger) step two} of the early 'A'
+	 * protocol variant by computing the random scrambling parameter 'u',
+	 * the session key 'S' and the expected client evidence message 'M1'.
+	 * Intended to be called after the public server value 'B' is sent, to
+	 * overlap the computation with the round trip to the client. Calling
+	 * the method again has no effect. If not called, step two prepares
+	 * itself. The session must not be used by another thread at the same
+	 * time.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_1}, or
+	 *                               the client public value 'A' was not
+	 *                               received at step one.
+	 */
+	public void prepareStep2() {
+
+		if (state != State.STEP_1)
+			throw new IllegalStateException("State violation: Session must be in STEP_1 state");
+
+		if (A == null)
+			throw new IllegalStateException("State violation: The client public value 'A' was not received at step one");
+
+		if (expectedM1 != null)
+			return;
+
+		MessageDigest digest = context != null ? context.getMessageDigestInstance() : config.getMessageDigestInstance();
+
+		expectedM1 = computeClientEvidence(digest, toBigInteger(A));
+	}
+
+
+	/**
+	 * Increments this SRP-6a authentication session to
+	 * {@link State#STEP_2}, for the early 'A' protocol variant where the
+	 * client public value 'A' was received at
+	 * {@link #step1(String, BigInteger, BigInteger, BigInteger) step one}.
+	 *
+	 * <p>Argument origin:
+	 *
+	 * <ul>
+	 *     <li>From client: evidence message 'M1'.
+	 * </ul>
+	 *
+	 * @param M1 The client evidence message. Must not be {@code null}.
+	 *
+	 * @return The server evidence message 'M2'.
+	 *
+	 * @throws SRP6Exception If the session has timed out or the user
+	 *                       credentials are invalid.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_1}, or
+	 *                               the client public value 'A' was not
+	 *                               received at step one.
+	 */
+	public BigInteger step2(final BigInteger M1)
+		throws SRP6Exception {
+
+		if (M1 == null)
+			throw new IllegalArgumentException("The client evidence message 'M1' must not be null");
+
+		// Check current state
+		if (state != State.STEP_1)
+			throw new IllegalStateException("State violation: Session must be in STEP_1 state");
+
+		if (A == null)
+			throw new IllegalStateException("State violation: The client public value 'A' was not received at step one");
+
+		MessageDigest digest = context != null ? context.getMessageDigestInstance() : config.getMessageDigestInstance();
+
+		this.M1 = toBytes(M1, digest.getDigestLength());
+
+		// Check timeout
+		if (hasTimedOut())
+			throw new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT);
+
+		prepareStep2();
+
+		return completeStep2(digest, expectedM1);
+	}
+
+
 	/**
 	 * Increments this SRP-6a authentication session to 
 	 * {@link State#STEP_2}.
@@ -274,17 +610,22 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		
 		if (A == null)
 			throw new IllegalArgumentException("The client public value 'A' must not be null");
-			
-		this.A = A;
 		
 		if (M1 == null)
 			throw new IllegalArgumentException("The client evidence message 'M1' must not be null");
-		
-		this.M1 = M1;
 	
 		// Check current state
 		if (state != State.STEP_1)
 			throw new IllegalStateException("State violation: Session must be in STEP_1 state");
+
+		if (this.A != null)
+			throw new IllegalStateException("State violation: The client public value 'A' was received at step one");
+		
+		MessageDigest digest = context != null ? context.getMessageDigestInstance() : config.getMessageDigestInstance();
+		final int digestLength = digest.getDigestLength();
+		
+		this.A = toBytes(A, getGroupLength());
+		this.M1 = toBytes(M1, digestLength);
 		
 		// Check timeout
 		if (hasTimedOut())
@@ -294,56 +635,209 @@ public class SRP6ServerSession extends SRP6Session implements Serializable {
 		if (! srp6Routines.isValidPublicValue(config.N, A))
 			throw new SRP6Exception("Bad client public value 'A'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE);
 		
-		MessageDigest digest = config.getMessageDigestInstance();
+		return completeStep2(digest, computeClientEvidence(digest, A));
+	}
+
+
+	/**
+	 * Computes the random scrambling parameter 'u', the session key 'S'
+	 * and the expected client evidence message 'M1' for the specified
+	 * client public value 'A'.
+	 *
+	 * @param digest The hash function 'H'.
+	 * @param A      The client public value 'A', validated.
+	 *
+	 * @return The expected client evidence message 'M1'.
+	 */
+	private byte[] computeClientEvidence(final MessageDigest digest, final BigInteger A) {
+
+		final int digestLength = digest.getDigestLength();
+
+		BigInteger u;
 		
 		if (hashedKeysRoutine != null) {
-			URoutineContext hashedKeysContext = new URoutineContext(A, B);
+			URoutineContext hashedKeysContext = new URoutineContext(A, toBigInteger(B));
 			u = hashedKeysRoutine.computeU(config, hashedKeysContext);
+			this.u = toBytes(u, 0);
 		} else {
-			u = srp6Routines.computeU(digest, config.N, A, B);
+			this.u = computeU(digest);
+			u = toBigInteger(this.u);
 			digest.reset();
 		}
 		
-		S = srp6Routines.computeSessionKey(config.N, v, u, A, b);
+		BigInteger S;
+
+		if (context != null)
+			S = context.computeSessionKey(noSuchUserIdentity ? null : userID, v, u, A, b);
+		else
+			S = srp6Routines.computeSessionKey(config.N, v, u, A, b);
+
+		this.S = toBytes(S, getGroupLength());
 		
 		// Compute the own client evidence message 'M1'
-		BigInteger computedM1;
+		byte[] computedM1;
 		
 		if (clientEvidenceRoutine != null) {
 		
 			// With custom routine
-			SRP6ClientEvidenceContext ctx = new SRP6ClientEvidenceContext(userID, s, A, B, S);
-			computedM1 = clientEvidenceRoutine.computeClientEvidence(config, ctx);
+			SRP6ClientEvidenceContext ctx = new SRP6ClientEvidenceContext(userID, toBigInteger(s), A, toBigInteger(B), S);
+			computedM1 = toBytes(clientEvidenceRoutine.computeClientEvidence(config, ctx), digestLength);
 		}
 		else {
 			// With default routine
-			computedM1 = srp6Routines.computeClientEvidence(digest, A, B, S);
+			computedM1 = computeM1(digest);
 			digest.reset();
 		}
 
+		return computedM1;
+	}
+
+
+	/**
+	 * Checks the received client evidence message 'M1' against the
+	 * expected one, then increments this session to {@link State#STEP_2}
+	 * and computes the server evidence message 'M2'.
+	 *
+	 * @param digest     The hash function 'H'.
+	 * @param computedM1 The expected client evidence message 'M1'.
+	 *
+	 * @return The server evidence message 'M2'.
+	 *
+	 * @throws SRP6Exception If the user credentials are invalid.
+	 */
+	private BigInteger completeStep2(final MessageDigest digest, final byte[] computedM1)
+		throws SRP6Exception {
+
+		final int digestLength = digest.getDigestLength();
+
 		// Check for previous mock step 1 then check whether password proof works.
-		if (noSuchUserIdentity || ! computedM1.equals(M1))
+		if (! constantTimeEquals(computedM1, this.M1) || noSuchUserIdentity)
 			throw new SRP6Exception("Bad client credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
 	
 		state = State.STEP_2;
+
+		if (context != null)
+			context.recordAuthentication(userID, v);
 		
 		
 		if (serverEvidenceRoutine != null) {
 		
 			// With custom routine
-			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(A, M1, S);
+			SRP6ServerEvidenceContext ctx = new SRP6ServerEvidenceContext(toBigInteger(A), toBigInteger(M1), toBigInteger(S));
 			
-			M2 = serverEvidenceRoutine.computeServerEvidence(config, ctx);
+			M2 = toBytes(serverEvidenceRoutine.computeServerEvidence(config, ctx), digestLength);
 		}
 		else {
 			// With default routine
-			M2 = srp6Routines.computeServerEvidence(digest, A, M1, S);
+			M2 = computeM2(digest);
 			digest.reset();
 		}
 		
 		updateLastActivityTime();
 		
-		return M2;
+		return toBigInteger(M2);
+	}
+	
+	
+	/**
+	 * Resets this session to {@link State#INIT} so that it can be reused
+	 * for a new authentication attempt. All values from the previous
+	 * attempt are zeroised or dropped, including the session key 'S' and
+	 * the attributes. The crypto parameters, the timeout and any custom
+	 * routines are retained.
+	 *
+	 * <p>The session must not be in use by another thread, and
+	 * references to it from the previous attempt must not be retained.
+	 */
+	public void reset() {
+
+		resetValues();
+		zeroize(expectedM1);
+		noSuchUserIdentity = false;
+		v = null;
+		b = null;
+		expectedM1 = null;
+		state = State.INIT;
+	}
+
+
+	/**
+	 * Resets this session to {@link State#INIT} with new crypto parameters
+	 * so that it can be reused for a new authentication attempt. See
+	 * {@link #reset()}. If the parameters differ from those of the server
+	 * context, the session is detached from the context.
+	 *
+	 * @param config The SRP-6a crypto parameters configuration. Must not
+	 *               be {@code null}.
+	 */
+	public void reset(final SRP6CryptoParams config) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (config.getMessageDigestInstance() == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		reset();
+
+		if (context != null && ! context.getCryptoParams().equals(config))
+			context = null;
+
+		this.config = config;
+	}
+
+
+	/**
+	 * Compacts this successfully authenticated session by zeroising and
+	 * dropping all intermediate protocol values, including the verifier
+	 * 'v' and the server private value 'b'. Only the user identity 'I',
+	 * the session key 'S' and the attributes are retained, the getters
+	 * for the dropped values return {@code null} afterwards.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_2}.
+	 */
+	public void compact() {
+
+		if (state != State.STEP_2)
+			throw new IllegalStateException("State violation: Session must be in STEP_2 state");
+
+		clearIntermediateValues();
+		zeroize(expectedM1);
+		v = null;
+		b = null;
+		expectedM1 = null;
+	}
+
+
+	/**
+	 * Creates an immutable record of this successfully authenticated
+	 * session, retaining only the user identity 'I', the session key 'S'
+	 * and the attributes. The record is independent of this session, 
+	 * which may be {@link #compact compacted} or discarded.
+	 *
+	 * @return The authenticated session.
+	 *
+	 * @throws IllegalStateException If the method is invoked in a state
+	 *                               other than {@link State#STEP_2}.
+	 */
+	public SRP6AuthenticatedSession toAuthenticatedSession() {
+
+		if (state != State.STEP_2)
+			throw new IllegalStateException("State violation: Session must be in STEP_2 state");
+
+		return createAuthenticatedSession();
+	}
+	
+	
+	/**
+	 * Gets the server context of this session.
+	 *
+	 * @return The server context, {@code null} if none.
+	 */
+	public SRP6ServerContext getServerContext() {
+
+		return context;
 	}
 	
 	
@@ -1,10 +1,13 @@
 package com.nimbusds.srp6;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,9 +38,16 @@ public abstract class SRP6Session implements Serializable {
 
 
 	/**
-	 * Source of randomness.
+	 * Shared default source of randomness. SecureRandom is thread-safe.
 	 */
-	protected SecureRandom random = new SecureRandom();
+	private static final SecureRandom DEFAULT_RANDOM = new SecureRandom();
+
+
+	/**
+	 * Source of randomness, shared between sessions unless replaced. Not
+	 * serialised, a deserialised session uses the shared default.
+	 */
+	protected transient SecureRandom random = DEFAULT_RANDOM;
 
 	/**
 	 * The SRP-6a authentication session timeout in seconds. If the 
@@ -61,51 +71,56 @@ public abstract class SRP6Session implements Serializable {
 	
 	
 	/**
-	 * The password salt 's'.
+	 * The password salt 's', unsigned big-endian.
 	 */
-	protected BigInteger s = null;
+	protected byte[] s = null;
 	
 	
 	/**
-	 * The client public value 'A'.
+	 * The client public value 'A', unsigned big-endian padded to the
+	 * length of 'N'.
 	 */
-	protected BigInteger A = null;
+	protected byte[] A = null;
 	
 	
 	/**
-	 * The server public value 'B'.
+	 * The server public value 'B', unsigned big-endian padded to the
+	 * length of 'N'.
 	 */
-	protected BigInteger B = null;
+	protected byte[] B = null;
 	
 	
 	/**
-	 * The random scrambling parameter 'u'.
+	 * The random scrambling parameter 'u', unsigned big-endian.
 	 */
-	protected BigInteger u = null;
+	protected byte[] u = null;
 	
 	
 	/**
-	 * The multiplier 'k'.
+	 * The multiplier 'k', unsigned big-endian.
 	 */
-	protected BigInteger k = null;
+	protected byte[] k = null;
 	
 	
 	/**
-	 * The shared session key 'S'.
+	 * The shared session key 'S', unsigned big-endian padded to the
+	 * length of 'N'.
 	 */
-	protected BigInteger S = null;
+	protected byte[] S = null;
 	
 	
 	/**
-	 * The client evidence message 'M1'.
+	 * The client evidence message 'M1', unsigned big-endian padded to the
+	 * output length of 'H'.
 	 */
-	protected BigInteger M1 = null;
+	protected byte[] M1 = null;
 	
 	
 	/**
-	 * The server evidence message 'M2'.
+	 * The server evidence message 'M2', unsigned big-endian padded to the
+	 * output length of 'H'.
 	 */
-	protected BigInteger M2 = null;
+	protected byte[] M2 = null;
 	
 	
 	/**
@@ -130,6 +145,26 @@ public abstract class SRP6Session implements Serializable {
 	 * Optional storage of arbitrary session attributes.
 	 */
 	private Map<String,Object> attributes = null;
+
+
+	/**
+	 * The cached hash of the session key H(S), {@code null} if not
+	 * computed yet.
+	 */
+	private transient byte[] sessionKeyHash = null;
+
+
+	/**
+	 * The cached key derivation, {@code null} if not created yet.
+	 */
+	private transient SRP6KeyDerivation keyDerivation = null;
+
+
+	/**
+	 * The session key 'S' from which the cached hash and key derivation
+	 * were computed.
+	 */
+	private transient byte[] cachedS = null;
 	
 	
 	/**
@@ -158,18 +193,19 @@ public abstract class SRP6Session implements Serializable {
 	 *                If the authenticating counterparty (server or client)
 	 *                fails to respond within the specified time the
 	 *                session will be closed. If zero timeouts are
-	 *                disabled.
+	 *                disabled. The shared default math routines are
+	 *                used.
 	 */
 	public SRP6Session(final int timeout) {
-		this(timeout, new SRP6Routines());
+		this(timeout, SRP6Routines.DEFAULT);
 	}
 	
 	/**
 	 * Creates a new SRP-6a authentication session, session timeouts are 
-	 * disabled. The default math routines are used.
+	 * disabled. The shared default math routines are used.
 	 */
 	public SRP6Session() {
-		this(0, new SRP6Routines());
+		this(0, SRP6Routines.DEFAULT);
 	}
 
 	/**
@@ -333,7 +369,7 @@ public abstract class SRP6Session implements Serializable {
 	 */
 	public BigInteger getSalt() {
 	
-		return s;
+		return toBigInteger(s);
 	}
 	
 	
@@ -344,7 +380,7 @@ public abstract class SRP6Session implements Serializable {
 	 */
 	public BigInteger getPublicClientValue() {
 	
-		return A;
+		return toBigInteger(A);
 	}
 	
 	
@@ -355,7 +391,7 @@ public abstract class SRP6Session implements Serializable {
 	 */
 	public BigInteger getPublicServerValue() {
 	
-		return B;
+		return toBigInteger(B);
 	}
 	
 	
@@ -367,7 +403,7 @@ public abstract class SRP6Session implements Serializable {
 	 */
 	public BigInteger getClientEvidenceMessage() {
 	
-		return M1;
+		return toBigInteger(M1);
 	}
 	
 	
@@ -379,7 +415,7 @@ public abstract class SRP6Session implements Serializable {
 	 */
 	public BigInteger getServerEvidenceMessage() {
 	
-		return M2;
+		return toBigInteger(M2);
 	}
 
 
@@ -392,7 +428,7 @@ public abstract class SRP6Session implements Serializable {
 	 *         been computed yet.
 	 */
 	public BigInteger getSessionKey() {
-		return S;
+		return toBigInteger(S);
 	}
 	
 	
@@ -409,12 +445,282 @@ public abstract class SRP6Session implements Serializable {
 		if (S == null)
 			return null;
 
-		MessageDigest digest = config.getMessageDigestInstance();
+		ensureCachesFor(S);
 
-		if (digest == null)
-			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
-		
-		return digest.digest(BigIntegerUtils.bigIntegerToBytes(S));
+		if (sessionKeyHash == null) {
+
+			MessageDigest digest = config.getMessageDigestInstance();
+
+			if (digest == null)
+				throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+			SRP6Routines.updateUnpadded(digest, S);
+			sessionKeyHash = digest.digest();
+		}
+
+		return sessionKeyHash.clone();
+	}
+
+
+	/**
+	 * Gets the key derivation for the shared session key 'S', to derive
+	 * labelled keys such as separate encryption and MAC keys. The derived
+	 * keys are cached with this session until it is reset.
+	 *
+	 * @return The key derivation. {@code null} will be returned if
+	 *         authentication failed or the method is invoked in a session
+	 *         state when the session key 'S' has not been computed yet.
+	 */
+	public SRP6KeyDerivation getKeyDerivation() {
+
+		if (S == null)
+			return null;
+
+		ensureCachesFor(S);
+
+		if (keyDerivation == null)
+			keyDerivation = new SRP6KeyDerivation(S);
+
+		return keyDerivation;
+	}
+
+
+	/**
+	 * Drops the cached hash and key derivation if they were computed from
+	 * another session key 'S'.
+	 *
+	 * @param S The current session key 'S', {@code null} if none.
+	 */
+	private void ensureCachesFor(final byte[] S) {
+
+		if (cachedS == S)
+			return;
+
+		clearCaches();
+		cachedS = S;
+	}
+
+
+	/**
+	 * Zeroises and drops the cached hash and key derivation.
+	 */
+	private void clearCaches() {
+
+		zeroize(sessionKeyHash);
+		sessionKeyHash = null;
+
+		if (keyDerivation != null)
+			keyDerivation.destroy();
+
+		keyDerivation = null;
+		cachedS = null;
+	}
+
+
+	/**
+	 * Gets the byte length of the prime 'N', to which the public values
+	 * and the session key are padded.
+	 *
+	 * @return The byte length of 'N'.
+	 */
+	protected int getGroupLength() {
+
+		return (config.N.bitLength() + 7) / 8;
+	}
+
+
+	/**
+	 * Computes the random scrambling parameter u = H(PAD(A) | PAD(B))
+	 * with the math routines. The default routines hash the byte forms
+	 * of 'A' and 'B' directly, routines which override
+	 * {@link SRP6Routines#computeU(MessageDigest, BigInteger, BigInteger,
+	 * BigInteger)} are honoured.
+	 *
+	 * @param digest The hash function 'H', reset.
+	 *
+	 * @return The scrambling parameter 'u'.
+	 */
+	protected byte[] computeU(final MessageDigest digest) {
+
+		if (srp6Routines.getClass() == SRP6Routines.class)
+			return srp6Routines.computeU(digest, A, B);
+
+		return toBytes(srp6Routines.computeU(digest, config.N, toBigInteger(A), toBigInteger(B)), 0);
+	}
+
+
+	/**
+	 * Computes the client evidence message M1 = H(A | B | S) with the math
+	 * routines. The default routines hash the byte forms of the values
+	 * directly, routines which override
+	 * {@link SRP6Routines#computeClientEvidence(MessageDigest, BigInteger,
+	 * BigInteger, BigInteger)} are honoured.
+	 *
+	 * @param digest The hash function 'H', reset.
+	 *
+	 * @return The client evidence message 'M1'.
+	 */
+	protected byte[] computeM1(final MessageDigest digest) {
+
+		if (srp6Routines.getClass() == SRP6Routines.class)
+			return srp6Routines.computeClientEvidence(digest, A, B, S);
+
+		BigInteger M1 = srp6Routines.computeClientEvidence(digest, toBigInteger(A), toBigInteger(B), toBigInteger(S));
+		return toBytes(M1, digest.getDigestLength());
+	}
+
+
+	/**
+	 * Computes the server evidence message M2 = H(A | M1 | S) with the
+	 * math routines. The default routines hash the byte forms of the
+	 * values directly, routines which override
+	 * {@link SRP6Routines#computeServerEvidence(MessageDigest, BigInteger,
+	 * BigInteger, BigInteger)} are honoured.
+	 *
+	 * @param digest The hash function 'H', reset.
+	 *
+	 * @return The server evidence message 'M2'.
+	 */
+	protected byte[] computeM2(final MessageDigest digest) {
+
+		if (srp6Routines.getClass() == SRP6Routines.class)
+			return srp6Routines.computeServerEvidence(digest, A, M1, S);
+
+		BigInteger M2 = srp6Routines.computeServerEvidence(digest, toBigInteger(A), toBigInteger(M1), toBigInteger(S));
+		return toBytes(M2, digest.getDigestLength());
+	}
+
+
+	/**
+	 * Converts the specified non-negative big integer to its unsigned
+	 * big-endian form, padded to the specified minimum length.
+	 *
+	 * @param value  The value, {@code null} if undefined.
+	 * @param length The minimum length in bytes.
+	 *
+	 * @return The byte array, {@code null} if undefined.
+	 */
+	protected static byte[] toBytes(final BigInteger value, final int length) {
+
+		return value != null ? BigIntegerUtils.bigIntegerToBytes(value, length) : null;
+	}
+
+
+	/**
+	 * Creates a big integer view of the specified unsigned big-endian
+	 * value.
+	 *
+	 * @param bytes The value, {@code null} if undefined.
+	 *
+	 * @return The big integer, {@code null} if undefined.
+	 */
+	protected static BigInteger toBigInteger(final byte[] bytes) {
+
+		return bytes != null ? new BigInteger(1, bytes) : null;
+	}
+
+
+	/**
+	 * Compares the specified unsigned big-endian values in time that
+	 * depends only on their lengths, not on their content.
+	 *
+	 * @param a The first value. Must not be {@code null}.
+	 * @param b The second value. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the values are equal.
+	 */
+	protected static boolean constantTimeEquals(final byte[] a, final byte[] b) {
+
+		return MessageDigest.isEqual(a, b);
+	}
+	
+	
+	/**
+	 * Overwrites the specified value with zeros.
+	 *
+	 * @param bytes The value, {@code null} if undefined.
+	 */
+	protected static void zeroize(final byte[] bytes) {
+
+		if (bytes != null)
+			Arrays.fill(bytes, (byte)0);
+	}
+
+
+	/**
+	 * Zeroises and drops the salt 's', the public values 'A' and 'B', the
+	 * scrambling parameter 'u', the multiplier 'k' and the evidence
+	 * messages 'M1' and 'M2', as well as any custom routines. The user
+	 * identity 'I', the session key 'S' and the attributes are retained.
+	 */
+	protected void clearIntermediateValues() {
+
+		zeroize(s);
+		zeroize(A);
+		zeroize(B);
+		zeroize(u);
+		zeroize(k);
+		zeroize(M1);
+		zeroize(M2);
+
+		s = null;
+		A = null;
+		B = null;
+		u = null;
+		k = null;
+		M1 = null;
+		M2 = null;
+
+		clientEvidenceRoutine = null;
+		serverEvidenceRoutine = null;
+		hashedKeysRoutine = null;
+	}
+
+
+	/**
+	 * Zeroises and drops all protocol values, including the session key
+	 * 'S', and clears the user identity 'I' and the attributes. The crypto
+	 * parameters, the timeout and any custom routines are retained. The
+	 * last activity timestamp is updated.
+	 */
+	protected void resetValues() {
+
+		zeroize(s);
+		zeroize(A);
+		zeroize(B);
+		zeroize(u);
+		zeroize(k);
+		zeroize(S);
+		zeroize(M1);
+		zeroize(M2);
+
+		userID = null;
+		s = null;
+		A = null;
+		B = null;
+		u = null;
+		k = null;
+		S = null;
+		M1 = null;
+		M2 = null;
+
+		attributes = null;
+
+		clearCaches();
+
+		updateLastActivityTime();
+	}
+
+
+	/**
+	 * Creates an immutable authenticated session from the user identity
+	 * 'I', the session key 'S' and the attributes of this session.
+	 *
+	 * @return The authenticated session.
+	 */
+	protected SRP6AuthenticatedSession createAuthenticatedSession() {
+
+		return new SRP6AuthenticatedSession(userID, config, S, attributes, lastActivity);
 	}
 	
 	
@@ -459,4 +765,21 @@ public abstract class SRP6Session implements Serializable {
 		
 		return attributes.get(key);
 	}
+	
+	
+	/**
+	 * Restores the shared default source of randomness after
+	 * deserialisation.
+	 *
+	 * @param in The object input stream.
+	 *
+	 * @throws IOException            On an I/O exception.
+	 * @throws ClassNotFoundException If a class could not be found.
+	 */
+	private void readObject(final ObjectInputStream in)
+		throws IOException, ClassNotFoundException {
+
+		in.defaultReadObject();
+		random = DEFAULT_RANDOM;
+	}
 }
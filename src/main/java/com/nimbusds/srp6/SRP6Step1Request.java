@@ -0,0 +1,73 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Server {@link SRP6ServerSession#step1 step one} request in a
+ * {@link SRP6ServerContext#step1 batch}. Consists of the user identity 'I'
+ * received from the client and the matching salt 's' and password verifier
+ * 'v' from the server database, or mock values for a non-existing user.
+ *
+ * <p>The arguments are checked when the batch is processed, so that a bad
+ * request fails on its own.
+ */
+public final class SRP6Step1Request {
+
+
+	/**
+	 * The identity 'I' of the authenticating user.
+	 */
+	public final String userID;
+
+
+	/**
+	 * The password salt 's'.
+	 */
+	public final BigInteger s;
+
+
+	/**
+	 * The password verifier 'v'.
+	 */
+	public final BigInteger v;
+
+
+	/**
+	 * {@code true} for a non-existing user identity with mock salt and
+	 * verifier values, as for {@link SRP6ServerSession#mockStep1}.
+	 */
+	public final boolean mock;
+
+
+	/**
+	 * Creates a new step one request for an existing user.
+	 *
+	 * @param userID The identity 'I' of the authenticating user.
+	 * @param s      The password salt 's'.
+	 * @param v      The password verifier 'v'.
+	 */
+	public SRP6Step1Request(final String userID, final BigInteger s, final BigInteger v) {
+
+		this(userID, s, v, false);
+	}
+
+
+	/**
+	 * Creates a new step one request.
+	 *
+	 * @param userID The identity 'I' of the authenticating user.
+	 * @param s      The password salt 's'.
+	 * @param v      The password verifier 'v'.
+	 * @param mock   {@code true} for a non-existing user identity with
+	 *               mock salt and verifier values.
+	 */
+	public SRP6Step1Request(final String userID, final BigInteger s, final BigInteger v, final boolean mock) {
+
+		this.userID = userID;
+		this.s = s;
+		this.v = v;
+		this.mock = mock;
+	}
+}
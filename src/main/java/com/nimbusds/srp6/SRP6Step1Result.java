@@ -0,0 +1,70 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Result of a server {@link SRP6ServerSession#step1 step one} in a
+ * {@link SRP6ServerContext#step1 batch}. On success holds the server session,
+ * in the {@link SRP6ServerSession.State#STEP_1} state, and its public server
+ * value 'B'; on failure the exception of the request.
+ */
+public final class SRP6Step1Result {
+
+
+	/**
+	 * The server session, {@code null} on failure.
+	 */
+	public final SRP6ServerSession session;
+
+
+	/**
+	 * The public server value 'B', {@code null} on failure.
+	 */
+	public final BigInteger B;
+
+
+	/**
+	 * The exception, {@code null} on success.
+	 */
+	public final RuntimeException exception;
+
+
+	/**
+	 * Creates a new successful step one result.
+	 *
+	 * @param session The server session.
+	 * @param B       The public server value 'B'.
+	 */
+	SRP6Step1Result(final SRP6ServerSession session, final BigInteger B) {
+
+		this.session = session;
+		this.B = B;
+		exception = null;
+	}
+
+
+	/**
+	 * Creates a new failed step one result.
+	 *
+	 * @param exception The exception.
+	 */
+	SRP6Step1Result(final RuntimeException exception) {
+
+		session = null;
+		B = null;
+		this.exception = exception;
+	}
+
+
+	/**
+	 * Returns {@code true} if the step one succeeded.
+	 *
+	 * @return {@code true} on success, else {@code false}.
+	 */
+	public boolean isSuccess() {
+
+		return exception == null;
+	}
+}
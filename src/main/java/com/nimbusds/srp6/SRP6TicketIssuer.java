@@ -0,0 +1,486 @@
+package com.nimbusds.srp6;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Issuer of session resumption tickets, for fast re-authentication of
+ * clients which have completed a full SRP-6a handshake.
+ *
+ * <p>Both sides derive a resumption secret from the shared session key 'S'.
+ * The server {@link #issue issues} an encrypted, expiring ticket which binds
+ * the secret to the user identity 'I' and the crypto parameters, and the
+ * client keeps the ticket with the secret in a
+ * {@link SRP6ResumptionTicket}. To resume, the client sends the ticket with
+ * a fresh nonce and an HMAC proof of the secret, and the server
+ * {@link #resume replies} with its own nonce and proof. Both sides then
+ * derive a fresh session key from the secret and the nonces. A resumption
+ * takes no modular exponentiations.
+ *
+ * <p>Tickets are single-use: the IDs of redeemed tickets are kept in a
+ * bounded in-memory cache until they expire. If the cache is full of
+ * unexpired entries resumption is refused, and the client falls back to a
+ * full handshake. The cache is local to this issuer, servers which share
+ * the ticket key must route resumptions of a ticket to the same issuer or
+ * accept that a ticket may be redeemed once per issuer.
+ *
+ * <p>Tickets are encrypted with AES-128 in CBC mode and authenticated with
+ * HMAC SHA-256 (encrypt-then-MAC), with keys derived from the ticket key
+ * by HKDF. The resumption secret, the proofs and the resumed session key
+ * are derived with HKDF and HMAC SHA-256.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6TicketIssuer {
+
+
+	/**
+	 * The ticket format version.
+	 */
+	private static final byte VERSION = 1;
+
+
+	/**
+	 * The minimum ticket key length in bytes.
+	 */
+	public static final int MIN_KEY_LENGTH = 32;
+
+
+	/**
+	 * The nonce length in bytes.
+	 */
+	public static final int NONCE_LENGTH = 32;
+
+
+	/**
+	 * The ticket ID length in bytes.
+	 */
+	private static final int TICKET_ID_LENGTH = 16;
+
+
+	/**
+	 * The AES block length in bytes.
+	 */
+	private static final int IV_LENGTH = 16;
+
+
+	/**
+	 * The HMAC SHA-256 length in bytes.
+	 */
+	private static final int MAC_LENGTH = 32;
+
+
+	/**
+	 * The resumption secret length in bytes.
+	 */
+	static final int SECRET_LENGTH = 32;
+
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The ticket encryption key.
+	 */
+	private final SecretKeySpec encKey;
+
+
+	/**
+	 * The ticket MAC key.
+	 */
+	private final byte[] macKey;
+
+
+	/**
+	 * The ticket lifetime in milliseconds.
+	 */
+	private final long lifetime;
+
+
+	/**
+	 * The maximum number of redeemed ticket IDs to keep.
+	 */
+	private final int maxReplayEntries;
+
+
+	/**
+	 * The redeemed ticket IDs and their expiration times, in redemption
+	 * order. Guarded by this issuer.
+	 */
+	private final Map<ByteBuffer,Long> redeemed = new LinkedHashMap<>();
+
+
+	/**
+	 * Source of randomness for ticket IDs, IVs and nonces.
+	 */
+	private final SecureRandom random = new SecureRandom();
+
+
+	/**
+	 * Creates a new ticket issuer.
+	 *
+	 * @param ticketKey        The ticket key, at least
+	 *                         {@link #MIN_KEY_LENGTH} random bytes. Must
+	 *                         be kept secret and may be shared by servers
+	 *                         which accept each other's tickets. Must not
+	 *                         be {@code null}.
+	 * @param lifetime         The ticket lifetime. Must be positive.
+	 * @param unit             The time unit of the lifetime. Must not be
+	 *                         {@code null}.
+	 * @param maxReplayEntries The maximum number of redeemed ticket IDs to
+	 *                         keep for replay detection. Must be positive.
+	 */
+	public SRP6TicketIssuer(final byte[] ticketKey,
+	                        final long lifetime,
+	                        final TimeUnit unit,
+	                        final int maxReplayEntries) {
+
+		if (ticketKey == null || ticketKey.length < MIN_KEY_LENGTH)
+			throw new IllegalArgumentException("The ticket key must be at least " + MIN_KEY_LENGTH + " bytes");
+
+		if (lifetime <= 0)
+			throw new IllegalArgumentException("The ticket lifetime must be positive");
+
+		if (unit == null)
+			throw new IllegalArgumentException("The time unit must not be null");
+
+		if (maxReplayEntries < 1)
+			throw new IllegalArgumentException("The maximum number of replay entries must be at least 1");
+
+		byte[] prk = HKDF.extract(HKDF.HMAC_SHA256, null, ticketKey);
+		byte[] keys = new byte[16 + MAC_LENGTH];
+		HKDF.expand(HKDF.HMAC_SHA256, prk, "SRP-6a ticket keys".getBytes(UTF8), keys, 0, keys.length);
+
+		encKey = new SecretKeySpec(keys, 0, 16, "AES");
+		macKey = Arrays.copyOfRange(keys, 16, keys.length);
+
+		Arrays.fill(prk, (byte)0);
+		Arrays.fill(keys, (byte)0);
+
+		this.lifetime = unit.toMillis(lifetime);
+		this.maxReplayEntries = maxReplayEntries;
+	}
+
+
+	/**
+	 * Gets the ticket lifetime.
+	 *
+	 * @return The ticket lifetime in milliseconds.
+	 */
+	public long getLifetime() {
+
+		return lifetime;
+	}
+
+
+	/**
+	 * Issues a resumption ticket for the specified authenticated session,
+	 * e.g. from {@link SRP6ServerSession#toAuthenticatedSession} after a
+	 * full handshake, or from a previous resumption. The crypto parameters
+	 * of the session are {@link SRP6CryptoParams#intern interned}.
+	 *
+	 * @param session The authenticated session. Must not be {@code null}.
+	 *
+	 * @return The ticket, to send to the client.
+	 */
+	public byte[] issue(final SRP6AuthenticatedSession session) {
+
+		if (session == null)
+			throw new IllegalArgumentException("The authenticated session must not be null");
+
+		byte[] ticketID = new byte[TICKET_ID_LENGTH];
+		byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(ticketID);
+		random.nextBytes(iv);
+
+		SRP6CryptoParams config = SRP6CryptoParams.intern(session.getCryptoParams());
+		byte[] secret = deriveSecret(session);
+
+		byte[] userID = session.getUserID().getBytes(UTF8);
+
+		if (userID.length > 0xffff)
+			throw new IllegalArgumentException("The user identity 'I' must not exceed 65535 bytes");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.write(ticketID);
+			out.writeLong(System.currentTimeMillis() + lifetime);
+			out.write(config.getId().getBytes(UTF8));
+			out.writeShort(userID.length);
+			out.write(userID);
+			out.write(secret);
+
+		} catch (IOException e) {
+
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+
+		byte[] plaintext = bytes.toByteArray();
+
+		try {
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.ENCRYPT_MODE, encKey, new IvParameterSpec(iv));
+			byte[] ciphertext = cipher.doFinal(plaintext);
+
+			byte[] ticket = new byte[1 + IV_LENGTH + ciphertext.length + MAC_LENGTH];
+			ticket[0] = VERSION;
+			System.arraycopy(iv, 0, ticket, 1, IV_LENGTH);
+			System.arraycopy(ciphertext, 0, ticket, 1 + IV_LENGTH, ciphertext.length);
+
+			Mac mac = HKDF.newMac(HKDF.HMAC_SHA256, macKey);
+			mac.update(ticket, 0, ticket.length - MAC_LENGTH);
+			mac.doFinal(ticket, ticket.length - MAC_LENGTH);
+
+			return ticket;
+
+		} catch (GeneralSecurityException e) {
+
+			throw new IllegalStateException("Ticket encryption failed: " + e.getMessage(), e);
+
+		} finally {
+			Arrays.fill(secret, (byte)0);
+			Arrays.fill(plaintext, (byte)0);
+		}
+	}
+
+
+	/**
+	 * Processes a session resumption request from a client. On success
+	 * the ticket is redeemed and cannot be used again.
+	 *
+	 * @param request The resumption request. Must not be {@code null}.
+	 *
+	 * @return The response, to send to the client, with the resumed
+	 *         {@link SRP6ResumptionResponse#getSession session}.
+	 *
+	 * @throws SRP6Exception If the ticket has expired, or the ticket or
+	 *                       the client proof are invalid, or the ticket
+	 *                       was already redeemed.
+	 */
+	public SRP6ResumptionResponse resume(final SRP6ResumptionRequest request)
+		throws SRP6Exception {
+
+		if (request == null)
+			throw new IllegalArgumentException("The resumption request must not be null");
+
+		if (request.nonce.length != NONCE_LENGTH)
+			throw new SRP6Exception("Bad client nonce", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		final byte[] ticket = request.ticket;
+
+		if (ticket.length < 1 + IV_LENGTH + 16 + MAC_LENGTH || ticket[0] != VERSION)
+			throw new SRP6Exception("Bad resumption ticket", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		// Check the MAC before decrypting
+		Mac mac = HKDF.newMac(HKDF.HMAC_SHA256, macKey);
+		mac.update(ticket, 0, ticket.length - MAC_LENGTH);
+
+		if (! MessageDigest.isEqual(mac.doFinal(), Arrays.copyOfRange(ticket, ticket.length - MAC_LENGTH, ticket.length)))
+			throw new SRP6Exception("Bad resumption ticket", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		byte[] plaintext;
+
+		try {
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.DECRYPT_MODE, encKey, new IvParameterSpec(ticket, 1, IV_LENGTH));
+			plaintext = cipher.doFinal(ticket, 1 + IV_LENGTH, ticket.length - 1 - IV_LENGTH - MAC_LENGTH);
+
+		} catch (GeneralSecurityException e) {
+
+			throw new SRP6Exception("Bad resumption ticket", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		}
+
+		ByteBuffer buf = ByteBuffer.wrap(plaintext);
+
+		if (buf.remaining() < TICKET_ID_LENGTH + 8 + 16 + 2 + SECRET_LENGTH) {
+			Arrays.fill(plaintext, (byte)0);
+			throw new SRP6Exception("Bad resumption ticket", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		}
+
+		byte[] ticketID = new byte[TICKET_ID_LENGTH];
+		buf.get(ticketID);
+		final long expires = buf.getLong();
+		byte[] id = new byte[16];
+		buf.get(id);
+
+		final int userIDLength = buf.getShort() & 0xffff;
+
+		if (userIDLength != buf.remaining() - SECRET_LENGTH) {
+			Arrays.fill(plaintext, (byte)0);
+			throw new SRP6Exception("Bad resumption ticket", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		}
+
+		String userID = new String(plaintext, buf.position(), userIDLength, UTF8);
+		buf.position(buf.position() + userIDLength);
+		byte[] secret = new byte[SECRET_LENGTH];
+		buf.get(secret);
+		Arrays.fill(plaintext, (byte)0);
+
+		try {
+			final long now = System.currentTimeMillis();
+
+			if (now >= expires)
+				throw new SRP6Exception("Resumption ticket expired", SRP6Exception.CauseType.TIMEOUT);
+
+			SRP6CryptoParams config = SRP6CryptoParams.forId(new String(id, UTF8));
+
+			if (config == null)
+				throw new SRP6Exception("Unknown crypto parameters of resumption ticket", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+			if (! MessageDigest.isEqual(computeClientProof(secret, ticket, request.nonce), request.proof))
+				throw new SRP6Exception("Bad client credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+			redeem(ticketID, expires, now);
+
+			byte[] nonce = new byte[NONCE_LENGTH];
+			random.nextBytes(nonce);
+
+			byte[] key = deriveSessionKey(secret, request.nonce, nonce, (config.N.bitLength() + 7) / 8);
+			SRP6AuthenticatedSession session = new SRP6AuthenticatedSession(userID, config, key, null, now);
+			Arrays.fill(key, (byte)0);
+
+			return new SRP6ResumptionResponse(nonce, computeServerProof(secret, ticket, request.nonce, nonce), session);
+
+		} finally {
+			Arrays.fill(secret, (byte)0);
+		}
+	}
+
+
+	/**
+	 * Records the redemption of the specified ticket.
+	 *
+	 * @param ticketID The ticket ID.
+	 * @param expires  The ticket expiration time.
+	 * @param now      The current time.
+	 *
+	 * @throws SRP6Exception If the ticket was already redeemed, or the
+	 *                       replay cache is full of unexpired entries.
+	 */
+	private synchronized void redeem(final byte[] ticketID, final long expires, final long now)
+		throws SRP6Exception {
+
+		ByteBuffer key = ByteBuffer.wrap(ticketID);
+
+		if (redeemed.containsKey(key))
+			throw new SRP6Exception("Resumption ticket already redeemed", SRP6Exception.CauseType.BAD_CREDENTIALS);
+
+		if (redeemed.size() >= maxReplayEntries) {
+
+			for (Iterator<Long> it = redeemed.values().iterator(); it.hasNext(); ) {
+
+				if (it.next() <= now)
+					it.remove();
+			}
+
+			// Refuse rather than forget an unexpired ticket
+			if (redeemed.size() >= maxReplayEntries)
+				throw new SRP6Exception("Resumption replay cache full", SRP6Exception.CauseType.BAD_CREDENTIALS);
+		}
+
+		redeemed.put(key, expires);
+	}
+
+
+	/**
+	 * Derives the resumption secret from the session key of the specified
+	 * authenticated session.
+	 *
+	 * @param session The authenticated session.
+	 *
+	 * @return The resumption secret.
+	 */
+	static byte[] deriveSecret(final SRP6AuthenticatedSession session) {
+
+		return session.getKeyDerivation().deriveKey("SRP-6a resumption secret", SECRET_LENGTH);
+	}
+
+
+	/**
+	 * Computes the client proof.
+	 *
+	 * @param secret The resumption secret.
+	 * @param ticket The ticket.
+	 * @param nonce  The client nonce.
+	 *
+	 * @return The client proof.
+	 */
+	static byte[] computeClientProof(final byte[] secret, final byte[] ticket, final byte[] nonce) {
+
+		Mac mac = HKDF.newMac(HKDF.HMAC_SHA256, secret);
+		mac.update("SRP-6a resumption client".getBytes(UTF8));
+		mac.update(ticket);
+		mac.update(nonce);
+		return mac.doFinal();
+	}
+
+
+	/**
+	 * Computes the server proof.
+	 *
+	 * @param secret      The resumption secret.
+	 * @param ticket      The ticket.
+	 * @param clientNonce The client nonce.
+	 * @param serverNonce The server nonce.
+	 *
+	 * @return The server proof.
+	 */
+	static byte[] computeServerProof(final byte[] secret,
+	                                 final byte[] ticket,
+	                                 final byte[] clientNonce,
+	                                 final byte[] serverNonce) {
+
+		Mac mac = HKDF.newMac(HKDF.HMAC_SHA256, secret);
+		mac.update("SRP-6a resumption server".getBytes(UTF8));
+		mac.update(ticket);
+		mac.update(clientNonce);
+		mac.update(serverNonce);
+		return mac.doFinal();
+	}
+
+
+	/**
+	 * Derives the session key of a resumed session.
+	 *
+	 * @param secret      The resumption secret.
+	 * @param clientNonce The client nonce.
+	 * @param serverNonce The server nonce.
+	 * @param length      The key length, the byte length of 'N'.
+	 *
+	 * @return The session key.
+	 */
+	static byte[] deriveSessionKey(final byte[] secret,
+	                               final byte[] clientNonce,
+	                               final byte[] serverNonce,
+	                               final int length) {
+
+		byte[] salt = new byte[clientNonce.length + serverNonce.length];
+		System.arraycopy(clientNonce, 0, salt, 0, clientNonce.length);
+		System.arraycopy(serverNonce, 0, salt, clientNonce.length, serverNonce.length);
+
+		return HKDF.derive(HKDF.HMAC_SHA256, salt, secret, "SRP-6a resumed session key".getBytes(UTF8), length);
+	}
+}
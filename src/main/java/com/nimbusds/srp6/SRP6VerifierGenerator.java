@@ -38,7 +38,7 @@ public class SRP6VerifierGenerator {
 	 *                be {@code null}.
 	 */
 	public SRP6VerifierGenerator(final SRP6CryptoParams config) {
-		this(config, new SRP6Routines());
+		this(config, SRP6Routines.DEFAULT);
 	}
 
 	/**
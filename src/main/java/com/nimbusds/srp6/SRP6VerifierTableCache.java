@@ -0,0 +1,615 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Bounded cache of {@link FixedBaseTable fixed-base tables} for the password
+ * verifiers 'v' of frequently authenticating users, such as service accounts
+ * and kiosks. The tables speed up the computation of v^u (mod N) at server
+ * {@link SRP6ServerSession#step2 step two}, which otherwise uses a
+ * variable-base exponentiation on every authentication.
+ *
+ * <p>Tables are keyed by user identity 'I' and verifier 'v', so that a
+ * changed verifier is never matched with a stale table. A table is built
+ * only after a user has successfully authenticated
+ * {@code admissionThreshold} times, and the number of tables is bounded.
+ * When the cache is full a new table replaces the least used one, if the
+ * new user is hotter. Use counts are halved periodically so that users who
+ * stop authenticating are eventually evicted.
+ *
+ * <p>Tables are built in the background, by default on a shared daemon
+ * thread, so that the authentication which admits a user doesn't wait for
+ * the table. Until the table is ready the user's sessions compute v^u
+ * without it.
+ *
+ * <p>The tables cover exponents of the output length of the hash function
+ * 'H', the length of the default scrambling parameter 'u'. With a 4-bit
+ * window a table holds 15 values per 4 bits of 'u', e.g. about 300 KiB for
+ * a 2048-bit group with SHA-256, see {@link #getMemorySize}.
+ *
+ * <p>The cache is enabled by passing it to a
+ * {@link SRP6ServerContext server context}.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6VerifierTableCache {
+
+
+	/**
+	 * The default number of authentications before a table is built.
+	 */
+	public static final int DEFAULT_ADMISSION_THRESHOLD = 16;
+
+
+	/**
+	 * The window width of the tables in bits.
+	 */
+	private static final int WINDOW_BITS = FixedBaseTable.DEFAULT_WINDOW_BITS;
+
+
+	/**
+	 * Holder of the default executor for building tables, started on
+	 * first use.
+	 */
+	private static final class DefaultExecutor {
+
+
+		static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+
+				Thread t = new Thread(r, "srp6-verifier-tables");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+
+	/**
+	 * Cache key.
+	 */
+	private static final class Key {
+
+
+		final String userID;
+
+
+		final BigInteger v;
+
+
+		Key(final String userID, final BigInteger v) {
+
+			this.userID = userID;
+			this.v = v;
+		}
+
+
+		@Override
+		public boolean equals(final Object o) {
+
+			return o instanceof Key && userID.equals(((Key)o).userID) && v.equals(((Key)o).v);
+		}
+
+
+		@Override
+		public int hashCode() {
+
+			return userID.hashCode() * 31 + v.hashCode();
+		}
+	}
+
+
+	/**
+	 * Cached table with use count.
+	 */
+	private static final class Entry {
+
+
+		final FixedBaseTable table;
+
+
+		int uses;
+
+
+		Entry(final FixedBaseTable table, final int uses) {
+
+			this.table = table;
+			this.uses = uses;
+		}
+	}
+
+
+	/**
+	 * The crypto parameters.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The maximum number of tables.
+	 */
+	private final int maxEntries;
+
+
+	/**
+	 * The number of authentications before a table is built.
+	 */
+	private final int admissionThreshold;
+
+
+	/**
+	 * The maximum exponent bit length covered by the tables.
+	 */
+	private final int exponentBits;
+
+
+	/**
+	 * The cached tables.
+	 */
+	private final Map<Key,Entry> tables = new LinkedHashMap<>();
+
+
+	/**
+	 * Use counts of users without a table, the least recently used are
+	 * forgotten first.
+	 */
+	private final Map<Key,int[]> candidates;
+
+
+	/**
+	 * Use counts of users whose table is being built.
+	 */
+	private final Map<Key,int[]> building = new HashMap<>();
+
+
+	/**
+	 * The executor for building tables.
+	 */
+	private final Executor executor;
+
+
+	/**
+	 * Recorded authentications since the use counts were last halved.
+	 */
+	private int recordsSinceDecay = 0;
+
+
+	/**
+	 * The number of lookups which found a table.
+	 */
+	private long hitCount = 0;
+
+
+	/**
+	 * The number of lookups which found no table.
+	 */
+	private long missCount = 0;
+
+
+	/**
+	 * Creates a new verifier table cache with the
+	 * {@link #DEFAULT_ADMISSION_THRESHOLD default admission threshold}.
+	 *
+	 * @param config     The SRP-6a crypto parameters. Must not be
+	 *                   {@code null}.
+	 * @param maxEntries The maximum number of cached tables. Must be at
+	 *                   least one.
+	 */
+	public SRP6VerifierTableCache(final SRP6CryptoParams config, final int maxEntries) {
+
+		this(config, maxEntries, DEFAULT_ADMISSION_THRESHOLD);
+	}
+
+
+	/**
+	 * Creates a new verifier table cache, which builds the tables on a
+	 * shared daemon thread.
+	 *
+	 * @param config             The SRP-6a crypto parameters. Must not be
+	 *                           {@code null}.
+	 * @param maxEntries         The maximum number of cached tables. Must
+	 *                           be at least one.
+	 * @param admissionThreshold The number of authentications of a user
+	 *                           before a table is built. Must be at least
+	 *                           one.
+	 */
+	public SRP6VerifierTableCache(final SRP6CryptoParams config,
+	                              final int maxEntries,
+	                              final int admissionThreshold) {
+
+		this(config, maxEntries, admissionThreshold, null);
+	}
+
+
+	/**
+	 * Creates a new verifier table cache.
+	 *
+	 * @param config             The SRP-6a crypto parameters. Must not be
+	 *                           {@code null}.
+	 * @param maxEntries         The maximum number of cached tables. Must
+	 *                           be at least one.
+	 * @param admissionThreshold The number of authentications of a user
+	 *                           before a table is built. Must be at least
+	 *                           one.
+	 * @param executor           The executor for building the tables,
+	 *                           {@code null} to use a shared daemon
+	 *                           thread. If a build is rejected the user
+	 *                           is admitted again later.
+	 */
+	public SRP6VerifierTableCache(final SRP6CryptoParams config,
+	                              final int maxEntries,
+	                              final int admissionThreshold,
+	                              final Executor executor) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (config.getMessageDigestInstance() == null)
+			throw new IllegalArgumentException("Unsupported hash algorithm 'H': " + config.H);
+
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("The maximum number of entries must be at least one");
+
+		if (admissionThreshold < 1)
+			throw new IllegalArgumentException("The admission threshold must be at least one");
+
+		this.config = config;
+		this.maxEntries = maxEntries;
+		this.admissionThreshold = admissionThreshold;
+		this.executor = executor != null ? executor : DefaultExecutor.INSTANCE;
+		exponentBits = config.getMessageDigestInstance().getDigestLength() * 8;
+
+		final int maxCandidates = maxEntries * 8;
+
+		candidates = new LinkedHashMap<Key,int[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key,int[]> eldest) {
+
+				return size() > maxCandidates;
+			}
+		};
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters.
+	 *
+	 * @return The SRP-6a crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return config;
+	}
+
+
+	/**
+	 * Gets the maximum number of cached tables.
+	 *
+	 * @return The maximum number of tables.
+	 */
+	public int getMaxEntries() {
+
+		return maxEntries;
+	}
+
+
+	/**
+	 * Gets the number of authentications of a user before a table is
+	 * built.
+	 *
+	 * @return The admission threshold.
+	 */
+	public int getAdmissionThreshold() {
+
+		return admissionThreshold;
+	}
+
+
+	/**
+	 * Gets the number of cached tables.
+	 *
+	 * @return The number of tables.
+	 */
+	public synchronized int size() {
+
+		return tables.size();
+	}
+
+
+	/**
+	 * Gets the number of lookups which found a table.
+	 *
+	 * @return The hit count.
+	 */
+	public synchronized long getHitCount() {
+
+		return hitCount;
+	}
+
+
+	/**
+	 * Gets the number of lookups which found no table.
+	 *
+	 * @return The miss count.
+	 */
+	public synchronized long getMissCount() {
+
+		return missCount;
+	}
+
+
+	/**
+	 * Returns an estimate of the heap size of the cached tables.
+	 *
+	 * @return The estimated size in bytes.
+	 */
+	public synchronized long getMemorySize() {
+
+		long size = 0;
+
+		for (Entry e: tables.values())
+			size += e.table.getMemorySize();
+
+		return size;
+	}
+
+
+	/**
+	 * Gets the table for the specified user and verifier.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 *
+	 * @return The table, {@code null} if none.
+	 */
+	public synchronized FixedBaseTable get(final String userID, final BigInteger v) {
+
+		Entry entry = tables.get(new Key(userID, v));
+
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+
+		hitCount++;
+		return entry.table;
+	}
+
+
+	/**
+	 * Records a successful authentication of the specified user, and
+	 * schedules the table for the verifier to be built if the user has
+	 * become hot. Only successful authentications are counted, so that
+	 * clients without the password cannot cause tables to be built.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 * @param v      The password verifier 'v'. Must not be {@code null}.
+	 */
+	public void recordAuthentication(final String userID, final BigInteger v) {
+
+		if (v.signum() <= 0 || v.compareTo(config.N) >= 0)
+			return;
+
+		final Key key = new Key(userID, v);
+		final int[] count;
+
+		synchronized (this) {
+
+			if (++recordsSinceDecay >= maxEntries * 16)
+				decay();
+
+			Entry entry = tables.get(key);
+
+			if (entry != null) {
+				entry.uses++;
+				return;
+			}
+
+			int[] pending = building.get(key);
+
+			if (pending != null) {
+				pending[0]++;
+				return;
+			}
+
+			int[] candidate = candidates.get(key);
+
+			if (candidate == null) {
+				candidate = new int[1];
+				candidates.put(key, candidate);
+			}
+
+			candidate[0]++;
+
+			if (candidate[0] < admissionThreshold || ! hasRoom(candidate[0]))
+				return;
+
+			candidates.remove(key);
+			building.put(key, candidate);
+			count = candidate;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					build(key, count);
+				}
+			});
+
+		} catch (RejectedExecutionException e) {
+
+			synchronized (this) {
+				building.remove(key);
+			}
+		}
+	}
+
+
+	/**
+	 * Builds the table for the specified user and verifier, and caches
+	 * it unless the user was removed in the meantime.
+	 *
+	 * @param key   The user identity and verifier.
+	 * @param count The use count of the user.
+	 */
+	private void build(final Key key, final int[] count) {
+
+		FixedBaseTable table = null;
+
+		try {
+			table = new FixedBaseTable(config.N, key.v, WINDOW_BITS, exponentBits);
+
+		} finally {
+
+			synchronized (this) {
+
+				if (building.get(key) == count) {
+
+					building.remove(key);
+
+					if (table != null && makeRoom(count[0]))
+						tables.put(key, new Entry(table, count[0]));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Removes the specified user's table, e.g. after a password change.
+	 *
+	 * @param userID The user identity 'I'. Must not be {@code null}.
+	 */
+	public synchronized void remove(final String userID) {
+
+		for (Iterator<Key> it = tables.keySet().iterator(); it.hasNext(); ) {
+
+			if (it.next().userID.equals(userID))
+				it.remove();
+		}
+
+		for (Iterator<Key> it = candidates.keySet().iterator(); it.hasNext(); ) {
+
+			if (it.next().userID.equals(userID))
+				it.remove();
+		}
+
+		for (Iterator<Key> it = building.keySet().iterator(); it.hasNext(); ) {
+
+			if (it.next().userID.equals(userID))
+				it.remove();
+		}
+	}
+
+
+	/**
+	 * Removes all tables and use counts. Tables which are being built are
+	 * discarded.
+	 */
+	public synchronized void clear() {
+
+		tables.clear();
+		candidates.clear();
+		building.clear();
+	}
+
+
+	/**
+	 * Returns {@code true} if there is room for a new table, or if the
+	 * cache is full and the least used table is less used than the new
+	 * one. Must be called with the lock held.
+	 *
+	 * @param uses The use count of the new table.
+	 *
+	 * @return {@code true} if there is or can be made room for the new
+	 *         table.
+	 */
+	private boolean hasRoom(final int uses) {
+
+		if (tables.size() < maxEntries)
+			return true;
+
+		return findColdest().getValue().uses < uses;
+	}
+
+
+	/**
+	 * Makes room for a new table, by evicting the least used table if the
+	 * cache is full and that table is less used than the new one. Must be
+	 * called with the lock held.
+	 *
+	 * @param uses The use count of the new table.
+	 *
+	 * @return {@code true} if there is room for the new table.
+	 */
+	private boolean makeRoom(final int uses) {
+
+		if (tables.size() < maxEntries)
+			return true;
+
+		Map.Entry<Key,Entry> coldest = findColdest();
+
+		if (coldest.getValue().uses >= uses)
+			return false;
+
+		tables.remove(coldest.getKey());
+		return true;
+	}
+
+
+	/**
+	 * Finds the least used table. Must be called with the lock held.
+	 *
+	 * @return The least used table, {@code null} if none.
+	 */
+	private Map.Entry<Key,Entry> findColdest() {
+
+		Map.Entry<Key,Entry> coldest = null;
+
+		for (Map.Entry<Key,Entry> e: tables.entrySet()) {
+
+			if (coldest == null || e.getValue().uses < coldest.getValue().uses)
+				coldest = e;
+		}
+
+		return coldest;
+	}
+
+
+	/**
+	 * Halves all use counts. Must be called with the lock held.
+	 */
+	private void decay() {
+
+		recordsSinceDecay = 0;
+
+		for (Entry e: tables.values())
+			e.uses >>>= 1;
+
+		for (Iterator<int[]> it = candidates.values().iterator(); it.hasNext(); ) {
+
+			int[] count = it.next();
+			count[0] >>>= 1;
+
+			if (count[0] == 0)
+				it.remove();
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.nimbusds.srp6;
 
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 
 
@@ -14,11 +15,29 @@ import java.security.MessageDigest;
  * {@link SRP6ClientSession} to replace the
  * {@link SRP6Routines#computeX default routine} x = H(s | H(P)).
  *
+ * <p>The hash states after the constant prefix I | ":" are cached for up
+ * to {@link #MAX_CACHED_IDENTITIES} recently used identities, so that
+ * repeated computations for the same user hash only the password. Hashes
+ * of the password itself are never cached.
+ *
  * @author Vladimir Dzhuvinov
  */
 public class XRoutineWithUserIdentity implements XRoutine {
 
 
+	/**
+	 * The maximum number of user identities for which the hash state
+	 * after I | ":" is cached.
+	 */
+	public static final int MAX_CACHED_IDENTITIES = 1024;
+
+
+	/**
+	 * The cached hash states after I | ":", keyed by 'I'.
+	 */
+	private static final DigestMidstateCache I_PREFIXES = new DigestMidstateCache(MAX_CACHED_IDENTITIES);
+
+
 	/**
 	 * Computes x = H(s | H(I | ":" | P))
 	 *
@@ -37,11 +56,20 @@ public class XRoutineWithUserIdentity implements XRoutine {
 				   final byte[] username,
 				   final byte[] password) {
 	
-		digest.update(username);
-		digest.update((byte)':');
-		digest.update(password);
+		ByteBuffer prefix = ByteBuffer.wrap(username);
+
+		MessageDigest state = I_PREFIXES.get(digest, prefix);
+
+		if (state == null) {
+			state = digest;
+			state.update(username);
+			state.update((byte)':');
+			I_PREFIXES.put(state, ByteBuffer.wrap(username.clone()));
+		}
+
+		state.update(password);
 		
-		byte[] output = digest.digest();
+		byte[] output = state.digest();
 		
 		digest.update(salt);
 		output = digest.digest(output);
@@ -0,0 +1,1070 @@
+package com.nimbusds.srp6.cli;
+
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6ServerContext;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+import com.nimbusds.srp6.net.SRP6NetClient;
+import com.nimbusds.srp6.net.SRP6NetServer;
+import com.nimbusds.srp6.net.SRP6ServerBusyException;
+import com.nimbusds.srp6.net.SRP6VerifierRecord;
+import com.nimbusds.srp6.net.SRP6VerifierSource;
+import com.nimbusds.srp6.server.SRP6HandshakeScheduler;
+
+
+/**
+ * Command-line load generator for Secure Remote Password (SRP-6a) servers.
+ * Drives many concurrent {@link SRP6ClientSession client handshakes} and
+ * records latency histograms for each step, for capacity planning.
+ *
+ * <p>Targets:
+ *
+ * <ul>
+ *     <li>{@code inproc} Handshakes against {@link SRP6ServerSession}
+ *         instances in the same process, without networking.
+ *     <li>{@code loopback} Handshakes against a {@link SRP6NetServer}
+ *         started in the same process on the loopback interface.
+ *     <li>{@code host:port} Handshakes against a remote
+ *         {@link SRP6NetServer}, which must know the user identity and
+ *         password given with {@code --user} and {@code --password}.
+ * </ul>
+ *
+ * <p>Workload models:
+ *
+ * <ul>
+ *     <li>{@link Model#CLOSED closed} A fixed number of virtual users, each
+ *         starting a new handshake as soon as its previous one completed.
+ *     <li>{@link Model#OPEN open} Handshakes arrive at the configured rate
+ *         (Poisson arrivals) regardless of the server's progress. The total
+ *         latency is measured from the intended arrival time, so that
+ *         queueing in the load generator is not hidden.
+ * </ul>
+ *
+ * <p>The recorded steps are {@code step1} (HELLO round trip, server step
+ * one), {@code step2} (client step two and PROOF round trip, server step
+ * two), {@code step3} (client step three) and {@code total}. The report can
+ * be printed as text, CSV or JSON.
+ */
+public class SRP6LoadGenerator {
+
+
+	/**
+	 * Enumerates the workload models.
+	 */
+	public static enum Model {
+
+
+		/**
+		 * Fixed arrival rate, regardless of the completion of previous
+		 * handshakes.
+		 */
+		OPEN,
+
+
+		/**
+		 * Fixed number of virtual users, each performing handshakes
+		 * back to back.
+		 */
+		CLOSED
+	}
+
+
+	/**
+	 * Thread-safe latency histogram with logarithmic buckets of about 3%
+	 * relative precision. Values are recorded in microseconds.
+	 */
+	public static class Histogram {
+
+
+		/**
+		 * The number of linear buckets, and twice the number of buckets
+		 * per power of two above them.
+		 */
+		private static final int SUB_BUCKETS = 64;
+
+
+		/**
+		 * The number of buckets, covering values up to 2^40.
+		 */
+		private static final int BUCKETS = SUB_BUCKETS + 35 * (SUB_BUCKETS / 2);
+
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+
+		private final AtomicLong count = new AtomicLong();
+
+
+		private final AtomicLong sum = new AtomicLong();
+
+
+		private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+
+		private final AtomicLong max = new AtomicLong(0L);
+
+
+		static int bucketIndex(final long value) {
+
+			if (value < SUB_BUCKETS)
+				return (int)Math.max(0L, value);
+
+			int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+			int index = SUB_BUCKETS + (shift - 1) * (SUB_BUCKETS / 2) + (int)((value >> shift) - SUB_BUCKETS / 2);
+			return Math.min(index, BUCKETS - 1);
+		}
+
+
+		static long highestEquivalentValue(final int index) {
+
+			if (index < SUB_BUCKETS)
+				return index;
+
+			int shift = (index - SUB_BUCKETS) / (SUB_BUCKETS / 2) + 1;
+			long mantissa = (index - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+			return ((mantissa + 1) << shift) - 1;
+		}
+
+
+		/**
+		 * Records a value.
+		 *
+		 * @param micros The value, in microseconds.
+		 */
+		public void record(final long micros) {
+
+			counts.incrementAndGet(bucketIndex(micros));
+			count.incrementAndGet();
+			sum.addAndGet(micros);
+
+			long m;
+
+			do {
+				m = min.get();
+			} while (micros < m && ! min.compareAndSet(m, micros));
+
+			do {
+				m = max.get();
+			} while (micros > m && ! max.compareAndSet(m, micros));
+		}
+
+
+		/**
+		 * Gets the number of recorded values.
+		 *
+		 * @return The number of recorded values.
+		 */
+		public long getCount() {
+
+			return count.get();
+		}
+
+
+		/**
+		 * Gets the smallest recorded value.
+		 *
+		 * @return The smallest value, zero if none.
+		 */
+		public long getMin() {
+
+			return count.get() > 0 ? min.get() : 0L;
+		}
+
+
+		/**
+		 * Gets the largest recorded value.
+		 *
+		 * @return The largest value, zero if none.
+		 */
+		public long getMax() {
+
+			return max.get();
+		}
+
+
+		/**
+		 * Gets the mean of the recorded values.
+		 *
+		 * @return The mean, zero if none.
+		 */
+		public double getMean() {
+
+			long n = count.get();
+			return n > 0 ? (double)sum.get() / n : 0.0;
+		}
+
+
+		/**
+		 * Gets the value at the specified percentile, within the bucket
+		 * precision.
+		 *
+		 * @param percentile The percentile, between 0 and 100.
+		 *
+		 * @return The value at the percentile, zero if none.
+		 */
+		public long getValueAtPercentile(final double percentile) {
+
+			long n = count.get();
+
+			if (n == 0)
+				return 0L;
+
+			long rank = Math.max(1L, (long)Math.ceil(percentile / 100.0 * n));
+			long cumulative = 0;
+
+			for (int i=0; i < BUCKETS; i++) {
+
+				cumulative += counts.get(i);
+
+				if (cumulative >= rank)
+					return Math.min(highestEquivalentValue(i), getMax());
+			}
+
+			return getMax();
+		}
+	}
+
+
+	/**
+	 * The load test report.
+	 */
+	public static class Report {
+
+
+		/**
+		 * The names of the recorded steps.
+		 */
+		public static final String[] STEPS = {"step1", "step2", "step3", "total"};
+
+
+		/**
+		 * The latency histograms, in the order of {@link #STEPS}.
+		 */
+		public final Histogram[] histograms = {new Histogram(), new Histogram(), new Histogram(), new Histogram()};
+
+
+		/**
+		 * The number of successful handshakes.
+		 */
+		public final AtomicLong succeeded = new AtomicLong();
+
+
+		/**
+		 * The number of handshakes which failed authentication.
+		 */
+		public final AtomicLong failed = new AtomicLong();
+
+
+		/**
+		 * The number of handshakes rejected by an overloaded server.
+		 */
+		public final AtomicLong rejected = new AtomicLong();
+
+
+		/**
+		 * The number of handshakes which failed with an I/O or other
+		 * error.
+		 */
+		public final AtomicLong errors = new AtomicLong();
+
+
+		/**
+		 * The measurement duration, in nanoseconds.
+		 */
+		public volatile long elapsed;
+
+
+		/**
+		 * Gets the throughput of successful handshakes.
+		 *
+		 * @return The handshakes per second.
+		 */
+		public double getThroughput() {
+
+			return elapsed > 0 ? succeeded.get() * 1e9 / elapsed : 0.0;
+		}
+
+
+		/**
+		 * Writes the report as CSV, one line per step.
+		 *
+		 * @param out The output. Must not be {@code null}.
+		 *
+		 * @throws IOException On an I/O exception.
+		 */
+		public void writeCSV(final Appendable out)
+			throws IOException {
+
+			out.append("step,count,min_us,mean_us,p50_us,p90_us,p99_us,p999_us,max_us\n");
+
+			for (int i=0; i < STEPS.length; i++) {
+				Histogram h = histograms[i];
+				out.append(String.format(Locale.ROOT, "%s,%d,%d,%.1f,%d,%d,%d,%d,%d%n",
+					STEPS[i], h.getCount(), h.getMin(), h.getMean(),
+					h.getValueAtPercentile(50), h.getValueAtPercentile(90),
+					h.getValueAtPercentile(99), h.getValueAtPercentile(99.9),
+					h.getMax()));
+			}
+		}
+
+
+		/**
+		 * Writes the report as a JSON object.
+		 *
+		 * @param out The output. Must not be {@code null}.
+		 *
+		 * @throws IOException On an I/O exception.
+		 */
+		public void writeJSON(final Appendable out)
+			throws IOException {
+
+			out.append(String.format(Locale.ROOT,
+				"{\"succeeded\":%d,\"failed\":%d,\"rejected\":%d,\"errors\":%d,\"elapsed_ms\":%d,\"throughput\":%.2f,\"steps\":{",
+				succeeded.get(), failed.get(), rejected.get(), errors.get(),
+				TimeUnit.NANOSECONDS.toMillis(elapsed), getThroughput()));
+
+			for (int i=0; i < STEPS.length; i++) {
+				Histogram h = histograms[i];
+				out.append(String.format(Locale.ROOT,
+					"%s\"%s\":{\"count\":%d,\"min_us\":%d,\"mean_us\":%.1f,\"p50_us\":%d,\"p90_us\":%d,\"p99_us\":%d,\"p999_us\":%d,\"max_us\":%d}",
+					i > 0 ? "," : "", STEPS[i], h.getCount(), h.getMin(), h.getMean(),
+					h.getValueAtPercentile(50), h.getValueAtPercentile(90),
+					h.getValueAtPercentile(99), h.getValueAtPercentile(99.9),
+					h.getMax()));
+			}
+
+			out.append("}}\n");
+		}
+
+
+		/**
+		 * Writes the report as human readable text.
+		 *
+		 * @param out The output. Must not be {@code null}.
+		 *
+		 * @throws IOException On an I/O exception.
+		 */
+		public void writeText(final Appendable out)
+			throws IOException {
+
+			out.append(String.format(Locale.ROOT,
+				"Handshakes: %d succeeded, %d failed, %d rejected, %d errors in %.1f s (%.1f/s)%n%n",
+				succeeded.get(), failed.get(), rejected.get(), errors.get(),
+				elapsed / 1e9, getThroughput()));
+
+			out.append(String.format(Locale.ROOT, "%-6s %9s %9s %9s %9s %9s %9s %9s%n",
+				"step", "count", "p50 us", "p90 us", "p99 us", "p999 us", "max us", "mean us"));
+
+			for (int i=0; i < STEPS.length; i++) {
+				Histogram h = histograms[i];
+				out.append(String.format(Locale.ROOT, "%-6s %9d %9d %9d %9d %9d %9d %9.1f%n",
+					STEPS[i], h.getCount(),
+					h.getValueAtPercentile(50), h.getValueAtPercentile(90),
+					h.getValueAtPercentile(99), h.getValueAtPercentile(99.9),
+					h.getMax(), h.getMean()));
+			}
+		}
+	}
+
+
+	/**
+	 * The server side of a handshake, as seen by one worker thread.
+	 */
+	private interface Transport {
+
+
+		SRP6NetClient.Challenge step1(final String userID)
+			throws IOException;
+
+
+		BigInteger step2(final BigInteger A, final BigInteger M1)
+			throws IOException, SRP6Exception;
+
+
+		void close();
+	}
+
+
+	/**
+	 * In-process transport, a new server session per handshake from a
+	 * shared server context.
+	 */
+	private class InProcessTransport implements Transport {
+
+
+		private SRP6ServerSession session;
+
+
+		@Override
+		public SRP6NetClient.Challenge step1(final String userID) {
+
+			session = serverContext.createSession(0);
+			return new SRP6NetClient.Challenge(record.s, session.step1(userID, record.s, record.v));
+		}
+
+
+		@Override
+		public BigInteger step2(final BigInteger A, final BigInteger M1)
+			throws SRP6Exception {
+
+			return session.step2(A, M1);
+		}
+
+
+		@Override
+		public void close() {
+
+			session = null;
+		}
+	}
+
+
+	/**
+	 * TCP transport, one connection per worker thread.
+	 */
+	private class NetTransport implements Transport {
+
+
+		private SRP6NetClient client;
+
+
+		private SRP6NetClient client()
+			throws IOException {
+
+			if (client == null)
+				client = new SRP6NetClient(address, config);
+
+			return client;
+		}
+
+
+		@Override
+		public SRP6NetClient.Challenge step1(final String userID)
+			throws IOException {
+
+			try {
+				return client().step1(userID);
+
+			} catch (IOException e) {
+				if (! (e instanceof SRP6ServerBusyException))
+					close();
+				throw e;
+			}
+		}
+
+
+		@Override
+		public BigInteger step2(final BigInteger A, final BigInteger M1)
+			throws IOException, SRP6Exception {
+
+			try {
+				return client().step2(A, M1);
+
+			} catch (IOException e) {
+				if (! (e instanceof SRP6ServerBusyException))
+					close();
+				throw e;
+			}
+		}
+
+
+		@Override
+		public void close() {
+
+			if (client == null)
+				return;
+
+			try {
+				client.close();
+
+			} catch (IOException e) {
+				// ignore
+			}
+
+			client = null;
+		}
+	}
+
+
+	/**
+	 * The target: "inproc", "loopback" or "host:port".
+	 */
+	private String target = "inproc";
+
+
+	/**
+	 * The workload model.
+	 */
+	private Model model = Model.CLOSED;
+
+
+	/**
+	 * The number of virtual users (closed) or worker threads (open).
+	 */
+	private int concurrency = 16;
+
+
+	/**
+	 * The arrival rate for the open model, per second.
+	 */
+	private double rate = 100.0;
+
+
+	/**
+	 * The measurement duration in seconds.
+	 */
+	private int duration = 10;
+
+
+	/**
+	 * The warm-up duration in seconds, not recorded.
+	 */
+	private int warmUp = 0;
+
+
+	/**
+	 * The maximum number of handshakes, zero if unlimited.
+	 */
+	private long maxHandshakes = 0L;
+
+
+	/**
+	 * The prime bitsize of the precomputed group.
+	 */
+	private int bitsize = 2048;
+
+
+	/**
+	 * The hash algorithm.
+	 */
+	private String hash = "SHA-256";
+
+
+	/**
+	 * The user identity.
+	 */
+	private String userID = "loadtest";
+
+
+	/**
+	 * The user password.
+	 */
+	private String password = "loadtest";
+
+
+	/**
+	 * The crypto parameters, set on run.
+	 */
+	private SRP6CryptoParams config;
+
+
+	/**
+	 * The server context for the in-process target, set on run.
+	 */
+	private SRP6ServerContext serverContext;
+
+
+	/**
+	 * The salt and verifier for the in-process targets, set on run.
+	 */
+	private SRP6VerifierRecord record;
+
+
+	/**
+	 * The server address for the network targets, set on run.
+	 */
+	private InetSocketAddress address;
+
+
+	/**
+	 * Sets the target.
+	 *
+	 * @param target "inproc", "loopback" or "host:port".
+	 */
+	public void setTarget(final String target) {
+
+		this.target = target;
+	}
+
+
+	/**
+	 * Sets the workload model.
+	 *
+	 * @param model The workload model.
+	 */
+	public void setModel(final Model model) {
+
+		this.model = model;
+	}
+
+
+	/**
+	 * Sets the number of virtual users for the closed model, or the number
+	 * of worker threads for the open model.
+	 *
+	 * @param concurrency The concurrency.
+	 */
+	public void setConcurrency(final int concurrency) {
+
+		this.concurrency = concurrency;
+	}
+
+
+	/**
+	 * Sets the arrival rate for the open model.
+	 *
+	 * @param rate The handshakes per second.
+	 */
+	public void setRate(final double rate) {
+
+		this.rate = rate;
+	}
+
+
+	/**
+	 * Sets the measurement duration.
+	 *
+	 * @param seconds The duration in seconds.
+	 */
+	public void setDuration(final int seconds) {
+
+		this.duration = seconds;
+	}
+
+
+	/**
+	 * Sets the warm-up duration, preceding the measurement.
+	 *
+	 * @param seconds The warm-up duration in seconds.
+	 */
+	public void setWarmUp(final int seconds) {
+
+		this.warmUp = seconds;
+	}
+
+
+	/**
+	 * Sets the maximum number of measured handshakes.
+	 *
+	 * @param maxHandshakes The maximum number, zero if unlimited.
+	 */
+	public void setMaxHandshakes(final long maxHandshakes) {
+
+		this.maxHandshakes = maxHandshakes;
+	}
+
+
+	/**
+	 * Sets the group and hash algorithm.
+	 *
+	 * @param bitsize The prime bitsize of a precomputed group.
+	 * @param hash    The hash algorithm 'H'.
+	 */
+	public void setCryptoParams(final int bitsize, final String hash) {
+
+		this.bitsize = bitsize;
+		this.hash = hash;
+	}
+
+
+	/**
+	 * Sets the user credentials.
+	 *
+	 * @param userID   The user identity 'I'.
+	 * @param password The user password 'P'.
+	 */
+	public void setUser(final String userID, final String password) {
+
+		this.userID = userID;
+		this.password = password;
+	}
+
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @return The report.
+	 *
+	 * @throws Exception On a configuration or setup exception.
+	 */
+	public Report run()
+		throws Exception {
+
+		config = SRP6CryptoParams.getInstance(bitsize, hash);
+
+		if (config == null)
+			throw new IllegalArgumentException("No precomputed group for " + bitsize + " bits");
+
+		if (concurrency < 1)
+			throw new IllegalArgumentException("The concurrency must be at least 1");
+
+		if (model == Model.OPEN && rate <= 0.0)
+			throw new IllegalArgumentException("The rate must be positive");
+
+		SRP6HandshakeScheduler scheduler = null;
+		SRP6NetServer server = null;
+
+		if ("inproc".equals(target) || "loopback".equals(target)) {
+
+			SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+			BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+			record = new SRP6VerifierRecord(s, gen.generateVerifier(s, userID, password));
+		}
+
+		if ("inproc".equals(target))
+			serverContext = new SRP6ServerContext(config);
+
+		if ("loopback".equals(target)) {
+
+			scheduler = new SRP6HandshakeScheduler(Runtime.getRuntime().availableProcessors(),
+				Math.max(1024, concurrency), Math.max(1024, concurrency), 1, TimeUnit.SECONDS);
+
+			server = new SRP6NetServer(config, new SRP6VerifierSource() {
+				@Override
+				public SRP6VerifierRecord lookUp(final String id) {
+					return userID.equals(id) ? record : null;
+				}
+			}, scheduler, 30);
+
+			server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			address = server.getLocalAddress();
+
+		} else if (! "inproc".equals(target)) {
+
+			int sep = target.lastIndexOf(':');
+
+			if (sep < 1)
+				throw new IllegalArgumentException("Bad target, expected inproc, loopback or host:port: " + target);
+
+			address = new InetSocketAddress(target.substring(0, sep), Integer.parseInt(target.substring(sep + 1)));
+		}
+
+		try {
+			return model == Model.CLOSED ? runClosed() : runOpen();
+
+		} finally {
+			if (server != null)
+				server.close();
+
+			if (scheduler != null)
+				scheduler.shutdown();
+		}
+	}
+
+
+	private Transport newTransport() {
+
+		return "inproc".equals(target) ? new InProcessTransport() : new NetTransport();
+	}
+
+
+	private static ThreadFactory threadFactory(final String prefix) {
+
+		return new ThreadFactory() {
+
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread t = new Thread(r, prefix + counter.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+
+	/**
+	 * Performs a single handshake and records it if it started after the
+	 * warm-up.
+	 *
+	 * @param transport    The transport. Must not be {@code null}.
+	 * @param intendedStart The intended start time, from System.nanoTime().
+	 * @param recordFrom   The start of the measurement, from
+	 *                     System.nanoTime().
+	 * @param report       The report.
+	 */
+	private void handshake(final Transport transport,
+	                       final long intendedStart,
+	                       final long recordFrom,
+	                       final Report report) {
+
+		boolean measured = intendedStart >= recordFrom;
+
+		try {
+			SRP6ClientSession session = new SRP6ClientSession();
+
+			long t0 = System.nanoTime();
+			session.step1(userID, password);
+			SRP6NetClient.Challenge challenge = transport.step1(userID);
+			long t1 = System.nanoTime();
+
+			SRP6ClientCredentials cred = session.step2(config, challenge.s, challenge.B);
+			BigInteger M2 = transport.step2(cred.A, cred.M1);
+			long t2 = System.nanoTime();
+
+			session.step3(M2);
+			long t3 = System.nanoTime();
+
+			if (! measured)
+				return;
+
+			report.histograms[0].record((t1 - t0) / 1000L);
+			report.histograms[1].record((t2 - t1) / 1000L);
+			report.histograms[2].record((t3 - t2) / 1000L);
+			report.histograms[3].record((t3 - Math.min(t0, intendedStart)) / 1000L);
+			report.succeeded.incrementAndGet();
+
+		} catch (SRP6ServerBusyException e) {
+
+			if (measured)
+				report.rejected.incrementAndGet();
+
+		} catch (SRP6Exception e) {
+
+			if (measured)
+				report.failed.incrementAndGet();
+
+		} catch (Exception e) {
+
+			if (measured)
+				report.errors.incrementAndGet();
+		}
+	}
+
+
+	private boolean limitReached(final Report report) {
+
+		if (maxHandshakes <= 0)
+			return false;
+
+		return report.succeeded.get() + report.failed.get() + report.rejected.get() + report.errors.get() >= maxHandshakes;
+	}
+
+
+	private Report runClosed()
+		throws InterruptedException {
+
+		final Report report = new Report();
+		final long start = System.nanoTime();
+		final long recordFrom = start + TimeUnit.SECONDS.toNanos(warmUp);
+		final long end = recordFrom + TimeUnit.SECONDS.toNanos(duration);
+
+		List<Thread> users = new ArrayList<>();
+		ThreadFactory factory = threadFactory("srp6-vu-");
+
+		for (int i=0; i < concurrency; i++) {
+
+			Thread t = factory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					Transport transport = newTransport();
+					try {
+						long now;
+						while ((now = System.nanoTime()) < end && ! limitReached(report))
+							handshake(transport, now, recordFrom, report);
+					} finally {
+						transport.close();
+					}
+				}
+			});
+
+			users.add(t);
+			t.start();
+		}
+
+		for (Thread t: users)
+			t.join();
+
+		report.elapsed = System.nanoTime() - recordFrom;
+		return report;
+	}
+
+
+	private Report runOpen()
+		throws InterruptedException {
+
+		final Report report = new Report();
+		final long start = System.nanoTime();
+		final long recordFrom = start + TimeUnit.SECONDS.toNanos(warmUp);
+		final long end = recordFrom + TimeUnit.SECONDS.toNanos(duration);
+
+		final ThreadLocal<Transport> transports = new ThreadLocal<>();
+		final List<Transport> allTransports = new ArrayList<>();
+
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency, threadFactory("srp6-worker-"));
+
+		SecureRandom random = new SecureRandom();
+		double meanInterval = 1e9 / rate;
+		long next = start;
+
+		while (next < end && ! limitReached(report)) {
+
+			final long intendedStart = next;
+
+			long delay = intendedStart - System.nanoTime();
+
+			if (delay > 0)
+				LockSupport.parkNanos(delay);
+
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					Transport transport = transports.get();
+					if (transport == null) {
+						transport = newTransport();
+						transports.set(transport);
+						synchronized (allTransports) {
+							allTransports.add(transport);
+						}
+					}
+					handshake(transport, intendedStart, recordFrom, report);
+				}
+			});
+
+			// Poisson arrivals
+			next += (long)(-Math.log(1.0 - random.nextDouble()) * meanInterval);
+		}
+
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.HOURS);
+
+		report.elapsed = System.nanoTime() - recordFrom;
+
+		synchronized (allTransports) {
+			for (Transport t: allTransports)
+				t.close();
+		}
+
+		return report;
+	}
+
+
+	private static void usage(final PrintStream out) {
+
+		out.println("Usage: SRP6LoadGenerator [options]");
+		out.println("  -t, --target <inproc|loopback|host:port>  Target (default inproc)");
+		out.println("  -m, --model <closed|open>                 Workload model (default closed)");
+		out.println("  -c, --concurrency <n>                     Virtual users / worker threads (default 16)");
+		out.println("  -r, --rate <n>                            Arrivals per second, open model (default 100)");
+		out.println("  -d, --duration <s>                        Measurement duration (default 10)");
+		out.println("  -w, --warmup <s>                          Warm-up duration (default 0)");
+		out.println("  -n, --handshakes <n>                      Maximum measured handshakes (default unlimited)");
+		out.println("  -b, --bits <n>                            Precomputed group bitsize (default 2048)");
+		out.println("  -H, --hash <alg>                          Hash algorithm (default SHA-256)");
+		out.println("  -u, --user <I>                            User identity (default loadtest)");
+		out.println("  -p, --password <P>                        User password (default loadtest)");
+		out.println("  -f, --format <text|csv|json>              Report format (default text)");
+		out.println("  -o, --output <file>                       Report file (default stdout)");
+	}
+
+
+	/**
+	 * The main entry point to the command-line SRP-6a load generator.
+	 *
+	 * @param args The command line arguments.
+	 *
+	 * @throws Exception On a setup or I/O exception.
+	 */
+	public static void main(final String[] args)
+		throws Exception {
+
+		SRP6LoadGenerator gen = new SRP6LoadGenerator();
+		String format = "text";
+		String output = null;
+		int bits = 2048;
+		String hash = "SHA-256";
+		String user = "loadtest";
+		String password = "loadtest";
+
+		try {
+			for (int i=0; i < args.length; i++) {
+
+				String opt = args[i];
+
+				if ("-h".equals(opt) || "--help".equals(opt)) {
+					usage(System.out);
+					return;
+				}
+
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + opt);
+
+				String val = args[++i];
+
+				switch (opt) {
+					case "-t": case "--target": gen.setTarget(val); break;
+					case "-m": case "--model": gen.setModel(Model.valueOf(val.toUpperCase(Locale.ROOT))); break;
+					case "-c": case "--concurrency": gen.setConcurrency(Integer.parseInt(val)); break;
+					case "-r": case "--rate": gen.setRate(Double.parseDouble(val)); break;
+					case "-d": case "--duration": gen.setDuration(Integer.parseInt(val)); break;
+					case "-w": case "--warmup": gen.setWarmUp(Integer.parseInt(val)); break;
+					case "-n": case "--handshakes": gen.setMaxHandshakes(Long.parseLong(val)); break;
+					case "-b": case "--bits": bits = Integer.parseInt(val); break;
+					case "-H": case "--hash": hash = val; break;
+					case "-u": case "--user": user = val; break;
+					case "-p": case "--password": password = val; break;
+					case "-f": case "--format": format = val; break;
+					case "-o": case "--output": output = val; break;
+					default: throw new IllegalArgumentException("Unknown option: " + opt);
+				}
+			}
+
+		} catch (IllegalArgumentException e) {
+
+			System.err.println(e.getMessage());
+			usage(System.err);
+			System.exit(1);
+			return;
+		}
+
+		gen.setCryptoParams(bits, hash);
+		gen.setUser(user, password);
+
+		Report report = gen.run();
+
+		Writer out = output != null ?
+			new OutputStreamWriter(new FileOutputStream(output), Charset.forName("UTF-8")) :
+			new OutputStreamWriter(System.out, Charset.forName("UTF-8"));
+
+		try {
+			switch (format) {
+				case "csv": report.writeCSV(out); break;
+				case "json": report.writeJSON(out); break;
+				default: report.writeText(out); break;
+			}
+
+		} finally {
+			out.flush();
+
+			if (output != null)
+				out.close();
+		}
+	}
+}
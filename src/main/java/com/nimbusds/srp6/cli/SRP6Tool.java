@@ -215,7 +215,7 @@ public abstract class SRP6Tool {
 	}
 
 	void logShash(byte[] sessionKeyHash) {
-		println("\tHashed shared key 'H(S)' (hex): " + javax.xml.bind.DatatypeConverter.printHexBinary(sessionKeyHash));
+		println("\tHashed shared key 'H(S)' (hex): " + BigIntegerUtils.toHex(sessionKeyHash));
 	}
 
 	void logS(String S) {
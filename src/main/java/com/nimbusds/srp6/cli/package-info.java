@@ -8,6 +8,8 @@
  *         authentication.
  *     <li>{@link com.nimbusds.srp6.cli.SRP6Server} Command-line server for 
  *         Secure Remote Password (SRP-6a) authentication.
+ *     <li>{@link com.nimbusds.srp6.cli.SRP6LoadGenerator} Command-line load
+ *         generator for capacity planning of SRP-6a servers.
  * </ul>
  */
 package com.nimbusds.srp6.cli;
@@ -0,0 +1,320 @@
+package com.nimbusds.srp6.net;
+
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6MessageCodec;
+
+
+/**
+ * Blocking TCP client for Secure Remote Password (SRP-6a) authentication
+ * against a {@link SRP6NetServer}, using the {@link SRP6NetProtocol binary
+ * framing}.
+ *
+ * <p>The {@link #step1} and {@link #step2} methods perform the two round
+ * trips of the protocol, {@link #authenticate} performs a complete
+ * handshake with an {@link SRP6ClientSession}. Several handshakes may be
+ * performed in sequence on the same connection.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class SRP6NetClient implements Closeable {
+
+
+	/**
+	 * The server response to a client HELLO.
+	 */
+	public static class Challenge {
+
+
+		/**
+		 * The password salt 's'.
+		 */
+		public final BigInteger s;
+
+
+		/**
+		 * The public server value 'B'.
+		 */
+		public final BigInteger B;
+
+
+		/**
+		 * Creates a new server challenge.
+		 *
+		 * @param s The password salt 's'.
+		 * @param B The public server value 'B'.
+		 */
+		public Challenge(final BigInteger s, final BigInteger B) {
+
+			this.s = s;
+			this.B = B;
+		}
+	}
+
+
+	/**
+	 * The SRP-6a crypto parameters agreed with the server.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The message codec.
+	 */
+	private final SRP6MessageCodec codec;
+
+
+	/**
+	 * The socket channel.
+	 */
+	private final SocketChannel channel;
+
+
+	/**
+	 * The maximum frame length, including the header.
+	 */
+	private final int maxFrameLength;
+
+
+	/**
+	 * The input buffer.
+	 */
+	private final ByteBuffer in;
+
+
+	/**
+	 * The output buffer.
+	 */
+	private final ByteBuffer out;
+
+
+	/**
+	 * Connects a new SRP-6a network client.
+	 *
+	 * @param address The server address. Must not be {@code null}.
+	 * @param config  The SRP-6a crypto parameters agreed with the server.
+	 *                Must not be {@code null}.
+	 *
+	 * @throws IOException If the connection failed.
+	 */
+	public SRP6NetClient(final InetSocketAddress address, final SRP6CryptoParams config)
+		throws IOException {
+
+		this(address, config, SRP6NetProtocol.DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+
+	/**
+	 * Connects a new SRP-6a network client.
+	 *
+	 * @param address        The server address. Must not be {@code null}.
+	 * @param config         The SRP-6a crypto parameters agreed with the
+	 *                       server. Must not be {@code null}.
+	 * @param maxFrameLength The maximum frame length, including the
+	 *                       header.
+	 *
+	 * @throws IOException If the connection failed.
+	 */
+	public SRP6NetClient(final InetSocketAddress address,
+	                     final SRP6CryptoParams config,
+	                     final int maxFrameLength)
+		throws IOException {
+
+		this.config = config;
+		codec = new SRP6MessageCodec(config);
+		this.maxFrameLength = maxFrameLength;
+		in = ByteBuffer.allocateDirect(maxFrameLength);
+		out = ByteBuffer.allocateDirect(maxFrameLength);
+
+		channel = SocketChannel.open();
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.connect(address);
+	}
+
+
+	/**
+	 * Sends the user identity 'I' to the server and receives its challenge.
+	 *
+	 * @param userID The identity 'I' of the authenticating user. Must not
+	 *               be {@code null} or empty.
+	 *
+	 * @return The password salt 's' and public server value 'B'.
+	 *
+	 * @throws SRP6ServerBusyException If the server is overloaded.
+	 * @throws IOException             On a network or protocol exception.
+	 */
+	public Challenge step1(final String userID)
+		throws IOException {
+
+		out.clear();
+		int start = SRP6NetProtocol.beginFrame(out, SRP6NetProtocol.HELLO);
+		codec.putUserID(out, userID);
+		SRP6NetProtocol.endFrame(out, start);
+		send();
+
+		try {
+			ByteBuffer frame = receive(SRP6NetProtocol.CHALLENGE);
+			BigInteger s = codec.getSalt(frame);
+			return new Challenge(s, codec.getPublicValue(frame));
+
+		} catch (BufferUnderflowException e) {
+
+			throw new ProtocolException("Truncated CHALLENGE frame");
+
+		} catch (SRP6Exception e) {
+
+			throw new ProtocolException("Unexpected error at step one: " + e.getCauseType());
+		}
+	}
+
+
+	/**
+	 * Sends the client credentials to the server and receives its evidence
+	 * message.
+	 *
+	 * @param A  The public client value 'A'. Must not be {@code null}.
+	 * @param M1 The client evidence message 'M1'. Must not be
+	 *           {@code null}.
+	 *
+	 * @return The server evidence message 'M2'.
+	 *
+	 * @throws SRP6Exception           If the server rejected the client
+	 *                                 credentials or the session timed
+	 *                                 out.
+	 * @throws SRP6ServerBusyException If the server is overloaded.
+	 * @throws IOException             On a network or protocol exception.
+	 */
+	public BigInteger step2(final BigInteger A, final BigInteger M1)
+		throws SRP6Exception, IOException {
+
+		out.clear();
+		int start = SRP6NetProtocol.beginFrame(out, SRP6NetProtocol.PROOF);
+		codec.putProof(out, A, M1);
+		SRP6NetProtocol.endFrame(out, start);
+		send();
+
+		try {
+			return codec.getEvidence(receive(SRP6NetProtocol.VERIFY));
+
+		} catch (BufferUnderflowException e) {
+
+			throw new ProtocolException("Truncated VERIFY frame");
+		}
+	}
+
+
+	/**
+	 * Performs a complete SRP-6a handshake with the server.
+	 *
+	 * @param userID   The identity 'I' of the authenticating user. Must not
+	 *                 be {@code null} or empty.
+	 * @param password The user password 'P'. Must not be {@code null}.
+	 *
+	 * @return The client session in {@link SRP6ClientSession.State#STEP_3}.
+	 *
+	 * @throws SRP6Exception           If mutual authentication failed.
+	 * @throws SRP6ServerBusyException If the server is overloaded.
+	 * @throws IOException             On a network or protocol exception.
+	 */
+	public SRP6ClientSession authenticate(final String userID,
+	                                      final String password)
+		throws SRP6Exception, IOException {
+
+		SRP6ClientSession session = new SRP6ClientSession();
+		session.step1(userID, password);
+
+		Challenge challenge = step1(userID);
+
+		SRP6ClientCredentials cred = session.step2(config, challenge.s, challenge.B);
+
+		session.step3(step2(cred.A, cred.M1));
+
+		return session;
+	}
+
+
+	private void send()
+		throws IOException {
+
+		out.flip();
+
+		while (out.hasRemaining())
+			channel.write(out);
+	}
+
+
+	private ByteBuffer receive(final byte expectedType)
+		throws SRP6Exception, IOException {
+
+		in.clear();
+		int len;
+
+		while (true) {
+
+			in.flip();
+			len = SRP6NetProtocol.completeFrameLength(in, maxFrameLength);
+			in.position(in.limit());
+			in.limit(in.capacity());
+
+			if (len > 0)
+				break;
+
+			if (channel.read(in) < 0)
+				throw new EOFException("Connection closed by server");
+		}
+
+		in.flip();
+		in.limit(len);
+		in.position(4);
+
+		byte type = in.get();
+
+		if (type == expectedType)
+			return in;
+
+		if (type != SRP6NetProtocol.ERROR || ! in.hasRemaining())
+			throw new ProtocolException("Unexpected frame type: " + type);
+
+		byte code = in.get();
+
+		switch (code) {
+			case SRP6NetProtocol.ERROR_BAD_CREDENTIALS:
+				throw new SRP6Exception("Bad client credentials", SRP6Exception.CauseType.BAD_CREDENTIALS);
+			case SRP6NetProtocol.ERROR_BAD_PUBLIC_VALUE:
+				throw new SRP6Exception("Bad client public value 'A'", SRP6Exception.CauseType.BAD_PUBLIC_VALUE);
+			case SRP6NetProtocol.ERROR_TIMEOUT:
+				throw new SRP6Exception("Session timeout", SRP6Exception.CauseType.TIMEOUT);
+			case SRP6NetProtocol.ERROR_BUSY:
+				throw new SRP6ServerBusyException("Server busy");
+			default:
+				throw new ProtocolException("Protocol error reported by server: " + code);
+		}
+	}
+
+
+	/**
+	 * Closes the connection to the server.
+	 *
+	 * @throws IOException On an I/O exception.
+	 */
+	@Override
+	public void close()
+		throws IOException {
+
+		channel.close();
+	}
+}
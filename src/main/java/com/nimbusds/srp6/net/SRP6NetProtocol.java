@@ -0,0 +1,182 @@
+package com.nimbusds.srp6.net;
+
+
+import java.net.ProtocolException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import com.nimbusds.srp6.SRP6MessageCodec;
+
+
+/**
+ * Binary framing of the Secure Remote Password (SRP-6a) messages exchanged
+ * between {@link SRP6NetClient} and {@link SRP6NetServer}.
+ *
+ * <p>Each frame consists of a 4 byte big-endian length, followed by a
+ * 1 byte frame type and the payload. The length covers the type and the
+ * payload. The payload fields are encoded with a {@link SRP6MessageCodec}
+ * for the agreed crypto parameters, so that the public values 'A' and 'B'
+ * and the evidence messages 'M1' and 'M2' have a fixed length.
+ *
+ * <pre>
+ * HELLO     (client -&gt; server)  I
+ * CHALLENGE (server -&gt; client)  s, B
+ * PROOF     (client -&gt; server)  A, M1
+ * VERIFY    (server -&gt; client)  M2
+ * ERROR     (server -&gt; client)  1 byte error code
+ * </pre>
+ *
+ * <p>After a VERIFY or ERROR frame the client may start another handshake
+ * on the same connection with a new HELLO.
+ */
+public final class SRP6NetProtocol {
+
+
+	/**
+	 * Client HELLO frame type, carries the user identity 'I'.
+	 */
+	public static final byte HELLO = 0x01;
+
+
+	/**
+	 * Server CHALLENGE frame type, carries the salt 's' and the public
+	 * server value 'B'.
+	 */
+	public static final byte CHALLENGE = 0x02;
+
+
+	/**
+	 * Client PROOF frame type, carries the public client value 'A' and
+	 * the client evidence message 'M1'.
+	 */
+	public static final byte PROOF = 0x03;
+
+
+	/**
+	 * Server VERIFY frame type, carries the server evidence message 'M2'.
+	 */
+	public static final byte VERIFY = 0x04;
+
+
+	/**
+	 * Server ERROR frame type, carries an error code.
+	 */
+	public static final byte ERROR = 0x7F;
+
+
+	/**
+	 * Error code: bad client credentials.
+	 */
+	public static final byte ERROR_BAD_CREDENTIALS = 1;
+
+
+	/**
+	 * Error code: bad public client value 'A'.
+	 */
+	public static final byte ERROR_BAD_PUBLIC_VALUE = 2;
+
+
+	/**
+	 * Error code: session timeout.
+	 */
+	public static final byte ERROR_TIMEOUT = 3;
+
+
+	/**
+	 * Error code: the server is overloaded, the client may retry later.
+	 */
+	public static final byte ERROR_BUSY = 4;
+
+
+	/**
+	 * Error code: protocol violation, the connection is closed.
+	 */
+	public static final byte ERROR_PROTOCOL = 5;
+
+
+	/**
+	 * The length of the frame header (length and type).
+	 */
+	public static final int HEADER_LENGTH = 5;
+
+
+	/**
+	 * The default maximum frame length, including the header. Sufficient
+	 * for the precomputed groups up to 8192 bits.
+	 */
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 4096;
+
+
+	/**
+	 * Begins a frame of the specified type. The length is filled in by
+	 * {@link #endFrame}.
+	 *
+	 * @param buf  The output buffer. Must not be {@code null}.
+	 * @param type The frame type.
+	 *
+	 * @return The position of the frame start, to be passed to
+	 *         {@link #endFrame}.
+	 *
+	 * @throws BufferOverflowException If the buffer has insufficient space
+	 *                                 remaining.
+	 */
+	public static int beginFrame(final ByteBuffer buf, final byte type) {
+
+		int start = buf.position();
+		buf.putInt(0);
+		buf.put(type);
+		return start;
+	}
+
+
+	/**
+	 * Ends a frame, filling in its length.
+	 *
+	 * @param buf   The output buffer. Must not be {@code null}.
+	 * @param start The frame start, as returned by {@link #beginFrame}.
+	 */
+	public static void endFrame(final ByteBuffer buf, final int start) {
+
+		buf.putInt(start, buf.position() - start - 4);
+	}
+
+
+	/**
+	 * Checks the buffer for a complete frame at its current position.
+	 *
+	 * @param buf            The input buffer, in read mode. Must not be
+	 *                       {@code null}.
+	 * @param maxFrameLength The maximum accepted frame length, including
+	 *                       the header.
+	 *
+	 * @return The length of the complete frame including the header, zero
+	 *         if more input is required.
+	 *
+	 * @throws ProtocolException If the frame length is invalid.
+	 */
+	public static int completeFrameLength(final ByteBuffer buf, final int maxFrameLength)
+		throws ProtocolException {
+
+		if (buf.remaining() < 4)
+			return 0;
+
+		int len = buf.getInt(buf.position());
+
+		if (len < 1 || len > maxFrameLength - 4)
+			throw new ProtocolException("Bad frame length: " + len);
+
+		if (buf.remaining() < len + 4)
+			return 0;
+
+		return len + 4;
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private SRP6NetProtocol() {
+
+		// do nothing
+	}
+}
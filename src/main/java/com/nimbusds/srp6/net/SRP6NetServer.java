@@ -0,0 +1,916 @@
+package com.nimbusds.srp6.net;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.nimbusds.srp6.BigIntegerUtils;
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6MessageCodec;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.server.SRP6HandshakeScheduler;
+import com.nimbusds.srp6.server.SRP6ServerSessionPool;
+
+
+/**
+ * Non-blocking TCP server for Secure Remote Password (SRP-6a)
+ * authentication, using the {@link SRP6NetProtocol binary framing}.
+ *
+ * <p>A single selector thread performs all network I/O, using direct
+ * buffers. The CPU-bound work of {@link SRP6ServerSession#step1 step one}
+ * and {@link SRP6ServerSession#step2 step two} is performed on a bounded
+ * {@link SRP6HandshakeScheduler compute pool}, so that the selector thread
+ * is never blocked by modular exponentiations. When the compute pool
+ * rejects new step one work because it is overloaded the client receives
+ * an {@link SRP6NetProtocol#ERROR_BUSY ERROR_BUSY} response.
+ *
+ * <p>User identities not known to the {@link SRP6VerifierSource verifier
+ * source} are answered with consistent mock salt 's' and verifier 'v'
+ * values, so that they fail at step two with a bad credentials error, in
+ * the same way as a bad password.
+ *
+ * <p>Connections without network I/O for longer than the idle timeout are
+ * closed, and connections beyond the maximum number are closed as soon as
+ * they are accepted. While a response is pending because the client is not
+ * reading, no further frames are read from the connection, and a client
+ * which overflows its output buffer is disconnected.
+ *
+ * <p>The server can be bound to port zero on the loopback interface for
+ * testing, the actual port is then available from
+ * {@link #getLocalAddress}.
+ */
+public class SRP6NetServer implements Closeable {
+
+
+	/**
+	 * The SRP-6a crypto parameters.
+	 */
+	private final SRP6CryptoParams config;
+
+
+	/**
+	 * The message codec.
+	 */
+	private final SRP6MessageCodec codec;
+
+
+	/**
+	 * The source of the user salts and verifiers.
+	 */
+	private final SRP6VerifierSource verifiers;
+
+
+	/**
+	 * The compute pool.
+	 */
+	private final SRP6HandshakeScheduler computePool;
+
+
+	/**
+	 * The SRP-6a session timeout in seconds, zero if none.
+	 */
+	private final int sessionTimeout;
+
+
+	/**
+	 * The default idle connection timeout in seconds.
+	 */
+	public static final int DEFAULT_IDLE_TIMEOUT = 60;
+
+
+	/**
+	 * The default maximum number of client connections.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+
+	/**
+	 * The idle connection timeout in milliseconds, zero if none.
+	 */
+	private final long idleTimeout;
+
+
+	/**
+	 * The maximum number of client connections.
+	 */
+	private final int maxConnections;
+
+
+	/**
+	 * The maximum number of idle server sessions kept for reuse.
+	 */
+	private static final int SESSION_POOL_CAPACITY = 1024;
+
+
+	/**
+	 * Pool of reusable server sessions, sessions are returned once their
+	 * step one or step two work is no longer running.
+	 */
+	private final SRP6ServerSessionPool sessionPool;
+
+
+	/**
+	 * The maximum frame length, including the header.
+	 */
+	private final int maxFrameLength;
+
+
+	/**
+	 * Secret for deriving the mock salt and verifier values of unknown
+	 * users.
+	 */
+	private final byte[] mockSecret = new byte[32];
+
+
+	/**
+	 * Tasks to run on the selector thread, posted by the compute pool.
+	 */
+	private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+
+	/**
+	 * The selector.
+	 */
+	private Selector selector;
+
+
+	/**
+	 * The server socket channel.
+	 */
+	private ServerSocketChannel serverChannel;
+
+
+	/**
+	 * The selector thread.
+	 */
+	private Thread selectorThread;
+
+
+	/**
+	 * The running state.
+	 */
+	private volatile boolean running = false;
+
+
+	/**
+	 * The number of open client connections.
+	 */
+	private volatile int connectionCount = 0;
+
+
+	/**
+	 * State of a client connection, confined to the selector thread.
+	 */
+	private final class Connection {
+
+
+		final SocketChannel channel;
+
+
+		final SelectionKey key;
+
+
+		final ByteBuffer in = ByteBuffer.allocateDirect(maxFrameLength);
+
+
+		ByteBuffer out = null;
+
+
+		SRP6ServerSession session = null;
+
+
+		boolean busy = false;
+
+
+		boolean closeAfterWrite = false;
+
+
+		boolean closed = false;
+
+
+		long lastActivity = System.currentTimeMillis();
+
+
+		Connection(final SocketChannel channel, final SelectionKey key) {
+
+			this.channel = channel;
+			this.key = key;
+		}
+	}
+
+
+	/**
+	 * Creates a new SRP-6a network server.
+	 *
+	 * @param config         The SRP-6a crypto parameters. Must not be
+	 *                       {@code null}.
+	 * @param verifiers      The source of the user salts and verifiers.
+	 *                       Must not be {@code null}.
+	 * @param computePool    The compute pool for the step one and step
+	 *                       two work. Must not be {@code null}.
+	 * @param sessionTimeout The SRP-6a session timeout in seconds, zero if
+	 *                       none.
+	 */
+	public SRP6NetServer(final SRP6CryptoParams config,
+	                     final SRP6VerifierSource verifiers,
+	                     final SRP6HandshakeScheduler computePool,
+	                     final int sessionTimeout) {
+
+		this(config, verifiers, computePool, sessionTimeout, SRP6NetProtocol.DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+
+	/**
+	 * Creates a new SRP-6a network server, with the default idle timeout
+	 * and maximum number of connections.
+	 *
+	 * @param config         The SRP-6a crypto parameters. Must not be
+	 *                       {@code null}.
+	 * @param verifiers      The source of the user salts and verifiers.
+	 *                       Must not be {@code null}.
+	 * @param computePool    The compute pool for the step one and step
+	 *                       two work. Must not be {@code null}.
+	 * @param sessionTimeout The SRP-6a session timeout in seconds, zero if
+	 *                       none.
+	 * @param maxFrameLength The maximum frame length, including the
+	 *                       header. Determines the size of the per
+	 *                       connection buffers.
+	 */
+	public SRP6NetServer(final SRP6CryptoParams config,
+	                     final SRP6VerifierSource verifiers,
+	                     final SRP6HandshakeScheduler computePool,
+	                     final int sessionTimeout,
+	                     final int maxFrameLength) {
+
+		this(config, verifiers, computePool, sessionTimeout, maxFrameLength, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_CONNECTIONS);
+	}
+
+
+	/**
+	 * Creates a new SRP-6a network server.
+	 *
+	 * @param config         The SRP-6a crypto parameters. Must not be
+	 *                       {@code null}.
+	 * @param verifiers      The source of the user salts and verifiers.
+	 *                       Must not be {@code null}.
+	 * @param computePool    The compute pool for the step one and step
+	 *                       two work. Must not be {@code null}.
+	 * @param sessionTimeout The SRP-6a session timeout in seconds, zero if
+	 *                       none.
+	 * @param maxFrameLength The maximum frame length, including the
+	 *                       header. Determines the size of the per
+	 *                       connection buffers.
+	 * @param idleTimeout    The idle connection timeout in seconds, zero
+	 *                       if none. Connections without network I/O for
+	 *                       this time are closed, unless step one or step
+	 *                       two work is running for them.
+	 * @param maxConnections The maximum number of client connections, each
+	 *                       with up to two buffers of the maximum frame
+	 *                       length. Must be positive.
+	 */
+	public SRP6NetServer(final SRP6CryptoParams config,
+	                     final SRP6VerifierSource verifiers,
+	                     final SRP6HandshakeScheduler computePool,
+	                     final int sessionTimeout,
+	                     final int maxFrameLength,
+	                     final int idleTimeout,
+	                     final int maxConnections) {
+
+		if (config == null)
+			throw new IllegalArgumentException("The SRP-6a crypto parameters must not be null");
+
+		if (verifiers == null)
+			throw new IllegalArgumentException("The verifier source must not be null");
+
+		if (computePool == null)
+			throw new IllegalArgumentException("The compute pool must not be null");
+
+		if (sessionTimeout < 0)
+			throw new IllegalArgumentException("The timeout must be zero (no timeout) or greater");
+
+		if (maxFrameLength < 64)
+			throw new IllegalArgumentException("The maximum frame length must be at least 64 bytes");
+
+		if (idleTimeout < 0)
+			throw new IllegalArgumentException("The idle timeout must be zero (no timeout) or greater");
+
+		if (maxConnections < 1)
+			throw new IllegalArgumentException("The maximum number of connections must be at least 1");
+
+		this.config = config;
+		this.verifiers = verifiers;
+		this.computePool = computePool;
+		this.sessionTimeout = sessionTimeout;
+		this.maxFrameLength = maxFrameLength;
+		this.idleTimeout = idleTimeout * 1000L;
+		this.maxConnections = maxConnections;
+		codec = new SRP6MessageCodec(config);
+		sessionPool = new SRP6ServerSessionPool(config, sessionTimeout, SESSION_POOL_CAPACITY);
+
+		new SecureRandom().nextBytes(mockSecret);
+	}
+
+
+	/**
+	 * Starts the server.
+	 *
+	 * @param address The local address to bind to. Port zero selects an
+	 *                ephemeral port. Must not be {@code null}.
+	 *
+	 * @throws IOException If the server socket couldn't be bound.
+	 */
+	public synchronized void start(final InetSocketAddress address)
+		throws IOException {
+
+		if (running)
+			throw new IllegalStateException("Server already started");
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(address, 1024);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		running = true;
+
+		selectorThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "srp6-net-selector");
+
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+
+	/**
+	 * Gets the local address of the server.
+	 *
+	 * @return The local address, {@code null} if not started.
+	 *
+	 * @throws IOException On an I/O exception.
+	 */
+	public InetSocketAddress getLocalAddress()
+		throws IOException {
+
+		if (serverChannel == null)
+			return null;
+
+		return (InetSocketAddress)serverChannel.getLocalAddress();
+	}
+
+
+	/**
+	 * Gets the number of open client connections.
+	 *
+	 * @return The number of client connections.
+	 */
+	public int getConnectionCount() {
+
+		return connectionCount;
+	}
+
+
+	/**
+	 * Stops the server and closes all client connections.
+	 *
+	 * @throws IOException On an I/O exception.
+	 */
+	@Override
+	public synchronized void close()
+		throws IOException {
+
+		if (! running)
+			return;
+
+		running = false;
+		selector.wakeup();
+
+		try {
+			selectorThread.join();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (SelectionKey key: selector.keys())
+			key.channel().close();
+
+		selector.close();
+	}
+
+
+	private void loop() {
+
+		long lastTimeoutCheck = System.currentTimeMillis();
+
+		while (running) {
+
+			try {
+				selector.select(1000L);
+
+			} catch (IOException e) {
+				break;
+			}
+
+			Runnable task;
+
+			// The tasks close their connection on a runtime exception
+			while ((task = pending.poll()) != null)
+				task.run();
+
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+			while (it.hasNext()) {
+
+				SelectionKey key = it.next();
+				it.remove();
+
+				if (! key.isValid())
+					continue;
+
+				if (key.isAcceptable()) {
+					accept();
+					continue;
+				}
+
+				Connection conn = (Connection)key.attachment();
+
+				try {
+					if (key.isReadable())
+						read(conn);
+
+					if (key.isValid() && key.isWritable())
+						flush(conn);
+
+				} catch (IOException | RuntimeException e) {
+
+					// Contained to the one connection
+					close(conn);
+				}
+			}
+
+			long now = System.currentTimeMillis();
+
+			if (now - lastTimeoutCheck > 1000L) {
+				closeTimedOut();
+				lastTimeoutCheck = now;
+			}
+		}
+	}
+
+
+	private void accept() {
+
+		SocketChannel channel;
+
+		try {
+			channel = serverChannel.accept();
+
+			if (channel == null)
+				return;
+
+			if (connectionCount >= maxConnections) {
+				channel.close();
+				return;
+			}
+
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(channel, key));
+			connectionCount++;
+
+		} catch (IOException e) {
+			// ignore, client gone
+		}
+	}
+
+
+	private void closeTimedOut() {
+
+		final long now = System.currentTimeMillis();
+
+		for (SelectionKey key: selector.keys()) {
+
+			Connection conn = (Connection)key.attachment();
+
+			if (conn == null || conn.busy)
+				continue;
+
+			if (sessionTimeout > 0 && conn.session != null && conn.session.hasTimedOut())
+				close(conn);
+			else if (idleTimeout > 0 && now - conn.lastActivity > idleTimeout)
+				close(conn);
+		}
+	}
+
+
+	private void close(final Connection conn) {
+
+		if (conn.closed)
+			return;
+
+		conn.closed = true;
+		conn.key.cancel();
+
+		// A busy session is still referenced by the compute pool
+		if (! conn.busy)
+			releaseSession(conn);
+
+		try {
+			conn.channel.close();
+
+		} catch (IOException e) {
+			// ignore
+		}
+
+		connectionCount--;
+	}
+
+
+	private void releaseSession(final Connection conn) {
+
+		sessionPool.release(conn.session);
+		conn.session = null;
+	}
+
+
+	private void read(final Connection conn)
+		throws IOException {
+
+		final int n = conn.channel.read(conn.in);
+
+		if (n < 0) {
+			close(conn);
+			return;
+		}
+
+		if (n > 0)
+			conn.lastActivity = System.currentTimeMillis();
+
+		conn.in.flip();
+
+		try {
+			int len;
+
+			while ((len = SRP6NetProtocol.completeFrameLength(conn.in, maxFrameLength)) > 0) {
+
+				if (conn.busy)
+					throw new ProtocolException("Unexpected frame");
+
+				int start = conn.in.position();
+				int limit = conn.in.limit();
+
+				conn.in.limit(start + len);
+				conn.in.position(start + 4);
+
+				handleFrame(conn, conn.in.get(), conn.in);
+
+				conn.in.limit(limit);
+				conn.in.position(start + len);
+			}
+
+		} catch (ProtocolException e) {
+
+			conn.closeAfterWrite = true;
+			sendError(conn, SRP6NetProtocol.ERROR_PROTOCOL);
+			conn.in.clear();
+			return;
+		}
+
+		conn.in.compact();
+	}
+
+
+	private void handleFrame(final Connection conn, final byte type, final ByteBuffer frame)
+		throws ProtocolException {
+
+		if (type == SRP6NetProtocol.HELLO && conn.session == null) {
+
+			final String userID;
+
+			try {
+				userID = codec.getUserID(frame);
+
+			} catch (BufferUnderflowException | IllegalArgumentException e) {
+
+				throw new ProtocolException("Bad HELLO frame");
+			}
+
+			if (frame.hasRemaining() || userID.trim().isEmpty())
+				throw new ProtocolException("Empty user identity");
+
+			final SRP6ServerSession session = sessionPool.acquire();
+			conn.session = session;
+			conn.busy = true;
+
+			try {
+				computePool.submitStep1(new Callable<BigInteger>() {
+					@Override
+					public BigInteger call() {
+						SRP6VerifierRecord record = verifiers.lookUp(userID);
+
+						if (record != null)
+							return session.step1(userID, record.s, record.v);
+
+						return session.mockStep1(userID, mockSalt(userID), mockVerifier(userID));
+					}
+				}, new SRP6HandshakeScheduler.Listener<BigInteger>() {
+					@Override
+					public void onCompletion(final Future<BigInteger> future) {
+						post(conn, new Runnable() {
+							@Override
+							public void run() {
+								onStep1(conn, future);
+							}
+						});
+					}
+				});
+
+			} catch (RejectedExecutionException e) {
+
+				conn.busy = false;
+				releaseSession(conn);
+				sendError(conn, SRP6NetProtocol.ERROR_BUSY);
+			}
+
+		} else if (type == SRP6NetProtocol.PROOF && conn.session != null &&
+		           conn.session.getState() == SRP6ServerSession.State.STEP_1) {
+
+			if (frame.remaining() != codec.getProofLength())
+				throw new ProtocolException("Bad PROOF frame length");
+
+			SRP6ClientCredentials cred = codec.getProof(frame);
+			final BigInteger A = cred.A;
+			final BigInteger M1 = cred.M1;
+			final SRP6ServerSession session = conn.session;
+			conn.busy = true;
+
+			try {
+				computePool.submitStep2(new Callable<BigInteger>() {
+					@Override
+					public BigInteger call()
+						throws SRP6Exception {
+						return session.step2(A, M1);
+					}
+				}, new SRP6HandshakeScheduler.Listener<BigInteger>() {
+					@Override
+					public void onCompletion(final Future<BigInteger> future) {
+						post(conn, new Runnable() {
+							@Override
+							public void run() {
+								onStep2(conn, future);
+							}
+						});
+					}
+				});
+
+			} catch (RejectedExecutionException e) {
+
+				conn.busy = false;
+				releaseSession(conn);
+				sendError(conn, SRP6NetProtocol.ERROR_BUSY);
+			}
+
+		} else {
+			throw new ProtocolException("Unexpected frame type: " + type);
+		}
+	}
+
+
+	private void post(final Connection conn, final Runnable task) {
+
+		pending.add(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+
+				} catch (RuntimeException e) {
+
+					// Contained to the one connection
+					close(conn);
+				}
+			}
+		});
+
+		selector.wakeup();
+	}
+
+
+	private void onStep1(final Connection conn, final Future<BigInteger> future) {
+
+		if (conn.closed) {
+			releaseSession(conn);
+			return;
+		}
+
+		conn.busy = false;
+
+		ByteBuffer out = outputBuffer(conn);
+		int start = out.position();
+
+		try {
+			BigInteger B = future.get();
+
+			SRP6NetProtocol.beginFrame(out, SRP6NetProtocol.CHALLENGE);
+			codec.putChallenge(out, conn.session.getSalt(), B);
+			SRP6NetProtocol.endFrame(out, start);
+			flushQuietly(conn);
+
+		} catch (IllegalArgumentException | BufferOverflowException e) {
+
+			// Salt too long for the frame
+			out.position(start);
+			releaseSession(conn);
+			conn.closeAfterWrite = true;
+			sendError(conn, SRP6NetProtocol.ERROR_PROTOCOL);
+
+		} catch (ExecutionException | InterruptedException e) {
+
+			releaseSession(conn);
+
+			if (e.getCause() instanceof RejectedExecutionException) {
+				sendError(conn, SRP6NetProtocol.ERROR_BUSY);
+			} else {
+				conn.closeAfterWrite = true;
+				sendError(conn, SRP6NetProtocol.ERROR_PROTOCOL);
+			}
+		}
+	}
+
+
+	private void onStep2(final Connection conn, final Future<BigInteger> future) {
+
+		if (conn.closed) {
+			releaseSession(conn);
+			return;
+		}
+
+		conn.busy = false;
+		releaseSession(conn); // ready for the next handshake
+
+		try {
+			BigInteger M2 = future.get();
+
+			ByteBuffer out = outputBuffer(conn);
+			int start = SRP6NetProtocol.beginFrame(out, SRP6NetProtocol.VERIFY);
+			codec.putEvidence(out, M2);
+			SRP6NetProtocol.endFrame(out, start);
+			flushQuietly(conn);
+
+		} catch (BufferOverflowException e) {
+
+			// Client not reading its responses
+			close(conn);
+
+		} catch (ExecutionException | InterruptedException e) {
+
+			if (e.getCause() instanceof SRP6Exception) {
+				sendError(conn, errorCode(((SRP6Exception)e.getCause()).getCauseType()));
+			} else if (e.getCause() instanceof RejectedExecutionException) {
+				sendError(conn, SRP6NetProtocol.ERROR_BUSY);
+			} else {
+				conn.closeAfterWrite = true;
+				sendError(conn, SRP6NetProtocol.ERROR_PROTOCOL);
+			}
+		}
+	}
+
+
+	private static byte errorCode(final SRP6Exception.CauseType cause) {
+
+		switch (cause) {
+			case BAD_PUBLIC_VALUE:
+				return SRP6NetProtocol.ERROR_BAD_PUBLIC_VALUE;
+			case TIMEOUT:
+				return SRP6NetProtocol.ERROR_TIMEOUT;
+			default:
+				return SRP6NetProtocol.ERROR_BAD_CREDENTIALS;
+		}
+	}
+
+
+	private ByteBuffer outputBuffer(final Connection conn) {
+
+		if (conn.out == null)
+			conn.out = ByteBuffer.allocateDirect(maxFrameLength);
+
+		return conn.out;
+	}
+
+
+	private void sendError(final Connection conn, final byte code) {
+
+		ByteBuffer out = outputBuffer(conn);
+
+		try {
+			int start = SRP6NetProtocol.beginFrame(out, SRP6NetProtocol.ERROR);
+			out.put(code);
+			SRP6NetProtocol.endFrame(out, start);
+
+		} catch (BufferOverflowException e) {
+
+			// Client not reading its responses
+			close(conn);
+			return;
+		}
+
+		flushQuietly(conn);
+	}
+
+
+	private void flushQuietly(final Connection conn) {
+
+		try {
+			flush(conn);
+
+		} catch (IOException e) {
+			close(conn);
+		}
+	}
+
+
+	private void flush(final Connection conn)
+		throws IOException {
+
+		if (conn.closed || conn.out == null)
+			return;
+
+		conn.out.flip();
+
+		if (conn.channel.write(conn.out) > 0)
+			conn.lastActivity = System.currentTimeMillis();
+
+		boolean drained = ! conn.out.hasRemaining();
+		conn.out.compact();
+
+		if (drained) {
+			if (conn.closeAfterWrite) {
+				close(conn);
+				return;
+			}
+			conn.key.interestOps(SelectionKey.OP_READ);
+		} else {
+			// No more frames until the client reads the pending output
+			conn.key.interestOps(SelectionKey.OP_WRITE);
+		}
+	}
+
+
+	/**
+	 * Derives a consistent mock salt 's' for an unknown user.
+	 */
+	private BigInteger mockSalt(final String userID) {
+
+		byte[] hash = mockHash((byte)'s', userID);
+		return BigIntegerUtils.bigIntegerFromBytes(Arrays.copyOf(hash, Math.min(16, hash.length)));
+	}
+
+
+	/**
+	 * Derives a consistent mock verifier 'v' for an unknown user.
+	 */
+	private BigInteger mockVerifier(final String userID) {
+
+		return BigIntegerUtils.bigIntegerFromBytes(mockHash((byte)'v', userID)).mod(config.N);
+	}
+
+
+	private byte[] mockHash(final byte label, final String userID) {
+
+		MessageDigest digest = config.getMessageDigestInstance();
+		digest.update(mockSecret);
+		digest.update(label);
+		digest.update(userID.getBytes(Charset.forName("UTF-8")));
+		return digest.digest();
+	}
+}
@@ -0,0 +1,26 @@
+package com.nimbusds.srp6.net;
+
+
+import java.io.IOException;
+
+
+/**
+ * Indicates that a {@link SRP6NetServer} rejected a handshake because it is
+ * overloaded. The client may retry later.
+ */
+public class SRP6ServerBusyException extends IOException {
+
+
+	private static final long serialVersionUID = -2714096630912183624L;
+
+
+	/**
+	 * Creates a new server busy exception with the specified message.
+	 *
+	 * @param message The exception message.
+	 */
+	public SRP6ServerBusyException(final String message) {
+
+		super(message);
+	}
+}
@@ -0,0 +1,42 @@
+package com.nimbusds.srp6.net;
+
+
+import java.math.BigInteger;
+
+
+/**
+ * Immutable password salt 's' and verifier 'v' pair of a user.
+ */
+public class SRP6VerifierRecord {
+
+
+	/**
+	 * The password salt 's'.
+	 */
+	public final BigInteger s;
+
+
+	/**
+	 * The password verifier 'v'.
+	 */
+	public final BigInteger v;
+
+
+	/**
+	 * Creates a new salt and verifier pair.
+	 *
+	 * @param s The password salt 's'. Must not be {@code null}.
+	 * @param v The password verifier 'v'. Must not be {@code null}.
+	 */
+	public SRP6VerifierRecord(final BigInteger s, final BigInteger v) {
+
+		if (s == null)
+			throw new IllegalArgumentException("The salt 's' must not be null");
+
+		if (v == null)
+			throw new IllegalArgumentException("The verifier 'v' must not be null");
+
+		this.s = s;
+		this.v = v;
+	}
+}
@@ -0,0 +1,23 @@
+package com.nimbusds.srp6.net;
+
+
+/**
+ * Source of the password salt 's' and verifier 'v' values of the users
+ * authenticated by a {@link SRP6NetServer}.
+ *
+ * <p>Look-ups are performed on the compute threads of the server, they
+ * should therefore be fast, e.g. served from memory or a local cache.
+ * Implementations must be thread-safe.
+ */
+public interface SRP6VerifierSource {
+
+
+	/**
+	 * Looks up the salt 's' and verifier 'v' for the specified user.
+	 *
+	 * @param userID The identity 'I' of the authenticating user.
+	 *
+	 * @return The salt and verifier, {@code null} if no such user exists.
+	 */
+	public SRP6VerifierRecord lookUp(final String userID);
+}
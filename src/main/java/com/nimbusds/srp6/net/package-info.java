@@ -0,0 +1,13 @@
+/**
+ * Network transport for Secure Remote Password (SRP-6a) authentication.
+ *
+ * <ul>
+ *     <li>{@link com.nimbusds.srp6.net.SRP6NetServer} Non-blocking TCP
+ *         server, for concurrent handshakes with the CPU-bound work on a
+ *         bounded compute pool.
+ *     <li>{@link com.nimbusds.srp6.net.SRP6NetClient} Blocking TCP client.
+ *     <li>{@link com.nimbusds.srp6.net.SRP6NetProtocol} The binary framing
+ *         of the SRP-6a messages.
+ * </ul>
+ */
+package com.nimbusds.srp6.net;
@@ -14,6 +14,14 @@
  *     <li>Interfaces to allow definition of custom routines for the password 
  *         key 'x', the server evidence message 'M1' and the client evidence 
  *         message 'M2'.
+ *     <li>Shared server context per group, with precomputed multiplier 'k'
+ *         and fixed-base table for the server public value 'B'.
+ *     <li>Optional short private values 'a' and 'b' for large groups, see
+ *         {@link com.nimbusds.srp6.SRP6ExponentPolicy}.
+ *     <li>Derivation of labelled keys from the session key 'S', see
+ *         {@link com.nimbusds.srp6.SRP6KeyDerivation}.
+ *     <li>Session resumption with single-use tickets, without modular
+ *         exponentiations, see {@link com.nimbusds.srp6.SRP6TicketIssuer}.
  *     <li>No external package dependencies.
  * </ul>
  *
@@ -0,0 +1,318 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6ServerSession;
+
+
+/**
+ * Thread-per-handshake execution of server-side SRP-6a authentication, with
+ * the CPU-bound work isolated on a bounded platform thread pool.
+ *
+ * <p>The I/O side of each handshake (reading the client messages, looking up
+ * the user's salt and verifier, writing the responses) is written as plain
+ * blocking code and {@link #execute executed} on its own thread. On JDK 21
+ * and later these are virtual threads, so that very large numbers of slow
+ * clients can be served without running out of threads. On older JDKs a
+ * bounded pool of platform threads is used instead.
+ *
+ * <p>The modular exponentiations of {@link SRP6ServerSession#step1 step one}
+ * and {@link SRP6ServerSession#step2 step two} must not run directly on
+ * virtual threads, as they would occupy the carrier threads for their whole
+ * duration. The {@link #step1}, {@link #mockStep1} and {@link #step2}
+ * methods of this class hand them off to a {@link SRP6HandshakeScheduler}
+ * and block the calling (virtual) thread until the result is available.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * final SRP6HandshakeExecutor executor = new SRP6HandshakeExecutor(scheduler, 200);
+ *
+ * executor.execute(new Runnable() {
+ *     public void run() {
+ *         SRP6ServerSession session = new SRP6ServerSession(config, 30);
+ *         // read 'I', look up 's' and 'v'
+ *         BigInteger B = executor.step1(session, I, s, v);
+ *         // write 's' and 'B', read 'A' and 'M1'
+ *         BigInteger M2 = executor.step2(session, A, M1);
+ *         // write 'M2'
+ *     }
+ * });
+ * </pre>
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6HandshakeExecutor {
+
+
+	/**
+	 * The executor for the handshake threads.
+	 */
+	private final ExecutorService handshakeExecutor;
+
+
+	/**
+	 * {@code true} if the handshake threads are virtual.
+	 */
+	private final boolean virtual;
+
+
+	/**
+	 * The scheduler for the CPU-bound work.
+	 */
+	private final SRP6HandshakeScheduler computePool;
+
+
+	/**
+	 * Creates a new handshake executor. Uses virtual handshake threads if
+	 * supported by the Java runtime.
+	 *
+	 * @param computePool     The scheduler for the CPU-bound step one and
+	 *                        step two work. Must not be {@code null}.
+	 * @param fallbackThreads The number of platform handshake threads to
+	 *                        use if virtual threads are not supported by
+	 *                        the Java runtime. Handshakes in excess are
+	 *                        queued. Must be positive.
+	 */
+	public SRP6HandshakeExecutor(final SRP6HandshakeScheduler computePool, final int fallbackThreads) {
+
+		this(computePool, fallbackThreads, true);
+	}
+
+
+	/**
+	 * Creates a new handshake executor.
+	 *
+	 * @param computePool     The scheduler for the CPU-bound step one and
+	 *                        step two work. Must not be {@code null}.
+	 * @param fallbackThreads The number of platform handshake threads to
+	 *                        use if virtual threads are not supported or
+	 *                        not preferred. Handshakes in excess are
+	 *                        queued. Must be positive.
+	 * @param preferVirtual   If {@code true} virtual handshake threads are
+	 *                        used when supported by the Java runtime.
+	 */
+	public SRP6HandshakeExecutor(final SRP6HandshakeScheduler computePool,
+	                             final int fallbackThreads,
+	                             final boolean preferVirtual) {
+
+		if (computePool == null)
+			throw new IllegalArgumentException("The compute pool must not be null");
+
+		if (fallbackThreads < 1)
+			throw new IllegalArgumentException("The number of fallback threads must be at least 1");
+
+		this.computePool = computePool;
+
+		ExecutorService virtualExecutor = preferVirtual ? VirtualThreads.newThreadPerTaskExecutor() : null;
+
+		if (virtualExecutor != null) {
+			handshakeExecutor = virtualExecutor;
+			virtual = true;
+		} else {
+			handshakeExecutor = Executors.newFixedThreadPool(fallbackThreads, new ThreadFactory() {
+
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(r, "srp6-io-" + counter.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			virtual = false;
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the Java runtime supports virtual threads
+	 * (JDK 21 and later).
+	 *
+	 * @return {@code true} if virtual threads are supported, else
+	 *         {@code false}.
+	 */
+	public static boolean isVirtualThreadSupported() {
+
+		return VirtualThreads.isSupported();
+	}
+
+
+	/**
+	 * Returns {@code true} if the handshake threads of this executor are
+	 * virtual.
+	 *
+	 * @return {@code true} for virtual handshake threads, {@code false}
+	 *         for platform handshake threads.
+	 */
+	public boolean usesVirtualThreads() {
+
+		return virtual;
+	}
+
+
+	/**
+	 * Gets the scheduler for the CPU-bound work.
+	 *
+	 * @return The compute pool.
+	 */
+	public SRP6HandshakeScheduler getComputePool() {
+
+		return computePool;
+	}
+
+
+	/**
+	 * Executes the specified handshake on its own thread.
+	 *
+	 * @param handshake The handshake code. Must not be {@code null}.
+	 *
+	 * @return The future completion of the handshake.
+	 *
+	 * @throws java.util.concurrent.RejectedExecutionException If this
+	 *         executor is shut down.
+	 */
+	public Future<?> execute(final Runnable handshake) {
+
+		if (handshake == null)
+			throw new IllegalArgumentException("The handshake must not be null");
+
+		return handshakeExecutor.submit(handshake);
+	}
+
+
+	/**
+	 * Performs {@link SRP6ServerSession#step1 step one} of the specified
+	 * server session on the compute pool. Blocks the calling thread until
+	 * the result is available.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 * @param userID  The identity 'I' of the authenticating user.
+	 * @param s       The password salt 's'.
+	 * @param v       The password verifier 'v'.
+	 *
+	 * @return The public server value 'B'.
+	 *
+	 * @throws InterruptedException If the calling thread was interrupted.
+	 * @throws java.util.concurrent.RejectedExecutionException If the step
+	 *         was rejected by the admission control of the compute pool.
+	 */
+	public BigInteger step1(final SRP6ServerSession session,
+	                        final String userID,
+	                        final BigInteger s,
+	                        final BigInteger v)
+		throws InterruptedException {
+
+		try {
+			return await(computePool.step1(session, userID, s, v));
+
+		} catch (SRP6Exception e) {
+
+			throw new IllegalStateException(e.getMessage(), e); // not thrown by step 1
+		}
+	}
+
+
+	/**
+	 * Performs {@link SRP6ServerSession#mockStep1 mock step one} of the
+	 * specified server session on the compute pool. Blocks the calling
+	 * thread until the result is available.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 * @param userID  The identity 'I' of the authenticating user.
+	 * @param s       The mock password salt 's'.
+	 * @param v       The mock password verifier 'v'.
+	 *
+	 * @return The public server value 'B'.
+	 *
+	 * @throws InterruptedException If the calling thread was interrupted.
+	 * @throws java.util.concurrent.RejectedExecutionException If the step
+	 *         was rejected by the admission control of the compute pool.
+	 */
+	public BigInteger mockStep1(final SRP6ServerSession session,
+	                            final String userID,
+	                            final BigInteger s,
+	                            final BigInteger v)
+		throws InterruptedException {
+
+		try {
+			return await(computePool.mockStep1(session, userID, s, v));
+
+		} catch (SRP6Exception e) {
+
+			throw new IllegalStateException(e.getMessage(), e); // not thrown by step 1
+		}
+	}
+
+
+	/**
+	 * Performs {@link SRP6ServerSession#step2 step two} of the specified
+	 * server session on the compute pool. Blocks the calling thread until
+	 * the result is available.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 * @param A       The client public value 'A'.
+	 * @param M1      The client evidence message 'M1'.
+	 *
+	 * @return The server evidence message 'M2'.
+	 *
+	 * @throws SRP6Exception        If the session has timed out, the client
+	 *                              public value 'A' is invalid or the user
+	 *                              credentials are invalid.
+	 * @throws InterruptedException If the calling thread was interrupted.
+	 */
+	public BigInteger step2(final SRP6ServerSession session,
+	                        final BigInteger A,
+	                        final BigInteger M1)
+		throws SRP6Exception, InterruptedException {
+
+		return await(computePool.step2(session, A, M1));
+	}
+
+
+	/**
+	 * Waits for the specified future result, unwrapping any execution
+	 * exception.
+	 */
+	private static <T> T await(final Future<T> future)
+		throws SRP6Exception, InterruptedException {
+
+		try {
+			return future.get();
+
+		} catch (ExecutionException e) {
+
+			Throwable cause = e.getCause();
+
+			if (cause instanceof SRP6Exception)
+				throw (SRP6Exception)cause;
+
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+
+			if (cause instanceof Error)
+				throw (Error)cause;
+
+			throw new IllegalStateException(cause.getMessage(), cause);
+		}
+	}
+
+
+	/**
+	 * Shuts down the handshake threads of this executor. The compute pool
+	 * is not shut down.
+	 */
+	public void shutdown() {
+
+		handshakeExecutor.shutdown();
+	}
+}
@@ -0,0 +1,791 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.nimbusds.srp6.SRP6ServerSession;
+
+
+/**
+ * Overload-aware scheduler for the CPU-bound work of server-side SRP-6a
+ * authentication sessions.
+ *
+ * <p>Step one and step two work is queued separately. Worker threads always
+ * drain the step two queue first, so that handshakes for which the server
+ * has already paid a step one are finished before new ones are started.
+ * New step one work is subject to admission control:
+ *
+ * <ul>
+ *     <li>It is rejected on submission if the step one queue is full, or if
+ *         the oldest queued step one task has already waited longer than the
+ *         maximum queue delay (the queue is standing, not draining).
+ *     <li>It is dropped when dequeued if it has waited longer than the
+ *         maximum queue delay, as the client has likely given up by then.
+ * </ul>
+ *
+ * <p>Rejected and dropped step one tasks fail with a
+ * {@code RejectedExecutionException}, which servers should translate into a
+ * cheap "try again later" response. Step two work is never rejected for
+ * queue delay; a step two which arrives after the
+ * {@link SRP6ServerSession#hasTimedOut session timeout} fails quickly with a
+ * {@link com.nimbusds.srp6.SRP6Exception.CauseType#TIMEOUT timeout}
+ * exception from the session itself.
+ *
+ * <p>Queue depth and sojourn time (the time between submission and the
+ * start of execution) are exposed per {@link Stage stage}.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6HandshakeScheduler {
+
+
+	/**
+	 * Enumerates the scheduled handshake stages.
+	 */
+	public static enum Stage {
+
+
+		/**
+		 * Server session step one, computation of the public server
+		 * value 'B'.
+		 */
+		STEP_1,
+
+
+		/**
+		 * Server session step two, computation of the session key 'S'
+		 * and the evidence messages.
+		 */
+		STEP_2
+	}
+
+
+	/**
+	 * Immutable snapshot of the statistics for a scheduled stage.
+	 */
+	public static class Statistics {
+
+
+		/**
+		 * The number of tasks currently queued.
+		 */
+		public final int queueDepth;
+
+
+		/**
+		 * The total number of tasks accepted for execution.
+		 */
+		public final long accepted;
+
+
+		/**
+		 * The total number of tasks rejected on submission.
+		 */
+		public final long rejected;
+
+
+		/**
+		 * The total number of tasks dropped after exceeding the maximum
+		 * queue delay.
+		 */
+		public final long dropped;
+
+
+		/**
+		 * The total number of tasks which were dequeued for execution.
+		 */
+		public final long executed;
+
+
+		/**
+		 * The sojourn time of the most recently dequeued task, in
+		 * nanoseconds.
+		 */
+		public final long lastSojournTime;
+
+
+		/**
+		 * The mean sojourn time of the dequeued tasks, in nanoseconds.
+		 */
+		public final long meanSojournTime;
+
+
+		/**
+		 * The maximum sojourn time of the dequeued tasks, in
+		 * nanoseconds.
+		 */
+		public final long maxSojournTime;
+
+
+		/**
+		 * Creates a new immutable stage statistics snapshot.
+		 *
+		 * @param queueDepth      The number of tasks currently queued.
+		 * @param accepted        The number of accepted tasks.
+		 * @param rejected        The number of rejected tasks.
+		 * @param dropped         The number of dropped tasks.
+		 * @param executed        The number of executed tasks.
+		 * @param lastSojournTime The last sojourn time, in nanoseconds.
+		 * @param meanSojournTime The mean sojourn time, in nanoseconds.
+		 * @param maxSojournTime  The maximum sojourn time, in
+		 *                        nanoseconds.
+		 */
+		public Statistics(final int queueDepth,
+		                  final long accepted,
+		                  final long rejected,
+		                  final long dropped,
+		                  final long executed,
+		                  final long lastSojournTime,
+		                  final long meanSojournTime,
+		                  final long maxSojournTime) {
+
+			this.queueDepth = queueDepth;
+			this.accepted = accepted;
+			this.rejected = rejected;
+			this.dropped = dropped;
+			this.executed = executed;
+			this.lastSojournTime = lastSojournTime;
+			this.meanSojournTime = meanSojournTime;
+			this.maxSojournTime = maxSojournTime;
+		}
+	}
+
+
+	/**
+	 * Listener for the completion of a scheduled task.
+	 */
+	public interface Listener<T> {
+
+
+		/**
+		 * Called once when the task completes, fails, is dropped or is
+		 * cancelled. Must not block, as it is invoked on a worker
+		 * thread or the thread which cancelled the task.
+		 *
+		 * @param future The completed future, its result is available
+		 *               without blocking.
+		 */
+		void onCompletion(final Future<T> future);
+	}
+
+
+	/**
+	 * Queued handshake task, records the time of its submission.
+	 */
+	private static class Task<T> extends FutureTask<T> {
+
+
+		/**
+		 * The submission timestamp, from System.nanoTime().
+		 */
+		final long enqueued = System.nanoTime();
+
+
+		/**
+		 * The stage queue of the task.
+		 */
+		final StageQueue stage;
+
+
+		/**
+		 * Optional completion listener.
+		 */
+		final Listener<T> listener;
+
+
+		Task(final Callable<T> callable, final StageQueue stage, final Listener<T> listener) {
+
+			super(callable);
+			this.stage = stage;
+			this.listener = listener;
+		}
+
+
+		@Override
+		protected void done() {
+
+			if (listener != null)
+				listener.onCompletion(this);
+		}
+
+
+		void fail(final Throwable t) {
+
+			setException(t);
+		}
+	}
+
+
+	/**
+	 * Per-stage queue and counters. Guarded by the scheduler lock except
+	 * for the atomic counters.
+	 */
+	private static class StageQueue {
+
+		final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+		final int capacity;
+		final AtomicLong accepted = new AtomicLong();
+		final AtomicLong rejected = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+		final AtomicLong executed = new AtomicLong();
+		final AtomicLong dequeued = new AtomicLong();
+		final AtomicLong totalSojournTime = new AtomicLong();
+		final AtomicLong lastSojournTime = new AtomicLong();
+		final AtomicLong maxSojournTime = new AtomicLong();
+
+
+		StageQueue(final int capacity) {
+
+			this.capacity = capacity;
+		}
+
+
+		void recordSojournTime(final long nanos) {
+
+			dequeued.incrementAndGet();
+			totalSojournTime.addAndGet(nanos);
+			lastSojournTime.set(nanos);
+
+			long max;
+
+			do {
+				max = maxSojournTime.get();
+
+			} while (nanos > max && ! maxSojournTime.compareAndSet(max, nanos));
+		}
+	}
+
+
+	/**
+	 * The default maximum number of queued step two tasks.
+	 */
+	public static final int DEFAULT_STEP2_QUEUE_CAPACITY = 100000;
+
+
+	/**
+	 * The step one queue.
+	 */
+	private final StageQueue step1;
+
+
+	/**
+	 * The step two queue.
+	 */
+	private final StageQueue step2;
+
+
+	/**
+	 * The maximum time a step one task may spend queued, in nanoseconds.
+	 */
+	private final long maxQueueDelay;
+
+
+	/**
+	 * Guards the queues.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+
+	/**
+	 * Signals queued work to the workers.
+	 */
+	private final Condition notEmpty = lock.newCondition();
+
+
+	/**
+	 * The worker threads, their number is the concurrency limit.
+	 */
+	private final Thread[] workers;
+
+
+	/**
+	 * Set when the scheduler is shut down.
+	 */
+	private volatile boolean shutdown = false;
+
+
+	/**
+	 * Creates a new handshake scheduler and starts its worker threads.
+	 *
+	 * @param concurrency        The maximum number of handshake tasks to
+	 *                           execute concurrently, typically the number
+	 *                           of available processors. Must be positive.
+	 * @param step1Capacity      The maximum number of queued step one
+	 *                           tasks. Must be positive.
+	 * @param step2Capacity      The maximum number of queued step two
+	 *                           tasks. Must be positive.
+	 * @param maxQueueDelay      The maximum time a step one task may spend
+	 *                           queued before it is dropped, and beyond
+	 *                           which new step one tasks are rejected.
+	 *                           Must be positive.
+	 * @param unit               The time unit of the maximum queue delay.
+	 *                           Must not be {@code null}.
+	 */
+	public SRP6HandshakeScheduler(final int concurrency,
+	                              final int step1Capacity,
+	                              final int step2Capacity,
+	                              final long maxQueueDelay,
+	                              final TimeUnit unit) {
+
+		if (concurrency < 1)
+			throw new IllegalArgumentException("The concurrency must be at least 1");
+
+		if (step1Capacity < 1)
+			throw new IllegalArgumentException("The step one queue capacity must be at least 1");
+
+		if (step2Capacity < 1)
+			throw new IllegalArgumentException("The step two queue capacity must be at least 1");
+
+		if (maxQueueDelay <= 0)
+			throw new IllegalArgumentException("The maximum queue delay must be positive");
+
+		if (unit == null)
+			throw new IllegalArgumentException("The time unit must not be null");
+
+		step1 = new StageQueue(step1Capacity);
+		step2 = new StageQueue(step2Capacity);
+		this.maxQueueDelay = unit.toNanos(maxQueueDelay);
+
+		workers = new Thread[concurrency];
+
+		for (int i=0; i < concurrency; i++) {
+
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "srp6-handshake-" + i);
+
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+
+	/**
+	 * Creates a new handshake scheduler with one worker per available
+	 * processor, a step one queue of 1024 tasks, the
+	 * {@link #DEFAULT_STEP2_QUEUE_CAPACITY default} step two queue capacity
+	 * and the specified maximum queue delay.
+	 *
+	 * @param maxQueueDelay The maximum time a step one task may spend
+	 *                      queued. Must be positive.
+	 * @param unit          The time unit of the maximum queue delay. Must
+	 *                      not be {@code null}.
+	 */
+	public SRP6HandshakeScheduler(final long maxQueueDelay, final TimeUnit unit) {
+
+		this(Runtime.getRuntime().availableProcessors(), 1024, DEFAULT_STEP2_QUEUE_CAPACITY, maxQueueDelay, unit);
+	}
+
+
+	/**
+	 * Gets the concurrency limit of this scheduler.
+	 *
+	 * @return The maximum number of concurrently executed tasks.
+	 */
+	public int getConcurrency() {
+
+		return workers.length;
+	}
+
+
+	/**
+	 * Gets the maximum queue delay for step one tasks.
+	 *
+	 * @param unit The time unit. Must not be {@code null}.
+	 *
+	 * @return The maximum queue delay in the specified unit.
+	 */
+	public long getMaxQueueDelay(final TimeUnit unit) {
+
+		return unit.convert(maxQueueDelay, TimeUnit.NANOSECONDS);
+	}
+
+
+	/**
+	 * Submits step one work, subject to admission control.
+	 *
+	 * @param task The step one task. Must not be {@code null}.
+	 *
+	 * @return The future result. Fails with a
+	 *         {@code RejectedExecutionException} if the task was dropped
+	 *         after exceeding the maximum queue delay.
+	 *
+	 * @throws RejectedExecutionException If the task was rejected by the
+	 *                                    admission control or the
+	 *                                    scheduler is shut down.
+	 */
+	public <T> Future<T> submitStep1(final Callable<T> task) {
+
+		return submitStep1(task, null);
+	}
+
+
+	/**
+	 * Submits step one work, subject to admission control, with a
+	 * completion listener. The listener is also notified if the task is
+	 * dropped after exceeding the maximum queue delay, but not if it is
+	 * rejected on submission.
+	 *
+	 * @param task     The step one task. Must not be {@code null}.
+	 * @param listener The completion listener, {@code null} if none.
+	 *
+	 * @return The future result. Fails with a
+	 *         {@code RejectedExecutionException} if the task was dropped
+	 *         after exceeding the maximum queue delay.
+	 *
+	 * @throws RejectedExecutionException If the task was rejected by the
+	 *                                    admission control or the
+	 *                                    scheduler is shut down.
+	 */
+	public <T> Future<T> submitStep1(final Callable<T> task, final Listener<T> listener) {
+
+		return submit(step1, task, listener, true);
+	}
+
+
+	/**
+	 * Submits step two work. Step two work takes priority over step one
+	 * work and is not subject to queue delay based admission control.
+	 *
+	 * @param task The step two task. Must not be {@code null}.
+	 *
+	 * @return The future result.
+	 *
+	 * @throws RejectedExecutionException If the step two queue is full or
+	 *                                    the scheduler is shut down.
+	 */
+	public <T> Future<T> submitStep2(final Callable<T> task) {
+
+		return submitStep2(task, null);
+	}
+
+
+	/**
+	 * Submits step two work with a completion listener. The listener is
+	 * not notified if the task is rejected on submission.
+	 *
+	 * @param task     The step two task. Must not be {@code null}.
+	 * @param listener The completion listener, {@code null} if none.
+	 *
+	 * @return The future result.
+	 *
+	 * @throws RejectedExecutionException If the step two queue is full or
+	 *                                    the scheduler is shut down.
+	 */
+	public <T> Future<T> submitStep2(final Callable<T> task, final Listener<T> listener) {
+
+		return submit(step2, task, listener, false);
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#step1 step one} of the specified
+	 * server session, subject to admission control.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 * @param userID  The identity 'I' of the authenticating user.
+	 * @param s       The password salt 's'.
+	 * @param v       The password verifier 'v'.
+	 *
+	 * @return The future public server value 'B'.
+	 *
+	 * @throws RejectedExecutionException If the task was rejected by the
+	 *                                    admission control or the
+	 *                                    scheduler is shut down.
+	 */
+	public Future<BigInteger> step1(final SRP6ServerSession session,
+	                                final String userID,
+	                                final BigInteger s,
+	                                final BigInteger v) {
+
+		return submitStep1(new Callable<BigInteger>() {
+			@Override
+			public BigInteger call() {
+				return session.step1(userID, s, v);
+			}
+		});
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#mockStep1 mock step one} of the
+	 * specified server session, subject to admission control.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 * @param userID  The identity 'I' of the authenticating user.
+	 * @param s       The mock password salt 's'.
+	 * @param v       The mock password verifier 'v'.
+	 *
+	 * @return The future public server value 'B'.
+	 *
+	 * @throws RejectedExecutionException If the task was rejected by the
+	 *                                    admission control or the
+	 *                                    scheduler is shut down.
+	 */
+	public Future<BigInteger> mockStep1(final SRP6ServerSession session,
+	                                    final String userID,
+	                                    final BigInteger s,
+	                                    final BigInteger v) {
+
+		return submitStep1(new Callable<BigInteger>() {
+			@Override
+			public BigInteger call() {
+				return session.mockStep1(userID, s, v);
+			}
+		});
+	}
+
+
+	/**
+	 * Submits {@link SRP6ServerSession#step2 step two} of the specified
+	 * server session.
+	 *
+	 * @param session The server session. Must not be {@code null}.
+	 * @param A       The client public value 'A'.
+	 * @param M1      The client evidence message 'M1'.
+	 *
+	 * @return The future server evidence message 'M2'. Authentication
+	 *         failures are reported as an {@code ExecutionException}
+	 *         caused by an {@link com.nimbusds.srp6.SRP6Exception}.
+	 *
+	 * @throws RejectedExecutionException If the step two queue is full or
+	 *                                    the scheduler is shut down.
+	 */
+	public Future<BigInteger> step2(final SRP6ServerSession session,
+	                                final BigInteger A,
+	                                final BigInteger M1) {
+
+		return submitStep2(new Callable<BigInteger>() {
+			@Override
+			public BigInteger call()
+				throws Exception {
+				return session.step2(A, M1);
+			}
+		});
+	}
+
+
+	/**
+	 * Gets the current queue depth for the specified stage.
+	 *
+	 * @param stage The stage. Must not be {@code null}.
+	 *
+	 * @return The number of queued tasks.
+	 */
+	public int getQueueDepth(final Stage stage) {
+
+		StageQueue q = queueFor(stage);
+
+		lock.lock();
+
+		try {
+			return q.queue.size();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Gets a snapshot of the statistics for the specified stage.
+	 *
+	 * @param stage The stage. Must not be {@code null}.
+	 *
+	 * @return The stage statistics.
+	 */
+	public Statistics getStatistics(final Stage stage) {
+
+		StageQueue q = queueFor(stage);
+
+		long dequeued = q.dequeued.get();
+
+		return new Statistics(
+			getQueueDepth(stage),
+			q.accepted.get(),
+			q.rejected.get(),
+			q.dropped.get(),
+			q.executed.get(),
+			q.lastSojournTime.get(),
+			dequeued > 0 ? q.totalSojournTime.get() / dequeued : 0L,
+			q.maxSojournTime.get());
+	}
+
+
+	/**
+	 * Shuts down this scheduler. Queued tasks fail with a
+	 * {@code RejectedExecutionException}, tasks in progress are allowed to
+	 * complete.
+	 */
+	public void shutdown() {
+
+		lock.lock();
+
+		try {
+			shutdown = true;
+
+			RejectedExecutionException e = new RejectedExecutionException("Scheduler shut down");
+
+			for (Task<?> t: step2.queue)
+				t.fail(e);
+
+			for (Task<?> t: step1.queue)
+				t.fail(e);
+
+			step2.queue.clear();
+			step1.queue.clear();
+
+			notEmpty.signalAll();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if this scheduler is shut down.
+	 *
+	 * @return {@code true} if shut down, else {@code false}.
+	 */
+	public boolean isShutdown() {
+
+		return shutdown;
+	}
+
+
+	private StageQueue queueFor(final Stage stage) {
+
+		if (stage == null)
+			throw new IllegalArgumentException("The stage must not be null");
+
+		return stage == Stage.STEP_1 ? step1 : step2;
+	}
+
+
+	private <T> Future<T> submit(final StageQueue q,
+	                             final Callable<T> callable,
+	                             final Listener<T> listener,
+	                             final boolean admissionControl) {
+
+		if (callable == null)
+			throw new IllegalArgumentException("The task must not be null");
+
+		Task<T> task = new Task<>(callable, q, listener);
+
+		lock.lock();
+
+		try {
+			if (shutdown)
+				throw new RejectedExecutionException("Scheduler shut down");
+
+			if (q.queue.size() >= q.capacity) {
+				q.rejected.incrementAndGet();
+				throw new RejectedExecutionException("Queue full");
+			}
+
+			if (admissionControl) {
+
+				Task<?> head = q.queue.peekFirst();
+
+				if (head != null && task.enqueued - head.enqueued > maxQueueDelay) {
+					q.rejected.incrementAndGet();
+					throw new RejectedExecutionException("Queue delay exceeded");
+				}
+			}
+
+			q.queue.addLast(task);
+			q.accepted.incrementAndGet();
+			notEmpty.signal();
+
+		} finally {
+			lock.unlock();
+		}
+
+		return task;
+	}
+
+
+	/**
+	 * Takes the next task, step two first. Step one tasks which exceeded
+	 * the maximum queue delay are dropped.
+	 *
+	 * @return The next task, {@code null} on shutdown.
+	 */
+	private Task<?> take()
+		throws InterruptedException {
+
+		lock.lock();
+
+		try {
+			while (true) {
+
+				if (shutdown)
+					return null;
+
+				Task<?> task = step2.queue.pollFirst();
+
+				if (task != null) {
+					step2.recordSojournTime(System.nanoTime() - task.enqueued);
+					return task;
+				}
+
+				task = step1.queue.pollFirst();
+
+				if (task != null) {
+
+					long sojournTime = System.nanoTime() - task.enqueued;
+					step1.recordSojournTime(sojournTime);
+
+					if (sojournTime <= maxQueueDelay)
+						return task;
+
+					step1.dropped.incrementAndGet();
+					task.fail(new RejectedExecutionException("Queue delay exceeded"));
+					continue;
+				}
+
+				notEmpty.await();
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	private void work() {
+
+		while (true) {
+
+			Task<?> task;
+
+			try {
+				task = take();
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			if (task == null)
+				return; // shut down
+
+			task.stage.executed.incrementAndGet();
+
+			task.run();
+		}
+	}
+}
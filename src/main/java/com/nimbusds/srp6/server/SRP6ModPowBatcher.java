@@ -0,0 +1,453 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.nimbusds.srp6.FixedBaseTable;
+
+
+/**
+ * Micro-batching collector for the exponentiations g^b (mod N) of the fixed
+ * base 'g', such as in server step one. Enabled for the sessions of a
+ * {@link com.nimbusds.srp6.SRP6ServerContext server context} by creating
+ * the context with the batcher.
+ *
+ * <p>Submitted exponentiations are collected for up to the maximum delay, or
+ * until a batch is full, and are then executed together by a worker thread,
+ * in lockstep over the {@link FixedBaseTable#modPow(BigInteger[]) fixed-base
+ * table}. Exponentiations of other bases can't share the table and are not
+ * batched.
+ *
+ * <p>The maximum delay bounds the latency added to each exponentiation. It
+ * should be small compared to the time of an exponentiation, so that
+ * batches are only formed during load peaks. The gain from the lockstep
+ * walk is modest, the batcher pays off mostly where many sessions run step
+ * one at the same time on more threads than there are processors.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6ModPowBatcher {
+
+
+	/**
+	 * Queued exponentiation, completed by a worker.
+	 */
+	private static class Request extends FutureTask<BigInteger> {
+
+
+		/**
+		 * Never called, the requests are completed by the workers.
+		 */
+		private static final Callable<BigInteger> NOT_RUNNABLE = new Callable<BigInteger>() {
+			@Override
+			public BigInteger call() {
+				throw new IllegalStateException("Not runnable");
+			}
+		};
+
+
+		/**
+		 * The submission timestamp, from System.nanoTime().
+		 */
+		final long enqueued = System.nanoTime();
+
+
+		/**
+		 * The exponent.
+		 */
+		final BigInteger exponent;
+
+
+		Request(final BigInteger exponent) {
+
+			super(NOT_RUNNABLE);
+			this.exponent = exponent;
+		}
+
+
+		void complete(final BigInteger result) {
+
+			set(result);
+		}
+
+
+		void fail(final Throwable t) {
+
+			setException(t);
+		}
+	}
+
+
+	/**
+	 * The default maximum number of exponentiations per batch.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+
+	/**
+	 * The fixed-base table.
+	 */
+	private final FixedBaseTable gTable;
+
+
+	/**
+	 * The maximum number of exponentiations per batch.
+	 */
+	private final int maxBatchSize;
+
+
+	/**
+	 * The maximum time to wait for a batch to fill, in nanoseconds.
+	 */
+	private final long maxDelay;
+
+
+	/**
+	 * The queued requests.
+	 */
+	private final ArrayDeque<Request> queue = new ArrayDeque<>();
+
+
+	/**
+	 * Guards the queue.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+
+	/**
+	 * Signals queued requests to the workers.
+	 */
+	private final Condition notEmpty = lock.newCondition();
+
+
+	/**
+	 * The worker threads.
+	 */
+	private final Thread[] workers;
+
+
+	/**
+	 * The number of executed batches.
+	 */
+	private final AtomicLong batchCount = new AtomicLong();
+
+
+	/**
+	 * The number of executed exponentiations.
+	 */
+	private final AtomicLong exponentiationCount = new AtomicLong();
+
+
+	/**
+	 * Set when the batcher is shut down.
+	 */
+	private volatile boolean shutdown = false;
+
+
+	/**
+	 * Creates a new batcher and starts its worker threads.
+	 *
+	 * @param gTable       The fixed-base table for 'g' modulo 'N'. Must
+	 *                     not be {@code null}.
+	 * @param concurrency  The number of worker threads, typically the
+	 *                     number of available processors. Must be
+	 *                     positive.
+	 * @param maxBatchSize The maximum number of exponentiations per batch.
+	 *                     Must be positive.
+	 * @param maxDelay     The maximum time to wait for a batch to fill.
+	 *                     Zero executes the requests which are queued when
+	 *                     a worker becomes free. Must not be negative.
+	 * @param unit         The time unit of the maximum delay. Must not be
+	 *                     {@code null}.
+	 */
+	public SRP6ModPowBatcher(final FixedBaseTable gTable,
+	                         final int concurrency,
+	                         final int maxBatchSize,
+	                         final long maxDelay,
+	                         final TimeUnit unit) {
+
+		if (gTable == null)
+			throw new IllegalArgumentException("The fixed-base table must not be null");
+
+		if (concurrency < 1)
+			throw new IllegalArgumentException("The concurrency must be at least 1");
+
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("The maximum batch size must be at least 1");
+
+		if (maxDelay < 0)
+			throw new IllegalArgumentException("The maximum delay must not be negative");
+
+		if (unit == null)
+			throw new IllegalArgumentException("The time unit must not be null");
+
+		this.gTable = gTable;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = unit.toNanos(maxDelay);
+
+		workers = new Thread[concurrency];
+
+		for (int i=0; i < concurrency; i++) {
+
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "srp6-modpow-" + i);
+
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+
+	/**
+	 * Gets the fixed-base table.
+	 *
+	 * @return The fixed-base table for 'g' modulo 'N'.
+	 */
+	public FixedBaseTable getFixedBaseTable() {
+
+		return gTable;
+	}
+
+
+	/**
+	 * Gets the maximum number of exponentiations per batch.
+	 *
+	 * @return The maximum batch size.
+	 */
+	public int getMaxBatchSize() {
+
+		return maxBatchSize;
+	}
+
+
+	/**
+	 * Submits an exponentiation of the fixed base, g^e (mod N).
+	 *
+	 * @param e The exponent. Must not be {@code null}.
+	 *
+	 * @return The future result.
+	 *
+	 * @throws RejectedExecutionException If the batcher is shut down.
+	 */
+	public Future<BigInteger> submit(final BigInteger e) {
+
+		if (e == null)
+			throw new IllegalArgumentException("The exponent must not be null");
+
+		return enqueue(new Request(e));
+	}
+
+
+	/**
+	 * Queues the specified request.
+	 *
+	 * @param request The request.
+	 *
+	 * @return The request.
+	 */
+	private Request enqueue(final Request request) {
+
+		lock.lock();
+
+		try {
+			if (shutdown)
+				throw new RejectedExecutionException("The exponentiation batcher is shut down");
+
+			queue.addLast(request);
+
+			// Wake a worker if a batch is full, or if the request is first
+			if (queue.size() == 1 || queue.size() >= maxBatchSize)
+				notEmpty.signal();
+
+		} finally {
+			lock.unlock();
+		}
+
+		return request;
+	}
+
+
+	/**
+	 * Gets the number of executed batches.
+	 *
+	 * @return The batch count.
+	 */
+	public long getBatchCount() {
+
+		return batchCount.get();
+	}
+
+
+	/**
+	 * Gets the number of executed exponentiations.
+	 *
+	 * @return The exponentiation count.
+	 */
+	public long getExponentiationCount() {
+
+		return exponentiationCount.get();
+	}
+
+
+	/**
+	 * Gets the number of worker threads which are alive.
+	 *
+	 * @return The live worker count.
+	 */
+	int getLiveWorkerCount() {
+
+		int count = 0;
+
+		for (Thread worker: workers) {
+
+			if (worker.isAlive())
+				count++;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Shuts down the batcher. Queued exponentiations are still executed,
+	 * new ones are rejected.
+	 */
+	public void shutdown() {
+
+		lock.lock();
+
+		try {
+			shutdown = true;
+			notEmpty.signalAll();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Takes the next batch of requests. Blocks until a request is queued,
+	 * then until the batch is full or the oldest request has waited for
+	 * the maximum delay.
+	 *
+	 * @return The batch, empty if the batcher is shut down and the queue
+	 *         drained.
+	 *
+	 * @throws InterruptedException If interrupted.
+	 */
+	private List<Request> takeBatch()
+		throws InterruptedException {
+
+		lock.lock();
+
+		try {
+			while (true) {
+
+				while (queue.isEmpty() && ! shutdown)
+					notEmpty.await();
+
+				if (queue.isEmpty())
+					return new ArrayList<>(0); // shut down and drained
+
+				while (! shutdown && ! queue.isEmpty() && queue.size() < maxBatchSize) {
+
+					long remaining = maxDelay - (System.nanoTime() - queue.peekFirst().enqueued);
+
+					if (remaining <= 0)
+						break;
+
+					notEmpty.awaitNanos(remaining);
+				}
+
+				// Taken by another worker while waiting, wait again
+				if (! queue.isEmpty())
+					break;
+			}
+
+			List<Request> batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+
+			while (batch.size() < maxBatchSize && ! queue.isEmpty())
+				batch.add(queue.pollFirst());
+
+			// More queued for another worker
+			if (! queue.isEmpty())
+				notEmpty.signal();
+
+			return batch;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Executes the specified batch of requests.
+	 *
+	 * @param batch The batch.
+	 */
+	private void execute(final List<Request> batch) {
+
+		// Counted before completion, for callers of the futures
+		batchCount.incrementAndGet();
+		exponentiationCount.addAndGet(batch.size());
+
+		BigInteger[] exponents = new BigInteger[batch.size()];
+
+		for (int i=0; i < exponents.length; i++)
+			exponents[i] = batch.get(i).exponent;
+
+		try {
+			BigInteger[] results = gTable.modPow(exponents);
+
+			for (int i=0; i < results.length; i++)
+				batch.get(i).complete(results[i]);
+
+		} catch (RuntimeException e) {
+
+			for (Request r: batch)
+				r.fail(e);
+		}
+	}
+
+
+	/**
+	 * The worker loop.
+	 */
+	private void work() {
+
+		while (true) {
+
+			List<Request> batch;
+
+			try {
+				batch = takeBatch();
+
+			} catch (InterruptedException e) {
+
+				return;
+			}
+
+			if (batch.isEmpty())
+				return;
+
+			execute(batch);
+		}
+	}
+}
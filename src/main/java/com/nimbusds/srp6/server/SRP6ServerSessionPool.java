@@ -0,0 +1,260 @@
+package com.nimbusds.srp6.server;
+
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6ServerContext;
+import com.nimbusds.srp6.SRP6ServerSession;
+
+
+/**
+ * Bounded pool of reusable server-side SRP-6a authentication sessions, for
+ * servers processing handshakes at high rates.
+ *
+ * <p>Sessions are {@link #acquire acquired} in the
+ * {@link SRP6ServerSession.State#INIT INIT} state and
+ * {@link #release released} back to the pool when the handshake is
+ * finished, successfully or not. Released sessions are
+ * {@link SRP6ServerSession#reset() reset} immediately and their custom
+ * routines restored to the defaults of the
+ * {@link SRP6ServerContext server context}, so that no secrets or other
+ * values from the finished handshake linger in the pool. If the pool is
+ * full a released session is left to the garbage collector; if it is empty
+ * a new session is created on acquisition. Releasing a session which is
+ * already idle in the pool has no effect, so that it can't be handed out
+ * twice.
+ *
+ * <p>A session must only be released once its handshake is no longer
+ * running and the application holds no further references to it. Obtain
+ * an {@link SRP6ServerSession#toAuthenticatedSession authenticated
+ * session} first if the authentication outcome is needed afterwards.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6ServerSessionPool {
+
+
+	/**
+	 * The server context of the pooled sessions.
+	 */
+	private final SRP6ServerContext context;
+
+
+	/**
+	 * The SRP-6a session timeout in seconds, zero if none.
+	 */
+	private final int timeout;
+
+
+	/**
+	 * The idle sessions.
+	 */
+	private final BlockingQueue<SRP6ServerSession> idle;
+
+
+	/**
+	 * The idle sessions, by identity. Also guards the transfers between
+	 * the pool and the callers.
+	 */
+	private final Set<SRP6ServerSession> idleSet =
+		Collections.newSetFromMap(new IdentityHashMap<SRP6ServerSession,Boolean>());
+
+
+	/**
+	 * The number of sessions created by the pool.
+	 */
+	private final AtomicLong createdCount = new AtomicLong();
+
+
+	/**
+	 * Creates a new server session pool, with a new
+	 * {@link SRP6ServerContext server context} for the specified crypto
+	 * parameters.
+	 *
+	 * @param config   The SRP-6a crypto parameters. Must not be
+	 *                 {@code null}.
+	 * @param timeout  The SRP-6a session timeout in seconds, zero if none.
+	 * @param capacity The maximum number of idle sessions to retain. Must
+	 *                 be at least one.
+	 */
+	public SRP6ServerSessionPool(final SRP6CryptoParams config,
+	                             final int timeout,
+	                             final int capacity) {
+
+		this(new SRP6ServerContext(config), timeout, capacity);
+	}
+
+
+	/**
+	 * Creates a new server session pool.
+	 *
+	 * @param context  The server context of the pooled sessions. Must not
+	 *                 be {@code null}.
+	 * @param timeout  The SRP-6a session timeout in seconds, zero if none.
+	 * @param capacity The maximum number of idle sessions to retain. Must
+	 *                 be at least one.
+	 */
+	public SRP6ServerSessionPool(final SRP6ServerContext context,
+	                             final int timeout,
+	                             final int capacity) {
+
+		if (context == null)
+			throw new IllegalArgumentException("The server context must not be null");
+
+		if (timeout < 0)
+			throw new IllegalArgumentException("The timeout must be zero (no timeout) or greater");
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be at least one");
+
+		this.context = context;
+		this.timeout = timeout;
+		idle = new ArrayBlockingQueue<>(capacity);
+	}
+
+
+	/**
+	 * Gets the SRP-6a crypto parameters of the pooled sessions.
+	 *
+	 * @return The SRP-6a crypto parameters.
+	 */
+	public SRP6CryptoParams getCryptoParams() {
+
+		return context.getCryptoParams();
+	}
+
+
+	/**
+	 * Gets the server context of the pooled sessions.
+	 *
+	 * @return The server context.
+	 */
+	public SRP6ServerContext getServerContext() {
+
+		return context;
+	}
+
+
+	/**
+	 * Gets the SRP-6a session timeout of the pooled sessions.
+	 *
+	 * @return The timeout in seconds, zero if none.
+	 */
+	public int getTimeout() {
+
+		return timeout;
+	}
+
+
+	/**
+	 * Gets the maximum number of idle sessions retained by the pool.
+	 *
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+
+		return idle.size() + idle.remainingCapacity();
+	}
+
+
+	/**
+	 * Gets the number of idle sessions in the pool.
+	 *
+	 * @return The number of idle sessions.
+	 */
+	public int getIdleCount() {
+
+		return idle.size();
+	}
+
+
+	/**
+	 * Gets the number of sessions created by the pool since it was
+	 * constructed.
+	 *
+	 * @return The number of created sessions.
+	 */
+	public long getCreatedCount() {
+
+		return createdCount.get();
+	}
+
+
+	/**
+	 * Acquires a server session in the
+	 * {@link SRP6ServerSession.State#INIT INIT} state, reusing an idle one
+	 * if available.
+	 *
+	 * @return The server session.
+	 */
+	public SRP6ServerSession acquire() {
+
+		SRP6ServerSession session;
+
+		synchronized (idleSet) {
+
+			session = idle.poll();
+
+			if (session != null)
+				idleSet.remove(session);
+		}
+
+		if (session == null) {
+			createdCount.incrementAndGet();
+			return context.createSession(timeout);
+		}
+
+		// Restart the timeout clock
+		session.reset();
+		return session;
+	}
+
+
+	/**
+	 * Resets the specified server session, restores the custom routines
+	 * to the defaults of the server context, and returns it to the pool.
+	 * Sessions of another context, with a different timeout, or of a
+	 * subclass, are reset but not retained. Sessions which are already
+	 * idle in the pool are ignored.
+	 *
+	 * @param session The server session, {@code null} if none.
+	 */
+	public void release(final SRP6ServerSession session) {
+
+		if (session == null)
+			return;
+
+		synchronized (idleSet) {
+
+			if (idleSet.contains(session))
+				return;
+		}
+
+		session.reset();
+
+		if (session.getClass() != SRP6ServerSession.class ||
+		    session.getServerContext() != context ||
+		    session.getTimeout() != timeout)
+			return;
+
+		session.setHashedKeysRoutine(context.getHashedKeysRoutine());
+		session.setClientEvidenceRoutine(context.getClientEvidenceRoutine());
+		session.setServerEvidenceRoutine(context.getServerEvidenceRoutine());
+
+		synchronized (idleSet) {
+
+			// Released twice concurrently
+			if (idleSet.contains(session))
+				return;
+
+			if (idle.offer(session))
+				idleSet.add(session);
+		}
+	}
+}
@@ -0,0 +1,452 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nimbusds.srp6.BigIntegerUtils;
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6ServerContext;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+import com.nimbusds.srp6.SRP6VerifierTableCache;
+
+
+/**
+ * Warm-up of a server node before it takes traffic. Runs synthetic client
+ * and server handshakes with throwaway credentials for each
+ * {@link SRP6ServerContext server context}, so that the session code, the
+ * hash functions and the big integer arithmetic are JIT-compiled, until the
+ * handshake latency stabilises.
+ *
+ * <p>The precomputed tables are built when the server contexts are created,
+ * the warm-up exercises them. Handshakes are run in batches, one batch per
+ * context per round. A batch is stable when its time is within the
+ * tolerance of the previous batch, i.e. neither slower nor still getting
+ * faster. A context is warm after the minimum number of handshakes followed
+ * by several consecutive stable batches, so that a single lucky pair of
+ * batches in the middle of the compilation doesn't count. The warm-up
+ * completes with {@link Result#STABLE} when all contexts are warm, or with
+ * {@link Result#UNSTABLE} after the maximum number of handshakes, in which
+ * case the node is not reported as ready.
+ *
+ * <p>Example, with the readiness exposed to a load balancer health check:
+ *
+ * <pre>
+ * SRP6WarmUp warmUp = new SRP6WarmUp(Arrays.asList(context2048, context4096));
+ * warmUp.start();
+ *
+ * // Health check
+ * boolean ready = warmUp.isReady();
+ * </pre>
+ *
+ * <p>Authentications of the throwaway users are removed from the
+ * {@link SRP6VerifierTableCache verifier table caches} of the contexts.
+ *
+ * <p>This class is thread-safe.
+ */
+public class SRP6WarmUp {
+
+
+	/**
+	 * Enumerates the warm-up results.
+	 */
+	public enum Result {
+
+
+		/**
+		 * The handshake latency of all contexts stabilised.
+		 */
+		STABLE,
+
+
+		/**
+		 * The handshake latency of at least one context did not
+		 * stabilise within the maximum number of handshakes.
+		 */
+		UNSTABLE
+	}
+
+
+	/**
+	 * The default number of handshakes per batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 16;
+
+
+	/**
+	 * The default minimum number of handshakes per context before the
+	 * latency is considered.
+	 */
+	public static final int DEFAULT_MIN_HANDSHAKES = 500;
+
+
+	/**
+	 * The default number of consecutive stable batches.
+	 */
+	public static final int DEFAULT_STABLE_BATCHES = 5;
+
+
+	/**
+	 * The default maximum number of handshakes per context.
+	 */
+	public static final int DEFAULT_MAX_HANDSHAKES = 2000;
+
+
+	/**
+	 * The default latency tolerance between successive batches.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.1;
+
+
+	/**
+	 * The server contexts.
+	 */
+	private final List<SRP6ServerContext> contexts;
+
+
+	/**
+	 * The number of handshakes per batch.
+	 */
+	private final int batchSize;
+
+
+	/**
+	 * The minimum number of handshakes per context.
+	 */
+	private final int minHandshakes;
+
+
+	/**
+	 * The number of consecutive stable batches.
+	 */
+	private final int stableBatches;
+
+
+	/**
+	 * The maximum number of handshakes per context.
+	 */
+	private final int maxHandshakes;
+
+
+	/**
+	 * The latency tolerance between successive batches.
+	 */
+	private final double tolerance;
+
+
+	/**
+	 * The warm-up task.
+	 */
+	private final FutureTask<Result> task;
+
+
+	/**
+	 * The number of completed handshakes.
+	 */
+	private final AtomicInteger handshakeCount = new AtomicInteger();
+
+
+	/**
+	 * {@code true} once the warm-up was started.
+	 */
+	private boolean started = false;
+
+
+	/**
+	 * Creates a new warm-up with the default batch size, minimum number
+	 * of handshakes, number of stable batches, maximum number of
+	 * handshakes and tolerance.
+	 *
+	 * @param contexts The server contexts to warm up. Must not be empty.
+	 */
+	public SRP6WarmUp(final Collection<SRP6ServerContext> contexts) {
+
+		this(contexts, DEFAULT_BATCH_SIZE, DEFAULT_MIN_HANDSHAKES, DEFAULT_STABLE_BATCHES,
+			DEFAULT_MAX_HANDSHAKES, DEFAULT_TOLERANCE);
+	}
+
+
+	/**
+	 * Creates a new warm-up.
+	 *
+	 * @param contexts      The server contexts to warm up. Must not be
+	 *                      empty.
+	 * @param batchSize     The number of handshakes per batch. Must be
+	 *                      positive.
+	 * @param minHandshakes The minimum number of handshakes per context
+	 *                      before the stable batches are counted. Must
+	 *                      not be negative.
+	 * @param stableBatches The number of consecutive stable batches after
+	 *                      the minimum number of handshakes for a context
+	 *                      to be warm. Must be positive.
+	 * @param maxHandshakes The maximum number of handshakes per context,
+	 *                      at least the minimum plus one batch more than
+	 *                      the stable batches.
+	 * @param tolerance     The latency tolerance between successive
+	 *                      batches, e.g. 0.1 for 10%. Must not be
+	 *                      negative.
+	 */
+	public SRP6WarmUp(final Collection<SRP6ServerContext> contexts,
+	                  final int batchSize,
+	                  final int minHandshakes,
+	                  final int stableBatches,
+	                  final int maxHandshakes,
+	                  final double tolerance) {
+
+		if (contexts == null || contexts.isEmpty())
+			throw new IllegalArgumentException("The server contexts must not be empty");
+
+		if (contexts.contains(null))
+			throw new IllegalArgumentException("The server contexts must not contain null");
+
+		if (batchSize < 1)
+			throw new IllegalArgumentException("The batch size must be positive");
+
+		if (minHandshakes < 0)
+			throw new IllegalArgumentException("The minimum number of handshakes must not be negative");
+
+		if (stableBatches < 1)
+			throw new IllegalArgumentException("The number of stable batches must be positive");
+
+		if ((long)maxHandshakes < minHandshakes + (stableBatches + 1L) * batchSize)
+			throw new IllegalArgumentException("The maximum number of handshakes must be at least the minimum plus the stable batches and one more");
+
+		if (tolerance < 0)
+			throw new IllegalArgumentException("The tolerance must not be negative");
+
+		this.contexts = new ArrayList<>(contexts);
+		this.batchSize = batchSize;
+		this.minHandshakes = minHandshakes;
+		this.stableBatches = stableBatches;
+		this.maxHandshakes = maxHandshakes;
+		this.tolerance = tolerance;
+
+		task = new FutureTask<>(new Callable<Result>() {
+			@Override
+			public Result call()
+				throws SRP6Exception {
+				return warmUp();
+			}
+		});
+	}
+
+
+	/**
+	 * Starts the warm-up on a new daemon thread, if not started yet.
+	 *
+	 * @return The future result, completed when the node is warm or the
+	 *         maximum number of handshakes is reached.
+	 */
+	public synchronized Future<Result> start() {
+
+		if (! started) {
+
+			started = true;
+
+			Thread thread = new Thread(task, "srp6-warm-up");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		return task;
+	}
+
+
+	/**
+	 * Runs the warm-up on the calling thread and blocks until the node is
+	 * warm or the maximum number of handshakes is reached. Returns
+	 * immediately if the warm-up was already run.
+	 *
+	 * @return The result, {@code null} if the calling thread was
+	 *         interrupted.
+	 *
+	 * @throws SRP6Exception If a synthetic handshake failed.
+	 */
+	public Result run()
+		throws SRP6Exception {
+
+		synchronized (this) {
+
+			if (! started) {
+				started = true;
+				task.run();
+			}
+		}
+
+		try {
+			return task.get();
+
+		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+			return null;
+
+		} catch (ExecutionException e) {
+
+			if (e.getCause() instanceof SRP6Exception)
+				throw (SRP6Exception)e.getCause();
+
+			throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the warm-up completed with
+	 * {@link Result#STABLE stable} handshake latencies and the node is
+	 * ready to take traffic.
+	 *
+	 * @return {@code true} if ready, else {@code false}.
+	 */
+	public boolean isReady() {
+
+		return getResult() == Result.STABLE;
+	}
+
+
+	/**
+	 * Gets the result of the warm-up.
+	 *
+	 * @return The result, {@code null} if the warm-up is not completed or
+	 *         a synthetic handshake failed.
+	 */
+	public Result getResult() {
+
+		if (! task.isDone() || task.isCancelled())
+			return null;
+
+		try {
+			return task.get();
+
+		} catch (InterruptedException | ExecutionException e) {
+
+			return null;
+		}
+	}
+
+
+	/**
+	 * Gets the number of synthetic handshakes completed so far.
+	 *
+	 * @return The handshake count.
+	 */
+	public int getHandshakeCount() {
+
+		return handshakeCount.get();
+	}
+
+
+	/**
+	 * Runs batches of handshakes for each context until all are warm or
+	 * the maximum number of handshakes is reached.
+	 *
+	 * @return The result.
+	 *
+	 * @throws SRP6Exception If a synthetic handshake failed.
+	 */
+	private Result warmUp()
+		throws SRP6Exception {
+
+		final int n = contexts.size();
+		final String[] userIDs = new String[n];
+		final String[] passwords = new String[n];
+		final BigInteger[][] credentials = new BigInteger[n][];
+		final long[] lastBatchNanos = new long[n];
+		final int[] stableCount = new int[n];
+		final boolean[] warm = new boolean[n];
+
+		for (int i = 0; i < n; i++) {
+
+			SRP6CryptoParams config = contexts.get(i).getCryptoParams();
+			SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+
+			userIDs[i] = "srp6-warm-up-" + BigIntegerUtils.toHex(gen.generateRandomSalt());
+			BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+			passwords[i] = BigIntegerUtils.toHex(gen.generateRandomSalt());
+			credentials[i] = new BigInteger[]{ s, gen.generateVerifier(s, userIDs[i], passwords[i]) };
+		}
+
+		try {
+			int warmCount = 0;
+
+			for (int done = 0; done + batchSize <= maxHandshakes && warmCount < n; done += batchSize) {
+
+				for (int i = 0; i < n; i++) {
+
+					if (warm[i])
+						continue;
+
+					final long start = System.nanoTime();
+
+					for (int j = 0; j < batchSize; j++) {
+						handshake(contexts.get(i), userIDs[i], passwords[i], credentials[i]);
+						handshakeCount.incrementAndGet();
+					}
+
+					final long nanos = System.nanoTime() - start;
+
+					// Neither slower nor still getting faster, counted
+					// after the minimum number of handshakes
+					if (done >= minHandshakes && lastBatchNanos[i] > 0 && Math.abs(nanos - lastBatchNanos[i]) <= lastBatchNanos[i] * tolerance)
+						stableCount[i]++;
+					else
+						stableCount[i] = 0;
+
+					if (stableCount[i] >= stableBatches) {
+						warm[i] = true;
+						warmCount++;
+					}
+
+					lastBatchNanos[i] = nanos;
+				}
+			}
+
+			return warmCount == n ? Result.STABLE : Result.UNSTABLE;
+
+		} finally {
+			for (int i = 0; i < n; i++) {
+
+				SRP6VerifierTableCache cache = contexts.get(i).getVerifierTableCache();
+
+				if (cache != null)
+					cache.remove(userIDs[i]);
+			}
+		}
+	}
+
+
+	/**
+	 * Runs a synthetic handshake.
+	 *
+	 * @param context     The server context.
+	 * @param userID      The throwaway user ID.
+	 * @param password    The throwaway password.
+	 * @param credentials The salt and verifier.
+	 *
+	 * @throws SRP6Exception If the handshake failed.
+	 */
+	private static void handshake(final SRP6ServerContext context,
+	                              final String userID,
+	                              final String password,
+	                              final BigInteger[] credentials)
+		throws SRP6Exception {
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = context.createSession(0);
+
+		client.step1(userID, password);
+		SRP6ClientCredentials cred = client.step2(context.getCryptoParams(), credentials[0], server.step1(userID, credentials[0], credentials[1]));
+		client.step3(server.step2(cred.A, cred.M1));
+	}
+}
@@ -0,0 +1,114 @@
+package com.nimbusds.srp6.server;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Access to virtual threads (JDK 21 and later) from the Java 7 baseline, by
+ * reflection.
+ *
+ * <p>This class is replaced by a version that calls the JDK 21 API directly
+ * in {@code META-INF/versions/21} of the multi-release JAR. Both versions
+ * must have the same package-private signatures.
+ */
+final class VirtualThreads {
+
+
+	/**
+	 * Holder of the cached support check, run on first use.
+	 */
+	private static final class Support {
+
+
+		/**
+		 * {@code true} if a virtual thread executor could be created.
+		 */
+		static final boolean SUPPORTED = probe();
+
+
+		/**
+		 * Creates and shuts down a virtual thread executor. On JDK 19
+		 * and 20 the factory method exists but fails unless preview
+		 * features are enabled.
+		 *
+		 * @return {@code true} if the executor was created.
+		 */
+		private static boolean probe() {
+
+			ExecutorService executor = newThreadPerTaskExecutor();
+
+			if (executor == null)
+				return false;
+
+			executor.shutdown();
+			return true;
+		}
+	}
+
+
+	/**
+	 * Returns {@code true} if the Java runtime supports virtual threads,
+	 * i.e. a virtual thread executor can be created.
+	 *
+	 * @return {@code true} if virtual threads are supported, else
+	 *         {@code false}.
+	 */
+	static boolean isSupported() {
+
+		return Support.SUPPORTED;
+	}
+
+
+	/**
+	 * Creates a new executor that starts a new virtual thread for each
+	 * task.
+	 *
+	 * @return The executor, {@code null} if virtual threads are not
+	 *         supported or are disabled in this runtime.
+	 */
+	static ExecutorService newThreadPerTaskExecutor() {
+
+		Method m = lookUpNewVirtualThreadPerTaskExecutor();
+
+		if (m == null)
+			return null;
+
+		try {
+			return (ExecutorService)m.invoke(null);
+
+		} catch (Exception e) {
+
+			// Preview / disabled in this runtime
+			return null;
+		}
+	}
+
+
+	/**
+	 * Looks up the {@code Executors.newVirtualThreadPerTaskExecutor}
+	 * method.
+	 *
+	 * @return The method, {@code null} if not found.
+	 */
+	private static Method lookUpNewVirtualThreadPerTaskExecutor() {
+
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+		} catch (NoSuchMethodException e) {
+
+			return null;
+		}
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private VirtualThreads() {
+
+	}
+}
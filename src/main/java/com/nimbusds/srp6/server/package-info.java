@@ -0,0 +1,20 @@
+/**
+ * Server-side execution support for Secure Remote Password (SRP-6a)
+ * authentication.
+ *
+ * <ul>
+ *     <li>{@link com.nimbusds.srp6.server.SRP6HandshakeScheduler} Overload
+ *         aware scheduler for the CPU-bound step one and step two work of
+ *         server sessions.
+ *     <li>{@link com.nimbusds.srp6.server.SRP6HandshakeExecutor}
+ *         Thread-per-handshake execution on virtual threads (JDK 21+), with
+ *         the CPU-bound work handed off to the scheduler.
+ *     <li>{@link com.nimbusds.srp6.server.SRP6ServerSessionPool} Bounded
+ *         pool of reusable server sessions.
+ *     <li>{@link com.nimbusds.srp6.server.SRP6WarmUp} Warm-up of a server
+ *         node with synthetic handshakes, with a readiness signal.
+ *     <li>{@link com.nimbusds.srp6.server.SRP6ModPowBatcher} Micro-batching
+ *         of the step one g^b exponentiations across sessions.
+ * </ul>
+ */
+package com.nimbusds.srp6.server;
@@ -0,0 +1,44 @@
+package com.nimbusds.srp6.server;
+
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Access to virtual threads, JDK 21 version. Packaged in
+ * {@code META-INF/versions/21} of the multi-release JAR.
+ */
+final class VirtualThreads {
+
+
+	/**
+	 * Returns {@code true}, virtual threads are supported.
+	 *
+	 * @return {@code true}.
+	 */
+	static boolean isSupported() {
+
+		return true;
+	}
+
+
+	/**
+	 * Creates a new executor that starts a new virtual thread for each
+	 * task.
+	 *
+	 * @return The executor.
+	 */
+	static ExecutorService newThreadPerTaskExecutor() {
+
+		return Executors.newVirtualThreadPerTaskExecutor();
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private VirtualThreads() {
+
+	}
+}
@@ -2,6 +2,9 @@ package com.nimbusds.srp6;
 
 
 import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -54,4 +57,141 @@ public class BigIntegerUtilsTest extends TestCase {
 		assertEquals(bigInteger ,from);
 	}
 
+
+	public void testHexMatchesRadixConversion() {
+
+		Random random = new SecureRandom();
+
+		for (int bits: new int[]{0, 1, 3, 4, 5, 7, 8, 9, 255, 256, 1024, 8192}) {
+
+			for (int i=0; i < 20; i++) {
+
+				BigInteger value = new BigInteger(bits, random);
+				String hex = BigIntegerUtils.toHex(value);
+
+				assertEquals(value.toString(16), hex);
+				assertEquals(value, BigIntegerUtils.fromHex(hex));
+			}
+		}
+
+		assertEquals("-ff", BigIntegerUtils.toHex(BigInteger.valueOf(-255)));
+		assertEquals(BigInteger.valueOf(-255), BigIntegerUtils.fromHex("-ff"));
+		assertEquals(BigInteger.valueOf(255), BigIntegerUtils.fromHex("+ff"));
+	}
+
+
+	public void testHexInvalid() {
+
+		assertNull(BigIntegerUtils.fromHex(null));
+		assertNull(BigIntegerUtils.fromHex(""));
+		assertNull(BigIntegerUtils.fromHex("-"));
+		assertNull(BigIntegerUtils.fromHex("12g4"));
+		assertNull(BigIntegerUtils.fromHex("12 4"));
+		assertNull(BigIntegerUtils.fromHex("\u00e9"));
+
+		assertNull(BigIntegerUtils.hexToBytes("abc"));
+		assertNull(BigIntegerUtils.hexToBytes("zz"));
+		assertTrue(Arrays.equals(new byte[]{0x0a, (byte)0xbc}, BigIntegerUtils.hexToBytes("0aBC")));
+	}
+
+
+	public void testHexPadded() {
+
+		assertEquals("00000000", BigIntegerUtils.toHex(BigInteger.ZERO, 4));
+		assertEquals("000000ff", BigIntegerUtils.toHex(BigInteger.valueOf(255), 4));
+		assertEquals("80000000", BigIntegerUtils.toHex(BigInteger.ONE.shiftLeft(31), 4));
+
+		char[] buf = new char[12];
+		Arrays.fill(buf, '.');
+		assertEquals(8, BigIntegerUtils.toHex(BigInteger.valueOf(0x1234), 4, buf, 2));
+		assertEquals("..00001234..", new String(buf));
+
+		try {
+			BigIntegerUtils.toHex(BigInteger.ONE.shiftLeft(32), 4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			BigIntegerUtils.toHex(BigInteger.ONE.negate(), 4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+
+		try {
+			BigIntegerUtils.toHex(BigInteger.ONE, 4, buf, 5);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// ok
+		}
+
+		assertEquals("00ff10", BigIntegerUtils.toHex(new byte[]{0, (byte)0xff, 0x10}));
+	}
+
+
+	public void testBase64URLVectors() {
+
+		// RFC 4648, section 10, without padding
+		String[][] vectors = {
+			{"", ""}, {"f", "Zg"}, {"fo", "Zm8"}, {"foo", "Zm9v"},
+			{"foob", "Zm9vYg"}, {"fooba", "Zm9vYmE"}, {"foobar", "Zm9vYmFy"}
+		};
+
+		for (String[] v: vectors) {
+
+			byte[] bytes = v[0].getBytes();
+			assertEquals(v[1], BigIntegerUtils.toBase64URL(bytes));
+			assertTrue(Arrays.equals(bytes, BigIntegerUtils.base64URLToBytes(v[1])));
+		}
+
+		assertEquals("-_8", BigIntegerUtils.toBase64URL(new byte[]{(byte)0xfb, (byte)0xff}));
+	}
+
+
+	public void testBase64URLBigInteger() {
+
+		Random random = new SecureRandom();
+
+		for (int bits: new int[]{1, 8, 9, 16, 17, 24, 1024, 2048, 8192}) {
+
+			BigInteger value = new BigInteger(bits, random);
+			assertEquals(value, BigIntegerUtils.fromBase64URL(BigIntegerUtils.toBase64URL(value)));
+
+			int length = (bits + 7) / 8 + 1;
+			String padded = BigIntegerUtils.toBase64URL(value, length);
+			assertEquals(BigIntegerUtils.base64URLLength(length), padded.length());
+			assertEquals(length, BigIntegerUtils.base64URLToBytes(padded).length);
+			assertEquals(value, BigIntegerUtils.fromBase64URL(padded));
+		}
+
+		assertEquals("", BigIntegerUtils.toBase64URL(BigInteger.ZERO));
+		assertEquals("AAAA", BigIntegerUtils.toBase64URL(BigInteger.ZERO, 3));
+		assertEquals("AQ", BigIntegerUtils.toBase64URL(BigInteger.ONE));
+	}
+
+
+	public void testBase64URLStrict() {
+
+		assertNull(BigIntegerUtils.fromBase64URL(null));
+		assertNull(BigIntegerUtils.fromBase64URL("Zg=="));
+		assertNull(BigIntegerUtils.fromBase64URL("Zm9v+"));
+		assertNull(BigIntegerUtils.fromBase64URL("Zm9/"));
+		assertNull(BigIntegerUtils.fromBase64URL("A"));
+		assertNull(BigIntegerUtils.fromBase64URL("Zh")); // non-zero trailing bits
+		assertNull(BigIntegerUtils.fromBase64URL("Zm9"));
+		assertNotNull(BigIntegerUtils.fromBase64URL("Zm8"));
+	}
+
+
+	public void testBinaryPadded() {
+
+		assertTrue(Arrays.equals(new byte[]{0, 0, 0, 1}, BigIntegerUtils.bigIntegerToBytes(BigInteger.ONE, 4)));
+		assertTrue(Arrays.equals(new byte[]{0, 0, (byte)0x80}, BigIntegerUtils.bigIntegerToBytes(BigInteger.valueOf(0x80), 3)));
+		assertTrue(Arrays.equals(new byte[]{1, 0}, BigIntegerUtils.bigIntegerToBytes(BigInteger.valueOf(0x100), 2)));
+		assertTrue(Arrays.equals(new byte[]{1, 0}, BigIntegerUtils.bigIntegerToBytes(BigInteger.valueOf(0x100), 1)));
+		assertTrue(Arrays.equals(new byte[0], BigIntegerUtils.bigIntegerToBytes(BigInteger.ZERO, 0)));
+		assertTrue(Arrays.equals(new byte[2], BigIntegerUtils.bigIntegerToBytes(BigInteger.ZERO, 2)));
+	}
 }
@@ -0,0 +1,54 @@
+package com.nimbusds.srp6;
+
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the digest midstate cache.
+ */
+public class DigestMidstateCacheTest extends TestCase {
+
+
+	public void testGetAndPut()
+		throws Exception {
+
+		DigestMidstateCache cache = new DigestMidstateCache(2);
+		assertNull(cache.get(MessageDigest.getInstance("SHA-256"), "p"));
+
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update(new byte[]{1, 2, 3});
+		cache.put(digest, "p");
+		byte[] expected = digest.digest(new byte[]{4});
+
+		// Copies of the state
+		for (int i = 0; i < 3; i++) {
+			MessageDigest state = cache.get(MessageDigest.getInstance("SHA-256"), "p");
+			assertTrue(Arrays.equals(expected, state.digest(new byte[]{4})));
+		}
+
+		// Keyed by algorithm too
+		assertNull(cache.get(MessageDigest.getInstance("SHA-1"), "p"));
+	}
+
+
+	public void testEviction()
+		throws Exception {
+
+		DigestMidstateCache cache = new DigestMidstateCache(2);
+
+		cache.put(MessageDigest.getInstance("SHA-256"), "a");
+		cache.put(MessageDigest.getInstance("SHA-256"), "b");
+		assertNotNull(cache.get(MessageDigest.getInstance("SHA-256"), "a"));
+		cache.put(MessageDigest.getInstance("SHA-256"), "c");
+
+		// Least recently used evicted
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(MessageDigest.getInstance("SHA-256"), "a"));
+		assertNull(cache.get(MessageDigest.getInstance("SHA-256"), "b"));
+		assertNotNull(cache.get(MessageDigest.getInstance("SHA-256"), "c"));
+	}
+}
@@ -0,0 +1,181 @@
+package com.nimbusds.srp6;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the fixed-base table file format.
+ */
+public class FixedBaseTableFileTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+
+
+	private File file;
+
+
+	@Override
+	protected void setUp()
+		throws IOException {
+
+		file = File.createTempFile("srp6-g", ".table");
+		assertTrue(file.delete());
+	}
+
+
+	@Override
+	protected void tearDown() {
+
+		file.delete();
+	}
+
+
+	private static void assertSameValues(final FixedBaseTable expected, final FixedBaseTable actual) {
+
+		Random random = new Random(1);
+
+		for (int i = 0; i < 10; i++) {
+
+			BigInteger e = new BigInteger(expected.getMaxExponentBits(), random);
+			assertEquals(expected.modPow(e), actual.modPow(e));
+		}
+	}
+
+
+	public void testWriteAndRead()
+		throws IOException {
+
+		FixedBaseTable table = new FixedBaseTable(config.N, config.g, 4);
+		FixedBaseTableFile.write(table, file);
+
+		long expectedLength = 8 + 16 + 2 * 128 + (1024 / 4) * 15 * 128 + 8;
+		assertEquals(expectedLength, file.length());
+
+		FixedBaseTable read = FixedBaseTableFile.read(file, config.N, config.g, 4, 1024);
+		assertEquals(config.N, read.getModulus());
+		assertEquals(config.g, read.getBase());
+		assertEquals(4, read.getWindowBits());
+		assertEquals(1024, read.getMaxExponentBits());
+		assertSameValues(table, read);
+	}
+
+
+	public void testMismatch()
+		throws IOException {
+
+		FixedBaseTableFile.write(new FixedBaseTable(config.N, config.g, 4, 512), file);
+
+		// Other window, exponent length and group
+		int[][] params = {{3, 512}, {4, 1024}};
+
+		for (int[] p: params) {
+
+			try {
+				FixedBaseTableFile.read(file, config.N, config.g, p[0], p[1]);
+				fail();
+			} catch (IOException e) {
+				assertEquals("Fixed-base table window width or exponent length mismatch", e.getMessage());
+			}
+		}
+
+		try {
+			FixedBaseTableFile.read(file, config.N, BigInteger.valueOf(3), 4, 512);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Fixed-base table group mismatch", e.getMessage());
+		}
+
+		SRP6CryptoParams other = SRP6CryptoParams.getInstance(2048, "SHA-256");
+
+		try {
+			FixedBaseTableFile.read(file, other.N, other.g, 4, 512);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Fixed-base table modulus mismatch", e.getMessage());
+		}
+	}
+
+
+	public void testCorrupted()
+		throws IOException {
+
+		FixedBaseTableFile.write(new FixedBaseTable(config.N, config.g, 4, 512), file);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(file.length() / 2);
+			int b = raf.read();
+			raf.seek(file.length() / 2);
+			raf.write(b ^ 1);
+		}
+
+		try {
+			FixedBaseTableFile.read(file, config.N, config.g, 4, 512);
+			fail();
+		} catch (IOException e) {
+			assertEquals("Fixed-base table checksum mismatch", e.getMessage());
+		}
+
+		// Truncated
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(100);
+		}
+
+		try {
+			FixedBaseTableFile.read(file, config.N, config.g, 4, 512);
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+	}
+
+
+	public void testReadOrCompute()
+		throws IOException {
+
+		// Missing, computed and written
+		FixedBaseTable table = FixedBaseTableFile.readOrCompute(file, config.N, config.g, 4, 512);
+		assertTrue(file.exists());
+		assertSameValues(table, FixedBaseTableFile.read(file, config.N, config.g, 4, 512));
+
+		// Stale, replaced
+		table = FixedBaseTableFile.readOrCompute(file, config.N, config.g, 5, 512);
+		assertEquals(5, table.getWindowBits());
+		assertEquals(5, FixedBaseTableFile.read(file, config.N, config.g, 5, 512).getWindowBits());
+	}
+
+
+	public void testServerContextWithTable()
+		throws Exception {
+
+		FixedBaseTable table = FixedBaseTableFile.readOrCompute(file, config.N, config.g, 4, config.N.bitLength());
+		SRP6ServerContext context = new SRP6ServerContext(config, SRP6Routines.DEFAULT, null, null, null, table, null);
+		assertSame(table, context.getFixedBaseTable());
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = context.createSession(0);
+		client.step1("alice", "secret");
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		try {
+			SRP6CryptoParams other = SRP6CryptoParams.getInstance(512, "SHA-256");
+			new SRP6ServerContext(other, SRP6Routines.DEFAULT, null, null, null, table, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The fixed-base table must be for the generator 'g' modulo 'N'", e.getMessage());
+		}
+	}
+}
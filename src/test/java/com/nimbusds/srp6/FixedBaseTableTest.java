@@ -0,0 +1,116 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the fixed-base exponentiation table.
+ */
+public class FixedBaseTableTest extends TestCase {
+
+
+	private final SecureRandom random = new SecureRandom();
+
+
+	public void testAgainstModPow() {
+
+		for (int bits: new int[]{256, 1024, 2048}) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bits, "SHA-1");
+
+			for (int w: new int[]{1, 3, 4, 5, 8}) {
+
+				FixedBaseTable table = new FixedBaseTable(config.N, config.g, w);
+
+				assertEquals(config.N, table.getModulus());
+				assertEquals(config.g, table.getBase());
+				assertEquals(w, table.getWindowBits());
+				assertEquals(config.N.bitLength(), table.getMaxExponentBits());
+
+				for (int i = 0; i < 10; i++) {
+					BigInteger e = new BigInteger(bits, random);
+					assertEquals(config.g.modPow(e, config.N), table.modPow(e));
+				}
+
+				BigInteger max = config.N.subtract(BigInteger.ONE);
+				assertEquals(config.g.modPow(max, config.N), table.modPow(max));
+			}
+		}
+	}
+
+
+	public void testEdgeExponents() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-1");
+		BigInteger N = config.N;
+		BigInteger g = BigInteger.valueOf(5);
+		FixedBaseTable table = new FixedBaseTable(N, g, 4);
+
+		assertEquals(BigInteger.ONE, table.modPow(BigInteger.ZERO));
+		assertEquals(g, table.modPow(BigInteger.ONE));
+		assertEquals(g.modPow(BigInteger.valueOf(255), N), table.modPow(BigInteger.valueOf(255)));
+		assertEquals(g.modPow(BigInteger.valueOf(256), N), table.modPow(BigInteger.valueOf(256)));
+
+		// Beyond the table and negative, computed with modPow
+		BigInteger big = BigInteger.ONE.shiftLeft(N.bitLength() + 10).add(BigInteger.TEN);
+		assertEquals(g.modPow(big, N), table.modPow(big));
+		assertEquals(g.modPow(BigInteger.valueOf(-3), N), table.modPow(BigInteger.valueOf(-3)));
+	}
+
+
+	public void testModPowBatch() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-1");
+		FixedBaseTable table = new FixedBaseTable(config.N, config.g, 4, 512);
+
+		// Mixed lengths, zero, negative and beyond the table
+		BigInteger[] exponents = {
+			new BigInteger(512, random),
+			new BigInteger(100, random),
+			BigInteger.ZERO,
+			BigInteger.ONE,
+			BigInteger.valueOf(-5),
+			new BigInteger(1024, random).setBit(1023),
+			new BigInteger(512, random)
+		};
+
+		BigInteger[] results = table.modPow(exponents);
+		assertEquals(exponents.length, results.length);
+
+		for (int i = 0; i < exponents.length; i++)
+			assertEquals(config.g.modPow(exponents[i], config.N), results[i]);
+
+		assertEquals(0, table.modPow(new BigInteger[0]).length);
+	}
+
+
+	public void testBadArguments() {
+
+		BigInteger N = SRP6CryptoParams.getInstance().N;
+
+		try {
+			new FixedBaseTable(N.subtract(BigInteger.ONE), BigInteger.valueOf(2), 4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The modulus must be odd and greater than one", e.getMessage());
+		}
+
+		try {
+			new FixedBaseTable(N, N, 4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The base must be in the range [1, N)", e.getMessage());
+		}
+
+		try {
+			new FixedBaseTable(N, BigInteger.valueOf(2), 9);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The window width must be from 1 to 8 bits", e.getMessage());
+		}
+	}
+}
@@ -56,4 +56,106 @@ public class SRP6CryptoParamsTest extends TestCase {
 			assertEquals("The generator parameter 'g' must not be 0", e.getMessage());
 		}
 	}
+
+
+	public void testGeneratorOrder() {
+
+		for (int bits: new int[]{256, 512, 768, 1024, 1536, 2048, 3072, 4096, 6144, 8192}) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bits, "SHA-1");
+			BigInteger q = config.getGeneratorOrder();
+			assertEquals(config.N.subtract(BigInteger.ONE), q);
+			assertEquals(BigInteger.ONE, config.g.modPow(q, config.N));
+		}
+
+		// Quadratic residue 4 = 2^2 has order (N - 1) / 2
+		BigInteger N = SRP6CryptoParams.N_512;
+		BigInteger q = N.shiftRight(1);
+		assertTrue(q.isProbablePrime(15));
+		assertEquals(q, new SRP6CryptoParams(N, BigInteger.valueOf(4), "SHA-1").getGeneratorOrder());
+
+		// Unknown for other primes
+		assertNull(new SRP6CryptoParams(N.nextProbablePrime(), SRP6CryptoParams.g_common, "SHA-1").getGeneratorOrder());
+
+		// Explicit prime order
+		SRP6CryptoParams config = new SRP6CryptoParams(N, BigInteger.valueOf(4), "SHA-1", q);
+		assertEquals(q, config.getGeneratorOrder());
+
+		// g^q = 1 (mod N) for q = N - 1 and any prime 'N', not prime
+		N = N.nextProbablePrime();
+
+		try {
+			new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-1", N.subtract(BigInteger.ONE));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The order 'q' of the generator 'g' must be prime", e.getMessage());
+		}
+
+		try {
+			new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-1", BigInteger.ONE);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The order 'q' of the generator 'g' must be prime", e.getMessage());
+		}
+
+		// Prime, but not the order
+		try {
+			new SRP6CryptoParams(SRP6CryptoParams.N_512, SRP6CryptoParams.g_common, "SHA-1", q.nextProbablePrime());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The order 'q' of the generator 'g' must satisfy g^q = 1 (mod N)", e.getMessage());
+		}
+	}
+
+
+	public void testGetInstanceInterned() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(2048, "SHA-256");
+		assertSame(config, SRP6CryptoParams.getInstance(2048, "SHA-256"));
+		assertNotSame(config, SRP6CryptoParams.getInstance(2048, "SHA-512"));
+		assertNotSame(config, SRP6CryptoParams.getInstance(1024, "SHA-256"));
+
+		assertNull(SRP6CryptoParams.getInstance(1000, "SHA-256"));
+
+		SRP6CryptoParams copy = new SRP6CryptoParams(config.N, config.g, config.H);
+		assertEquals(config, copy);
+		assertEquals(config.hashCode(), copy.hashCode());
+		assertSame(config, SRP6CryptoParams.intern(copy));
+	}
+
+
+	public void testIntern() {
+
+		BigInteger N = SRP6CryptoParams.N_512.nextProbablePrime();
+
+		SRP6CryptoParams config = new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-256");
+		assertNull(SRP6CryptoParams.forId(config.getId()));
+
+		assertSame(config, SRP6CryptoParams.intern(config));
+		assertSame(config, SRP6CryptoParams.intern(new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-256")));
+		assertSame(config, SRP6CryptoParams.forId(config.getId()));
+
+		// Same ID, other exponent policy
+		SRP6CryptoParams other = new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-256", null, SRP6ExponentPolicy.SECURITY_LEVEL);
+		assertFalse(config.equals(other));
+		assertEquals(config.getId(), other.getId());
+		assertSame(other, SRP6CryptoParams.intern(other));
+		assertSame(config, SRP6CryptoParams.forId(config.getId()));
+	}
+
+
+	public void testId() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(2048, "SHA-256");
+
+		// Stable across releases
+		assertEquals("C734XRf6rgQEfdXY", config.getId());
+		assertEquals(16, config.getId().length());
+		assertSame(config, SRP6CryptoParams.forId(config.getId()));
+
+		assertFalse(config.getId().equals(SRP6CryptoParams.getInstance(2048, "SHA-1").getId()));
+		assertFalse(config.getId().equals(SRP6CryptoParams.getInstance(3072, "SHA-256").getId()));
+
+		assertNull(SRP6CryptoParams.forId("unknown"));
+	}
 }
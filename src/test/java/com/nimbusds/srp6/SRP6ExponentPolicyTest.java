@@ -0,0 +1,167 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the exponent policy for the private values.
+ */
+public class SRP6ExponentPolicyTest extends TestCase {
+
+
+	private static SRP6CryptoParams params(final int bits, final SRP6ExponentPolicy policy) {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(bits, "SHA-256");
+		return new SRP6CryptoParams(config.N, config.g, config.H, null, policy);
+	}
+
+
+	public void testDefault() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(2048, "SHA-256");
+		assertEquals(SRP6ExponentPolicy.FULL, config.getExponentPolicy());
+		assertTrue(config.getExponentPolicy().isFull());
+		assertEquals(2048, SRP6ExponentPolicy.FULL.getPrivateValueBits(config));
+
+		// The precomputed 256-bit group has a 257-bit prime
+		config = SRP6CryptoParams.getInstance(256, "SHA-256");
+		assertEquals(257, SRP6ExponentPolicy.FULL.getPrivateValueBits(config));
+
+		config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+		assertEquals(1024, SRP6ExponentPolicy.FULL.getPrivateValueBits(config));
+	}
+
+
+	public void testSecurityLevelBits() {
+
+		int[][] expected = {
+			{256, 256}, {512, 256}, {1024, 256}, {2048, 256}, {3072, 275},
+			{4096, 325}, {6144, 375}, {8192, 400}
+		};
+
+		for (int[] pair: expected) {
+
+			SRP6CryptoParams config = params(pair[0], SRP6ExponentPolicy.SECURITY_LEVEL);
+			assertEquals(SRP6ExponentPolicy.SECURITY_LEVEL, config.getExponentPolicy());
+			assertEquals(pair[1], config.getExponentPolicy().getPrivateValueBits(config));
+		}
+
+		// Full length if the order of 'g' is not known
+		BigInteger N = SRP6CryptoParams.N_2048.nextProbablePrime();
+		SRP6CryptoParams config = new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-256", null, SRP6ExponentPolicy.SECURITY_LEVEL);
+		assertFalse(config.isShortExponentSafe());
+		assertEquals(N.bitLength(), SRP6ExponentPolicy.SECURITY_LEVEL.getPrivateValueBits(config));
+		assertEquals(N.bitLength(), SRP6ExponentPolicy.fixed(320).getPrivateValueBits(config));
+	}
+
+
+	public void testSecurityLevelBitsWithPrimeOrder() {
+
+		// Subgroup of 512-bit prime order 'q' in a 2048-bit group
+		Random random = new Random(1);
+		BigInteger q = BigInteger.probablePrime(512, random);
+		BigInteger N;
+
+		do {
+			BigInteger r = new BigInteger(1536, random).setBit(1535).clearBit(0);
+			N = q.multiply(r).add(BigInteger.ONE);
+		} while (! N.isProbablePrime(30));
+
+		BigInteger g = BigInteger.valueOf(2).modPow(N.subtract(BigInteger.ONE).divide(q), N);
+
+		SRP6CryptoParams config = new SRP6CryptoParams(N, g, "SHA-256", q, SRP6ExponentPolicy.SECURITY_LEVEL);
+		assertTrue(config.isShortExponentSafe());
+		assertEquals(256, SRP6ExponentPolicy.SECURITY_LEVEL.getPrivateValueBits(config));
+
+		// Precomputed safe primes
+		assertTrue(params(2048, SRP6ExponentPolicy.SECURITY_LEVEL).isShortExponentSafe());
+	}
+
+
+	public void testFixedBits() {
+
+		SRP6ExponentPolicy policy = SRP6ExponentPolicy.fixed(320);
+		assertFalse(policy.isFull());
+		assertEquals(SRP6ExponentPolicy.fixed(320), policy);
+		assertEquals("FIXED(320)", policy.toString());
+
+		assertEquals(320, policy.getPrivateValueBits(params(4096, policy)));
+
+		// Limited to the order of 'g'
+		SRP6CryptoParams config = params(256, policy);
+		assertEquals(257, policy.getPrivateValueBits(config));
+
+		try {
+			SRP6ExponentPolicy.fixed(255);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The private value length must be at least 256 bits", e.getMessage());
+		}
+
+		try {
+			new SRP6CryptoParams(config.N, config.g, config.H, null, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The exponent policy must not be null", e.getMessage());
+		}
+	}
+
+
+	public void testPrivateValueLength() {
+
+		SecureRandom random = new SecureRandom();
+		SRP6Routines routines = new SRP6Routines();
+
+		SRP6CryptoParams config = params(4096, SRP6ExponentPolicy.SECURITY_LEVEL);
+
+		for (int i = 0; i < 100; i++) {
+
+			BigInteger a = routines.generatePrivateValue(config, random);
+			assertTrue(a.signum() > 0);
+			assertTrue(a.bitLength() <= 325);
+		}
+
+		config = params(256, SRP6ExponentPolicy.fixed(512));
+
+		for (int i = 0; i < 100; i++) {
+
+			BigInteger a = routines.generatePrivateValue(config, random);
+			assertTrue(a.signum() > 0);
+			assertTrue(a.compareTo(config.getGeneratorOrder()) < 0);
+		}
+	}
+
+
+	public void testAuthWithShortPrivateValues()
+		throws SRP6Exception {
+
+		SRP6CryptoParams shortConfig = params(3072, SRP6ExponentPolicy.SECURITY_LEVEL);
+		SRP6CryptoParams fullConfig = SRP6CryptoParams.getInstance(3072, "SHA-256");
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(fullConfig);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		// Either side may use short private values
+		SRP6CryptoParams[][] combinations = {
+			{shortConfig, shortConfig}, {shortConfig, fullConfig}, {fullConfig, shortConfig}
+		};
+
+		for (SRP6CryptoParams[] configs: combinations) {
+
+			SRP6ServerSession server = new SRP6ServerSession(configs[0]);
+			SRP6ClientSession client = new SRP6ClientSession();
+
+			client.step1("alice", "secret");
+			SRP6ClientCredentials cred = client.step2(configs[1], s, server.step1("alice", s, v));
+			client.step3(server.step2(cred.A, cred.M1));
+
+			assertEquals(client.getSessionKey(), server.getSessionKey());
+		}
+	}
+}
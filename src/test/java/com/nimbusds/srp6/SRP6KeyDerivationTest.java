@@ -0,0 +1,161 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the derivation of labelled keys from the session key.
+ */
+public class SRP6KeyDerivationTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+
+	private SRP6ClientSession client;
+
+
+	private SRP6ServerSession server;
+
+
+	@Override
+	protected void setUp()
+		throws SRP6Exception {
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		client = new SRP6ClientSession();
+		server = new SRP6ServerSession(config);
+		client.step1("alice", "secret");
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+	}
+
+
+	public void testRFC5869TestCase3() {
+
+		// SHA-256, zero-length salt and info
+		byte[] ikm = new byte[22];
+		Arrays.fill(ikm, (byte)0x0b);
+
+		SRP6KeyDerivation kdf = new SRP6KeyDerivation(ikm);
+
+		assertEquals(
+			"8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d9d201395faa4b61a96c8",
+			BigIntegerUtils.toHex(kdf.deriveKey("", 42)));
+	}
+
+
+	public void testClientAndServerKeysMatch() {
+
+		SRP6KeyDerivation clientKdf = client.getKeyDerivation();
+		SRP6KeyDerivation serverKdf = server.getKeyDerivation();
+
+		byte[] clientKeys = new byte[2 + 16 + 32];
+		clientKdf.deriveKeys(new String[]{"enc", "mac"}, new int[]{16, 32}, clientKeys, 2);
+
+		byte[] serverKeys = new byte[2 + 16 + 32];
+		serverKdf.deriveKeys(new String[]{"enc", "mac"}, new int[]{16, 32}, serverKeys, 2);
+
+		assertTrue(Arrays.equals(clientKeys, serverKeys));
+
+		// Same as one at a time
+		assertTrue(Arrays.equals(Arrays.copyOfRange(clientKeys, 2, 18), serverKdf.deriveKey("enc", 16)));
+		assertTrue(Arrays.equals(Arrays.copyOfRange(clientKeys, 18, 50), serverKdf.deriveKey("mac", 32)));
+
+		// Distinct labels, distinct keys
+		assertFalse(Arrays.equals(clientKdf.deriveKey("enc", 16), clientKdf.deriveKey("mac", 16)));
+
+		// Authenticated sessions derive the same keys
+		assertTrue(Arrays.equals(clientKdf.deriveKey("enc", 16), client.toAuthenticatedSession().getKeyDerivation().deriveKey("enc", 16)));
+		assertTrue(Arrays.equals(clientKdf.deriveKey("enc", 16), server.toAuthenticatedSession().getKeyDerivation().deriveKey("enc", 16)));
+	}
+
+
+	public void testCachedKeys() {
+
+		SRP6KeyDerivation kdf = client.getKeyDerivation();
+		assertSame(kdf, client.getKeyDerivation());
+
+		byte[] shortKey = kdf.deriveKey("key", 16);
+		byte[] longKey = kdf.deriveKey("key", 64);
+
+		// HKDF output is a prefix of any longer output
+		assertTrue(Arrays.equals(shortKey, Arrays.copyOf(longKey, 16)));
+		assertTrue(Arrays.equals(shortKey, kdf.deriveKey("key", 16)));
+
+		// Copies
+		longKey[0] ^= 1;
+		assertFalse(Arrays.equals(longKey, kdf.deriveKey("key", 64)));
+
+		// Hash of the session key is cached and copied too
+		byte[] hash = client.getSessionKeyHash();
+		hash[0] ^= 1;
+		assertFalse(Arrays.equals(hash, client.getSessionKeyHash()));
+		assertTrue(Arrays.equals(client.getSessionKeyHash(), server.getSessionKeyHash()));
+	}
+
+
+	public void testResetAndDestroy() {
+
+		SRP6KeyDerivation kdf = server.getKeyDerivation();
+		server.reset();
+
+		assertTrue(kdf.isDestroyed());
+		assertNull(server.getKeyDerivation());
+		assertNull(server.getSessionKeyHash());
+
+		try {
+			kdf.deriveKey("enc", 16);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The derived keys were destroyed", e.getMessage());
+		}
+
+		SRP6AuthenticatedSession session = client.toAuthenticatedSession();
+		kdf = session.getKeyDerivation();
+		assertSame(kdf, session.getKeyDerivation());
+		session.destroy();
+		assertTrue(kdf.isDestroyed());
+
+		try {
+			session.getKeyDerivation();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The session key 'S' was destroyed", e.getMessage());
+		}
+	}
+
+
+	public void testBadArguments() {
+
+		SRP6KeyDerivation kdf = client.getKeyDerivation();
+
+		try {
+			kdf.deriveKeys(new String[]{"enc", "mac"}, new int[]{16}, new byte[16], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The key labels and lengths must not be null and must have the same size", e.getMessage());
+		}
+
+		try {
+			kdf.deriveKeys(new String[]{"enc", "mac"}, new int[]{16, 16}, new byte[31], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The output buffer is too small", e.getMessage());
+		}
+
+		try {
+			kdf.deriveKey("enc", 255 * 32 + 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The output length must be from 0 to 8160 bytes", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the SRP-6a message codec.
+ */
+public class SRP6MessageCodecTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+
+
+	private final SRP6MessageCodec codec = new SRP6MessageCodec(config);
+
+
+	public void testLengths() {
+
+		assertEquals(128, codec.getGroupLength());
+		assertEquals(32, codec.getDigestLength());
+		assertEquals(160, codec.getProofLength());
+		assertEquals(32, codec.getVerifyLength());
+	}
+
+
+	public void testRoundTripHeapAndDirect() {
+
+		for (ByteBuffer buf: new ByteBuffer[]{ByteBuffer.allocate(512), ByteBuffer.allocateDirect(512)}) {
+
+			BigInteger s = new BigInteger(1, new byte[]{0, 0, 1, 2});
+			BigInteger B = config.N.subtract(BigInteger.ONE);
+			BigInteger A = BigInteger.TEN;
+			BigInteger M1 = BigInteger.ONE.shiftLeft(255);
+			BigInteger M2 = BigInteger.ZERO;
+
+			codec.putUserID(buf, "\u00e9l\u00e8ve");
+			codec.putChallenge(buf, s, B);
+			codec.putProof(buf, A, M1);
+			codec.putEvidence(buf, M2);
+
+			assertEquals(2 + 7 + 1 + 2 + 128 + 160 + 32, buf.position());
+
+			buf.flip();
+
+			assertEquals("\u00e9l\u00e8ve", codec.getUserID(buf));
+			assertEquals(s, codec.getSalt(buf));
+			assertEquals(B, codec.getPublicValue(buf));
+
+			SRP6ClientCredentials cred = codec.getProof(buf);
+			assertEquals(A, cred.A);
+			assertEquals(M1, cred.M1);
+
+			assertEquals(M2, codec.getEvidence(buf));
+			assertFalse(buf.hasRemaining());
+		}
+	}
+
+
+	public void testFixedLengthPadding() {
+
+		ByteBuffer buf = ByteBuffer.allocate(128);
+		codec.putPublicValue(buf, BigInteger.valueOf(0x0102));
+
+		assertEquals(128, buf.position());
+		assertEquals(0, buf.get(0));
+		assertEquals(1, buf.get(126));
+		assertEquals(2, buf.get(127));
+	}
+
+
+	public void testOverflowLeavesPosition() {
+
+		ByteBuffer buf = ByteBuffer.allocate(100);
+		buf.position(10);
+
+		try {
+			codec.putProof(buf, BigInteger.ONE, BigInteger.ONE);
+			fail();
+		} catch (BufferOverflowException e) {
+			assertEquals(10, buf.position());
+		}
+
+		try {
+			codec.putPublicValue(buf, BigInteger.ONE);
+			fail();
+		} catch (BufferOverflowException e) {
+			assertEquals(10, buf.position());
+		}
+
+		buf.position(98);
+
+		try {
+			codec.putUserID(buf, "alice");
+			fail();
+		} catch (BufferOverflowException e) {
+			assertEquals(98, buf.position());
+		}
+	}
+
+
+	public void testUnderflowLeavesPosition() {
+
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		buf.putShort((short)10);
+		buf.put(new byte[]{'a', 'b'});
+		buf.flip();
+
+		try {
+			codec.getUserID(buf);
+			fail();
+		} catch (BufferUnderflowException e) {
+			assertEquals(0, buf.position());
+		}
+
+		buf.clear();
+		buf.put((byte)20);
+		buf.flip();
+
+		try {
+			codec.getSalt(buf);
+			fail();
+		} catch (BufferUnderflowException e) {
+			assertEquals(0, buf.position());
+		}
+
+		buf.clear();
+		buf.limit(31);
+
+		try {
+			codec.getEvidence(buf);
+			fail();
+		} catch (BufferUnderflowException e) {
+			assertEquals(0, buf.position());
+		}
+	}
+
+
+	public void testValueOutOfRange() {
+
+		ByteBuffer buf = ByteBuffer.allocate(1024);
+
+		try {
+			codec.putEvidence(buf, BigInteger.ONE.shiftLeft(256));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, buf.position());
+		}
+
+		try {
+			codec.putPublicValue(buf, BigInteger.ONE.negate());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, buf.position());
+		}
+
+		try {
+			codec.putChallenge(buf, BigInteger.ONE, BigInteger.ONE.shiftLeft(1024));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, buf.position());
+		}
+	}
+
+
+	public void testMalformedUserID() {
+
+		ByteBuffer buf = ByteBuffer.allocate(8);
+		buf.putShort((short)2);
+		buf.put((byte)0xC3);
+		buf.put((byte)0x28);
+		buf.flip();
+
+		try {
+			codec.getUserID(buf);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(0, buf.position());
+		}
+	}
+}
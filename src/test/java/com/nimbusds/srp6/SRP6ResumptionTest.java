@@ -0,0 +1,296 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests session resumption with tickets.
+ */
+public class SRP6ResumptionTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+
+	private final byte[] ticketKey = new byte[32];
+
+
+	private SRP6AuthenticatedSession clientSession;
+
+
+	private SRP6AuthenticatedSession serverSession;
+
+
+	@Override
+	protected void setUp()
+		throws SRP6Exception {
+
+		Arrays.fill(ticketKey, (byte)7);
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		client.step1("alice", "secret");
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+
+		clientSession = client.toAuthenticatedSession();
+		serverSession = server.toAuthenticatedSession();
+	}
+
+
+	public void testResume()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		assertEquals(TimeUnit.HOURS.toMillis(1), issuer.getLifetime());
+
+		SRP6ResumptionTicket ticket = new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession));
+		assertEquals("alice", ticket.getUserID());
+
+		SRP6ResumptionRequest request = ticket.createRequest();
+		assertEquals(SRP6TicketIssuer.NONCE_LENGTH, request.nonce.length);
+
+		SRP6ResumptionResponse response = issuer.resume(request);
+		SRP6AuthenticatedSession resumedServer = response.getSession();
+		assertEquals("alice", resumedServer.getUserID());
+		assertEquals(config, resumedServer.getCryptoParams());
+
+		SRP6AuthenticatedSession resumedClient = ticket.complete(new SRP6ResumptionResponse(response.nonce, response.proof));
+		assertNull(new SRP6ResumptionResponse(response.nonce, response.proof).getSession());
+		assertEquals("alice", resumedClient.getUserID());
+		assertEquals(resumedServer.getSessionKey(), resumedClient.getSessionKey());
+
+		// Fresh key
+		assertFalse(resumedServer.getSessionKey().equals(serverSession.getSessionKey()));
+
+		// Resumed session can be resumed again with a new ticket
+		SRP6ResumptionTicket next = new SRP6ResumptionTicket(resumedClient, issuer.issue(resumedServer));
+		SRP6ResumptionResponse nextResponse = issuer.resume(next.createRequest());
+		assertEquals(nextResponse.getSession().getSessionKey(), next.complete(nextResponse).getSessionKey());
+	}
+
+
+	public void testNonAsciiUserID()
+		throws SRP6Exception {
+
+		String userID = "\u00e9lodie-\u6771\u4eac";
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, userID, "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		client.step1(userID, "secret");
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1(userID, s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		SRP6ResumptionTicket ticket = new SRP6ResumptionTicket(client.toAuthenticatedSession(), issuer.issue(server.toAuthenticatedSession()));
+
+		SRP6ResumptionResponse response = issuer.resume(ticket.createRequest());
+		assertEquals(userID, response.getSession().getUserID());
+		assertEquals(response.getSession().getSessionKey(), ticket.complete(response).getSessionKey());
+	}
+
+
+	public void testReplay()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		SRP6ResumptionTicket ticket = new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession));
+
+		SRP6ResumptionRequest request = ticket.createRequest();
+		issuer.resume(request);
+
+		try {
+			issuer.resume(request);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Resumption ticket already redeemed", e.getMessage());
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		// Fresh nonce, same ticket
+		try {
+			issuer.resume(ticket.createRequest());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Resumption ticket already redeemed", e.getMessage());
+		}
+	}
+
+
+	public void testReplayCacheFull()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 1);
+
+		issuer.resume(new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession)).createRequest());
+
+		try {
+			issuer.resume(new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession)).createRequest());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Resumption replay cache full", e.getMessage());
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testExpired()
+		throws Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 200, TimeUnit.MILLISECONDS, 1);
+		SRP6ResumptionTicket ticket = new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession));
+
+		Thread.sleep(250);
+
+		try {
+			issuer.resume(ticket.createRequest());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Resumption ticket expired", e.getMessage());
+			assertEquals(SRP6Exception.CauseType.TIMEOUT, e.getCauseType());
+		}
+
+		// Expired entries are evicted from a full replay cache
+		issuer.resume(new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession)).createRequest());
+		Thread.sleep(250);
+		issuer.resume(new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession)).createRequest());
+	}
+
+
+	public void testBadTicket()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		byte[] issued = issuer.issue(serverSession);
+
+		for (int i = 0; i < issued.length; i += 7) {
+
+			byte[] tampered = issued.clone();
+			tampered[i] ^= 1;
+
+			try {
+				issuer.resume(new SRP6ResumptionTicket(clientSession, tampered).createRequest());
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+			}
+		}
+
+		// Truncated
+		try {
+			issuer.resume(new SRP6ResumptionTicket(clientSession, Arrays.copyOf(issued, 40)).createRequest());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Bad resumption ticket", e.getMessage());
+		}
+
+		// Other ticket key
+		byte[] otherKey = new byte[32];
+
+		try {
+			new SRP6TicketIssuer(otherKey, 1, TimeUnit.HOURS, 100).resume(new SRP6ResumptionTicket(clientSession, issued).createRequest());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Bad resumption ticket", e.getMessage());
+		}
+
+		// Untampered ticket still valid
+		issuer.resume(new SRP6ResumptionTicket(clientSession, issued).createRequest());
+	}
+
+
+	public void testBadClientProof()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		byte[] issued = issuer.issue(serverSession);
+		SRP6ResumptionRequest request = new SRP6ResumptionTicket(clientSession, issued).createRequest();
+
+		byte[] proof = request.proof.clone();
+		proof[0] ^= 1;
+
+		try {
+			issuer.resume(new SRP6ResumptionRequest(issued, request.nonce, proof));
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Bad client credentials", e.getMessage());
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		// Bad nonce length
+		try {
+			issuer.resume(new SRP6ResumptionRequest(issued, new byte[8], request.proof));
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Bad client nonce", e.getMessage());
+		}
+
+		// Not redeemed by the failed attempts
+		issuer.resume(request);
+	}
+
+
+	public void testBadServerProof()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		SRP6ResumptionTicket ticket = new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession));
+		SRP6ResumptionResponse response = issuer.resume(ticket.createRequest());
+
+		byte[] proof = response.proof.clone();
+		proof[0] ^= 1;
+
+		try {
+			ticket.complete(new SRP6ResumptionResponse(response.nonce, proof));
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Bad server credentials", e.getMessage());
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testStateViolations()
+		throws SRP6Exception {
+
+		SRP6TicketIssuer issuer = new SRP6TicketIssuer(ticketKey, 1, TimeUnit.HOURS, 100);
+		SRP6ResumptionTicket ticket = new SRP6ResumptionTicket(clientSession, issuer.issue(serverSession));
+
+		try {
+			ticket.complete(new SRP6ResumptionResponse(new byte[32], new byte[32]));
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("State violation: No resumption request was created", e.getMessage());
+		}
+
+		ticket.destroy();
+		assertTrue(ticket.isDestroyed());
+
+		try {
+			ticket.createRequest();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("The resumption secret was destroyed", e.getMessage());
+		}
+
+		try {
+			new SRP6TicketIssuer(new byte[16], 1, TimeUnit.HOURS, 100);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The ticket key must be at least 32 bytes", e.getMessage());
+		}
+	}
+}
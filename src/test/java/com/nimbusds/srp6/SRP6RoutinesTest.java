@@ -38,6 +38,28 @@ public class SRP6RoutinesTest extends TestCase {
 		BigInteger k = srp6Routines.computeK(newMessageDigest(), N, g);
 		
 		assertEquals(new BigInteger("1047744680507268333564834174388676105451778575056"), k);
+
+		// From the cached state after PAD(N)
+		assertEquals(k, srp6Routines.computeK(newMessageDigest(), N, g));
+	}
+
+
+	public void testComputeKMatchesHashPaddedPair()
+		throws NoSuchAlgorithmException {
+
+		BigInteger[] groups = {SRP6CryptoParams.N_512, SRP6CryptoParams.N_1024, SRP6CryptoParams.N_2048};
+
+		for (String H: new String[]{"SHA-1", "SHA-256", "SHA-512"}) {
+
+			for (BigInteger N: groups) {
+
+				for (int i = 0; i < 2; i++) {
+
+					assertEquals(srp6Routines.hashPaddedPair(MessageDigest.getInstance(H), N, N, SRP6CryptoParams.g_common),
+					             srp6Routines.computeK(MessageDigest.getInstance(H), N, SRP6CryptoParams.g_common));
+				}
+			}
+		}
 	}
 	
 	
@@ -111,6 +133,58 @@ public class SRP6RoutinesTest extends TestCase {
 		
 		assertEquals(new BigInteger("1459836519616475169618381559259134652345392827028035636790323034254747322847163648105198456176319247572874754259677415649516102437458860838884341322238013"), S);
 	}
+
+
+
+	public void testComputeSessionKeyWithReducedExponents() {
+
+		SRP6CryptoParams config = new SRP6CryptoParams(SRP6CryptoParams.N_512, SRP6CryptoParams.g_common, "SHA-1");
+		assertEquals(config.N.subtract(BigInteger.ONE), config.getGeneratorOrder());
+
+		BigInteger k = new BigInteger("1047744680507268333564834174388676105451778575056");
+		BigInteger x = new BigInteger("359461911909460426849627852355308953854206211761");
+		BigInteger u = new BigInteger("1058795856907579501448181236341287514343869634531");
+		BigInteger a = new BigInteger("95736917656079566948552549320495648651648109198673221212170187788888785990505");
+		BigInteger B = new BigInteger("9588187747518163785129397013436875944167461292974597846007987032891818936547367793638202134274048835240842528913574280725614868881714030854987066301723820");
+
+		BigInteger S = srp6Routines.computeSessionKey(config, k, x, u, a, B);
+
+		assertEquals(new BigInteger("1459836519616475169618381559259134652345392827028035636790323034254747322847163648105198456176319247572874754259677415649516102437458860838884341322238013"), S);
+
+		// Same result with an exponent above the order
+		BigInteger q = config.getGeneratorOrder();
+		assertEquals(S, srp6Routines.computeSessionKey(config, k, x, u, a.add(q), B));
+		assertEquals(a, srp6Routines.reduceExponent(config, a.add(q)));
+	}
+
+
+	public void testGeneratePrivateValueBelowOrder() {
+
+		SecureRandom random = new SecureRandom();
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(256, "SHA-1");
+		BigInteger q = config.getGeneratorOrder();
+
+		for (int i = 0; i < 100; i++) {
+
+			BigInteger r = srp6Routines.generatePrivateValue(config, random);
+			assertTrue(r.signum() > 0);
+			assertTrue(r.compareTo(q) < 0);
+		}
+
+		// Unknown order
+		BigInteger N = SRP6CryptoParams.N_256.nextProbablePrime();
+		config = new SRP6CryptoParams(N, SRP6CryptoParams.g_common, "SHA-1");
+		assertNull(config.getGeneratorOrder());
+
+		BigInteger r = srp6Routines.generatePrivateValue(config, random);
+		assertTrue(r.signum() > 0);
+		assertTrue(r.compareTo(N) < 0);
+
+		// Not reduced
+		BigInteger e = N.add(BigInteger.ONE);
+		assertSame(e, srp6Routines.reduceExponent(config, e));
+	}
 	
 	
 	public void testAuthSuccess() {
@@ -202,4 +276,35 @@ public class SRP6RoutinesTest extends TestCase {
 		
 		assertFalse("Unexpected auth success", S_s.equals(S_c));
 	}
+	
+	
+	public void testByteFormsMatchBigIntegerForms() {
+	
+		BigInteger N = SRP6CryptoParams.N_512;
+		int len = (N.bitLength() + 7) / 8;
+		SecureRandom random = new SecureRandom();
+		
+		for (int i=0; i < 50; i++) {
+			
+			// Include values with leading zero bytes
+			BigInteger A = new BigInteger(N.bitLength() - (i % 3) * 8 - 1, random);
+			BigInteger B = new BigInteger(N.bitLength() - 1, random);
+			BigInteger S = new BigInteger(N.bitLength() - (i % 4) * 8 - 1, random);
+			BigInteger M1 = new BigInteger(160 - (i % 2) * 8, random);
+			
+			byte[] Ab = BigIntegerUtils.bigIntegerToBytes(A, len);
+			byte[] Bb = BigIntegerUtils.bigIntegerToBytes(B, len);
+			byte[] Sb = BigIntegerUtils.bigIntegerToBytes(S, len);
+			byte[] M1b = BigIntegerUtils.bigIntegerToBytes(M1, 20);
+			
+			assertEquals(srp6Routines.computeU(newMessageDigest(), N, A, B),
+			             new BigInteger(1, srp6Routines.computeU(newMessageDigest(), Ab, Bb)));
+			
+			assertEquals(srp6Routines.computeClientEvidence(newMessageDigest(), A, B, S),
+			             new BigInteger(1, srp6Routines.computeClientEvidence(newMessageDigest(), Ab, Bb, Sb)));
+			
+			assertEquals(srp6Routines.computeServerEvidence(newMessageDigest(), A, M1, S),
+			             new BigInteger(1, srp6Routines.computeServerEvidence(newMessageDigest(), Ab, M1b, Sb)));
+		}
+	}
 }
@@ -0,0 +1,255 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the server context.
+ */
+public class SRP6ServerContextTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+
+
+	private final SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+
+
+	private void authenticate(final SRP6ServerSession server, final SRP6ClientSession client)
+		throws SRP6Exception {
+
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		client.step1("alice", "secret");
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+
+		assertEquals(SRP6ServerSession.State.STEP_2, server.getState());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+		assertTrue(Arrays.equals(client.getSessionKeyHash(), server.getSessionKeyHash()));
+	}
+
+
+	public void testDefaultContext()
+		throws SRP6Exception {
+
+		SRP6ServerContext context = new SRP6ServerContext(config);
+
+		assertEquals(config, context.getCryptoParams());
+		assertSame(SRP6Routines.DEFAULT, context.getRoutines());
+		assertNull(context.getHashedKeysRoutine());
+		assertNull(context.getClientEvidenceRoutine());
+		assertNull(context.getServerEvidenceRoutine());
+		assertEquals(FixedBaseTable.DEFAULT_WINDOW_BITS, context.getFixedBaseTable().getWindowBits());
+		assertEquals(new SRP6Routines().computeK(config.getMessageDigestInstance(), config.N, config.g), context.getK());
+		assertEquals("SHA-256", context.getMessageDigestInstance().getAlgorithm());
+		assertNotSame(context.getMessageDigestInstance(), context.getMessageDigestInstance());
+
+		BigInteger b = new BigInteger(1000, new Random(1));
+		BigInteger v = BigInteger.valueOf(12345);
+		assertEquals(SRP6Routines.DEFAULT.computePublicServerValue(config.N, config.g, context.getK(), v, b),
+		             context.computePublicServerValue(v, b));
+
+		SRP6ServerSession session = context.createSession(30);
+		assertSame(context, session.getServerContext());
+		assertEquals(config, session.getCryptoParams());
+		assertEquals(30, session.getTimeout());
+		assertEquals(SRP6ServerSession.State.INIT, session.getState());
+
+		authenticate(session, new SRP6ClientSession());
+
+		// Sessions without a context still interoperate
+		authenticate(new SRP6ServerSession(config), new SRP6ClientSession());
+	}
+
+
+	public void testWithoutTable()
+		throws SRP6Exception {
+
+		SRP6ServerContext context = new SRP6ServerContext(config, SRP6Routines.DEFAULT, null, null, null, 0);
+		assertNull(context.getFixedBaseTable());
+		authenticate(context.createSession(0), new SRP6ClientSession());
+	}
+
+
+	public void testCustomRoutines()
+		throws SRP6Exception {
+
+		final int[] calls = new int[1];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computePublicServerValue(final BigInteger N, final BigInteger g, final BigInteger k, final BigInteger v, final BigInteger b) {
+				calls[0]++;
+				return super.computePublicServerValue(N, g, k, v, b);
+			}
+		};
+
+		ClientEvidenceRoutine m1Routine = new ClientEvidenceRoutine() {
+			@Override
+			public BigInteger computeClientEvidence(final SRP6CryptoParams cryptoParams, final SRP6ClientEvidenceContext ctx) {
+				return ctx.S.xor(ctx.A);
+			}
+		};
+
+		SRP6ServerContext context = new SRP6ServerContext(config, routines, null, m1Routine, null, 4);
+		SRP6ServerSession session = context.createSession(0);
+
+		assertSame(routines, session.srp6Routines);
+		assertSame(m1Routine, session.getClientEvidenceRoutine());
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.setClientEvidenceRoutine(m1Routine);
+		authenticate(session, client);
+
+		assertEquals(1, calls[0]);
+	}
+
+
+	public void testOverriddenHashRoutines()
+		throws SRP6Exception {
+
+		final int[] calls = new int[3];
+
+		SRP6Routines routines = new SRP6Routines() {
+			@Override
+			public BigInteger computeU(final MessageDigest digest, final BigInteger N, final BigInteger A, final BigInteger B) {
+				calls[0]++;
+				return super.computeU(digest, N, A, B);
+			}
+
+			@Override
+			public BigInteger computeClientEvidence(final MessageDigest digest, final BigInteger A, final BigInteger B, final BigInteger S) {
+				calls[1]++;
+				return super.computeClientEvidence(digest, A, B, S);
+			}
+
+			@Override
+			protected BigInteger computeServerEvidence(final MessageDigest digest, final BigInteger A, final BigInteger M1, final BigInteger S) {
+				calls[2]++;
+				return super.computeServerEvidence(digest, A, M1, S);
+			}
+		};
+
+		SRP6ServerContext context = new SRP6ServerContext(config, routines, null, null, null, 4);
+		authenticate(context.createSession(0), new SRP6ClientSession());
+
+		assertEquals(1, calls[0]);
+		assertEquals(1, calls[1]);
+		assertEquals(1, calls[2]);
+
+		// An overridden evidence routine takes effect
+		routines = new SRP6Routines() {
+			@Override
+			protected BigInteger computeServerEvidence(final MessageDigest digest, final BigInteger A, final BigInteger M1, final BigInteger S) {
+				return super.computeServerEvidence(digest, A, M1, S).add(BigInteger.ONE);
+			}
+		};
+
+		try {
+			authenticate(new SRP6ServerContext(config, routines, null, null, null, 4).createSession(0), new SRP6ClientSession());
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals("Bad server credentials", e.getMessage());
+		}
+	}
+
+
+	public void testStep1Batch()
+		throws SRP6Exception {
+
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		for (SRP6ServerContext context: new SRP6ServerContext[]{
+			new SRP6ServerContext(config),
+			new SRP6ServerContext(config, SRP6Routines.DEFAULT, null, null, null, 0)}) {
+
+			List<SRP6Step1Result> results = context.step1(Arrays.asList(
+				new SRP6Step1Request("alice", s, v),
+				new SRP6Step1Request("", s, v),
+				null,
+				new SRP6Step1Request("bob", s, v, true),
+				new SRP6Step1Request("alice", s, v)), 30);
+
+			assertEquals(5, results.size());
+
+			// Bad requests fail on their own
+			assertFalse(results.get(1).isSuccess());
+			assertEquals("The user identity 'I' must not be null or empty", results.get(1).exception.getMessage());
+			assertNull(results.get(1).session);
+			assertFalse(results.get(2).isSuccess());
+			assertEquals("The step one request must not be null", results.get(2).exception.getMessage());
+
+			for (int i: new int[]{0, 3, 4}) {
+
+				SRP6Step1Result result = results.get(i);
+				assertTrue(result.isSuccess());
+				assertNull(result.exception);
+				assertSame(context, result.session.getServerContext());
+				assertEquals(SRP6ServerSession.State.STEP_1, result.session.getState());
+				assertEquals(30, result.session.getTimeout());
+				assertEquals(result.B, result.session.getPublicServerValue());
+			}
+
+			assertFalse(results.get(0).B.equals(results.get(4).B));
+
+			// Completes with step two
+			for (int i: new int[]{0, 4}) {
+
+				SRP6ClientSession client = new SRP6ClientSession();
+				client.step1("alice", "secret");
+				SRP6ClientCredentials cred = client.step2(config, s, results.get(i).B);
+				client.step3(results.get(i).session.step2(cred.A, cred.M1));
+				assertEquals(client.getSessionKey(), results.get(i).session.getSessionKey());
+			}
+
+			// Mock user fails at step two
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.step1("bob", "secret");
+			SRP6ClientCredentials cred = client.step2(config, s, results.get(3).B);
+
+			try {
+				results.get(3).session.step2(cred.A, cred.M1);
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+			}
+		}
+
+		assertTrue(new SRP6ServerContext(config).step1(Collections.<SRP6Step1Request>emptyList(), 0).isEmpty());
+	}
+
+
+	public void testResetWithOtherParams() {
+
+		SRP6ServerContext context = new SRP6ServerContext(config);
+		SRP6ServerSession session = context.createSession(0);
+
+		session.reset(config);
+		assertSame(context, session.getServerContext());
+
+		session.reset(SRP6CryptoParams.getInstance(2048, "SHA-256"));
+		assertNull(session.getServerContext());
+	}
+
+
+	public void testNullContext() {
+
+		try {
+			new SRP6ServerSession((SRP6ServerContext)null, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The server context must not be null", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.nimbusds.srp6;
+
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the retained heap size of pending server sessions.
+ */
+public class SRP6SessionFootprintTest extends TestCase {
+
+
+	/**
+	 * Estimates the retained size of an object graph, assuming a 64-bit
+	 * JVM with compressed references: 12 byte object headers, 16 byte
+	 * array headers, 4 byte references and 8 byte alignment. Strings and
+	 * big integers are sized from their content, so that no reflective
+	 * access to JDK internals is needed.
+	 */
+	private static long retainedSize(final Object root, final Object ... shared) {
+
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+
+		for (Object o: shared)
+			visited.add(o);
+
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(root);
+		long size = 0;
+
+		while (! pending.isEmpty()) {
+
+			Object o = pending.pop();
+
+			if (! visited.add(o) || o instanceof Enum || o instanceof Class)
+				continue;
+
+			if (o instanceof String) {
+				size += align(24) + align(16 + 2 * ((String)o).length());
+				continue;
+			}
+
+			if (o instanceof BigInteger) {
+				size += align(40) + align(16 + 4 * (((BigInteger)o).bitLength() / 32 + 1));
+				continue;
+			}
+
+			if (o instanceof byte[]) {
+				size += align(16 + ((byte[])o).length);
+				continue;
+			}
+
+			if (o.getClass().isArray()) {
+				Object[] array = (Object[])o;
+				size += align(16 + 4 * array.length);
+				for (Object element: array) {
+					if (element != null)
+						pending.push(element);
+				}
+				continue;
+			}
+
+			assertTrue("Unexpected object in session graph: " + o.getClass(), o.getClass().getName().startsWith("com.nimbusds."));
+
+			long shallow = 12;
+
+			for (Class<?> c = o.getClass(); c != Object.class; c = c.getSuperclass()) {
+
+				for (Field f: c.getDeclaredFields()) {
+
+					if (Modifier.isStatic(f.getModifiers()))
+						continue;
+
+					Class<?> t = f.getType();
+
+					if (t == long.class || t == double.class)
+						shallow += 8;
+					else if (t == byte.class || t == boolean.class)
+						shallow += 1;
+					else if (t == short.class || t == char.class)
+						shallow += 2;
+					else
+						shallow += 4;
+
+					if (! t.isPrimitive()) {
+						f.setAccessible(true);
+						try {
+							Object value = f.get(o);
+							if (value != null)
+								pending.push(value);
+						} catch (IllegalAccessException e) {
+							fail(e.getMessage());
+						}
+					}
+				}
+			}
+
+			size += align(shallow);
+		}
+
+		return size;
+	}
+
+
+	private static long align(final long size) {
+
+		return (size + 7) & ~7L;
+	}
+
+
+	public void testDefaultsShared() {
+
+		SRP6ServerSession s1 = new SRP6ServerSession(SRP6CryptoParams.getInstance());
+		SRP6ServerSession s2 = new SRP6ServerSession(SRP6CryptoParams.getInstance());
+		SRP6ClientSession c1 = new SRP6ClientSession();
+
+		assertSame(s1.srp6Routines, s2.srp6Routines);
+		assertSame(s1.srp6Routines, c1.srp6Routines);
+		assertSame(s1.random, s2.random);
+		assertSame(s1.random, c1.random);
+	}
+
+
+	public void testPendingServerSessionSize() {
+
+		for (int bits: new int[]{256, 512, 768, 1024, 2048, 3072, 4096, 6144, 8192}) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bits, "SHA-256");
+			SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+			BigInteger salt = new BigInteger(1, gen.generateRandomSalt());
+			BigInteger v = gen.generateVerifier(salt, "alice", "secret");
+
+			SRP6ServerSession session = new SRP6ServerSession(config, 30);
+			session.step1("alice", salt, v);
+
+			// The salt and verifier are owned by the user store
+			long size = retainedSize(session, config, session.srp6Routines, session.random, salt, v, "alice");
+			int groupLength = (config.N.bitLength() + 7) / 8;
+
+			// Private value 'b', public value 'B', multiplier 'k' plus
+			// a fixed overhead
+			assertTrue(bits + " bits: " + size + " bytes", size <= 2 * groupLength + 320);
+		}
+	}
+
+
+	public void testAuthenticatedSessionSize()
+		throws SRP6Exception {
+
+		for (int bits: new int[]{256, 1024, 2048, 4096, 8192}) {
+
+			SRP6CryptoParams config = SRP6CryptoParams.getInstance(bits, "SHA-256");
+			SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+			BigInteger salt = new BigInteger(1, gen.generateRandomSalt());
+			BigInteger v = gen.generateVerifier(salt, "alice", "secret");
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			SRP6ServerSession server = new SRP6ServerSession(config, 30);
+			client.step1("alice", "secret");
+			SRP6ClientCredentials cred = client.step2(config, salt, server.step1("alice", salt, v));
+			server.step2(cred.A, cred.M1);
+
+			int groupLength = (config.N.bitLength() + 7) / 8;
+			long fullSize = retainedSize(server, config, server.srp6Routines, server.random, salt, v, "alice");
+
+			// Session key 'S' plus a fixed overhead
+			SRP6AuthenticatedSession authSession = server.toAuthenticatedSession();
+			long authSize = retainedSize(authSession, config, authSession.getAttributes(), "alice");
+			assertTrue(bits + " bits: " + authSize + " bytes", authSize <= groupLength + 96);
+
+			server.compact();
+			long compactSize = retainedSize(server, config, server.srp6Routines, server.random, "alice");
+			assertTrue(bits + " bits: " + compactSize + " bytes", compactSize <= groupLength + 160);
+			assertTrue(compactSize * 2 < fullSize);
+		}
+	}
+}
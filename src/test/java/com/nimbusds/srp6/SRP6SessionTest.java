@@ -2,6 +2,9 @@ package com.nimbusds.srp6;
 
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import junit.framework.TestCase;
 
@@ -130,4 +133,465 @@ public class SRP6SessionTest extends TestCase {
 
 		assertEquals("alice", client.getAttribute("name"));
 	}
+
+
+	public void testAuthWithCustomEvidenceRoutines()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		// Short evidence values, padded to the hash length internally
+		ClientEvidenceRoutine m1Routine = new ClientEvidenceRoutine() {
+			@Override
+			public BigInteger computeClientEvidence(final SRP6CryptoParams cryptoParams, final SRP6ClientEvidenceContext ctx) {
+				return ctx.S.xor(ctx.A).mod(BigInteger.valueOf(65521));
+			}
+		};
+
+		ServerEvidenceRoutine m2Routine = new ServerEvidenceRoutine() {
+			@Override
+			public BigInteger computeServerEvidence(final SRP6CryptoParams cryptoParams, final SRP6ServerEvidenceContext ctx) {
+				return ctx.S.xor(ctx.M1).mod(BigInteger.valueOf(65521));
+			}
+		};
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		client.setClientEvidenceRoutine(m1Routine);
+		client.setServerEvidenceRoutine(m2Routine);
+		server.setClientEvidenceRoutine(m1Routine);
+		server.setServerEvidenceRoutine(m2Routine);
+
+		client.step1("alice", "secret");
+		BigInteger B = server.step1("alice", s, v);
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+		BigInteger M2 = server.step2(cred.A, cred.M1);
+		client.step3(M2);
+
+		assertEquals(cred.M1, server.getClientEvidenceMessage());
+		assertEquals(M2, client.getServerEvidenceMessage());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+		assertTrue(Arrays.equals(client.getSessionKeyHash(), server.getSessionKeyHash()));
+	}
+
+
+	public void testBadClientEvidence() {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+
+		client.step1("alice", "secret");
+		BigInteger B = server.step1("alice", s, v);
+
+		try {
+			SRP6ClientCredentials cred = client.step2(config, s, B);
+			server.step2(cred.A, cred.M1.flipBit(0));
+			fail();
+
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testAuthenticatedSession()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		server.setAttribute("role", "admin");
+
+		client.step1("alice", "secret");
+		BigInteger B = server.step1("alice", s, v);
+
+		try {
+			server.toAuthenticatedSession();
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+		client.step3(server.step2(cred.A, cred.M1));
+
+		SRP6AuthenticatedSession serverAuth = server.toAuthenticatedSession();
+		SRP6AuthenticatedSession clientAuth = client.toAuthenticatedSession();
+
+		assertEquals("alice", serverAuth.getUserID());
+		assertEquals(config, serverAuth.getCryptoParams());
+		assertEquals(server.getSessionKey(), serverAuth.getSessionKey());
+		assertEquals(clientAuth.getSessionKey(), serverAuth.getSessionKey());
+		assertTrue(Arrays.equals(server.getSessionKeyHash(), serverAuth.getSessionKeyHash()));
+		assertEquals("admin", serverAuth.getAttribute("role"));
+		assertTrue(clientAuth.getAttributes().isEmpty());
+
+		// Independent of the originating session
+		server.setAttribute("role", "guest");
+		assertEquals("admin", serverAuth.getAttribute("role"));
+
+		serverAuth.destroy();
+		assertTrue(serverAuth.isDestroyed());
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		try {
+			serverAuth.getSessionKey();
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+	}
+
+
+	public void testCompact()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+
+		client.step1("alice", "secret");
+		BigInteger B = server.step1("alice", s, v);
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		try {
+			client.compact();
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+
+		client.step3(server.step2(cred.A, cred.M1));
+
+		BigInteger key = server.getSessionKey();
+		byte[] serverB = server.B;
+
+		server.compact();
+		client.compact();
+
+		assertEquals("alice", server.getUserID());
+		assertEquals(key, server.getSessionKey());
+		assertEquals(key, client.getSessionKey());
+		assertNull(server.getSalt());
+		assertNull(server.getPublicClientValue());
+		assertNull(server.getPublicServerValue());
+		assertNull(server.getClientEvidenceMessage());
+		assertNull(server.getServerEvidenceMessage());
+		assertNull(client.getPublicClientValue());
+		assertNull(client.getServerEvidenceMessage());
+
+		// Zeroised before being dropped
+		assertEquals(BigInteger.ZERO, new BigInteger(1, serverB));
+	}
+
+
+	public void testClientReset()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.setAttribute("name", "alice");
+
+		client.step1("alice", "secret");
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+
+		byte[] key = client.S;
+		client.reset();
+
+		assertEquals(SRP6ClientSession.State.INIT, client.getState());
+		assertNull(client.getCryptoParams());
+		assertNull(client.getUserID());
+		assertNull(client.getSessionKey());
+		assertNull(client.getAttribute("name"));
+		assertEquals(BigInteger.ZERO, new BigInteger(1, key));
+
+		// Wrong password after reset
+		client.step1("alice", "wrong");
+		server = new SRP6ServerSession(config);
+		cred = client.step2(config, s, server.step1("alice", s, v));
+
+		try {
+			server.step2(cred.A, cred.M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+	}
+
+
+	public void testParallelClientStep2()
+		throws SRP6Exception {
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			for (int bits: new int[]{256, 1024, 2048}) {
+
+				SRP6CryptoParams config = SRP6CryptoParams.getInstance(bits, "SHA-256");
+				SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+				BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+				BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+				SRP6ClientSession client = new SRP6ClientSession();
+				client.setParallelPool(pool);
+				assertSame(pool, client.getParallelPool());
+
+				SRP6ServerSession server = new SRP6ServerSession(config);
+
+				client.step1("alice", "secret");
+				SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+				client.step3(server.step2(cred.A, cred.M1));
+
+				assertEquals(server.getSessionKey(), client.getSessionKey());
+
+				// Wrong password
+				client = new SRP6ClientSession();
+				client.setParallelPool(pool);
+				server = new SRP6ServerSession(config);
+
+				client.step1("alice", "wrong");
+				cred = client.step2(config, s, server.step1("alice", s, v));
+
+				try {
+					server.step2(cred.A, cred.M1);
+					fail();
+				} catch (SRP6Exception e) {
+					assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+				}
+			}
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	public void testAuthWithSubgroupOrder()
+		throws SRP6Exception {
+
+		// Group with a 160-bit prime order subgroup, N = q * r + 1
+		Random random = new Random(1);
+		BigInteger q = BigInteger.probablePrime(160, random);
+		BigInteger N;
+
+		do {
+			BigInteger r = new BigInteger(352, random).setBit(351).clearBit(0);
+			N = q.multiply(r).add(BigInteger.ONE);
+		} while (! N.isProbablePrime(30));
+
+		BigInteger g = BigInteger.valueOf(2).modPow(N.subtract(BigInteger.ONE).divide(q), N);
+
+		SRP6CryptoParams config = new SRP6CryptoParams(N, g, "SHA-1", q);
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			for (ForkJoinPool parallelPool: new ForkJoinPool[]{null, pool}) {
+
+				SRP6ClientSession client = new SRP6ClientSession();
+				client.setParallelPool(parallelPool);
+				SRP6ServerSession server = new SRP6ServerSession(config);
+
+				client.step1("alice", "secret");
+				SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+				client.step3(server.step2(cred.A, cred.M1));
+
+				assertEquals(server.getSessionKey(), client.getSessionKey());
+				assertEquals(BigInteger.ONE, cred.A.modPow(q, N));
+			}
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	public void testEarlyA()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(1024, "SHA-256");
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		SRP6ServerContext context = new SRP6ServerContext(config);
+
+		for (SRP6ServerSession server: new SRP6ServerSession[]{new SRP6ServerSession(config), context.createSession(0)}) {
+
+			SRP6ClientSession client = new SRP6ClientSession();
+
+			BigInteger A = client.step1("alice", "secret", config);
+			assertEquals(SRP6ClientSession.State.STEP_1, client.getState());
+			assertEquals(A, client.getPublicClientValue());
+
+			BigInteger B = server.step1("alice", s, v, A);
+			assertEquals(A, server.getPublicClientValue());
+
+			// While 'B' is in transit, repeated calls have no effect
+			server.prepareStep2();
+			BigInteger S = server.getSessionKey();
+			server.prepareStep2();
+			assertEquals(S, server.getSessionKey());
+
+			SRP6ClientCredentials cred = client.step2(config, s, B);
+			assertEquals(A, cred.A);
+
+			client.step3(server.step2(cred.M1));
+
+			assertEquals(SRP6ServerSession.State.STEP_2, server.getState());
+			assertEquals(server.getSessionKey(), client.getSessionKey());
+		}
+
+		// Without preparation, and with a parallel pool at the client
+		ForkJoinPool pool = new ForkJoinPool(2);
+
+		try {
+			SRP6ClientSession client = new SRP6ClientSession();
+			client.setParallelPool(pool);
+			SRP6ServerSession server = new SRP6ServerSession(config);
+
+			BigInteger B = server.step1("alice", s, v, client.step1("alice", "secret", config));
+			client.step3(server.step2(client.step2(config, s, B).M1));
+			assertEquals(server.getSessionKey(), client.getSessionKey());
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	public void testEarlyABadCredentials()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		// Wrong password
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v, client.step1("alice", "wrong", config));
+
+		try {
+			server.step2(client.step2(config, s, B).M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		// Mock user
+		client = new SRP6ClientSession();
+		server = new SRP6ServerSession(config);
+		B = server.mockStep1("bob", s, v, client.step1("bob", "secret", config));
+
+		try {
+			server.step2(client.step2(config, s, B).M1);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		// Bad 'A'
+		try {
+			new SRP6ServerSession(config).step1("alice", s, v, config.N);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_PUBLIC_VALUE, e.getCauseType());
+		}
+
+		// Bad 'A' with a mock user leaves the session unchanged
+		server = new SRP6ServerSession(config);
+
+		try {
+			server.mockStep1("bob", s, v, config.N);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_PUBLIC_VALUE, e.getCauseType());
+		}
+
+		assertEquals(SRP6ServerSession.State.INIT, server.getState());
+
+		client = new SRP6ClientSession();
+		B = server.step1("alice", s, v, client.step1("alice", "secret", config));
+		client.step3(server.step2(client.step2(config, s, B).M1));
+		assertEquals(server.getSessionKey(), client.getSessionKey());
+	}
+
+
+	public void testEarlyAStateViolations()
+		throws SRP6Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+		SRP6VerifierGenerator verifierGen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, verifierGen.generateRandomSalt());
+		BigInteger v = verifierGen.generateVerifier(s, "alice", "secret");
+
+		// 'A' at step one and again at step two
+		SRP6ClientSession client = new SRP6ClientSession();
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		BigInteger B = server.step1("alice", s, v, client.step1("alice", "secret", config));
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+
+		try {
+			server.step2(cred.A, cred.M1);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("State violation: The client public value 'A' was received at step one", e.getMessage());
+		}
+
+		// No 'A' at step one
+		server = new SRP6ServerSession(config);
+		server.step1("alice", s, v);
+
+		try {
+			server.step2(BigInteger.ONE);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("State violation: The client public value 'A' was not received at step one", e.getMessage());
+		}
+
+		try {
+			server.prepareStep2();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("State violation: The client public value 'A' was not received at step one", e.getMessage());
+		}
+
+		// Other parameters at client step two
+		client = new SRP6ClientSession();
+		client.step1("alice", "secret", config);
+
+		try {
+			client.step2(SRP6CryptoParams.getInstance(1024, "SHA-256"), s, B);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The SRP-6a crypto parameters must match those of step one", e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,242 @@
+package com.nimbusds.srp6;
+
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the verifier table cache.
+ */
+public class SRP6VerifierTableCacheTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+
+	private final SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+
+
+	/**
+	 * Builds the tables on the calling thread.
+	 */
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(final Runnable r) {
+			r.run();
+		}
+	};
+
+
+	/**
+	 * Collects the table builds, to be run by the test.
+	 */
+	private static class QueuedExecutor implements Executor {
+
+
+		final List<Runnable> tasks = new ArrayList<>();
+
+
+		@Override
+		public void execute(final Runnable r) {
+			tasks.add(r);
+		}
+	}
+
+
+	private BigInteger verifier(final String password) {
+
+		return gen.generateVerifier(BigInteger.ONE, "alice", password);
+	}
+
+
+	public void testAdmission() {
+
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(config, 2, 3, DIRECT);
+
+		assertEquals(config, cache.getCryptoParams());
+		assertEquals(2, cache.getMaxEntries());
+		assertEquals(3, cache.getAdmissionThreshold());
+
+		BigInteger v = verifier("secret");
+
+		cache.recordAuthentication("alice", v);
+		cache.recordAuthentication("alice", v);
+		assertNull(cache.get("alice", v));
+		assertEquals(0, cache.size());
+
+		cache.recordAuthentication("alice", v);
+		FixedBaseTable table = cache.get("alice", v);
+		assertNotNull(table);
+		assertEquals(256, table.getMaxExponentBits());
+		assertEquals(1, cache.size());
+		assertTrue(cache.getMemorySize() > 0);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+
+		BigInteger u = new BigInteger(256, new Random(1));
+		assertEquals(v.modPow(u, config.N), table.modPow(u));
+
+		// Changed verifier not matched
+		assertNull(cache.get("alice", verifier("changed")));
+
+		cache.remove("alice");
+		assertNull(cache.get("alice", v));
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testEvictionByHotness() {
+
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(config, 2, 1, DIRECT);
+
+		BigInteger v1 = verifier("1");
+		BigInteger v2 = verifier("2");
+		BigInteger v3 = verifier("3");
+
+		for (int i = 0; i < 5; i++)
+			cache.recordAuthentication("hot", v1);
+
+		cache.recordAuthentication("warm", v2);
+		cache.recordAuthentication("warm", v2);
+		assertEquals(2, cache.size());
+
+		// Not hotter than the coldest table
+		cache.recordAuthentication("cold", v3);
+		assertNull(cache.get("cold", v3));
+
+		// Now hotter than "warm"
+		cache.recordAuthentication("cold", v3);
+		cache.recordAuthentication("cold", v3);
+		assertNotNull(cache.get("cold", v3));
+		assertNotNull(cache.get("hot", v1));
+		assertNull(cache.get("warm", v2));
+		assertEquals(2, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testBuiltInBackground() {
+
+		QueuedExecutor executor = new QueuedExecutor();
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(config, 2, 2, executor);
+
+		BigInteger v = verifier("secret");
+
+		cache.recordAuthentication("alice", v);
+		cache.recordAuthentication("alice", v);
+
+		// Scheduled, not built on the calling thread
+		assertEquals(1, executor.tasks.size());
+		assertNull(cache.get("alice", v));
+
+		// No duplicate while building, uses still counted
+		cache.recordAuthentication("alice", v);
+		cache.recordAuthentication("alice", v);
+		assertEquals(1, executor.tasks.size());
+
+		executor.tasks.remove(0).run();
+		assertNotNull(cache.get("alice", v));
+		assertEquals(1, cache.size());
+
+		// Removed while building, discarded
+		BigInteger v2 = verifier("2");
+		cache.recordAuthentication("bob", v2);
+		cache.recordAuthentication("bob", v2);
+		assertEquals(1, executor.tasks.size());
+		cache.remove("bob");
+		executor.tasks.remove(0).run();
+		assertNull(cache.get("bob", v2));
+		assertEquals(1, cache.size());
+
+		// Rejected, admitted again later
+		cache = new SRP6VerifierTableCache(config, 2, 1, new Executor() {
+			@Override
+			public void execute(final Runnable r) {
+				throw new RejectedExecutionException();
+			}
+		});
+
+		cache.recordAuthentication("alice", v);
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testDefaultExecutor()
+		throws InterruptedException {
+
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(config, 2, 1);
+
+		BigInteger v = verifier("secret");
+		cache.recordAuthentication("alice", v);
+
+		for (int i = 0; i < 100 && cache.size() == 0; i++)
+			Thread.sleep(50);
+
+		assertNotNull(cache.get("alice", v));
+	}
+
+
+	public void testUsedByServerSessions()
+		throws SRP6Exception {
+
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(config, 10, 2, DIRECT);
+		SRP6ServerContext context = new SRP6ServerContext(config, SRP6Routines.DEFAULT, null, null, null, 4, cache);
+		assertSame(cache, context.getVerifierTableCache());
+
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		// Failed authentications are not counted
+		for (int i = 0; i < 3; i++) {
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			SRP6ServerSession server = context.createSession(0);
+			client.step1("alice", "wrong");
+			SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+
+			try {
+				server.step2(cred.A, cred.M1);
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+			}
+		}
+
+		assertEquals(0, cache.size());
+
+		for (int i = 0; i < 5; i++) {
+
+			SRP6ClientSession client = new SRP6ClientSession();
+			SRP6ServerSession server = context.createSession(0);
+			client.step1("alice", "secret");
+			SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+			client.step3(server.step2(cred.A, cred.M1));
+			assertEquals(client.getSessionKey(), server.getSessionKey());
+		}
+
+		assertEquals(1, cache.size());
+		assertEquals(3, cache.getHitCount());
+	}
+
+
+	public void testCacheForOtherParams() {
+
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(SRP6CryptoParams.getInstance(1024, "SHA-256"), 10);
+
+		try {
+			new SRP6ServerContext(config, SRP6Routines.DEFAULT, null, null, null, 4, cache);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The verifier table cache must be for the same crypto parameters", e.getMessage());
+		}
+	}
+}
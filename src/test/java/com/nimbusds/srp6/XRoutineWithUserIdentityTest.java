@@ -2,6 +2,8 @@ package com.nimbusds.srp6;
 
 
 import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 
 import junit.framework.TestCase;
 
@@ -50,4 +52,37 @@ public class XRoutineWithUserIdentityTest extends TestCase {
 		
 		assertEquals(targetV, v);
 	}
+
+
+	public void testCachedIdentityPrefix()
+		throws Exception {
+
+		Charset utf8 = Charset.forName("UTF-8");
+		byte[] salt = BigIntegerUtils.hexToBytes("1e97da52cbdcd653f85b");
+		XRoutine altX = new XRoutineWithUserIdentity();
+
+		for (String H: new String[]{"SHA-1", "SHA-256"}) {
+
+			for (String password: new String[]{"secret", "other", "secret"}) {
+
+				// Reference, without the cache
+				MessageDigest digest = MessageDigest.getInstance(H);
+				digest.update("alice:".getBytes(utf8));
+				digest.update(password.getBytes(utf8));
+				byte[] inner = digest.digest();
+				digest.update(salt);
+				BigInteger expected = BigIntegerUtils.bigIntegerFromBytes(digest.digest(inner));
+
+				assertEquals(expected, altX.computeX(MessageDigest.getInstance(H), salt, "alice".getBytes(utf8), password.getBytes(utf8)));
+			}
+		}
+
+		// Identity array reused by the caller
+		byte[] username = "bob".getBytes(utf8);
+		BigInteger bobX = altX.computeX(MessageDigest.getInstance("SHA-1"), salt, username, "pw".getBytes(utf8));
+		username[0] = 'r';
+		BigInteger robX = altX.computeX(MessageDigest.getInstance("SHA-1"), salt, username, "pw".getBytes(utf8));
+		assertFalse(bobX.equals(robX));
+		assertEquals(robX, altX.computeX(MessageDigest.getInstance("SHA-1"), salt, "rob".getBytes(utf8), "pw".getBytes(utf8)));
+	}
 }
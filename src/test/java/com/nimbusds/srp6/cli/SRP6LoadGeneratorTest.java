@@ -0,0 +1,99 @@
+package com.nimbusds.srp6.cli;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the SRP-6a load generator.
+ */
+public class SRP6LoadGeneratorTest extends TestCase {
+
+
+	public void testHistogramPercentiles() {
+
+		SRP6LoadGenerator.Histogram h = new SRP6LoadGenerator.Histogram();
+
+		for (long i=1; i <= 10000; i++)
+			h.record(i);
+
+		assertEquals(10000, h.getCount());
+		assertEquals(1, h.getMin());
+		assertEquals(10000, h.getMax());
+		assertEquals(5000.5, h.getMean(), 0.001);
+
+		// Within the bucket precision
+		assertEquals(5000, h.getValueAtPercentile(50), 5000 * 0.04);
+		assertEquals(9900, h.getValueAtPercentile(99), 9900 * 0.04);
+		assertEquals(9990, h.getValueAtPercentile(99.9), 9990 * 0.04);
+		assertEquals(10000, h.getValueAtPercentile(100));
+	}
+
+
+	public void testHistogramBuckets() {
+
+		for (long v: new long[]{0, 1, 63, 64, 65, 127, 128, 1000, 123456789L}) {
+
+			int index = SRP6LoadGenerator.Histogram.bucketIndex(v);
+			long high = SRP6LoadGenerator.Histogram.highestEquivalentValue(index);
+			assertTrue(v + " <= " + high, v <= high);
+			assertTrue(v + " > " + high, index == 0 || v > SRP6LoadGenerator.Histogram.highestEquivalentValue(index - 1));
+		}
+	}
+
+
+	public void testClosedInProcess()
+		throws Exception {
+
+		SRP6LoadGenerator gen = new SRP6LoadGenerator();
+		gen.setTarget("inproc");
+		gen.setModel(SRP6LoadGenerator.Model.CLOSED);
+		gen.setConcurrency(2);
+		gen.setCryptoParams(512, "SHA-1");
+		gen.setMaxHandshakes(10);
+		gen.setDuration(30);
+
+		SRP6LoadGenerator.Report report = gen.run();
+
+		assertTrue(report.succeeded.get() >= 10);
+		assertEquals(0, report.failed.get());
+		assertEquals(0, report.errors.get());
+
+		for (SRP6LoadGenerator.Histogram h: report.histograms)
+			assertEquals(report.succeeded.get(), h.getCount());
+
+		StringBuilder csv = new StringBuilder();
+		report.writeCSV(csv);
+		String[] lines = csv.toString().split("\n");
+		assertEquals(5, lines.length);
+		assertTrue(lines[0].startsWith("step,count,"));
+		assertTrue(lines[4].startsWith("total," + report.succeeded.get() + ","));
+
+		StringBuilder json = new StringBuilder();
+		report.writeJSON(json);
+		assertTrue(json.toString().startsWith("{\"succeeded\":" + report.succeeded.get() + ","));
+		assertTrue(json.toString().contains("\"step3\":{\"count\":"));
+	}
+
+
+	public void testOpenLoopback()
+		throws Exception {
+
+		SRP6LoadGenerator gen = new SRP6LoadGenerator();
+		gen.setTarget("loopback");
+		gen.setModel(SRP6LoadGenerator.Model.OPEN);
+		gen.setConcurrency(4);
+		gen.setRate(50);
+		gen.setCryptoParams(512, "SHA-1");
+		gen.setMaxHandshakes(10);
+		gen.setDuration(30);
+		gen.setUser("alice", "secret");
+
+		SRP6LoadGenerator.Report report = gen.run();
+
+		assertTrue(report.succeeded.get() >= 10);
+		assertEquals(0, report.failed.get());
+		assertEquals(0, report.errors.get());
+		assertTrue(report.histograms[3].getValueAtPercentile(50) > 0);
+	}
+}
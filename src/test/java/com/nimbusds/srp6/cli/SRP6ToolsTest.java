@@ -10,7 +10,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
-import static javax.xml.bind.DatatypeConverter.*;
 
 public class SRP6ToolsTest extends TestCase {
 
@@ -252,7 +251,7 @@ public class SRP6ToolsTest extends TestCase {
 
             @Override
             void logShash(byte[] sessionKeyHash) {
-                SShash.set(printHexBinary(sessionKeyHash));
+                SShash.set(BigIntegerUtils.toHex(sessionKeyHash));
             }
         };
 
@@ -308,7 +307,7 @@ public class SRP6ToolsTest extends TestCase {
 
             @Override
             void logShash(byte[] sessionKeyHash) {
-                SChash.set(printHexBinary(sessionKeyHash));
+                SChash.set(BigIntegerUtils.toHex(sessionKeyHash));
             }
         };
 
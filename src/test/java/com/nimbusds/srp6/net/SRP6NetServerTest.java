@@ -0,0 +1,311 @@
+package com.nimbusds.srp6.net;
+
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6MessageCodec;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+import com.nimbusds.srp6.server.SRP6HandshakeScheduler;
+
+
+/**
+ * Tests the SRP-6a network server and client on the loopback interface.
+ */
+public class SRP6NetServerTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+
+
+	private final ConcurrentHashMap<String,SRP6VerifierRecord> users = new ConcurrentHashMap<>();
+
+
+	private SRP6HandshakeScheduler scheduler;
+
+
+	private SRP6NetServer server;
+
+
+	private InetSocketAddress address;
+
+
+	@Override
+	public void setUp()
+		throws Exception {
+
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+
+		for (String name: new String[]{"alice", "bob"}) {
+			BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+			users.put(name, new SRP6VerifierRecord(s, gen.generateVerifier(s, name, name + "-secret")));
+		}
+
+		scheduler = new SRP6HandshakeScheduler(2, 100, 100, 10, TimeUnit.SECONDS);
+
+		server = new SRP6NetServer(config, new SRP6VerifierSource() {
+			@Override
+			public SRP6VerifierRecord lookUp(final String userID) {
+				return users.get(userID);
+			}
+		}, scheduler, 30);
+
+		server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+		address = server.getLocalAddress();
+	}
+
+
+	@Override
+	public void tearDown()
+		throws Exception {
+
+		server.close();
+		scheduler.shutdown();
+	}
+
+
+	public void testAuthSuccess()
+		throws Exception {
+
+		try (SRP6NetClient client = new SRP6NetClient(address, config)) {
+
+			SRP6ClientSession session = client.authenticate("alice", "alice-secret");
+			assertEquals(SRP6ClientSession.State.STEP_3, session.getState());
+
+			// Second handshake on the same connection
+			session = client.authenticate("bob", "bob-secret");
+			assertEquals(SRP6ClientSession.State.STEP_3, session.getState());
+		}
+	}
+
+
+	public void testBadPasswordAndUnknownUser()
+		throws Exception {
+
+		try (SRP6NetClient client = new SRP6NetClient(address, config)) {
+
+			try {
+				client.authenticate("alice", "guess");
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+			}
+
+			SRP6NetClient.Challenge c1 = client.step1("mallory");
+
+			try {
+				client.step2(BigInteger.TEN, BigInteger.ONE);
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+			}
+
+			// Consistent mock salt
+			SRP6NetClient.Challenge c2 = client.step1("mallory");
+			assertEquals(c1.s, c2.s);
+			assertFalse(c1.B.equals(c2.B));
+
+			// Bad public value 'A'
+			try {
+				client.step2(config.N, BigInteger.ONE);
+				fail();
+			} catch (SRP6Exception e) {
+				assertEquals(SRP6Exception.CauseType.BAD_PUBLIC_VALUE, e.getCauseType());
+			}
+
+			// Connection still usable
+			client.authenticate("alice", "alice-secret");
+		}
+	}
+
+
+	public void testConcurrentClients()
+		throws Exception {
+
+		List<Thread> threads = new ArrayList<>();
+		final List<Throwable> errors = new ArrayList<>();
+
+		for (int i=0; i < 8; i++) {
+
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try (SRP6NetClient client = new SRP6NetClient(address, config)) {
+						for (int j=0; j < 5; j++)
+							client.authenticate("bob", "bob-secret");
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			});
+
+			threads.add(t);
+			t.start();
+		}
+
+		for (Thread t: threads)
+			t.join();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(40, scheduler.getStatistics(SRP6HandshakeScheduler.Stage.STEP_2).executed);
+	}
+
+
+	public void testProtocolError()
+		throws Exception {
+
+		try (SocketChannel channel = SocketChannel.open(address)) {
+
+			ByteBuffer buf = ByteBuffer.allocate(16);
+			buf.putInt(1_000_000);
+			buf.put(SRP6NetProtocol.HELLO);
+			buf.flip();
+			channel.write(buf);
+
+			buf.clear();
+			int n;
+			while ((n = channel.read(buf)) > 0) {
+				// read until closed
+			}
+			assertEquals(-1, n);
+			buf.flip();
+			assertEquals(2, buf.getInt());
+			assertEquals(SRP6NetProtocol.ERROR, buf.get());
+			assertEquals(SRP6NetProtocol.ERROR_PROTOCOL, buf.get());
+		}
+	}
+
+
+	public void testClose()
+		throws Exception {
+
+		SRP6NetClient client = new SRP6NetClient(address, config);
+		client.authenticate("alice", "alice-secret");
+
+		server.close();
+
+		try {
+			client.step1("alice");
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+
+		client.close();
+	}
+
+
+	private SRP6NetServer startServer(final int idleTimeout, final int maxConnections)
+		throws IOException {
+
+		SRP6NetServer other = new SRP6NetServer(config, new SRP6VerifierSource() {
+			@Override
+			public SRP6VerifierRecord lookUp(final String userID) {
+				return users.get(userID);
+			}
+		}, scheduler, 30, SRP6NetProtocol.DEFAULT_MAX_FRAME_LENGTH, idleTimeout, maxConnections);
+
+		other.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		return other;
+	}
+
+
+	private static int readUntilClosed(final SocketChannel channel, final ByteBuffer buf)
+		throws IOException {
+
+		int n;
+		while ((n = channel.read(buf)) > 0) {
+			// read until closed
+		}
+		return n;
+	}
+
+
+	public void testIdleTimeout()
+		throws Exception {
+
+		try (SRP6NetServer other = startServer(1, 10);
+		     SocketChannel channel = SocketChannel.open(other.getLocalAddress())) {
+
+			// Nothing sent
+			long start = System.currentTimeMillis();
+			assertEquals(-1, readUntilClosed(channel, ByteBuffer.allocate(16)));
+			assertTrue(System.currentTimeMillis() - start >= 900L);
+
+			for (int i = 0; i < 50 && other.getConnectionCount() > 0; i++)
+				Thread.sleep(50);
+
+			assertEquals(0, other.getConnectionCount());
+		}
+	}
+
+
+	public void testMaxConnections()
+		throws Exception {
+
+		try (SRP6NetServer other = startServer(0, 1)) {
+
+			SRP6NetClient first = new SRP6NetClient(other.getLocalAddress(), config);
+			first.authenticate("alice", "alice-secret");
+
+			// Over the limit, closed on accept
+			try (SocketChannel channel = SocketChannel.open(other.getLocalAddress())) {
+				assertEquals(-1, readUntilClosed(channel, ByteBuffer.allocate(16)));
+			}
+
+			first.close();
+
+			for (int i = 0; i < 50 && other.getConnectionCount() > 0; i++)
+				Thread.sleep(50);
+
+			try (SRP6NetClient client = new SRP6NetClient(other.getLocalAddress(), config)) {
+				client.authenticate("bob", "bob-secret");
+			}
+		}
+	}
+
+
+	public void testPipelinedFrames()
+		throws Exception {
+
+		SRP6MessageCodec codec = new SRP6MessageCodec(config);
+
+		try (SocketChannel channel = SocketChannel.open(address)) {
+
+			// HELLO frames without reading the replies
+			ByteBuffer buf = ByteBuffer.allocate(64 * 20);
+
+			for (int i = 0; i < 20; i++) {
+				int start = SRP6NetProtocol.beginFrame(buf, SRP6NetProtocol.HELLO);
+				codec.putUserID(buf, "alice");
+				SRP6NetProtocol.endFrame(buf, start);
+			}
+
+			buf.flip();
+			channel.write(buf);
+
+			assertEquals(-1, readUntilClosed(channel, ByteBuffer.allocate(4096)));
+		}
+
+		// Server still up
+		try (SRP6NetClient client = new SRP6NetClient(address, config)) {
+			client.authenticate("alice", "alice-secret");
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+
+
+/**
+ * Tests the thread-per-handshake executor.
+ */
+public class SRP6HandshakeExecutorTest extends TestCase {
+
+
+	private void runHandshakes(final boolean preferVirtual)
+		throws Exception {
+
+		final SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		final BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		final BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6HandshakeScheduler scheduler = new SRP6HandshakeScheduler(2, 100, 100, 1, TimeUnit.MINUTES);
+		final SRP6HandshakeExecutor executor = new SRP6HandshakeExecutor(scheduler, 4, preferVirtual);
+
+		if (! preferVirtual)
+			assertFalse(executor.usesVirtualThreads());
+		else
+			assertEquals(SRP6HandshakeExecutor.isVirtualThreadSupported(), executor.usesVirtualThreads());
+
+		assertSame(scheduler, executor.getComputePool());
+
+		final AtomicInteger successes = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+
+		List<Future<?>> handshakes = new ArrayList<>();
+
+		for (int i=0; i < 20; i++) {
+
+			final String password = i % 4 == 0 ? "guess" : "secret";
+
+			handshakes.add(executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						SRP6ClientSession client = new SRP6ClientSession();
+						client.step1("alice", password);
+
+						SRP6ServerSession server = new SRP6ServerSession(config);
+						BigInteger B = executor.step1(server, "alice", s, v);
+
+						SRP6ClientCredentials cred = client.step2(config, s, B);
+
+						try {
+							client.step3(executor.step2(server, cred.A, cred.M1));
+							successes.incrementAndGet();
+						} catch (SRP6Exception e) {
+							assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+							failures.incrementAndGet();
+						}
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}));
+		}
+
+		for (Future<?> f: handshakes)
+			f.get();
+
+		assertEquals(15, successes.get());
+		assertEquals(5, failures.get());
+
+		executor.shutdown();
+		scheduler.shutdown();
+	}
+
+
+	public void testPlatformThreads()
+		throws Exception {
+
+		runHandshakes(false);
+	}
+
+
+	public void testPreferVirtualThreads()
+		throws Exception {
+
+		runHandshakes(true);
+	}
+}
@@ -0,0 +1,230 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+
+
+/**
+ * Tests the handshake scheduler.
+ */
+public class SRP6HandshakeSchedulerTest extends TestCase {
+
+
+	private static Callable<String> record(final List<String> log, final String name) {
+
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				log.add(name);
+				return name;
+			}
+		};
+	}
+
+
+	private static Callable<Void> block(final CountDownLatch started, final CountDownLatch release) {
+
+		return new Callable<Void>() {
+			@Override
+			public Void call()
+				throws Exception {
+				started.countDown();
+				release.await();
+				return null;
+			}
+		};
+	}
+
+
+	public void testStep2TakesPriority()
+		throws Exception {
+
+		SRP6HandshakeScheduler scheduler = new SRP6HandshakeScheduler(1, 10, 10, 1, TimeUnit.MINUTES);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		scheduler.submitStep1(block(started, release));
+		started.await();
+
+		List<String> log = new CopyOnWriteArrayList<>();
+
+		Future<String> a = scheduler.submitStep1(record(log, "step1-a"));
+		Future<String> b = scheduler.submitStep1(record(log, "step1-b"));
+		Future<String> c = scheduler.submitStep2(record(log, "step2-c"));
+
+		assertEquals(2, scheduler.getQueueDepth(SRP6HandshakeScheduler.Stage.STEP_1));
+		assertEquals(1, scheduler.getQueueDepth(SRP6HandshakeScheduler.Stage.STEP_2));
+
+		release.countDown();
+
+		assertEquals("step1-a", a.get());
+		assertEquals("step1-b", b.get());
+		assertEquals("step2-c", c.get());
+
+		assertEquals("step2-c", log.get(0));
+		assertEquals("step1-a", log.get(1));
+		assertEquals("step1-b", log.get(2));
+
+		SRP6HandshakeScheduler.Statistics stats = scheduler.getStatistics(SRP6HandshakeScheduler.Stage.STEP_1);
+		assertEquals(0, stats.queueDepth);
+		assertEquals(3, stats.accepted);
+		assertEquals(0, stats.rejected);
+		assertEquals(0, stats.dropped);
+		assertTrue(stats.maxSojournTime >= stats.meanSojournTime);
+
+		scheduler.shutdown();
+	}
+
+
+	public void testAdmissionControl()
+		throws Exception {
+
+		SRP6HandshakeScheduler scheduler = new SRP6HandshakeScheduler(1, 2, 10, 50, TimeUnit.MILLISECONDS);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		scheduler.submitStep1(block(started, release));
+		started.await();
+
+		List<String> log = new CopyOnWriteArrayList<>();
+
+		Future<String> stale = scheduler.submitStep1(record(log, "stale"));
+
+		Thread.sleep(100);
+
+		// Standing queue, new step one rejected
+		try {
+			scheduler.submitStep1(record(log, "rejected"));
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals("Queue delay exceeded", e.getMessage());
+		}
+
+		// Step two still accepted
+		Future<String> step2 = scheduler.submitStep2(record(log, "step2"));
+
+		release.countDown();
+
+		assertEquals("step2", step2.get());
+
+		// Queued step one dropped on dequeue
+		try {
+			stale.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+
+		assertEquals(1, log.size());
+
+		SRP6HandshakeScheduler.Statistics stats = scheduler.getStatistics(SRP6HandshakeScheduler.Stage.STEP_1);
+		assertEquals(1, stats.rejected);
+		assertEquals(1, stats.dropped);
+		assertTrue(stats.maxSojournTime >= TimeUnit.MILLISECONDS.toNanos(50));
+
+		scheduler.shutdown();
+
+		try {
+			scheduler.submitStep2(record(log, "shutdown"));
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertTrue(scheduler.isShutdown());
+		}
+	}
+
+
+	public void testQueueCapacity()
+		throws Exception {
+
+		SRP6HandshakeScheduler scheduler = new SRP6HandshakeScheduler(1, 1, 1, 1, TimeUnit.MINUTES);
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		scheduler.submitStep2(block(started, release));
+		started.await();
+
+		List<String> log = new CopyOnWriteArrayList<>();
+
+		scheduler.submitStep1(record(log, "step1"));
+		scheduler.submitStep2(record(log, "step2"));
+
+		try {
+			scheduler.submitStep1(record(log, "step1-overflow"));
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals("Queue full", e.getMessage());
+		}
+
+		try {
+			scheduler.submitStep2(record(log, "step2-overflow"));
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals("Queue full", e.getMessage());
+		}
+
+		release.countDown();
+		scheduler.shutdown();
+	}
+
+
+	public void testScheduledHandshake()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance();
+		SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6HandshakeScheduler scheduler = new SRP6HandshakeScheduler(2, 10, 10, 1, TimeUnit.MINUTES);
+
+		SRP6ServerSession server = new SRP6ServerSession(config);
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+
+		BigInteger B = scheduler.step1(server, "alice", s, v).get();
+		SRP6ClientCredentials cred = client.step2(config, s, B);
+		BigInteger M2 = scheduler.step2(server, cred.A, cred.M1).get();
+		client.step3(M2);
+
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+
+		// Bad credentials reported through the future
+		SRP6ServerSession badServer = new SRP6ServerSession(config);
+		SRP6ClientSession badClient = new SRP6ClientSession();
+		badClient.step1("alice", "guess");
+
+		B = scheduler.step1(badServer, "alice", s, v).get();
+		cred = badClient.step2(config, s, B);
+
+		try {
+			scheduler.step2(badServer, cred.A, cred.M1).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, ((SRP6Exception)e.getCause()).getCauseType());
+		}
+
+		assertEquals(2, scheduler.getStatistics(SRP6HandshakeScheduler.Stage.STEP_2).executed);
+
+		scheduler.shutdown();
+	}
+}
@@ -0,0 +1,222 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.srp6.FixedBaseTable;
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6ServerContext;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+
+
+/**
+ * Tests the exponentiation batcher.
+ */
+public class SRP6ModPowBatcherTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+
+	private final FixedBaseTable table = new FixedBaseTable(config.N, config.g, 4);
+
+
+	public void testBatches()
+		throws Exception {
+
+		SRP6ModPowBatcher batcher = new SRP6ModPowBatcher(table, 1, 8, 1, TimeUnit.SECONDS);
+		assertSame(table, batcher.getFixedBaseTable());
+		assertEquals(8, batcher.getMaxBatchSize());
+
+		SecureRandom random = new SecureRandom();
+
+		List<BigInteger> exponents = new ArrayList<>();
+		List<Future<BigInteger>> futures = new ArrayList<>();
+
+		for (int i=0; i < 16; i++) {
+
+			BigInteger e = new BigInteger(512, random);
+			exponents.add(e);
+			futures.add(batcher.submit(e));
+		}
+
+		for (int i=0; i < 16; i++)
+			assertEquals(config.g.modPow(exponents.get(i), config.N), futures.get(i).get(10, TimeUnit.SECONDS));
+
+		// Full batches didn't wait for the delay
+		assertEquals(2, batcher.getBatchCount());
+		assertEquals(16, batcher.getExponentiationCount());
+
+		batcher.shutdown();
+	}
+
+
+	public void testMaxDelay()
+		throws Exception {
+
+		SRP6ModPowBatcher batcher = new SRP6ModPowBatcher(table, 2, 100, 10, TimeUnit.MILLISECONDS);
+
+		// A partial batch is executed after the delay
+		assertEquals(config.g.modPow(BigInteger.TEN, config.N), batcher.submit(BigInteger.TEN).get(10, TimeUnit.SECONDS));
+		assertEquals(1, batcher.getBatchCount());
+
+		batcher.shutdown();
+	}
+
+
+	public void testWorkersSurviveBursts()
+		throws Exception {
+
+		SRP6ModPowBatcher batcher = new SRP6ModPowBatcher(table, 4, 4, 50, TimeUnit.MILLISECONDS);
+
+		// Workers waiting for a batch to fill which another worker takes
+		for (int i=0; i < 40; i++) {
+
+			List<Future<BigInteger>> futures = new ArrayList<>();
+
+			for (int j=0; j < 4; j++)
+				futures.add(batcher.submit(BigInteger.valueOf(j + 1)));
+
+			for (int j=0; j < 4; j++)
+				assertEquals(config.g.modPow(BigInteger.valueOf(j + 1), config.N), futures.get(j).get(10, TimeUnit.SECONDS));
+		}
+
+		assertEquals(4, batcher.getLiveWorkerCount());
+
+		batcher.shutdown();
+
+		for (int i=0; i < 100 && batcher.getLiveWorkerCount() > 0; i++)
+			Thread.sleep(10);
+
+		assertEquals(0, batcher.getLiveWorkerCount());
+	}
+
+
+	public void testServerContext()
+		throws Exception {
+
+		final SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+		final BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		final BigInteger v = gen.generateVerifier(s, "alice", "secret");
+
+		SRP6ModPowBatcher batcher = new SRP6ModPowBatcher(table, 1, 4, 1, TimeUnit.SECONDS);
+		final SRP6ServerContext context = new SRP6ServerContext(new SRP6ServerContext(config), batcher);
+		assertSame(batcher, context.getModPowBatcher());
+		assertSame(table, context.getFixedBaseTable());
+
+		// Four concurrent sessions fill one batch
+		List<Thread> threads = new ArrayList<>();
+		final List<Throwable> errors = new ArrayList<>();
+
+		for (int i=0; i < 4; i++) {
+
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						SRP6ClientSession client = new SRP6ClientSession();
+						client.step1("alice", "secret");
+						SRP6ServerSession server = context.createSession(0);
+						SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+						client.step3(server.step2(cred.A, cred.M1));
+
+					} catch (Throwable t) {
+
+						synchronized (errors) {
+							errors.add(t);
+						}
+					}
+				}
+			});
+		}
+
+		for (Thread t: threads)
+			t.start();
+
+		for (Thread t: threads)
+			t.join();
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(1, batcher.getBatchCount());
+		assertEquals(4, batcher.getExponentiationCount());
+
+		// Computed directly once shut down
+		batcher.shutdown();
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1("alice", "secret");
+		SRP6ServerSession server = context.createSession(0);
+		SRP6ClientCredentials cred = client.step2(config, s, server.step1("alice", s, v));
+		client.step3(server.step2(cred.A, cred.M1));
+		assertEquals(4, batcher.getExponentiationCount());
+
+		try {
+			new SRP6ServerContext(context, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The exponentiation batcher must not be null", e.getMessage());
+		}
+
+		try {
+			new SRP6ServerContext(new SRP6ServerContext(SRP6CryptoParams.getInstance(1024, "SHA-256")), batcher);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The fixed-base table must be for the generator 'g' modulo 'N'", e.getMessage());
+		}
+	}
+
+
+	public void testShutdown()
+		throws Exception {
+
+		SRP6ModPowBatcher batcher = new SRP6ModPowBatcher(table, 1, 10, 1, TimeUnit.MINUTES);
+
+		Future<BigInteger> queued = batcher.submit(BigInteger.ONE);
+		batcher.shutdown();
+
+		// Drained on shutdown
+		assertEquals(config.g, queued.get(10, TimeUnit.SECONDS));
+
+		try {
+			batcher.submit(BigInteger.ONE);
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertEquals("The exponentiation batcher is shut down", e.getMessage());
+		}
+	}
+
+
+	public void testBadArguments() {
+
+		try {
+			new SRP6ModPowBatcher(null, 1, 1, 0, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The fixed-base table must not be null", e.getMessage());
+		}
+
+		try {
+			new SRP6ModPowBatcher(table, 1, 0, 0, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum batch size must be at least 1", e.getMessage());
+		}
+
+		try {
+			new SRP6ModPowBatcher(table, 1, 1, -1, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum delay must not be negative", e.getMessage());
+		}
+	}
+}
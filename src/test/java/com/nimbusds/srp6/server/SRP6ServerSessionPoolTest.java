@@ -0,0 +1,230 @@
+package com.nimbusds.srp6.server;
+
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.srp6.ClientEvidenceRoutine;
+import com.nimbusds.srp6.SRP6ClientCredentials;
+import com.nimbusds.srp6.SRP6ClientEvidenceContext;
+import com.nimbusds.srp6.SRP6ClientSession;
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Exception;
+import com.nimbusds.srp6.SRP6ServerSession;
+import com.nimbusds.srp6.SRP6VerifierGenerator;
+
+
+/**
+ * Tests the server session pool.
+ */
+public class SRP6ServerSessionPoolTest extends TestCase {
+
+
+	private final SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+
+
+	private final SRP6VerifierGenerator gen = new SRP6VerifierGenerator(config);
+
+
+	private BigInteger[] register(final String userID, final String password) {
+
+		BigInteger s = new BigInteger(1, gen.generateRandomSalt());
+		return new BigInteger[]{s, gen.generateVerifier(s, userID, password)};
+	}
+
+
+	private BigInteger authenticate(final SRP6ServerSession server,
+	                                final String userID,
+	                                final String password,
+	                                final BigInteger[] record)
+		throws SRP6Exception {
+
+		SRP6ClientSession client = new SRP6ClientSession();
+		client.step1(userID, password);
+		SRP6ClientCredentials cred = client.step2(config, record[0], server.step1(userID, record[0], record[1]));
+		client.step3(server.step2(cred.A, cred.M1));
+		assertEquals(client.getSessionKey(), server.getSessionKey());
+		return server.getSessionKey();
+	}
+
+
+	public void testDoubleRelease()
+		throws SRP6Exception {
+
+		SRP6ServerSessionPool pool = new SRP6ServerSessionPool(config, 0, 4);
+
+		SRP6ServerSession session = pool.acquire();
+		pool.release(session);
+		pool.release(session);
+		assertEquals(1, pool.getIdleCount());
+
+		// Never handed out twice
+		SRP6ServerSession first = pool.acquire();
+		SRP6ServerSession second = pool.acquire();
+		assertSame(session, first);
+		assertNotSame(first, second);
+		assertEquals(2, pool.getCreatedCount());
+
+		// Released again after reuse
+		authenticate(first, "alice", "secret", register("alice", "secret"));
+		pool.release(first);
+		assertEquals(1, pool.getIdleCount());
+	}
+
+
+	public void testReuse()
+		throws SRP6Exception {
+
+		SRP6ServerSessionPool pool = new SRP6ServerSessionPool(config, 30, 2);
+
+		assertEquals(config, pool.getCryptoParams());
+		assertEquals(30, pool.getTimeout());
+		assertEquals(2, pool.getCapacity());
+		assertEquals(0, pool.getIdleCount());
+
+		SRP6ServerSession session = pool.acquire();
+		assertEquals(1, pool.getCreatedCount());
+		assertSame(pool.getServerContext(), session.getServerContext());
+		authenticate(session, "alice", "secret", register("alice", "secret"));
+
+		pool.release(session);
+		assertEquals(1, pool.getIdleCount());
+
+		SRP6ServerSession reused = pool.acquire();
+		assertSame(session, reused);
+		assertEquals(1, pool.getCreatedCount());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(SRP6ServerSession.State.INIT, reused.getState());
+		assertEquals(30, reused.getTimeout());
+	}
+
+
+	public void testIsolation()
+		throws SRP6Exception {
+
+		SRP6ServerSessionPool pool = new SRP6ServerSessionPool(config, 0, 1);
+
+		BigInteger[] alice = register("alice", "secret");
+		BigInteger[] bob = register("bob", "password");
+
+		SRP6ServerSession session = pool.acquire();
+		session.setAttribute("role", "admin");
+		session.setClientEvidenceRoutine(new ClientEvidenceRoutine() {
+			@Override
+			public BigInteger computeClientEvidence(final SRP6CryptoParams cryptoParams, final SRP6ClientEvidenceContext ctx) {
+				return BigInteger.ONE;
+			}
+		});
+
+		try {
+			authenticate(session, "alice", "secret", alice);
+			fail();
+		} catch (SRP6Exception e) {
+			assertEquals(SRP6Exception.CauseType.BAD_CREDENTIALS, e.getCauseType());
+		}
+
+		pool.release(session);
+
+		// Nothing carries over from the previous handshake
+		session = pool.acquire();
+		assertNull(session.getUserID());
+		assertNull(session.getSalt());
+		assertNull(session.getPublicClientValue());
+		assertNull(session.getPublicServerValue());
+		assertNull(session.getClientEvidenceMessage());
+		assertNull(session.getServerEvidenceMessage());
+		assertNull(session.getSessionKey());
+		assertNull(session.getSessionKeyHash());
+		assertNull(session.getAttribute("role"));
+		assertNull(session.getClientEvidenceRoutine());
+
+		BigInteger key1 = authenticate(session, "alice", "secret", alice);
+		pool.release(session);
+
+		session = pool.acquire();
+		BigInteger key2 = authenticate(session, "bob", "password", bob);
+		assertEquals("bob", session.getUserID());
+		assertEquals(bob[0], session.getSalt());
+		assertFalse(key1.equals(key2));
+		pool.release(session);
+
+		// A mock step one must not leak into the next handshake
+		session = pool.acquire();
+		session.mockStep1("mallory", alice[0], alice[1]);
+		pool.release(session);
+
+		session = pool.acquire();
+		authenticate(session, "alice", "secret", alice);
+	}
+
+
+	public void testBounded() {
+
+		SRP6ServerSessionPool pool = new SRP6ServerSessionPool(config, 0, 2);
+
+		SRP6ServerSession s1 = pool.acquire();
+		SRP6ServerSession s2 = pool.acquire();
+		SRP6ServerSession s3 = pool.acquire();
+		assertEquals(3, pool.getCreatedCount());
+
+		pool.release(s1);
+		pool.release(s2);
+		pool.release(s3);
+		assertEquals(2, pool.getIdleCount());
+
+		// Foreign timeouts are not retained
+		pool.acquire();
+		pool.release(new SRP6ServerSession(config, 10));
+		assertEquals(1, pool.getIdleCount());
+
+		pool.release(null);
+		assertEquals(1, pool.getIdleCount());
+	}
+
+
+	public void testConcurrent()
+		throws Exception {
+
+		final SRP6ServerSessionPool pool = new SRP6ServerSessionPool(config, 0, 4);
+		final String[] users = {"alice", "bob", "claire", "dave"};
+		final List<BigInteger[]> records = new ArrayList<>();
+
+		for (String user: users)
+			records.add(register(user, user + "-password"));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Void>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 40; i++) {
+
+			final int n = i % users.length;
+
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call()
+					throws Exception {
+					SRP6ServerSession session = pool.acquire();
+					authenticate(session, users[n], users[n] + "-password", records.get(n));
+					assertEquals(users[n], session.getUserID());
+					pool.release(session);
+					return null;
+				}
+			}));
+		}
+
+		for (Future<Void> f: futures)
+			f.get();
+
+		executor.shutdown();
+
+		assertTrue(pool.getCreatedCount() <= 40);
+		assertTrue(pool.getIdleCount() <= 4);
+	}
+}
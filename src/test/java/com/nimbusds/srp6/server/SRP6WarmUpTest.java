@@ -0,0 +1,96 @@
+package com.nimbusds.srp6.server;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.nimbusds.srp6.SRP6CryptoParams;
+import com.nimbusds.srp6.SRP6Routines;
+import com.nimbusds.srp6.SRP6ServerContext;
+import com.nimbusds.srp6.SRP6VerifierTableCache;
+
+
+/**
+ * Tests the server warm-up.
+ */
+public class SRP6WarmUpTest extends TestCase {
+
+
+	public void testStart()
+		throws Exception {
+
+		SRP6CryptoParams config = SRP6CryptoParams.getInstance(512, "SHA-256");
+		SRP6VerifierTableCache cache = new SRP6VerifierTableCache(config, 10, 1);
+
+		SRP6ServerContext context1 = new SRP6ServerContext(config, new SRP6Routines(), null, null, null, 4, cache);
+		SRP6ServerContext context2 = new SRP6ServerContext(SRP6CryptoParams.getInstance(256, "SHA-1"));
+
+		// Any latency within tolerance
+		SRP6WarmUp warmUp = new SRP6WarmUp(Arrays.asList(context1, context2), 4, 8, 2, 40, 1000.0);
+		assertFalse(warmUp.isReady());
+		assertNull(warmUp.getResult());
+
+		Future<SRP6WarmUp.Result> future = warmUp.start();
+		assertSame(future, warmUp.start());
+		assertEquals(SRP6WarmUp.Result.STABLE, future.get(60, TimeUnit.SECONDS));
+
+		assertTrue(warmUp.isReady());
+		assertEquals(SRP6WarmUp.Result.STABLE, warmUp.getResult());
+
+		// Two batches up to the minimum, then two stable batches
+		assertEquals(2 * 16, warmUp.getHandshakeCount());
+
+		// Throwaway users removed
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testRun()
+		throws Exception {
+
+		SRP6ServerContext context = new SRP6ServerContext(SRP6CryptoParams.getInstance(256, "SHA-1"));
+
+		// No latency within tolerance, doesn't stabilise
+		SRP6WarmUp warmUp = new SRP6WarmUp(Collections.singletonList(context), 2, 0, 1, 5, 0.0);
+		assertEquals(SRP6WarmUp.Result.UNSTABLE, warmUp.run());
+		assertFalse(warmUp.isReady());
+		assertEquals(SRP6WarmUp.Result.UNSTABLE, warmUp.getResult());
+		assertEquals(4, warmUp.getHandshakeCount());
+
+		// Only once
+		assertEquals(SRP6WarmUp.Result.UNSTABLE, warmUp.run());
+		warmUp.start().get();
+		assertEquals(4, warmUp.getHandshakeCount());
+	}
+
+
+	public void testIllegalArgs() {
+
+		SRP6ServerContext context = new SRP6ServerContext(SRP6CryptoParams.getInstance(256, "SHA-1"));
+
+		try {
+			new SRP6WarmUp(Collections.<SRP6ServerContext>emptyList());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The server contexts must not be empty", e.getMessage());
+		}
+
+		try {
+			new SRP6WarmUp(Collections.singletonList(context), 10, 100, 3, 139, 0.1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The maximum number of handshakes must be at least the minimum plus the stable batches and one more", e.getMessage());
+		}
+
+		try {
+			new SRP6WarmUp(Collections.singletonList(context), 10, 100, 0, 1000, 0.1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("The number of stable batches must be positive", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.nimbusds.srp6.server;
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the virtual thread access, of the baseline or the JDK 21 version
+ * depending on the runtime and the class path.
+ */
+public class VirtualThreadsTest extends TestCase {
+
+
+	private static int getJavaFeatureVersion() {
+
+		String version = System.getProperty("java.specification.version");
+
+		if (version.startsWith("1."))
+			return Integer.parseInt(version.substring(2));
+
+		return Integer.parseInt(version);
+	}
+
+
+	public void testSupported() {
+
+		assertEquals(getJavaFeatureVersion() >= 21, VirtualThreads.isSupported());
+		assertEquals(VirtualThreads.isSupported(), SRP6HandshakeExecutor.isVirtualThreadSupported());
+	}
+
+
+	public void testNewThreadPerTaskExecutor()
+		throws Exception {
+
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+
+		// Supported exactly when an executor can be created
+		assertEquals(VirtualThreads.isSupported(), executor != null);
+
+		if (! VirtualThreads.isSupported()) {
+			assertNull(executor);
+			return;
+		}
+
+		try {
+			Thread thread = executor.submit(new Callable<Thread>() {
+				@Override
+				public Thread call() {
+					return Thread.currentThread();
+				}
+			}).get();
+
+			assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+
+		} finally {
+			executor.shutdown();
+		}
+	}
+}